@@ -0,0 +1,94 @@
+/*
+ * Copyright 2020-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.rest.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import se.idsec.signservice.integration.rest.cache.CachedObjectRedisSerializer;
+import se.idsec.signservice.integration.rest.cache.RedisDocumentCache.CachedDocument;
+
+import java.util.Base64;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares Java serialization and the {@link CachedObjectRedisSerializer} for cached documents. The serialized size
+ * (bytes per entry) for each format is printed during setup.
+ *
+ * @author Martin Lindström
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CachedObjectSerializationBenchmark {
+
+  /** The size of the (binary) document. */
+  @Param({ "2048", "262144", "4194304" })
+  private int documentSize;
+
+  /** The serialization format. */
+  @Param({ "jdk", "binary" })
+  private String format;
+
+  private RedisSerializer<Object> serializer;
+
+  private CachedDocument document;
+
+  private byte[] serialized;
+
+  @Setup
+  public void setup() {
+    this.serializer = "jdk".equals(this.format)
+        ? new JdkSerializationRedisSerializer()
+        : new CachedObjectRedisSerializer();
+
+    final byte[] contents = new byte[this.documentSize];
+    new Random(this.documentSize).nextBytes(contents);
+    this.document = new CachedDocument(UUID.randomUUID().toString(), Base64.getEncoder().encodeToString(contents),
+        "client1", System.currentTimeMillis() + 900000L);
+    this.serialized = this.serializer.serialize(this.document);
+
+    System.out.printf("%nSerialized size [format=%s, documentSize=%d]: %d bytes (overhead: %d bytes)%n",
+        this.format, this.documentSize, this.serialized.length,
+        this.serialized.length - this.document.getObject().length());
+  }
+
+  @Benchmark
+  public byte[] serialize() {
+    return this.serializer.serialize(this.document);
+  }
+
+  @Benchmark
+  public Object deserialize() {
+    return this.serializer.deserialize(this.serialized);
+  }
+
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2020-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.rest.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import redis.embedded.RedisServer;
+import se.idsec.signservice.integration.core.DocumentCache;
+import se.idsec.signservice.integration.core.impl.InMemoryDocumentCache;
+import se.idsec.signservice.integration.rest.cache.RedisDocumentCache;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.Base64;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the {@link InMemoryDocumentCache} and the {@link RedisDocumentCache}. The Redis cache runs against an
+ * embedded Redis server on the loopback interface, so no network access is needed.
+ *
+ * @author Martin Lindström
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DocumentCacheBenchmark {
+
+  /** The cache implementation. */
+  @Param({ "memory", "redis" })
+  private String cache;
+
+  /** The size of the (binary) document. */
+  @Param({ "65536", "1048576" })
+  private int documentSize;
+
+  private RedisServer redisServer;
+
+  private LettuceConnectionFactory connectionFactory;
+
+  private DocumentCache documentCache;
+
+  private String document;
+
+  private String cachedId;
+
+  @Setup
+  public void setup() throws IOException {
+    if ("redis".equals(this.cache)) {
+      final int port;
+      try (final ServerSocket socket = new ServerSocket(0)) {
+        port = socket.getLocalPort();
+      }
+      this.redisServer = new RedisServer(port);
+      this.redisServer.start();
+      this.connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("localhost", port));
+      this.connectionFactory.afterPropertiesSet();
+      this.connectionFactory.start();
+
+      final RedisTemplate<String, Object> redisTemplate = new RedisTemplate<>();
+      redisTemplate.setConnectionFactory(this.connectionFactory);
+      redisTemplate.afterPropertiesSet();
+      this.documentCache = new RedisDocumentCache(redisTemplate);
+    }
+    else {
+      this.documentCache = new InMemoryDocumentCache();
+    }
+
+    final byte[] contents = new byte[this.documentSize];
+    new Random(this.documentSize).nextBytes(contents);
+    this.document = Base64.getEncoder().encodeToString(contents);
+
+    this.cachedId = UUID.randomUUID().toString();
+    this.documentCache.put(this.cachedId, this.document, "client1");
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    if (this.connectionFactory != null) {
+      this.connectionFactory.destroy();
+    }
+    if (this.redisServer != null) {
+      this.redisServer.stop();
+    }
+  }
+
+  /**
+   * The cache usage of a prepare call followed by a create call: the document is stored and then claimed.
+   *
+   * @return the claimed document
+   */
+  @Benchmark
+  public String putAndClaim() {
+    final String id = UUID.randomUUID().toString();
+    this.documentCache.put(id, this.document, "client1");
+    return this.documentCache.get(id, true, "client1");
+  }
+
+  @Benchmark
+  public String get() {
+    return this.documentCache.get(this.cachedId, "client1");
+  }
+
+}
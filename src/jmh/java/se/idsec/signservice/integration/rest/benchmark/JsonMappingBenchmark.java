@@ -0,0 +1,165 @@
+/*
+ * Copyright 2020-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.rest.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import se.idsec.signservice.integration.SignRequestInput;
+import se.idsec.signservice.integration.SignatureResult;
+import se.idsec.signservice.integration.document.SignedDocument;
+import se.idsec.signservice.integration.document.TbsDocument;
+import se.idsec.signservice.integration.document.pdf.PdfSignaturePagePreferences;
+import se.idsec.signservice.integration.document.pdf.PreparePdfSignaturePageInput;
+import se.idsec.signservice.integration.rest.controllers.PreparePdfDocumentInput;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures Jackson (de)serialization of the request and response bodies of the signing endpoints. The documents are
+ * the sandbox PDF document, padded with random bytes up to the given size.
+ *
+ * @author Martin Lindström
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonMappingBenchmark {
+
+  /** The size of the (binary) PDF document. */
+  @Param({ "131072", "1048576", "10485760" })
+  private int documentSize;
+
+  private ObjectMapper objectMapper;
+
+  private SignRequestInput signRequestInput;
+
+  private PreparePdfSignaturePageInput prepareInput;
+
+  private SignatureResult signatureResult;
+
+  private byte[] signRequestInputJson;
+
+  private byte[] prepareInputJson;
+
+  private byte[] signatureResultJson;
+
+  @Setup
+  public void setup() throws IOException {
+    // The same settings as the object mapper created by Spring Boot ...
+    this.objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+    final String document = Base64.getEncoder().encodeToString(loadPdfDocument(this.documentSize));
+
+    this.signRequestInput = SignRequestInput.builder()
+        .correlationId(UUID.randomUUID().toString())
+        .policy("sandbox")
+        .tbsDocuments(List.of(TbsDocument.builder()
+            .id(UUID.randomUUID().toString())
+            .content(document)
+            .mimeType("application/pdf")
+            .build()))
+        .build();
+    this.prepareInput = PreparePdfSignaturePageInput.builder()
+        .pdfDocument(document)
+        .signaturePagePreferences(PdfSignaturePagePreferences.builder()
+            .failWhenSignPageFull(true)
+            .build())
+        .build();
+    this.signatureResult = SignatureResult.builder()
+        .id(UUID.randomUUID().toString())
+        .correlationId(UUID.randomUUID().toString())
+        .signedDocuments(List.of(SignedDocument.builder()
+            .id(UUID.randomUUID().toString())
+            .signedContent(document)
+            .mimeType("application/pdf")
+            .build()))
+        .build();
+
+    this.signRequestInputJson = this.objectMapper.writeValueAsBytes(this.signRequestInput);
+    this.prepareInputJson = this.objectMapper.writeValueAsBytes(this.prepareInput);
+    this.signatureResultJson = this.objectMapper.writeValueAsBytes(this.signatureResult);
+  }
+
+  @Benchmark
+  public SignRequestInput readSignRequestInput() throws IOException {
+    return this.objectMapper.readValue(this.signRequestInputJson, SignRequestInput.class);
+  }
+
+  @Benchmark
+  public PreparePdfSignaturePageInput readPreparePdfSignaturePageInput() throws IOException {
+    return this.objectMapper.readValue(this.prepareInputJson, PreparePdfSignaturePageInput.class);
+  }
+
+  @Benchmark
+  public PreparePdfDocumentInput readPreparePdfDocumentInput() throws IOException {
+    return this.objectMapper.readValue(this.prepareInputJson, PreparePdfDocumentInput.class);
+  }
+
+  @Benchmark
+  public byte[] writeSignatureResult() throws IOException {
+    return this.objectMapper.writeValueAsBytes(this.signatureResult);
+  }
+
+  @Benchmark
+  public SignatureResult readSignatureResult() throws IOException {
+    return this.objectMapper.readValue(this.signatureResultJson, SignatureResult.class);
+  }
+
+  /**
+   * Loads the sandbox PDF document and pads it with random bytes up to the given size.
+   *
+   * @param size the size
+   * @return the document bytes
+   * @throws IOException for read errors
+   */
+  public static byte[] loadPdfDocument(final int size) throws IOException {
+    final byte[] pdf;
+    try (final InputStream is = new ClassPathResource("sandbox/pdf/idsec-page.pdf").getInputStream()) {
+      pdf = is.readAllBytes();
+    }
+    if (pdf.length >= size) {
+      return pdf;
+    }
+    final byte[] padding = new byte[size - pdf.length];
+    new Random(size).nextBytes(padding);
+    final byte[] document = Arrays.copyOf(pdf, size);
+    System.arraycopy(padding, 0, document, pdf.length, padding.length);
+    return document;
+  }
+
+}
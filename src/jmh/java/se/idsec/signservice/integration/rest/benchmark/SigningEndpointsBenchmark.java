@@ -0,0 +1,137 @@
+/*
+ * Copyright 2020-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.rest.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import se.idsec.signservice.integration.ExtendedSignServiceIntegrationService;
+import se.idsec.signservice.integration.SignRequestData;
+import se.idsec.signservice.integration.SignRequestInput;
+import se.idsec.signservice.integration.authentication.AuthnRequirements;
+import se.idsec.signservice.integration.authentication.SignerIdentityAttributeValue;
+import se.idsec.signservice.integration.core.DocumentCache;
+import se.idsec.signservice.integration.core.error.SignServiceIntegrationException;
+import se.idsec.signservice.integration.document.TbsDocument;
+import se.idsec.signservice.integration.document.pdf.PdfSignaturePagePreferences;
+import se.idsec.signservice.integration.document.pdf.PreparedPdfDocument;
+import se.idsec.signservice.integration.rest.SignServiceIntegrationApplication;
+
+import java.io.IOException;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end benchmarks of the service calls behind the {@code /create} and {@code /prepare} endpoints, using the
+ * sandbox policy and test keystores. The application context is started without a web server, and the SignMessage
+ * support (which downloads metadata) is disabled, so no network access is needed.
+ * <p>
+ * The {@code /process} endpoint is not covered since it requires a SignResponse issued by a sign service.
+ * </p>
+ *
+ * @author Martin Lindström
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SigningEndpointsBenchmark {
+
+  /** The owner (client) of the operations. */
+  private static final String OWNER = "benchmark";
+
+  private ConfigurableApplicationContext context;
+
+  private ExtendedSignServiceIntegrationService service;
+
+  private DocumentCache documentCache;
+
+  private byte[] pdfDocument;
+
+  private String encodedPdfDocument;
+
+  @Setup
+  public void setup() throws IOException {
+    this.context = new SpringApplicationBuilder(SignServiceIntegrationApplication.class)
+        .web(WebApplicationType.NONE)
+        .profiles("sandbox")
+        .properties(
+            "signservice.sign-message.enabled=false",
+            "signservice.cache.metrics.enabled=false",
+            "logging.level.se.idsec=WARN")
+        .run();
+    this.service = this.context.getBean(ExtendedSignServiceIntegrationService.class);
+    this.documentCache = this.context.getBean(DocumentCache.class);
+    this.pdfDocument = JsonMappingBenchmark.loadPdfDocument(0);
+    this.encodedPdfDocument = Base64.getEncoder().encodeToString(this.pdfDocument);
+  }
+
+  @TearDown
+  public void tearDown() {
+    if (this.context != null) {
+      this.context.close();
+    }
+  }
+
+  @Benchmark
+  public SignRequestData createSignRequest() throws SignServiceIntegrationException {
+    final SignRequestInput input = SignRequestInput.builder()
+        .correlationId(UUID.randomUUID().toString())
+        .policy("sandbox")
+        .authnRequirements(AuthnRequirements.builder()
+            .authnServiceID("http://dev.test.swedenconnect.se/idp")
+            .requestedSignerAttributes(List.of(SignerIdentityAttributeValue.builder()
+                .name("urn:oid:1.2.752.29.4.13")
+                .value("195207306886")
+                .build()))
+            .build())
+        .tbsDocuments(List.of(TbsDocument.builder()
+            .id(UUID.randomUUID().toString())
+            .content(this.encodedPdfDocument)
+            .mimeType("application/pdf")
+            .build()))
+        .build();
+    return this.service.createSignRequest(input, OWNER);
+  }
+
+  @Benchmark
+  public PreparedPdfDocument preparePdfDocument() throws SignServiceIntegrationException {
+    final PreparedPdfDocument prepared = this.service.preparePdfDocument("sandbox", this.pdfDocument,
+        PdfSignaturePagePreferences.builder().build(), Boolean.TRUE, OWNER);
+
+    // Remove the cached document so that the cache does not grow during the measurement ...
+    if (prepared.getUpdatedPdfDocumentReference() != null) {
+      this.documentCache.remove(prepared.getUpdatedPdfDocumentReference());
+    }
+    return prepared;
+  }
+
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2020-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.rest.loadtest;
+
+import java.util.Arrays;
+
+/**
+ * Recorded latencies for one operation. Not thread-safe - each worker records into its own instance, and the
+ * instances are merged when the run is over.
+ *
+ * @author Martin Lindström
+ */
+class LatencySamples {
+
+  /** The latencies (in nanoseconds). */
+  private long[] samples = new long[1024];
+
+  /** The number of recorded latencies. */
+  private int count;
+
+  /** The number of failed calls. */
+  private long errors;
+
+  /**
+   * Records the latency of a successful call.
+   *
+   * @param nanos the latency in nanoseconds
+   */
+  void record(final long nanos) {
+    if (this.count == this.samples.length) {
+      this.samples = Arrays.copyOf(this.samples, this.samples.length * 2);
+    }
+    this.samples[this.count++] = nanos;
+  }
+
+  /**
+   * Records a failed call.
+   */
+  void error() {
+    this.errors++;
+  }
+
+  /**
+   * Adds the samples of another instance to this instance.
+   *
+   * @param other the samples to add
+   */
+  void merge(final LatencySamples other) {
+    if (this.count + other.count > this.samples.length) {
+      this.samples = Arrays.copyOf(this.samples, this.count + other.count);
+    }
+    System.arraycopy(other.samples, 0, this.samples, this.count, other.count);
+    this.count += other.count;
+    this.errors += other.errors;
+  }
+
+  /**
+   * Gets the number of successful calls.
+   *
+   * @return the number of calls
+   */
+  int getCount() {
+    return this.count;
+  }
+
+  /**
+   * Gets the number of failed calls.
+   *
+   * @return the number of errors
+   */
+  long getErrors() {
+    return this.errors;
+  }
+
+  /**
+   * Gets the mean latency.
+   *
+   * @return the mean latency in milliseconds
+   */
+  double getMean() {
+    if (this.count == 0) {
+      return 0.0;
+    }
+    double sum = 0.0;
+    for (int i = 0; i < this.count; i++) {
+      sum += this.samples[i];
+    }
+    return sum / this.count / 1_000_000.0;
+  }
+
+  /**
+   * Gets the given latency percentile (using the nearest-rank method).
+   *
+   * @param percentile the percentile (0-100)
+   * @return the latency in milliseconds
+   */
+  double getPercentile(final double percentile) {
+    if (this.count == 0) {
+      return 0.0;
+    }
+    Arrays.sort(this.samples, 0, this.count);
+    final int rank = (int) Math.ceil(percentile / 100.0 * this.count);
+    return this.samples[Math.max(0, Math.min(this.count, rank) - 1)] / 1_000_000.0;
+  }
+
+}
@@ -0,0 +1,432 @@
+/*
+ * Copyright 2020-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.rest.loadtest;
+
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.io.ClassPathResource;
+import se.idsec.signservice.integration.SignRequestInput;
+import se.idsec.signservice.integration.authentication.AuthnRequirements;
+import se.idsec.signservice.integration.authentication.SignerIdentityAttributeValue;
+import se.idsec.signservice.integration.document.TbsDocument;
+import se.idsec.signservice.integration.rest.SignServiceIntegrationApplication;
+import se.idsec.signservice.integration.rest.benchmark.JsonMappingBenchmark;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A closed-loop load generator for the {@code /create}, {@code /process} and {@code /prepare} endpoints. A number of
+ * worker threads repeatedly invoke the endpoints, each thread issuing its next call as soon as the previous one has
+ * completed, and the throughput and latency percentiles for each endpoint are reported when the run is over.
+ * <p>
+ * A "sign" operation calls {@code /create}, lets the {@link MockSignService} produce a SignResponse for the
+ * SignRequest, and calls {@code /process} with the SignResponse. A "prepare" operation calls {@code /prepare}.
+ * </p>
+ * <p>
+ * If no URL is given, the application is started in-process using the {@code sandbox} and {@code loadtest} profiles,
+ * where the latter makes the integration service trust the mock sign service. A service under test that is started
+ * separately must be configured the same way (see {@code application-loadtest.properties}).
+ * </p>
+ * <p>
+ * Options (given as {@code --name=value}):
+ * </p>
+ * <ul>
+ * <li>{@code url} - the base URL of the service, e.g., {@code https://localhost:8443/signint} (default: in-process)</li>
+ * <li>{@code user} and {@code password} - the credentials for the service (default: {@code admin/password})</li>
+ * <li>{@code policy} - the policy to use (default: {@code sandbox})</li>
+ * <li>{@code threads} - the number of worker threads (default: 16)</li>
+ * <li>{@code warmup} - the warm-up time in seconds, during which nothing is recorded (default: 10)</li>
+ * <li>{@code duration} - the measurement time in seconds (default: 60)</li>
+ * <li>{@code operations} - a comma-separated list of operations (default: {@code sign,prepare})</li>
+ * <li>{@code virtual-threads} - whether the in-process service should handle requests using virtual threads
+ * (default: {@code false}). Run with a large number of threads to compare with the platform thread pool.</li>
+ * </ul>
+ *
+ * @author Martin Lindström
+ */
+@Slf4j
+public class LoadGenerator {
+
+  /** The "sign" operation. */
+  private static final String SIGN = "sign";
+
+  /** The "prepare" operation. */
+  private static final String PREPARE = "prepare";
+
+  /** The endpoints that are reported. */
+  private static final List<String> ENDPOINTS = List.of("create", "process", "prepare");
+
+  /** For JSON mapping. */
+  private static final ObjectMapper objectMapper = new ObjectMapper().setSerializationInclusion(Include.NON_NULL);
+
+  /** The HTTP client. */
+  private final HttpClient httpClient;
+
+  /** The base URL for the API calls. */
+  private final String apiUrl;
+
+  /** The Authorization header value. */
+  private final String authorization;
+
+  /** The policy. */
+  private final String policy;
+
+  /** The mock sign service. */
+  private final MockSignService signService;
+
+  /** The PDF document that is signed/prepared. */
+  private final String encodedPdfDocument;
+
+  /** Makes sure that only the first error is logged. */
+  private final AtomicBoolean errorLogged = new AtomicBoolean();
+
+  /**
+   * Constructor.
+   *
+   * @param httpClient the HTTP client
+   * @param baseUrl the base URL of the service
+   * @param user the user name
+   * @param password the password
+   * @param policy the policy
+   * @throws IOException for errors loading the test document or mock keys
+   * @throws GeneralSecurityException for errors loading the mock keys
+   */
+  public LoadGenerator(final HttpClient httpClient, final String baseUrl, final String user, final String password,
+      final String policy) throws IOException, GeneralSecurityException {
+    this.httpClient = httpClient;
+    this.apiUrl = baseUrl.replaceAll("/+$", "") + "/v1";
+    this.authorization = "Basic " + Base64.getEncoder().encodeToString(
+        (user + ":" + password).getBytes(StandardCharsets.UTF_8));
+    this.policy = policy;
+    this.signService = new MockSignService();
+    this.encodedPdfDocument = Base64.getEncoder().encodeToString(JsonMappingBenchmark.loadPdfDocument(0));
+  }
+
+  /**
+   * Runs the load generator.
+   *
+   * @param args the options (see the class documentation)
+   * @throws Exception for errors
+   */
+  public static void main(final String[] args) throws Exception {
+    final Map<String, String> options = new HashMap<>();
+    for (final String arg : args) {
+      final int separator = arg.indexOf('=');
+      if (!arg.startsWith("--") || separator < 0) {
+        throw new IllegalArgumentException("Invalid option: " + arg);
+      }
+      options.put(arg.substring(2, separator), arg.substring(separator + 1));
+    }
+    final int threads = Integer.parseInt(options.getOrDefault("threads", "16"));
+    final Duration warmup = Duration.ofSeconds(Long.parseLong(options.getOrDefault("warmup", "10")));
+    final Duration duration = Duration.ofSeconds(Long.parseLong(options.getOrDefault("duration", "60")));
+    final List<String> operations = List.of(options.getOrDefault("operations", SIGN + "," + PREPARE).split(","));
+    for (final String operation : operations) {
+      if (!SIGN.equals(operation) && !PREPARE.equals(operation)) {
+        throw new IllegalArgumentException("Unknown operation: " + operation);
+      }
+    }
+
+    ConfigurableApplicationContext context = null;
+    String url = options.get("url");
+    final HttpClient.Builder httpClientBuilder = HttpClient.newBuilder()
+        .version(HttpClient.Version.HTTP_1_1)
+        .connectTimeout(Duration.ofSeconds(10));
+
+    if (url == null || url.isBlank()) {
+      context = new SpringApplicationBuilder(SignServiceIntegrationApplication.class)
+          .profiles("sandbox", "loadtest")
+          .properties(
+              "server.port=0",
+              "management.server.port=0",
+              "spring.threads.virtual.enabled=" + options.getOrDefault("virtual-threads", "false"),
+              "logging.level.se.idsec=WARN")
+          .run();
+      url = String.format("https://localhost:%s%s", context.getEnvironment().getProperty("local.server.port"),
+          context.getEnvironment().getProperty("server.servlet.context-path", ""));
+      httpClientBuilder.sslContext(localhostSslContext());
+    }
+
+    try {
+      final LoadGenerator generator = new LoadGenerator(httpClientBuilder.build(), url,
+          options.getOrDefault("user", "admin"), options.getOrDefault("password", "password"),
+          options.getOrDefault("policy", "sandbox"));
+
+      System.out.printf("Running %s against %s using %d threads (warm-up %ds, measurement %ds) ...%n",
+          operations, url, threads, warmup.toSeconds(), duration.toSeconds());
+      final Map<String, LatencySamples> result = generator.run(operations, threads, warmup, duration);
+      report(result, duration);
+    }
+    finally {
+      if (context != null) {
+        context.close();
+      }
+    }
+  }
+
+  /**
+   * Runs the load.
+   *
+   * @param operations the operations that each worker cycles through
+   * @param threads the number of workers
+   * @param warmup the warm-up time
+   * @param duration the measurement time
+   * @return the latency samples for each endpoint
+   * @throws Exception for errors
+   */
+  public Map<String, LatencySamples> run(final List<String> operations, final int threads, final Duration warmup,
+      final Duration duration) throws Exception {
+
+    final long measureStart = System.nanoTime() + warmup.toNanos();
+    final long measureEnd = measureStart + duration.toNanos();
+
+    final ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      final List<Future<Map<String, LatencySamples>>> workers = new ArrayList<>();
+      for (int i = 0; i < threads; i++) {
+        final int offset = i;
+        workers.add(executor.submit(() -> this.work(operations, offset, measureStart, measureEnd)));
+      }
+      final Map<String, LatencySamples> result = newSamples();
+      for (final Future<Map<String, LatencySamples>> worker : workers) {
+        worker.get().forEach((endpoint, samples) -> result.get(endpoint).merge(samples));
+      }
+      return result;
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * The worker loop.
+   *
+   * @param operations the operations to cycle through
+   * @param offset the offset into the operations (so that the workers do not run the same operations in lockstep)
+   * @param measureStart the time (nanos) when recording starts
+   * @param measureEnd the time (nanos) when the worker stops
+   * @return the latency samples for each endpoint
+   */
+  private Map<String, LatencySamples> work(
+      final List<String> operations, final int offset, final long measureStart, final long measureEnd) {
+
+    final Map<String, LatencySamples> samples = newSamples();
+    for (int i = offset; System.nanoTime() < measureEnd; i++) {
+      if (SIGN.equals(operations.get(i % operations.size()))) {
+        final JsonNode signRequestData = this.call("create", this.apiUrl + "/create/" + this.policy,
+            this.createSignRequestInput(), measureStart, samples);
+        if (signRequestData != null) {
+          final ObjectNode processInput = objectMapper.createObjectNode();
+          try {
+            processInput.put("signResponse",
+                this.signService.processSignRequest(signRequestData.path("signRequest").asText()));
+          }
+          catch (final Exception e) {
+            this.logError("mock sign service", e.getMessage());
+            continue;
+          }
+          processInput.put("relayState", signRequestData.path("relayState").asText());
+          processInput.set("state", signRequestData.get("state"));
+          this.call("process", this.apiUrl + "/process", processInput, measureStart, samples);
+        }
+      }
+      else {
+        final ObjectNode prepareInput = objectMapper.createObjectNode();
+        prepareInput.put("pdfDocument", this.encodedPdfDocument);
+        prepareInput.putObject("signaturePagePreferences");
+        this.call("prepare", this.apiUrl + "/prepare/" + this.policy, prepareInput, measureStart, samples);
+      }
+    }
+    return samples;
+  }
+
+  /**
+   * Makes a call and records its latency.
+   *
+   * @param endpoint the endpoint name
+   * @param url the URL
+   * @param body the request body
+   * @param measureStart the time (nanos) when recording starts
+   * @param samples the samples to record into
+   * @return the response, or {@code null} if the call failed
+   */
+  private JsonNode call(final String endpoint, final String url, final Object body, final long measureStart,
+      final Map<String, LatencySamples> samples) {
+
+    final long start = System.nanoTime();
+    try {
+      final HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+          .header("Authorization", this.authorization)
+          .header("Content-Type", "application/json")
+          .header("Accept", "application/json")
+          .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(body)))
+          .build();
+      final HttpResponse<byte[]> response = this.httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+      final long latency = System.nanoTime() - start;
+      if (response.statusCode() != 200) {
+        this.logError(endpoint, "HTTP " + response.statusCode() + " - "
+            + new String(response.body(), StandardCharsets.UTF_8));
+        if (start >= measureStart) {
+          samples.get(endpoint).error();
+        }
+        return null;
+      }
+      if (start >= measureStart) {
+        samples.get(endpoint).record(latency);
+      }
+      return objectMapper.readTree(response.body());
+    }
+    catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return null;
+    }
+    catch (final IOException e) {
+      this.logError(endpoint, e.getMessage());
+      if (start >= measureStart) {
+        samples.get(endpoint).error();
+      }
+      return null;
+    }
+  }
+
+  /**
+   * Creates the input for a {@code /create} call.
+   *
+   * @return a SignRequestInput
+   */
+  private SignRequestInput createSignRequestInput() {
+    return SignRequestInput.builder()
+        .correlationId(UUID.randomUUID().toString())
+        .policy(this.policy)
+        .authnRequirements(AuthnRequirements.builder()
+            .authnServiceID("http://dev.test.swedenconnect.se/idp")
+            .authnContextClassRefs(List.of("http://id.elegnamnden.se/loa/1.0/loa3"))
+            .requestedSignerAttributes(List.of(
+                attribute("urn:oid:1.2.752.29.4.13", "195207306886"),
+                attribute("urn:oid:2.5.4.42", "Majlis"),
+                attribute("urn:oid:2.5.4.4", "Medin"),
+                attribute("urn:oid:2.16.840.1.113730.3.1.241", "Majlis Medin")))
+            .build())
+        .tbsDocuments(List.of(TbsDocument.builder()
+            .id(UUID.randomUUID().toString())
+            .content(this.encodedPdfDocument)
+            .mimeType("application/pdf")
+            .build()))
+        .build();
+  }
+
+  /**
+   * Logs the first error that occurs (the rest are only counted).
+   *
+   * @param endpoint the endpoint
+   * @param message the error message
+   */
+  private void logError(final String endpoint, final String message) {
+    if (this.errorLogged.compareAndSet(false, true)) {
+      log.warn("Call to {} failed (further errors are only counted): {}", endpoint, message);
+    }
+  }
+
+  /**
+   * Prints the throughput and latency percentiles for each endpoint.
+   *
+   * @param result the samples
+   * @param duration the measurement time
+   */
+  private static void report(final Map<String, LatencySamples> result, final Duration duration) {
+    System.out.printf("%n%-10s %10s %8s %10s %10s %10s %10s %10s %10s%n",
+        "Endpoint", "Calls", "Errors", "Calls/s", "Mean (ms)", "p50", "p95", "p99", "Max");
+    result.forEach((endpoint, samples) -> {
+      if (samples.getCount() > 0 || samples.getErrors() > 0) {
+        System.out.printf("%-10s %10d %8d %10.1f %10.2f %10.2f %10.2f %10.2f %10.2f%n",
+            endpoint, samples.getCount(), samples.getErrors(),
+            samples.getCount() / (duration.toMillis() / 1000.0), samples.getMean(),
+            samples.getPercentile(50), samples.getPercentile(95), samples.getPercentile(99),
+            samples.getPercentile(100));
+      }
+    });
+  }
+
+  /**
+   * Creates a set of (empty) samples for the endpoints.
+   *
+   * @return a map of samples
+   */
+  private static Map<String, LatencySamples> newSamples() {
+    final Map<String, LatencySamples> samples = new LinkedHashMap<>();
+    ENDPOINTS.forEach(endpoint -> samples.put(endpoint, new LatencySamples()));
+    return samples;
+  }
+
+  /**
+   * Creates a requested signer attribute.
+   *
+   * @param name the attribute name
+   * @param value the attribute value
+   * @return a SignerIdentityAttributeValue
+   */
+  private static SignerIdentityAttributeValue attribute(final String name, final String value) {
+    return SignerIdentityAttributeValue.builder().name(name).value(value).build();
+  }
+
+  /**
+   * Creates an SSL context trusting the certificate of the in-process service ({@code localhost.jks}).
+   *
+   * @return an SSL context
+   * @throws IOException for errors reading the keystore
+   * @throws GeneralSecurityException for errors loading the keystore
+   */
+  private static SSLContext localhostSslContext() throws IOException, GeneralSecurityException {
+    final KeyStore trustStore = KeyStore.getInstance("JKS");
+    try (final InputStream is = new ClassPathResource("localhost.jks").getInputStream()) {
+      trustStore.load(is, "secret".toCharArray());
+    }
+    final TrustManagerFactory trustManagerFactory =
+        TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+    trustManagerFactory.init(trustStore);
+    final SSLContext sslContext = SSLContext.getInstance("TLS");
+    sslContext.init(null, trustManagerFactory.getTrustManagers(), null);
+    return sslContext;
+  }
+
+}
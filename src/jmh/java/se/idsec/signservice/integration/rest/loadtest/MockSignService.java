@@ -0,0 +1,505 @@
+/*
+ * Copyright 2020-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.rest.loadtest;
+
+import lombok.extern.slf4j.Slf4j;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x500.X500NameBuilder;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.KeyUsage;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.springframework.core.io.ClassPathResource;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import javax.xml.XMLConstants;
+import javax.xml.crypto.MarshalException;
+import javax.xml.crypto.dsig.CanonicalizationMethod;
+import javax.xml.crypto.dsig.DigestMethod;
+import javax.xml.crypto.dsig.Reference;
+import javax.xml.crypto.dsig.SignatureMethod;
+import javax.xml.crypto.dsig.SignedInfo;
+import javax.xml.crypto.dsig.Transform;
+import javax.xml.crypto.dsig.XMLSignatureException;
+import javax.xml.crypto.dsig.XMLSignatureFactory;
+import javax.xml.crypto.dsig.dom.DOMSignContext;
+import javax.xml.crypto.dsig.keyinfo.KeyInfo;
+import javax.xml.crypto.dsig.keyinfo.KeyInfoFactory;
+import javax.xml.crypto.dsig.spec.C14NMethodParameterSpec;
+import javax.xml.crypto.dsig.spec.TransformParameterSpec;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A stand-in for a signature service, used to drive the complete create/process flow without access to an external
+ * sign service.
+ * <p>
+ * The mock parses a {@code SignRequest} (as delivered in {@code SignRequestData}) and returns a signed
+ * {@code SignResponse} where the signer has been "authenticated" with the attributes requested in the SignRequest, and
+ * where each sign task has been signed using a signer certificate issued by a local test CA. The keys are found in
+ * {@code loadtest/mock-signservice.jks}, and the certificates that the integration service should trust (the sign
+ * service certificate and the CA root) are found in {@code loadtest/mock-signservice.crt} and
+ * {@code loadtest/mock-ca.crt} (see the {@code loadtest} profile).
+ * </p>
+ * <p>
+ * Only signatures with no AdES requirements are supported, i.e., the to-be-signed bytes are signed as they are.
+ * </p>
+ *
+ * @author Martin Lindström
+ */
+@Slf4j
+public class MockSignService {
+
+  /** The DSS core namespace. */
+  public static final String DSS_NS = "urn:oasis:names:tc:dss:1.0:core:schema";
+
+  /** The DSS extension namespace. */
+  public static final String CSIG_NS = "http://id.elegnamnden.se/csig/1.1/dss-ext/ns";
+
+  /** The SAML assertion namespace. */
+  public static final String SAML_NS = "urn:oasis:names:tc:SAML:2.0:assertion";
+
+  /** The keystore holding the keys of the mock. */
+  private static final String KEYSTORE_RESOURCE = "loadtest/mock-signservice.jks";
+
+  /** The password for the keystore (and its keys). */
+  private static final char[] KEYSTORE_PASSWORD = "secret".toCharArray();
+
+  /** The default signature algorithm (if not given in the request). */
+  private static final String DEFAULT_SIGNATURE_ALGORITHM = "http://www.w3.org/2001/04/xmldsig-more#rsa-sha256";
+
+  /** Mapping between the supported signature algorithm URIs and JCA names. */
+  private static final Map<String, String> SIGNATURE_ALGORITHMS = Map.of(
+      DEFAULT_SIGNATURE_ALGORITHM, "SHA256withRSA",
+      "http://www.w3.org/2001/04/xmldsig-more#rsa-sha384", "SHA384withRSA",
+      "http://www.w3.org/2001/04/xmldsig-more#rsa-sha512", "SHA512withRSA");
+
+  /** The authentication context assigned if none is requested. */
+  private static final String DEFAULT_AUTHN_CONTEXT = "http://id.elegnamnden.se/loa/1.0/loa3";
+
+  /** The validity of the issued signer certificates. */
+  private static final Duration SIGNER_CERTIFICATE_VALIDITY = Duration.ofDays(1);
+
+  /** The key used to sign the responses. */
+  private final PrivateKey signServiceKey;
+
+  /** The certificate of the sign service. */
+  private final X509Certificate signServiceCertificate;
+
+  /** The key of the CA issuing the signer certificates. */
+  private final PrivateKey caKey;
+
+  /** The CA certificate. */
+  private final X509Certificate caCertificate;
+
+  /** The signer key pair. The same key is used for all signers. */
+  private final KeyPair signerKeyPair;
+
+  /** Issued signer certificates, indexed by subject name. */
+  private final Map<X500Name, X509Certificate> signerCertificates = new ConcurrentHashMap<>();
+
+  /** Serial numbers for the signer certificates. */
+  private final AtomicLong serialNumber = new AtomicLong(System.currentTimeMillis());
+
+  /** Document builders (not thread-safe). */
+  private final ThreadLocal<DocumentBuilder> documentBuilder = ThreadLocal.withInitial(() -> {
+    try {
+      final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+      factory.setNamespaceAware(true);
+      factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+      factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+      return factory.newDocumentBuilder();
+    }
+    catch (final ParserConfigurationException e) {
+      throw new IllegalStateException("Failed to create document builder", e);
+    }
+  });
+
+  /**
+   * Constructor loading the keys from {@code loadtest/mock-signservice.jks}.
+   *
+   * @throws GeneralSecurityException for errors loading the keys
+   * @throws IOException for errors reading the keystore
+   */
+  public MockSignService() throws GeneralSecurityException, IOException {
+    final KeyStore keyStore = KeyStore.getInstance("JKS");
+    try (final InputStream is = new ClassPathResource(KEYSTORE_RESOURCE).getInputStream()) {
+      keyStore.load(is, KEYSTORE_PASSWORD);
+    }
+    this.signServiceKey = (PrivateKey) keyStore.getKey("signservice", KEYSTORE_PASSWORD);
+    this.signServiceCertificate = (X509Certificate) keyStore.getCertificate("signservice");
+    this.caKey = (PrivateKey) keyStore.getKey("ca", KEYSTORE_PASSWORD);
+    this.caCertificate = (X509Certificate) keyStore.getCertificate("ca");
+
+    final KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+    generator.initialize(2048);
+    this.signerKeyPair = generator.generateKeyPair();
+  }
+
+  /**
+   * Processes a SignRequest and returns a signed SignResponse.
+   *
+   * @param encodedSignRequest the Base64-encoded SignRequest (as found in {@code SignRequestData})
+   * @return the Base64-encoded SignResponse
+   * @throws IOException if the request can not be parsed or the response not be serialized
+   * @throws GeneralSecurityException for signing errors
+   */
+  public String processSignRequest(final String encodedSignRequest) throws IOException, GeneralSecurityException {
+    final byte[] requestBytes = Base64.getDecoder().decode(encodedSignRequest);
+    final Element signRequest = this.parse(requestBytes).getDocumentElement();
+
+    final Element requestExtension = first(signRequest, CSIG_NS, "SignRequestExtension");
+    if (requestExtension == null) {
+      throw new IOException("No SignRequestExtension found in SignRequest");
+    }
+    final String algorithm = textOf(first(requestExtension, CSIG_NS, "RequestedSignatureAlgorithm"),
+        DEFAULT_SIGNATURE_ALGORITHM);
+    final String jcaAlgorithm = SIGNATURE_ALGORITHMS.get(algorithm);
+    if (jcaAlgorithm == null) {
+      throw new GeneralSecurityException("Unsupported signature algorithm: " + algorithm);
+    }
+    final List<Element> signerAttributes = children(first(requestExtension, CSIG_NS, "Signer"), SAML_NS, "Attribute");
+    final X509Certificate signerCertificate = this.getSignerCertificate(requestExtension, signerAttributes);
+
+    final Document response = this.documentBuilder.get().newDocument();
+    final Element signResponse = response.createElementNS(DSS_NS, "dss:SignResponse");
+    signResponse.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, "xmlns:dss", DSS_NS);
+    signResponse.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, "xmlns:csig", CSIG_NS);
+    signResponse.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, "xmlns:saml", SAML_NS);
+    signResponse.setAttribute("Profile", signRequest.getAttribute("Profile"));
+    signResponse.setAttribute("RequestID", signRequest.getAttribute("RequestID"));
+    response.appendChild(signResponse);
+
+    final Element result = append(signResponse, DSS_NS, "dss:Result");
+    append(result, DSS_NS, "dss:ResultMajor").setTextContent("urn:oasis:names:tc:dss:1.0:resultmajor:Success");
+
+    final Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+    final Element optionalOutputs = append(signResponse, DSS_NS, "dss:OptionalOutputs");
+    final Element responseExtension = append(optionalOutputs, CSIG_NS, "csig:SignResponseExtension");
+    responseExtension.setAttribute("Version", requestExtension.hasAttribute("Version")
+        ? requestExtension.getAttribute("Version") : "1.1");
+    append(responseExtension, CSIG_NS, "csig:ResponseTime").setTextContent(now.toString());
+    append(responseExtension, CSIG_NS, "csig:Request").setTextContent(Base64.getEncoder().encodeToString(requestBytes));
+
+    final Element assertionInfo = append(responseExtension, CSIG_NS, "csig:SignerAssertionInfo");
+    final Element contextInfo = append(assertionInfo, CSIG_NS, "csig:ContextInfo");
+    final Element identityProvider = append(contextInfo, CSIG_NS, "csig:IdentityProvider");
+    identityProvider.setAttribute("Format", "urn:oasis:names:tc:SAML:2.0:nameid-format:entity");
+    identityProvider.setTextContent(textOf(first(requestExtension, CSIG_NS, "IdentityProvider"), null));
+    append(contextInfo, CSIG_NS, "csig:AuthenticationInstant").setTextContent(now.toString());
+    append(contextInfo, CSIG_NS, "csig:AuthnContextClassRef").setTextContent(
+        textOf(first(requestExtension, SAML_NS, "AuthnContextClassRef"), DEFAULT_AUTHN_CONTEXT));
+    final Element attributeStatement = append(assertionInfo, SAML_NS, "saml:AttributeStatement");
+    for (final Element attribute : signerAttributes) {
+      attributeStatement.appendChild(response.importNode(attribute, true));
+    }
+
+    final Element certificateChain = append(responseExtension, CSIG_NS, "csig:SignatureCertificateChain");
+    for (final X509Certificate certificate : List.of(signerCertificate, this.caCertificate)) {
+      append(certificateChain, CSIG_NS, "csig:X509Certificate")
+          .setTextContent(Base64.getEncoder().encodeToString(certificate.getEncoded()));
+    }
+
+    // The sign tasks are returned as they were requested, with the signature added ...
+    //
+    final Element signTasks = first(signRequest, CSIG_NS, "SignTasks");
+    if (signTasks == null) {
+      throw new IOException("No SignTasks found in SignRequest");
+    }
+    final Element signatureObject = append(signResponse, DSS_NS, "dss:SignatureObject");
+    final Element other = append(signatureObject, DSS_NS, "dss:Other");
+    final Element responseSignTasks = (Element) other.appendChild(response.importNode(signTasks, true));
+    for (final Element signTaskData : children(responseSignTasks, CSIG_NS, "SignTaskData")) {
+      this.sign(signTaskData, algorithm, jcaAlgorithm);
+    }
+
+    this.signResponse(optionalOutputs);
+    return Base64.getEncoder().encodeToString(this.serialize(response));
+  }
+
+  /**
+   * Gets the certificate that is issued for the given signer. The subject name is assembled from the requested
+   * certificate attributes and the attributes of the signer.
+   *
+   * @param requestExtension the SignRequestExtension
+   * @param signerAttributes the signer attributes
+   * @return a signer certificate
+   * @throws GeneralSecurityException for errors issuing the certificate
+   */
+  private X509Certificate getSignerCertificate(final Element requestExtension, final List<Element> signerAttributes)
+      throws GeneralSecurityException {
+
+    final X500NameBuilder nameBuilder = new X500NameBuilder();
+    final NodeList requestedAttributes = requestExtension.getElementsByTagNameNS(CSIG_NS, "RequestedCertAttribute");
+    for (int i = 0; i < requestedAttributes.getLength(); i++) {
+      final Element requested = (Element) requestedAttributes.item(i);
+      if (requested.hasAttribute("CertNameType") && !"rdn".equals(requested.getAttribute("CertNameType"))) {
+        continue;
+      }
+      String value = requested.hasAttribute("DefaultValue") ? requested.getAttribute("DefaultValue") : null;
+      for (final Element samlName : children(requested, CSIG_NS, "SamlAttributeName")) {
+        final String attributeValue = getAttributeValue(signerAttributes, samlName.getTextContent().trim());
+        if (attributeValue != null) {
+          value = attributeValue;
+          break;
+        }
+      }
+      if (value != null) {
+        nameBuilder.addRDN(new ASN1ObjectIdentifier(requested.getAttribute("CertAttributeRef")), value);
+      }
+    }
+    X500Name subject = nameBuilder.build();
+    if (subject.getRDNs().length == 0) {
+      subject = new X500Name("CN=Load Test Signer");
+    }
+
+    final X509Certificate certificate = this.signerCertificates.get(subject);
+    if (certificate != null
+        && certificate.getNotAfter().toInstant().isAfter(Instant.now().plus(Duration.ofMinutes(5)))) {
+      return certificate;
+    }
+    final X509Certificate issued = this.issueCertificate(subject);
+    this.signerCertificates.put(subject, issued);
+    return issued;
+  }
+
+  /**
+   * Issues a signer certificate.
+   *
+   * @param subject the subject name
+   * @return the certificate
+   * @throws GeneralSecurityException for errors issuing the certificate
+   */
+  private X509Certificate issueCertificate(final X500Name subject) throws GeneralSecurityException {
+    log.debug("Issuing signer certificate for '{}'", subject);
+    final Instant notBefore = Instant.now().minus(Duration.ofHours(1));
+    try {
+      return new JcaX509CertificateConverter().getCertificate(
+          new JcaX509v3CertificateBuilder(this.caCertificate, BigInteger.valueOf(this.serialNumber.incrementAndGet()),
+              Date.from(notBefore), Date.from(notBefore.plus(SIGNER_CERTIFICATE_VALIDITY)), subject,
+              this.signerKeyPair.getPublic())
+              .addExtension(Extension.keyUsage, true, new KeyUsage(KeyUsage.nonRepudiation))
+              .build(new JcaContentSignerBuilder("SHA256withRSA").build(this.caKey)));
+    }
+    catch (final OperatorCreationException | IOException e) {
+      throw new GeneralSecurityException("Failed to issue signer certificate", e);
+    }
+  }
+
+  /**
+   * Signs the to-be-signed bytes of a sign task and adds the signature to the task.
+   *
+   * @param signTaskData the SignTaskData element
+   * @param algorithm the signature algorithm URI
+   * @param jcaAlgorithm the JCA name of the signature algorithm
+   * @throws GeneralSecurityException for signing errors
+   */
+  private void sign(final Element signTaskData, final String algorithm, final String jcaAlgorithm)
+      throws GeneralSecurityException {
+    final Element tbsBytes = first(signTaskData, CSIG_NS, "ToBeSignedBytes");
+    if (tbsBytes == null) {
+      throw new GeneralSecurityException("No ToBeSignedBytes in sign task");
+    }
+    final Signature signature = Signature.getInstance(jcaAlgorithm);
+    signature.initSign(this.signerKeyPair.getPrivate());
+    signature.update(Base64.getMimeDecoder().decode(tbsBytes.getTextContent()));
+
+    for (final Element previous : children(signTaskData, CSIG_NS, "Base64Signature")) {
+      signTaskData.removeChild(previous);
+    }
+    final Element base64Signature =
+        signTaskData.getOwnerDocument().createElementNS(CSIG_NS, "csig:Base64Signature");
+    base64Signature.setAttribute("Type", algorithm);
+    base64Signature.setTextContent(Base64.getEncoder().encodeToString(signature.sign()));
+
+    final Element otherSignTaskData = first(signTaskData, CSIG_NS, "OtherSignTaskData");
+    signTaskData.insertBefore(base64Signature, otherSignTaskData);
+  }
+
+  /**
+   * Signs the response using the sign service key. The signature is placed last in the given element.
+   *
+   * @param optionalOutputs the OptionalOutputs element
+   * @throws GeneralSecurityException for signing errors
+   */
+  private void signResponse(final Element optionalOutputs) throws GeneralSecurityException {
+    final XMLSignatureFactory factory = XMLSignatureFactory.getInstance("DOM");
+    final Reference reference = factory.newReference("",
+        factory.newDigestMethod(DigestMethod.SHA256, null),
+        List.of(factory.newTransform(Transform.ENVELOPED, (TransformParameterSpec) null),
+            factory.newTransform(CanonicalizationMethod.EXCLUSIVE, (TransformParameterSpec) null)),
+        null, null);
+    final SignedInfo signedInfo = factory.newSignedInfo(
+        factory.newCanonicalizationMethod(CanonicalizationMethod.EXCLUSIVE, (C14NMethodParameterSpec) null),
+        factory.newSignatureMethod(SignatureMethod.RSA_SHA256, null),
+        List.of(reference));
+    final KeyInfoFactory keyInfoFactory = factory.getKeyInfoFactory();
+    final KeyInfo keyInfo = keyInfoFactory.newKeyInfo(
+        List.of(keyInfoFactory.newX509Data(List.of(this.signServiceCertificate))));
+
+    final DOMSignContext context = new DOMSignContext(this.signServiceKey, optionalOutputs);
+    context.setDefaultNamespacePrefix("ds");
+    try {
+      factory.newXMLSignature(signedInfo, keyInfo).sign(context);
+    }
+    catch (final MarshalException | XMLSignatureException e) {
+      throw new GeneralSecurityException("Failed to sign SignResponse", e);
+    }
+  }
+
+  /**
+   * Parses an XML document.
+   *
+   * @param bytes the document bytes
+   * @return the document
+   * @throws IOException for parse errors
+   */
+  private Document parse(final byte[] bytes) throws IOException {
+    try {
+      return this.documentBuilder.get().parse(new ByteArrayInputStream(bytes));
+    }
+    catch (final SAXException e) {
+      throw new IOException("Failed to parse SignRequest", e);
+    }
+  }
+
+  /**
+   * Serializes an XML document.
+   *
+   * @param document the document
+   * @return the document bytes
+   * @throws IOException for serialization errors
+   */
+  private byte[] serialize(final Document document) throws IOException {
+    final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    try {
+      TransformerFactory.newInstance().newTransformer().transform(new DOMSource(document), new StreamResult(bos));
+    }
+    catch (final TransformerException e) {
+      throw new IOException("Failed to serialize SignResponse", e);
+    }
+    return bos.toByteArray();
+  }
+
+  /**
+   * Gets the (first) value of the given attribute.
+   *
+   * @param attributes the SAML attribute elements
+   * @param name the attribute name
+   * @return the value, or {@code null} if the attribute is not present
+   */
+  private static String getAttributeValue(final List<Element> attributes, final String name) {
+    for (final Element attribute : attributes) {
+      if (name.equals(attribute.getAttribute("Name"))) {
+        final Element value = first(attribute, SAML_NS, "AttributeValue");
+        return value != null ? value.getTextContent().trim() : null;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Adds a new element last under the given parent.
+   *
+   * @param parent the parent element
+   * @param namespace the namespace of the new element
+   * @param qualifiedName the qualified name of the new element
+   * @return the new element
+   */
+  private static Element append(final Element parent, final String namespace, final String qualifiedName) {
+    return (Element) parent.appendChild(parent.getOwnerDocument().createElementNS(namespace, qualifiedName));
+  }
+
+  /**
+   * Finds the first descendant element with the given name.
+   *
+   * @param parent the element to search
+   * @param namespace the namespace
+   * @param localName the local name
+   * @return the element, or {@code null} if not found
+   */
+  private static Element first(final Element parent, final String namespace, final String localName) {
+    final NodeList nodes = parent.getElementsByTagNameNS(namespace, localName);
+    return nodes.getLength() > 0 ? (Element) nodes.item(0) : null;
+  }
+
+  /**
+   * Gets the child elements with the given name.
+   *
+   * @param parent the parent element (may be {@code null})
+   * @param namespace the namespace
+   * @param localName the local name
+   * @return a (possibly empty) list of elements
+   */
+  private static List<Element> children(final Element parent, final String namespace, final String localName) {
+    final List<Element> elements = new ArrayList<>();
+    if (parent != null) {
+      for (Node node = parent.getFirstChild(); node != null; node = node.getNextSibling()) {
+        if (node instanceof final Element element
+            && namespace.equals(element.getNamespaceURI()) && localName.equals(element.getLocalName())) {
+          elements.add(element);
+        }
+      }
+    }
+    return elements;
+  }
+
+  /**
+   * Gets the trimmed text of an element.
+   *
+   * @param element the element (may be {@code null})
+   * @param defaultValue the value to return if the element is not present
+   * @return the text
+   */
+  private static String textOf(final Element element, final String defaultValue) {
+    return element != null ? element.getTextContent().trim() : defaultValue;
+  }
+
+}
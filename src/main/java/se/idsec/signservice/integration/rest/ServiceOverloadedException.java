@@ -0,0 +1,58 @@
+/*
+ * Copyright 2020-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.rest;
+
+import lombok.Getter;
+import se.idsec.signservice.integration.core.error.ErrorCode;
+
+import java.io.Serial;
+import java.time.Duration;
+
+/**
+ * Base class for exceptions telling that a call is rejected since the service is temporarily out of resources. Such
+ * calls are responded to with status 503 (Service Unavailable) and a Retry-After header.
+ *
+ * @author Martin Lindström
+ */
+public abstract class ServiceOverloadedException extends RuntimeException {
+
+  /** For serializing. */
+  @Serial
+  private static final long serialVersionUID = -3471026355718215894L;
+
+  /** The time after which the caller may retry. */
+  @Getter
+  private final Duration retryAfter;
+
+  /**
+   * Constructor.
+   *
+   * @param message the error message
+   * @param retryAfter the time after which the caller may retry
+   */
+  protected ServiceOverloadedException(final String message, final Duration retryAfter) {
+    super(message);
+    this.retryAfter = retryAfter;
+  }
+
+  /**
+   * Gets the error code reported to the caller.
+   *
+   * @return the error code
+   */
+  public abstract ErrorCode getErrorCode();
+
+}
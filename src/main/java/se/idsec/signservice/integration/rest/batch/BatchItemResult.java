@@ -0,0 +1,62 @@
+/*
+ * Copyright 2020-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.rest.batch;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import se.idsec.signservice.integration.core.error.SignServiceIntegrationErrorBody;
+
+/**
+ * The result for one item of a batch call. Either the result or the error is set.
+ *
+ * @param <T> the result type
+ * @author Martin Lindström
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchItemResult<T> {
+
+  /** The (zero-based) index of the item in the batch call. */
+  private int index;
+
+  /** The result (if the item was successfully processed). */
+  private T result;
+
+  /** The error (if the item could not be processed). */
+  private SignServiceIntegrationErrorBody error;
+
+  /**
+   * If the item was rejected since the service is temporarily out of resources (status 503), the number of seconds
+   * after which the item may be retried.
+   */
+  private Long retryAfter;
+
+  /**
+   * Constructor.
+   *
+   * @param index the index of the item in the batch call
+   * @param result the result (if the item was successfully processed)
+   * @param error the error (if the item could not be processed)
+   */
+  public BatchItemResult(final int index, final T result, final SignServiceIntegrationErrorBody error) {
+    this(index, result, error, null);
+  }
+
+}
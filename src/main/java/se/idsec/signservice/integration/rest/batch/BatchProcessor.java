@@ -0,0 +1,284 @@
+/*
+ * Copyright 2020-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.rest.batch;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import se.idsec.signservice.integration.core.error.ErrorCode;
+import se.idsec.signservice.integration.core.error.SignServiceIntegrationErrorBody;
+import se.idsec.signservice.integration.core.error.SignServiceIntegrationException;
+import se.idsec.signservice.integration.rest.ServiceOverloadedException;
+import se.idsec.signservice.integration.rest.controllers.error.SignServiceIntegrationExceptionHandler;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Processes the items of batch calls in parallel using a bounded thread pool. Each item is processed independently,
+ * and an item that fails gives an error result for that item only.
+ * <p>
+ * If all threads are busy and the queue is full, further items are rejected at once. They get an error result with
+ * status 503 (Service Unavailable) and a retry hint, the same way as calls rejected by the
+ * {@link se.idsec.signservice.integration.rest.compute.ComputeExecutor ComputeExecutor}. Items are never processed by
+ * the calling (request) thread.
+ * </p>
+ *
+ * @author Martin Lindström
+ */
+@Slf4j
+public class BatchProcessor implements DisposableBean {
+
+  /** The default value for the stream timeout. */
+  public static final Duration DEFAULT_STREAM_TIMEOUT = Duration.ofMinutes(5);
+
+  /** The default value for the retry hint of rejected items. */
+  public static final Duration DEFAULT_RETRY_AFTER = Duration.ofSeconds(5);
+
+  /** The executor. */
+  private final ThreadPoolExecutor executor;
+
+  /** The maximum number of items in one batch call. */
+  @Getter
+  private final int maxItems;
+
+  /** The maximum time that a streamed batch response may take. */
+  @Setter
+  private Duration streamTimeout = DEFAULT_STREAM_TIMEOUT;
+
+  /** The time after which the caller may retry items that were rejected since the queue was full. */
+  @Setter
+  private Duration retryAfter = DEFAULT_RETRY_AFTER;
+
+  /**
+   * An operation on one item.
+   *
+   * @param <I> the item type
+   * @param <R> the result type
+   */
+  @FunctionalInterface
+  public interface BatchOperation<I, R> {
+
+    /**
+     * Processes one item.
+     *
+     * @param item the item
+     * @return the result
+     * @throws SignServiceIntegrationException for processing errors
+     */
+    R apply(final I item) throws SignServiceIntegrationException;
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param name the name (used for the thread names)
+   * @param threads the number of threads
+   * @param queueCapacity the number of items that may wait for a thread
+   * @param maxItems the maximum number of items in one batch call
+   */
+  public BatchProcessor(final String name, final int threads, final int queueCapacity, final int maxItems) {
+    this.executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<>(queueCapacity), new CustomizableThreadFactory(name + "-"),
+        new ThreadPoolExecutor.AbortPolicy());
+    this.executor.allowCoreThreadTimeOut(true);
+    this.maxItems = maxItems;
+  }
+
+  /**
+   * Processes all items and waits for the results.
+   *
+   * @param items the items
+   * @param operation the operation
+   * @param path the request path (for error results)
+   * @param <I> the item type
+   * @param <R> the result type
+   * @return the results, in the same order as the items
+   */
+  public <I, R> List<BatchItemResult<R>> processAll(
+      final List<I> items, final BatchOperation<I, R> operation, final String path) {
+
+    final List<CompletableFuture<BatchItemResult<R>>> futures = new ArrayList<>(items.size());
+    for (int i = 0; i < items.size(); i++) {
+      futures.add(this.submit(i, items.get(i), operation, path));
+    }
+    return futures.stream().map(CompletableFuture::join).toList();
+  }
+
+  /**
+   * Processes all items and streams the results as newline-delimited JSON ({@code application/x-ndjson}) in the order
+   * that they complete. The {@link BatchItemResult#getIndex()} property tells which item a result belongs to.
+   *
+   * @param items the items
+   * @param operation the operation
+   * @param path the request path (for error results)
+   * @param <I> the item type
+   * @param <R> the result type
+   * @return an emitter that is completed when all results have been written
+   */
+  public <I, R> ResponseBodyEmitter streamAll(
+      final List<I> items, final BatchOperation<I, R> operation, final String path) {
+
+    final ResponseBodyEmitter emitter = new ResponseBodyEmitter(this.streamTimeout.toMillis());
+    final Lock lock = new ReentrantLock();
+    final AtomicBoolean failed = new AtomicBoolean();
+    final CompletableFuture<?>[] futures = new CompletableFuture<?>[items.size()];
+    for (int i = 0; i < items.size(); i++) {
+      futures[i] = this.submit(i, items.get(i), operation, path).thenAccept(r -> send(emitter, lock, r, failed));
+    }
+    CompletableFuture.allOf(futures).whenComplete((v, e) -> {
+      if (!failed.get()) {
+        emitter.complete();
+      }
+    });
+    return emitter;
+  }
+
+  /**
+   * Submits one item for processing.
+   *
+   * @param index the index of the item in the batch call
+   * @param item the item
+   * @param operation the operation
+   * @param path the request path (for error results)
+   * @param <I> the item type
+   * @param <R> the result type
+   * @return a future for the result (that is never completed exceptionally)
+   */
+  public <I, R> CompletableFuture<BatchItemResult<R>> submit(
+      final int index, final I item, final BatchOperation<I, R> operation, final String path) {
+    try {
+      return CompletableFuture.supplyAsync(() -> process(index, item, operation, path), this.executor);
+    }
+    catch (final RejectedExecutionException e) {
+      // The queue is full, or the processor has been shut down ...
+      return CompletableFuture.completedFuture(overloaded(index,
+          new BatchProcessorFullException("The service is overloaded", this.retryAfter), path));
+    }
+  }
+
+  /**
+   * Shuts down the executor.
+   */
+  @Override
+  public void destroy() {
+    this.executor.shutdown();
+  }
+
+  /**
+   * Writes one result (followed by a newline) to the emitter. If the write fails, for example, because the client has
+   * gone away, the emitter is completed with an error and the remaining results are dropped.
+   *
+   * <p>
+   * A lock (and not a {@code synchronized} block) serializes the writes, since a virtual thread that blocks on I/O
+   * inside a {@code synchronized} block pins its carrier thread.
+   * </p>
+   *
+   * @param emitter the emitter
+   * @param lock the lock serializing the writes to the emitter
+   * @param result the result
+   * @param failed tells whether a previous write has failed
+   */
+  private static void send(final ResponseBodyEmitter emitter, final Lock lock, final BatchItemResult<?> result,
+      final AtomicBoolean failed) {
+    lock.lock();
+    try {
+      if (failed.get()) {
+        return;
+      }
+      emitter.send(result, MediaType.APPLICATION_JSON);
+      emitter.send("\n", MediaType.TEXT_PLAIN);
+    }
+    catch (final IOException | IllegalStateException e) {
+      log.info("Failed to write batch result {}: {}", result.getIndex(), e.getMessage());
+      failed.set(true);
+      emitter.completeWithError(e);
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Processes one item. An item rejected since the service is temporarily out of resources gets a 503 error along with
+   * a retry hint (see {@link BatchItemResult#getRetryAfter()}). For unexpected errors, no details are included in the
+   * error result (they are logged).
+   *
+   * @param index the index of the item in the batch call
+   * @param item the item
+   * @param operation the operation
+   * @param path the request path (for error results)
+   * @param <I> the item type
+   * @param <R> the result type
+   * @return the result
+   */
+  private static <I, R> BatchItemResult<R> process(
+      final int index, final I item, final BatchOperation<I, R> operation, final String path) {
+    try {
+      return new BatchItemResult<>(index, operation.apply(item), null);
+    }
+    catch (final SignServiceIntegrationException e) {
+      log.info("Batch item {} failed: {}", index, e.getMessage());
+      return new BatchItemResult<>(index, null, SignServiceIntegrationExceptionHandler.toErrorBody(e, path));
+    }
+    catch (final ServiceOverloadedException e) {
+      return overloaded(index, e, path);
+    }
+    catch (final RuntimeException e) {
+      log.error("Batch item {} failed", index, e);
+      return new BatchItemResult<>(index, null, SignServiceIntegrationErrorBody.builder()
+          .status(HttpStatus.INTERNAL_SERVER_ERROR.value())
+          .timestamp(System.currentTimeMillis())
+          .errorCode(new ErrorCode("internal", "error").getErrorCode())
+          .message("Internal error")
+          .path(path)
+          .build());
+    }
+  }
+
+  /**
+   * Creates the error result for an item that was rejected since the service is out of resources.
+   *
+   * @param index the index of the item in the batch call
+   * @param e the exception telling why the item was rejected
+   * @param path the request path
+   * @param <R> the result type
+   * @return the result
+   */
+  private static <R> BatchItemResult<R> overloaded(
+      final int index, final ServiceOverloadedException e, final String path) {
+    log.info("Batch item {} rejected: {}", index, e.getMessage());
+    return new BatchItemResult<>(index, null,
+        SignServiceIntegrationExceptionHandler.toServiceUnavailableErrorBody(e, e.getErrorCode(), path),
+        e.getRetryAfter().toSeconds());
+  }
+
+}
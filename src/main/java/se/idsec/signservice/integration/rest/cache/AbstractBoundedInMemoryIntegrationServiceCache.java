@@ -0,0 +1,419 @@
+/*
+ * Copyright 2020-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.rest.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.Scheduler;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import se.idsec.signservice.integration.core.impl.AbstractIntegrationServiceCache;
+
+import java.io.Serial;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An in-memory cache that is bounded by the number of entries and/or the total (estimated) size of the cached objects.
+ * <p>
+ * The cache is backed by a Caffeine cache, which means that the entries to evict are chosen using the W-TinyLFU
+ * policy. This policy only admits a new entry if it is likely to be used more than the entry it would replace. Note
+ * that the entries of these caches are typically read only once, so under pressure the policy may evict entries that
+ * have not been read yet. A sign process whose state (or document) has been evicted fails, and for the state cache,
+ * the SignResponse is then rejected since the state is unknown. If {@link FullPolicy#REJECT} is used, no entries are
+ * evicted, and instead, new entries are rejected (using a {@link CacheFullException}) when the cache is full. The
+ * bound is then enforced atomically, so concurrent writers can never make the cache exceed its limits.
+ * </p>
+ * <p>
+ * If both limits are given, each entry is weighed as at least {@code maxSize / maxEntries} bytes, which means that the
+ * cache never holds more than {@code maxEntries} entries. If no limits are given, the cache is unbounded.
+ * </p>
+ * <p>
+ * Expired entries are never returned by the cache. By default, the memory they occupy is released when the cache
+ * performs maintenance (for example, by {@link #clearExpired()}). If {@code scheduledExpiry} is set, the cache
+ * schedules the removal of each entry at its expiration time. Caffeine keeps the entries in a hierarchical timer wheel,
+ * so this costs O(1) per entry.
+ * </p>
+ * <p>
+ * The number of entries, the total size, and the number of evictions and rejections are recorded as metrics (if a
+ * {@link MeterRegistry} is given).
+ * </p>
+ *
+ * @param <T> the actual type that is cached
+ * @author Martin Lindström
+ */
+@Slf4j
+public abstract class AbstractBoundedInMemoryIntegrationServiceCache<T> extends AbstractIntegrationServiceCache<T>
+    implements MeasurableCache {
+
+  /** The Retry-After time given in {@link CacheFullException}s. */
+  public static final Duration RETRY_AFTER = Duration.ofSeconds(5);
+
+  /** Overhead (in bytes) added to the size of each entry. */
+  protected static final int ENTRY_OVERHEAD = 128;
+
+  /** The cache name (used in logs and metrics). */
+  @Getter
+  private final String cacheName;
+
+  /** The cached entries. */
+  private final Cache<String, BoundedCacheEntry> cache;
+
+  /** What to do when the cache is full. */
+  @Getter
+  private final FullPolicy fullPolicy;
+
+  /** The minimum weight of an entry. */
+  private final int minimumWeight;
+
+  /** Counts rejected entries. */
+  private final Counter rejections;
+
+  /** The capacity (total weight or number of entries) that new entries are checked against if REJECT is used. */
+  private final long capacity;
+
+  /** Whether the capacity is given as total weight (and not as number of entries). */
+  private final boolean weighted;
+
+  /** The capacity reserved by the entries held in the cache (if REJECT is used). */
+  private final AtomicLong reserved = new AtomicLong();
+
+  /**
+   * Constructor.
+   *
+   * @param cacheName the cache name (used in logs and metrics)
+   * @param maxEntries the maximum number of entries (0 for no limit)
+   * @param maxSize the maximum total size in bytes (0 for no limit)
+   * @param fullPolicy what to do when the cache is full
+   * @param meterRegistry the meter registry (may be {@code null})
+   */
+  public AbstractBoundedInMemoryIntegrationServiceCache(final String cacheName, final long maxEntries,
+      final long maxSize, final FullPolicy fullPolicy, final MeterRegistry meterRegistry) {
+    this(cacheName, maxEntries, maxSize, fullPolicy, false, meterRegistry);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param cacheName the cache name (used in logs and metrics)
+   * @param maxEntries the maximum number of entries (0 for no limit)
+   * @param maxSize the maximum total size in bytes (0 for no limit)
+   * @param fullPolicy what to do when the cache is full
+   * @param scheduledExpiry whether entries should be removed at their expiration times
+   * @param meterRegistry the meter registry (may be {@code null})
+   */
+  public AbstractBoundedInMemoryIntegrationServiceCache(final String cacheName, final long maxEntries,
+      final long maxSize, final FullPolicy fullPolicy, final boolean scheduledExpiry,
+      final MeterRegistry meterRegistry) {
+    this.cacheName = cacheName;
+    this.fullPolicy = Optional.ofNullable(fullPolicy).orElse(FullPolicy.EVICT);
+
+    final Counter evictions;
+    if (meterRegistry != null) {
+      evictions = Counter.builder("signservice.cache.memory.evictions")
+          .description("Number of entries evicted since the cache was full")
+          .tag("cache", cacheName)
+          .register(meterRegistry);
+      this.rejections = Counter.builder("signservice.cache.memory.rejections")
+          .description("Number of entries rejected since the cache was full")
+          .tag("cache", cacheName)
+          .register(meterRegistry);
+    }
+    else {
+      evictions = null;
+      this.rejections = null;
+    }
+
+    final Caffeine<String, BoundedCacheEntry> builder = Caffeine.newBuilder()
+        .expireAfter(new EntryExpiry())
+        .removalListener((String id, BoundedCacheEntry entry, RemovalCause cause) -> {
+          if (cause == RemovalCause.SIZE) {
+            log.debug("Cache {} is full - entry '{}' evicted", cacheName, id);
+            if (evictions != null) {
+              evictions.increment();
+            }
+          }
+          // Explicit removals and replacements are released by the writer ...
+          if (cause.wasEvicted()) {
+            this.release(entry);
+          }
+        });
+    if (scheduledExpiry) {
+      builder.scheduler(Scheduler.systemScheduler());
+    }
+    if (maxSize > 0) {
+      this.minimumWeight = maxEntries > 0
+          ? (int) Math.min(Integer.MAX_VALUE, (maxSize + maxEntries - 1) / maxEntries)
+          : 1;
+      this.capacity = maxSize;
+      this.weighted = true;
+      this.cache = builder.maximumWeight(maxSize).weigher((String id, BoundedCacheEntry e) -> e.weight()).build();
+    }
+    else if (maxEntries > 0) {
+      this.minimumWeight = 1;
+      this.capacity = maxEntries;
+      this.weighted = false;
+      this.cache = builder.maximumSize(maxEntries).build();
+    }
+    else {
+      this.minimumWeight = 1;
+      this.capacity = 0;
+      this.weighted = false;
+      this.cache = builder.build();
+    }
+
+    if (meterRegistry != null) {
+      Gauge.builder("signservice.cache.memory.entries", this.cache, Cache::estimatedSize)
+          .description("Number of entries held in the cache")
+          .tag("cache", cacheName)
+          .register(meterRegistry);
+      Gauge.builder("signservice.cache.memory.size", this.cache, AbstractBoundedInMemoryIntegrationServiceCache::size)
+          .description("Estimated size (in bytes) of the entries held in the cache (number of entries if the cache is "
+              + "only bounded by the number of entries)")
+          .tag("cache", cacheName)
+          .register(meterRegistry);
+    }
+  }
+
+  /**
+   * Gets the estimated size (in bytes) of the supplied object.
+   *
+   * @param object the object to store (as returned by {@link #toStoredObject(Object)})
+   * @return the estimated size in bytes
+   */
+  protected abstract int estimateSize(final Object object);
+
+  /**
+   * Transforms the object to cache into the representation that is stored. The default implementation returns the
+   * object itself.
+   *
+   * @param object the object to cache
+   * @return the object to store
+   */
+  protected Object toStoredObject(final T object) {
+    return object;
+  }
+
+  /**
+   * Restores an object stored by {@link #toStoredObject(Object)}. The default implementation casts the stored object.
+   *
+   * @param stored the stored object
+   * @return the cached object
+   */
+  @SuppressWarnings("unchecked")
+  protected T fromStoredObject(final Object stored) {
+    return (T) stored;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  protected CacheEntry<T> getCacheEntry(final String id) {
+    final BoundedCacheEntry entry = this.cache.getIfPresent(id);
+    if (entry == null) {
+      return null;
+    }
+    return new RestoredCacheEntry<>(this.fromStoredObject(entry.object()), entry.ownerId(), entry.expirationTime());
+  }
+
+  /**
+   * Stores the object. If the cache is full and {@link FullPolicy#REJECT} is used, a {@link CacheFullException} is
+   * thrown.
+   */
+  @Override
+  protected void putCacheObject(final String id, final T object, final String ownerId, final long expirationTime) {
+    final Object stored = this.toStoredObject(object);
+    final BoundedCacheEntry entry = new BoundedCacheEntry(stored, ownerId, expirationTime,
+        Math.max(this.minimumWeight, this.estimateSize(stored)));
+    if (!this.reserve(entry)) {
+      log.info("Cache {} is full - rejecting new entry", this.cacheName);
+      if (this.rejections != null) {
+        this.rejections.increment();
+      }
+      throw new CacheFullException("Cache " + this.cacheName + " is full", RETRY_AFTER);
+    }
+    this.release(this.cache.asMap().put(id, entry));
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  protected void removeCacheObject(final String id) {
+    this.release(this.cache.asMap().remove(id));
+  }
+
+  /**
+   * Removes expired entries. Entries that have expired are never returned by the cache, but this method makes sure
+   * that the memory is released.
+   */
+  @Override
+  public void clearExpired() {
+    this.cache.cleanUp();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public long getEntryCount() {
+    return this.cache.estimatedSize();
+  }
+
+  /**
+   * Gets the total estimated size of the entries. Only known if the cache is bounded by size.
+   */
+  @Override
+  public long getByteSize() {
+    return this.cache.policy().eviction()
+        .filter(e -> e.isWeighted())
+        .map(e -> e.weightedSize().orElse(-1L))
+        .orElse(-1L);
+  }
+
+  /**
+   * If {@link FullPolicy#REJECT} is used, reserves capacity for the given entry, unless this would make the cache
+   * exceed its limits.
+   *
+   * @param entry the entry to store
+   * @return {@code true} if the entry may be stored, and {@code false} if the cache is full
+   */
+  private boolean reserve(final BoundedCacheEntry entry) {
+    if (this.fullPolicy != FullPolicy.REJECT || this.capacity <= 0) {
+      return true;
+    }
+    final long units = this.weighted ? entry.weight() : 1;
+    long current;
+    do {
+      current = this.reserved.get();
+      if (current + units > this.capacity) {
+        return false;
+      }
+    }
+    while (!this.reserved.compareAndSet(current, current + units));
+    return true;
+  }
+
+  /**
+   * Releases the capacity reserved for an entry that has been removed from the cache (see
+   * {@link #reserve(BoundedCacheEntry)}).
+   *
+   * @param entry the removed entry (may be {@code null})
+   */
+  private void release(final BoundedCacheEntry entry) {
+    if (entry != null && this.fullPolicy == FullPolicy.REJECT && this.capacity > 0) {
+      this.reserved.addAndGet(this.weighted ? -entry.weight() : -1);
+    }
+  }
+
+  /**
+   * Gets the current size of the cache, i.e., the total weight of the entries if the cache is bounded by size, and
+   * otherwise the number of entries.
+   *
+   * @param cache the cache
+   * @return the cache size
+   */
+  private static long size(final Cache<String, ?> cache) {
+    return cache.policy().eviction()
+        .map(e -> e.weightedSize().orElse(cache.estimatedSize()))
+        .orElse(cache.estimatedSize());
+  }
+
+  /**
+   * What to do with new entries when the cache is full.
+   */
+  public enum FullPolicy {
+
+    /** Evict entries (chosen by the cache policy) to make room for new entries. */
+    EVICT,
+
+    /** Reject new entries by throwing a {@link CacheFullException}. */
+    REJECT
+  }
+
+  /**
+   * An entry held by the cache.
+   *
+   * @param object the stored object
+   * @param ownerId the owner ID
+   * @param expirationTime the expiration time
+   * @param weight the weight (estimated size)
+   */
+  private record BoundedCacheEntry(Object object, String ownerId, long expirationTime, int weight) {
+  }
+
+  /**
+   * The cache entry returned by {@link #getCacheEntry(String)}.
+   *
+   * @param object the cached object
+   * @param ownerId the owner ID
+   * @param expirationTime the expiration time
+   * @param <T> the type of the cached object
+   */
+  private record RestoredCacheEntry<T>(T object, String ownerId, Long expirationTime) implements CacheEntry<T> {
+
+    /** For serialization. */
+    @Serial
+    private static final long serialVersionUID = 5150722046823911227L;
+
+    /** {@inheritDoc} */
+    @Override
+    public T getObject() {
+      return this.object;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String getOwnerId() {
+      return this.ownerId;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Long getExpirationTime() {
+      return this.expirationTime;
+    }
+  }
+
+  /**
+   * Lets the cache expire entries at their expiration times.
+   */
+  private static class EntryExpiry implements Expiry<String, BoundedCacheEntry> {
+
+    /** {@inheritDoc} */
+    @Override
+    public long expireAfterCreate(final String id, final BoundedCacheEntry entry, final long currentTime) {
+      return TimeUnit.MILLISECONDS.toNanos(Math.max(0L, entry.expirationTime() - System.currentTimeMillis()));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long expireAfterUpdate(final String id, final BoundedCacheEntry entry, final long currentTime,
+        final long currentDuration) {
+      return this.expireAfterCreate(id, entry, currentTime);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long expireAfterRead(final String id, final BoundedCacheEntry entry, final long currentTime,
+        final long currentDuration) {
+      return currentDuration;
+    }
+  }
+
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2020-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.rest.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.Getter;
+import org.springframework.beans.factory.DisposableBean;
+import se.idsec.signservice.integration.core.IntegrationServiceCache;
+
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * A decorator for an {@link IntegrationServiceCache} that records metrics for the cache operations:
+ * <ul>
+ * <li>{@code signservice.cache.operations} - A timer for each operation ({@code get}, {@code claim}, {@code put} and
+ * {@code remove}).</li>
+ * <li>{@code signservice.cache.gets} - Hits and misses for {@code get} and {@code claim}.</li>
+ * <li>{@code signservice.cache.purge} - A timer for {@code clearExpired}.</li>
+ * <li>{@code signservice.cache.entries} and {@code signservice.cache.size} - The number of entries and their total size
+ * in bytes, if the decorated cache is a {@link MeasurableCache} (and the values are known).</li>
+ * </ul>
+ * All metrics are tagged with the cache name.
+ * <p>
+ * The decorator is the bean that is exposed when a cache bean is decorated, so Spring only invokes the destroy
+ * callback of the decorator. It therefore passes it on to the decorated cache (if it is a {@link DisposableBean}).
+ * </p>
+ *
+ * @param <T> the type of the cached objects
+ * @author Martin Lindström
+ */
+public abstract class AbstractInstrumentedIntegrationServiceCache<T>
+    implements IntegrationServiceCache<T>, PurgeableCache, MeasurableCache, DisposableBean {
+
+  /** The decorated cache. */
+  @Getter
+  private final IntegrationServiceCache<T> cache;
+
+  /** Timer for get operations. */
+  private final Timer getTimer;
+
+  /** Timer for get-and-remove operations. */
+  private final Timer claimTimer;
+
+  /** Timer for put operations. */
+  private final Timer putTimer;
+
+  /** Timer for remove operations. */
+  private final Timer removeTimer;
+
+  /** Timer for purging expired entries. */
+  private final Timer purgeTimer;
+
+  /** Counts hits. */
+  private final Counter hits;
+
+  /** Counts misses. */
+  private final Counter misses;
+
+  /**
+   * Constructor.
+   *
+   * @param cache the cache to decorate
+   * @param cacheName the cache name (used as a tag)
+   * @param meterRegistry the meter registry
+   */
+  public AbstractInstrumentedIntegrationServiceCache(
+      final IntegrationServiceCache<T> cache, final String cacheName, final MeterRegistry meterRegistry) {
+    this.cache = Objects.requireNonNull(cache, "cache must not be null");
+    Objects.requireNonNull(meterRegistry, "meterRegistry must not be null");
+
+    this.getTimer = this.operationTimer(meterRegistry, cacheName, "get");
+    this.claimTimer = this.operationTimer(meterRegistry, cacheName, "claim");
+    this.putTimer = this.operationTimer(meterRegistry, cacheName, "put");
+    this.removeTimer = this.operationTimer(meterRegistry, cacheName, "remove");
+    this.purgeTimer = Timer.builder("signservice.cache.purge")
+        .description("Time spent purging expired cache entries")
+        .tag("cache", cacheName)
+        .register(meterRegistry);
+    this.hits = this.getCounter(meterRegistry, cacheName, "hit");
+    this.misses = this.getCounter(meterRegistry, cacheName, "miss");
+
+    if (cache instanceof MeasurableCache) {
+      Gauge.builder("signservice.cache.entries", this, c -> toGaugeValue(c.getEntryCount()))
+          .description("Number of entries held by the cache")
+          .tag("cache", cacheName)
+          .register(meterRegistry);
+      Gauge.builder("signservice.cache.size", this, c -> toGaugeValue(c.getByteSize()))
+          .description("Estimated size of the entries held by the cache")
+          .baseUnit("bytes")
+          .tag("cache", cacheName)
+          .register(meterRegistry);
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public T get(final String id, final String requesterId) {
+    return this.recordGet(this.getTimer, () -> this.cache.get(id, requesterId));
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public T get(final String id, final boolean remove, final String requesterId) {
+    return this.recordGet(remove ? this.claimTimer : this.getTimer, () -> this.cache.get(id, remove, requesterId));
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void put(final String id, final T object, final String ownerId) {
+    this.putTimer.record(() -> this.cache.put(id, object, ownerId));
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void remove(final String id) {
+    this.removeTimer.record(() -> this.cache.remove(id));
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void clearExpired() {
+    this.purgeTimer.record(this.cache::clearExpired);
+  }
+
+  /**
+   * Purges expired entries. If the decorated cache is not a {@link PurgeableCache}, 0 is returned.
+   */
+  @Override
+  public int purgeExpired() {
+    if (this.cache instanceof final PurgeableCache purgeableCache) {
+      return Objects.requireNonNull(this.purgeTimer.record(purgeableCache::purgeExpired));
+    }
+    this.clearExpired();
+    return 0;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public long getEntryCount() {
+    return this.cache instanceof final MeasurableCache measurableCache ? measurableCache.getEntryCount() : -1L;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public long getByteSize() {
+    return this.cache instanceof final MeasurableCache measurableCache ? measurableCache.getByteSize() : -1L;
+  }
+
+  /**
+   * Destroys the decorated cache (if it is a {@link DisposableBean}).
+   *
+   * @throws Exception for errors destroying the cache
+   */
+  @Override
+  public void destroy() throws Exception {
+    if (this.cache instanceof final DisposableBean disposableBean) {
+      disposableBean.destroy();
+    }
+  }
+
+  /**
+   * Records a get operation.
+   *
+   * @param timer the timer to use
+   * @param operation the operation
+   * @return the cached object (or {@code null})
+   */
+  private T recordGet(final Timer timer, final Supplier<T> operation) {
+    final T object = timer.record(operation);
+    (object != null ? this.hits : this.misses).increment();
+    return object;
+  }
+
+  /**
+   * Creates an operation timer.
+   *
+   * @param meterRegistry the registry
+   * @param cacheName the cache name
+   * @param operation the operation
+   * @return a timer
+   */
+  private Timer operationTimer(final MeterRegistry meterRegistry, final String cacheName, final String operation) {
+    return Timer.builder("signservice.cache.operations")
+        .description("Time spent in cache operations")
+        .tag("cache", cacheName)
+        .tag("operation", operation)
+        .register(meterRegistry);
+  }
+
+  /**
+   * Creates a hit/miss counter.
+   *
+   * @param meterRegistry the registry
+   * @param cacheName the cache name
+   * @param result hit or miss
+   * @return a counter
+   */
+  private Counter getCounter(final MeterRegistry meterRegistry, final String cacheName, final String result) {
+    return Counter.builder("signservice.cache.gets")
+        .description("Number of cache lookups that found (hit) or did not find (miss) the entry")
+        .tag("cache", cacheName)
+        .tag("result", result)
+        .register(meterRegistry);
+  }
+
+  /**
+   * Maps unknown values (negative) to {@code NaN}.
+   *
+   * @param value the value
+   * @return the gauge value
+   */
+  private static double toGaugeValue(final long value) {
+    return value < 0 ? Double.NaN : value;
+  }
+
+}
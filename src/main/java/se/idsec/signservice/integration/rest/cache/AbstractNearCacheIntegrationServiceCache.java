@@ -0,0 +1,364 @@
+/*
+ * Copyright 2020-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.rest.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import se.idsec.signservice.integration.core.impl.AbstractIntegrationServiceCache;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * A two-tier cache where a bounded in-process cache (the near cache) is placed in front of a Redis cache. Reads are
+ * first served from the near cache, and only if the entry is not found there, from Redis. Writes go to both tiers.
+ * <p>
+ * When an entry is updated or removed, the other nodes sharing the Redis cache are told to drop the entry from their
+ * near caches by a message published on a Redis pub/sub channel (see {@link #getInvalidationChannel()}). The instance
+ * must therefore be registered as a listener for this channel. Since pub/sub messages may be lost (for example, during
+ * a reconnect), entries are also dropped from the near cache after a configurable time. No message is published when
+ * an entry with a new ID is written, since no other node can hold such an entry in its near cache.
+ * </p>
+ * <p>
+ * The near cache is bounded by the total estimated size of its entries (see {@link #estimateSize(Serializable)}),
+ * where each entry is weighed as at least {@code maxSize / maximumSize} bytes. This means that the near cache never
+ * holds more than {@code maximumSize} entries.
+ * </p>
+ * <p>
+ * The number of hits and misses for each tier are recorded as metrics (if a {@link MeterRegistry} is given).
+ * </p>
+ *
+ * @param <T> the actual type that is cached
+ * @author Martin Lindström
+ */
+@Slf4j
+public abstract class AbstractNearCacheIntegrationServiceCache<T extends Serializable>
+    extends AbstractIntegrationServiceCache<T>
+    implements MessageListener, PurgeableCache, MeasurableCache, DisposableBean {
+
+  /** The default maximum number of entries held in the near cache. */
+  public static final long DEFAULT_MAXIMUM_SIZE = 1000L;
+
+  /** The default maximum total size (in bytes) of the entries held in the near cache. */
+  public static final long DEFAULT_MAX_SIZE = 16L * 1024 * 1024;
+
+  /** The default time that an entry is kept in the near cache. */
+  public static final Duration DEFAULT_TIME_TO_LIVE = Duration.ofMinutes(1);
+
+  /** The Redis cache. */
+  private final AbstractRedisIntegrationServiceCache<T, ?> redisCache;
+
+  /** The Redis template (for publishing invalidation messages). */
+  private final RedisTemplate<String, Object> redisTemplate;
+
+  /** The near cache. */
+  private final Cache<String, CacheEntry<T>> nearCache;
+
+  /** Identifies this node in invalidation messages (so that our own messages can be ignored). */
+  private final String nodeId = UUID.randomUUID().toString();
+
+  /** Counts hits in the near cache. */
+  private final Counter nearHits;
+
+  /** Counts misses in the near cache. */
+  private final Counter nearMisses;
+
+  /** Counts hits in Redis. */
+  private final Counter redisHits;
+
+  /** Counts misses in Redis. */
+  private final Counter redisMisses;
+
+  /**
+   * Constructor.
+   *
+   * @param redisCache the Redis cache
+   * @param redisTemplate the Redis template used for publishing invalidation messages
+   * @param maximumSize the maximum number of entries held in the near cache
+   * @param maxSize the maximum total size (in bytes) of the entries held in the near cache
+   * @param timeToLive the maximum time that an entry is held in the near cache
+   * @param meterRegistry the meter registry (may be {@code null})
+   */
+  public AbstractNearCacheIntegrationServiceCache(final AbstractRedisIntegrationServiceCache<T, ?> redisCache,
+      final RedisTemplate<String, Object> redisTemplate, final long maximumSize, final long maxSize,
+      final Duration timeToLive, final MeterRegistry meterRegistry) {
+    this.redisCache = Objects.requireNonNull(redisCache, "redisCache must not be null");
+    this.redisTemplate = Objects.requireNonNull(redisTemplate, "redisTemplate must not be null");
+    if (maximumSize <= 0 || maxSize <= 0) {
+      throw new IllegalArgumentException("maximumSize and maxSize must be greater than 0");
+    }
+    final long minimumWeight = (maxSize + maximumSize - 1) / maximumSize;
+    this.nearCache = Caffeine.newBuilder()
+        .maximumWeight(maxSize)
+        .weigher((String id, CacheEntry<T> e) ->
+            (int) Math.min(Integer.MAX_VALUE, Math.max(minimumWeight, this.estimateSize(e.getObject()))))
+        .expireAfterWrite(Objects.requireNonNull(timeToLive, "timeToLive must not be null"))
+        .build();
+
+    if (meterRegistry != null) {
+      final String cacheName = this.redisCache.getRedisHashName();
+      this.nearHits = this.counter(meterRegistry, cacheName, "near", "hit");
+      this.nearMisses = this.counter(meterRegistry, cacheName, "near", "miss");
+      this.redisHits = this.counter(meterRegistry, cacheName, "redis", "hit");
+      this.redisMisses = this.counter(meterRegistry, cacheName, "redis", "miss");
+      Gauge.builder("signservice.cache.near.size", this.nearCache, Cache::estimatedSize)
+          .description("Number of entries held in the near cache")
+          .tag("cache", cacheName)
+          .register(meterRegistry);
+    }
+    else {
+      this.nearHits = null;
+      this.nearMisses = null;
+      this.redisHits = null;
+      this.redisMisses = null;
+    }
+  }
+
+  /**
+   * Estimates the size (in bytes) of the given object when held in the near cache. The default implementation returns
+   * 0, which means that each entry is weighed as {@code maxSize / maximumSize} bytes.
+   *
+   * @param object the object (may be {@code null})
+   * @return the estimated size
+   */
+  protected int estimateSize(final T object) {
+    return 0;
+  }
+
+  /**
+   * Gets the name of the Redis pub/sub channel on which invalidation messages are published.
+   *
+   * @return the channel name
+   */
+  public String getInvalidationChannel() {
+    return this.redisCache.getRedisHashName() + "_invalidate";
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  protected CacheEntry<T> getCacheEntry(final String id) {
+    final CacheEntry<T> entry = this.nearCache.getIfPresent(id);
+    if (entry != null) {
+      if (entry.getExpirationTime() == null || entry.getExpirationTime() > System.currentTimeMillis()) {
+        increment(this.nearHits);
+        return entry;
+      }
+      this.nearCache.invalidate(id);
+    }
+    increment(this.nearMisses);
+
+    final CacheEntry<T> redisEntry = this.redisCache.getCacheEntry(id);
+    if (redisEntry == null) {
+      increment(this.redisMisses);
+      return null;
+    }
+    increment(this.redisHits);
+    this.nearCache.put(id, redisEntry);
+    return redisEntry;
+  }
+
+  /**
+   * If {@code remove} is {@code true}, the entry is dropped from the near cache and claimed from Redis (see
+   * {@link AbstractRedisIntegrationServiceCache#get(String, boolean, String)}) so that only one caller (on any node)
+   * gets the entry.
+   */
+  @Override
+  public T get(final String id, final boolean remove, final String requesterId) {
+    if (!remove) {
+      return super.get(id, false, requesterId);
+    }
+    this.nearCache.invalidate(id);
+    final T object = this.redisCache.get(id, true, requesterId);
+    this.publishInvalidation(id);
+    return object;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  protected void putCacheObject(final String id, final T object, final String ownerId, final long expirationTime) {
+    final boolean replaced = this.redisCache.writeCacheObject(id, object, ownerId, expirationTime);
+    this.nearCache.put(id, new NearCacheEntry<>(object, ownerId, expirationTime));
+    if (replaced) {
+      this.publishInvalidation(id);
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  protected void removeCacheObject(final String id) {
+    this.nearCache.invalidate(id);
+    this.redisCache.removeCacheObject(id);
+    this.publishInvalidation(id);
+  }
+
+  /**
+   * Drops expired entries from the near cache and purges expired entries from Redis.
+   */
+  @Override
+  public void clearExpired() {
+    this.purgeExpired();
+  }
+
+  /**
+   * Drops expired entries from the near cache and purges expired entries from Redis.
+   *
+   * @return the number of entries purged from Redis
+   */
+  @Override
+  public int purgeExpired() {
+    final long now = System.currentTimeMillis();
+    this.nearCache.asMap().values()
+        .removeIf(e -> e.getExpirationTime() != null && e.getExpirationTime() <= now);
+    this.nearCache.cleanUp();
+    return this.redisCache.purgeExpired();
+  }
+
+  /**
+   * Gets the number of entries held in Redis.
+   */
+  @Override
+  public long getEntryCount() {
+    return this.redisCache.getEntryCount();
+  }
+
+  /**
+   * Drops the entry given in an invalidation message (published by another node) from the near cache.
+   */
+  @Override
+  public void onMessage(final Message message, final byte[] pattern) {
+    final String body = new String(message.getBody(), StandardCharsets.UTF_8);
+    final int separator = body.indexOf(' ');
+    if (separator < 0) {
+      log.warn("Invalid near cache invalidation message received on '{}'", this.getInvalidationChannel());
+      return;
+    }
+    if (this.nodeId.equals(body.substring(0, separator))) {
+      return;
+    }
+    final String id = body.substring(separator + 1);
+    log.trace("Dropping '{}' from near cache for '{}'", id, this.redisCache.getRedisHashName());
+    this.nearCache.invalidate(id);
+  }
+
+  /**
+   * Tests the Redis connection (so that we get failures at start-up).
+   *
+   * @throws Exception for connection errors
+   */
+  @PostConstruct
+  public void testConnection() throws Exception {
+    this.redisCache.testConnection();
+  }
+
+  /**
+   * Shuts down the Redis cache (see {@link AbstractRedisIntegrationServiceCache#destroy()}).
+   *
+   * @throws InterruptedException if interrupted while shutting down
+   */
+  @Override
+  public void destroy() throws InterruptedException {
+    this.redisCache.destroy();
+  }
+
+  /**
+   * Tells the other nodes to drop the given entry from their near caches.
+   *
+   * @param id the entry ID
+   */
+  private void publishInvalidation(final String id) {
+    final byte[] channel = this.getInvalidationChannel().getBytes(StandardCharsets.UTF_8);
+    final byte[] message = (this.nodeId + " " + id).getBytes(StandardCharsets.UTF_8);
+    this.redisTemplate.execute((RedisCallback<Long>) connection -> connection.publish(channel, message));
+  }
+
+  /**
+   * Creates a counter for the near cache requests.
+   *
+   * @param meterRegistry the registry
+   * @param cacheName the cache name
+   * @param tier the cache tier
+   * @param result hit or miss
+   * @return a counter
+   */
+  private Counter counter(
+      final MeterRegistry meterRegistry, final String cacheName, final String tier, final String result) {
+    return Counter.builder("signservice.cache.near.requests")
+        .description("Number of cache lookups per cache tier and result")
+        .tag("cache", cacheName)
+        .tag("tier", tier)
+        .tag("result", result)
+        .register(meterRegistry);
+  }
+
+  /**
+   * Increments the supplied counter (if metrics are enabled).
+   *
+   * @param counter the counter (may be {@code null})
+   */
+  private static void increment(final Counter counter) {
+    if (counter != null) {
+      counter.increment();
+    }
+  }
+
+  /**
+   * An entry that is written to the near cache.
+   *
+   * @param object the cached object
+   * @param ownerId the owner ID
+   * @param expirationTime the expiration time
+   * @param <T> the type of the cached object
+   */
+  private record NearCacheEntry<T>(T object, String ownerId, Long expirationTime) implements CacheEntry<T> {
+
+    /** For serialization. */
+    @Serial
+    private static final long serialVersionUID = -7317009924339211376L;
+
+    /** {@inheritDoc} */
+    @Override
+    public T getObject() {
+      return this.object;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String getOwnerId() {
+      return this.ownerId;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Long getExpirationTime() {
+      return this.expirationTime;
+    }
+  }
+
+}
@@ -0,0 +1,463 @@
+/*
+ * Copyright 2020-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.rest.cache;
+
+import jakarta.annotation.PostConstruct;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.Limit;
+import org.springframework.data.redis.connection.ReactiveRedisConnection;
+import org.springframework.data.redis.core.ReactiveHashOperations;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.ReactiveValueOperations;
+import org.springframework.data.redis.core.ReactiveZSetOperations;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.RedisSerializationContext.SerializationPair;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import se.idsec.signservice.integration.core.IntegrationServiceCache;
+import se.idsec.signservice.integration.core.impl.AbstractIntegrationServiceCache;
+import se.idsec.signservice.integration.rest.cache.AbstractRedisIntegrationServiceCache.AbstractRedisCachedObject;
+import se.idsec.signservice.integration.rest.cache.AbstractRedisIntegrationServiceCache.StorageMode;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Abstract base class for implementing the {@link IntegrationServiceCache} using the non-blocking
+ * {@link ReactiveRedisTemplate}.
+ * <p>
+ * The cache operations are exposed as non-blocking methods returning {@link Mono}s ({@link #getEntry(String)},
+ * {@link #claimEntry(String)}, {@link #putEntry(String, Object, String, long)}, {@link #removeEntry(String)} and
+ * {@link #purgeExpiredEntries()}). Commands that do not depend on each other, such as the write of an entry and the
+ * update of its expiration index, are issued concurrently. The methods of the {@link IntegrationServiceCache}
+ * interface are blocking adapters for these methods.
+ * </p>
+ * <p>
+ * The entries are stored in the same way as by {@link AbstractRedisIntegrationServiceCache} (using the same storage
+ * mode, bucket count and serialization settings), so nodes using either implementation may share a Redis.
+ * </p>
+ *
+ * @param <T> the actual type that is cached
+ * @param <R> the type encapsulating the objects that are cached
+ * @author Martin Lindström
+ */
+@Slf4j
+public abstract class AbstractReactiveRedisIntegrationServiceCache<T extends Serializable, R extends AbstractRedisCachedObject<T>>
+    extends AbstractIntegrationServiceCache<T> implements PurgeableCache, MeasurableCache {
+
+  /** The Redis template. */
+  private final ReactiveRedisTemplate<String, Object> redisTemplate;
+
+  /** For the cache hashes. */
+  private final ReactiveHashOperations<String, String, Object> hashOps;
+
+  /** For the expiration indexes. */
+  private final ReactiveZSetOperations<String, Object> expIndexOps;
+
+  /** For entries stored under their own keys. */
+  private final ReactiveValueOperations<String, Object> valueOps;
+
+  /** How the cached entries are stored in Redis. */
+  @Getter
+  private StorageMode storageMode = StorageMode.HASH;
+
+  /** The number of hashes (buckets) that the entries are spread over (for the hash storage mode). */
+  @Getter
+  private int bucketCount = 1;
+
+  /** The maximum number of expired entries that are purged in one batch from each bucket. */
+  @Getter
+  private int purgeBatchSize = AbstractRedisIntegrationServiceCache.DEFAULT_PURGE_BATCH_SIZE;
+
+  /** The maximum time that one invocation of {@link #purgeExpiredEntries()} may spend purging batches. */
+  @Getter
+  private Duration purgeTimeBudget = AbstractRedisIntegrationServiceCache.DEFAULT_PURGE_TIME_BUDGET;
+
+  /**
+   * Constructor.
+   *
+   * @param redisTemplate the reactive Redis template
+   */
+  public AbstractReactiveRedisIntegrationServiceCache(final ReactiveRedisTemplate<String, Object> redisTemplate) {
+    this.redisTemplate = Objects.requireNonNull(redisTemplate, "redisTemplate must not be null");
+    this.hashOps = this.redisTemplate.opsForHash();
+    this.expIndexOps = this.redisTemplate.opsForZSet();
+    this.valueOps = this.redisTemplate.opsForValue();
+  }
+
+  /**
+   * Assigns how the cached entries are stored in Redis. The default is {@link StorageMode#HASH}.
+   *
+   * @param storageMode the storage mode
+   */
+  public void setStorageMode(final StorageMode storageMode) {
+    this.storageMode = Optional.ofNullable(storageMode).orElse(StorageMode.HASH);
+  }
+
+  /**
+   * Assigns the number of hashes (buckets) that the entries are spread over when {@link StorageMode#HASH} is used. See
+   * {@link AbstractRedisIntegrationServiceCache#setBucketCount(int)}.
+   *
+   * @param bucketCount the number of buckets
+   */
+  public void setBucketCount(final int bucketCount) {
+    if (bucketCount <= 0) {
+      throw new IllegalArgumentException("bucketCount must be greater than 0");
+    }
+    this.bucketCount = bucketCount;
+  }
+
+  /**
+   * Assigns the maximum number of expired entries that are purged in one batch from each bucket.
+   *
+   * @param purgeBatchSize the batch size
+   */
+  public void setPurgeBatchSize(final int purgeBatchSize) {
+    if (purgeBatchSize <= 0) {
+      throw new IllegalArgumentException("purgeBatchSize must be greater than 0");
+    }
+    this.purgeBatchSize = purgeBatchSize;
+  }
+
+  /**
+   * Assigns the maximum time that one invocation of {@link #purgeExpiredEntries()} may spend purging batches.
+   *
+   * @param purgeTimeBudget the time budget
+   */
+  public void setPurgeTimeBudget(final Duration purgeTimeBudget) {
+    this.purgeTimeBudget = Optional.ofNullable(purgeTimeBudget)
+        .orElse(AbstractRedisIntegrationServiceCache.DEFAULT_PURGE_TIME_BUDGET);
+  }
+
+  /**
+   * Gets the Redis hash key for this object's type of cacheable objects.
+   *
+   * @return a string holding the hash name
+   */
+  protected abstract String getRedisHashName();
+
+  /**
+   * Creates a cacheable object.
+   *
+   * @param id the ID
+   * @param object the actual object to cache
+   * @param ownerId the owner id
+   * @param expirationTime the expiration time
+   * @return a cacheable object
+   */
+  protected abstract R createCacheObject(final String id, final T object, final String ownerId,
+      final long expirationTime);
+
+  /**
+   * Transforms an object read from Redis into the entry returned by the cache. The default implementation returns the
+   * object itself.
+   *
+   * @param object the object read from Redis
+   * @return the cache entry (or {@code null} if the object can not be used)
+   */
+  protected CacheEntry<T> restoreCacheEntry(final R object) {
+    return object;
+  }
+
+  /**
+   * Gets the Redis key under which the entry with the given ID is stored when {@link StorageMode#KEY} is used.
+   *
+   * @param id the entry ID
+   * @return the Redis key
+   */
+  protected String getRedisEntryKey(final String id) {
+    return this.getRedisHashName() + ":" + id;
+  }
+
+  /**
+   * Gets the name of the hash for the given bucket (see {@link AbstractRedisIntegrationServiceCache#getBucketName(int)}).
+   *
+   * @param bucket the bucket number
+   * @return the Redis key for the hash
+   */
+  protected String getBucketName(final int bucket) {
+    return this.bucketCount == 1 ? this.getRedisHashName() : "{" + this.getRedisHashName() + ":" + bucket + "}";
+  }
+
+  /**
+   * Gets the name of the hash holding the entry with the given ID.
+   *
+   * @param id the entry ID
+   * @return the Redis key for the hash
+   */
+  protected String getBucketName(final String id) {
+    return this.getBucketName(Math.floorMod(id.hashCode(), this.bucketCount));
+  }
+
+  /**
+   * Gets the name of the expiration index for the given hash.
+   *
+   * @param hashName the hash name
+   * @return the name of the sorted set holding the expiration times
+   */
+  protected String getRedisExpirationIndexName(final String hashName) {
+    return hashName + "_expidx";
+  }
+
+  /**
+   * Gets the entry with the given ID.
+   *
+   * @param id the entry ID
+   * @return the entry, or an empty Mono if no entry exists
+   */
+  @SuppressWarnings("unchecked")
+  public Mono<CacheEntry<T>> getEntry(final String id) {
+    final Mono<Object> object = this.storageMode == StorageMode.KEY
+        ? this.valueOps.get(this.getRedisEntryKey(id))
+        : this.hashOps.get(this.getBucketName(id), id);
+    return object.mapNotNull(o -> this.restoreCacheEntry((R) o));
+  }
+
+  /**
+   * Reads and removes the entry with the given ID in one atomic step (see
+   * {@link AbstractRedisIntegrationServiceCache#claimCacheEntry(String)}).
+   *
+   * @param id the entry ID
+   * @return the entry, or an empty Mono if no entry exists
+   */
+  @SuppressWarnings("unchecked")
+  public Mono<CacheEntry<T>> claimEntry(final String id) {
+    if (this.storageMode == StorageMode.KEY) {
+      return this.valueOps.getAndDelete(this.getRedisEntryKey(id)).mapNotNull(o -> this.restoreCacheEntry((R) o));
+    }
+    final RedisSerializationContext<String, Object> context = this.redisTemplate.getSerializationContext();
+    final String hashName = this.getBucketName(id);
+    return this.redisTemplate.execute(AbstractRedisIntegrationServiceCache.CLAIM_SCRIPT,
+            List.of(hashName, this.getRedisExpirationIndexName(hashName)),
+            List.of(context.getHashKeySerializationPair().write(id), context.getValueSerializationPair().write(id)),
+            SerializationPair.byteBuffer().getWriter(), SerializationPair.byteArray().getReader())
+        .next()
+        .mapNotNull(v -> this.restoreCacheEntry((R) context.getHashValueSerializationPair().read(ByteBuffer.wrap(v))));
+  }
+
+  /**
+   * Reads the entry with the given ID, and if it is owned by the given requester, removes it (see
+   * {@link AbstractRedisIntegrationServiceCache#claimCacheEntry(String, String)}).
+   *
+   * @param id the entry ID
+   * @param requesterId the ID of the requester
+   * @return the entry (that is only removed if owned by the requester), or an empty Mono if no entry exists or if it
+   *     was claimed by another caller
+   */
+  @SuppressWarnings("unchecked")
+  public Mono<CacheEntry<T>> claimEntry(final String id, final String requesterId) {
+    final RedisSerializationContext<String, Object> context = this.redisTemplate.getSerializationContext();
+    final boolean keyMode = this.storageMode == StorageMode.KEY;
+    final String hashName = this.getBucketName(id);
+    final ByteBuffer key = context.getKeySerializationPair().write(keyMode ? this.getRedisEntryKey(id) : hashName);
+    final ByteBuffer field = context.getHashKeySerializationPair().write(id);
+
+    return this.redisTemplate.execute(c -> keyMode ? c.stringCommands().get(key) : c.hashCommands().hGet(key, field))
+        .next()
+        .flatMap(value -> {
+          final R entry = (R) (keyMode ? context.getValueSerializationPair() : context.getHashValueSerializationPair())
+              .read(value.duplicate());
+          if (entry == null) {
+            return Mono.empty();
+          }
+          if (!Objects.equals(entry.getOwnerId(), requesterId)) {
+            return Mono.justOrEmpty(this.restoreCacheEntry(entry));
+          }
+          final Flux<byte[]> claimed = keyMode
+              ? this.redisTemplate.execute(AbstractRedisIntegrationServiceCache.CLAIM_KEY_SCRIPT,
+                  List.of(this.getRedisEntryKey(id)), List.of(value),
+                  SerializationPair.byteBuffer().getWriter(), SerializationPair.byteArray().getReader())
+              : this.redisTemplate.execute(AbstractRedisIntegrationServiceCache.CLAIM_SCRIPT,
+                  List.of(hashName, this.getRedisExpirationIndexName(hashName)),
+                  List.of(field, context.getValueSerializationPair().write(id), value),
+                  SerializationPair.byteBuffer().getWriter(), SerializationPair.byteArray().getReader());
+          return claimed.next()
+              .mapNotNull(v -> this.restoreCacheEntry(entry))
+              .switchIfEmpty(Mono.fromRunnable(
+                  () -> log.debug("Entry '{}' in {} was claimed by another caller", id, this.getRedisHashName())));
+        });
+  }
+
+  /**
+   * Stores an entry. For {@link StorageMode#HASH}, the entry and its expiration index record are written concurrently.
+   *
+   * @param id the entry ID
+   * @param object the object to cache
+   * @param ownerId the owner ID
+   * @param expirationTime the expiration time (millis since epoch)
+   * @return a Mono that completes when the entry has been written
+   */
+  public Mono<Void> putEntry(final String id, final T object, final String ownerId, final long expirationTime) {
+    final R cacheObject = this.createCacheObject(id, object, ownerId, expirationTime);
+    if (this.storageMode == StorageMode.KEY) {
+      final long ttl = Math.max(1L, expirationTime - System.currentTimeMillis());
+      return this.valueOps.set(this.getRedisEntryKey(id), cacheObject, Duration.ofMillis(ttl)).then();
+    }
+    final String hashName = this.getBucketName(id);
+    return Mono.when(
+        this.hashOps.put(hashName, id, cacheObject),
+        this.expIndexOps.add(this.getRedisExpirationIndexName(hashName), id, expirationTime));
+  }
+
+  /**
+   * Removes an entry. For {@link StorageMode#HASH}, the entry and its expiration index record are removed concurrently.
+   *
+   * @param id the entry ID
+   * @return a Mono that completes when the entry has been removed
+   */
+  public Mono<Void> removeEntry(final String id) {
+    if (this.storageMode == StorageMode.KEY) {
+      return this.redisTemplate.delete(this.getRedisEntryKey(id)).then();
+    }
+    final String hashName = this.getBucketName(id);
+    return Mono.when(
+        this.hashOps.remove(hashName, id),
+        this.expIndexOps.remove(this.getRedisExpirationIndexName(hashName), id));
+  }
+
+  /**
+   * Purges expired entries. The buckets are purged concurrently, each in batches of at most
+   * {@link #getPurgeBatchSize()} entries until no expired entries remain or {@link #getPurgeTimeBudget()} has elapsed.
+   * Nothing is done for {@link StorageMode#KEY}.
+   *
+   * @return the number of purged entries
+   */
+  public Mono<Integer> purgeExpiredEntries() {
+    if (this.storageMode == StorageMode.KEY) {
+      return Mono.just(0);
+    }
+    final long deadline = System.currentTimeMillis() + this.purgeTimeBudget.toMillis();
+    return Flux.range(0, this.bucketCount)
+        .flatMap(bucket -> this.purgeExpiredEntries(this.getBucketName(bucket), deadline))
+        .reduce(0, Integer::sum)
+        .doOnNext(purged -> log.debug("Purged {} expired entries from '{}'", purged, this.getRedisHashName()));
+  }
+
+  /**
+   * Purges batches of expired entries from the given hash.
+   *
+   * @param hashName the hash name
+   * @param deadline when to stop purging
+   * @return the number of purged entries
+   */
+  private Mono<Integer> purgeExpiredEntries(final String hashName, final long deadline) {
+    final String indexName = this.getRedisExpirationIndexName(hashName);
+    return this.expIndexOps.rangeByScore(indexName, Range.closed(0.0, (double) System.currentTimeMillis()),
+            Limit.limit().count(this.purgeBatchSize))
+        .collectList()
+        .flatMap(ids -> {
+          if (ids.isEmpty()) {
+            return Mono.just(0);
+          }
+          final Object[] members = ids.toArray();
+          final Mono<Integer> batch = Mono.when(this.hashOps.remove(hashName, members),
+              this.expIndexOps.remove(indexName, members)).thenReturn(ids.size());
+          return ids.size() < this.purgeBatchSize || System.currentTimeMillis() >= deadline
+              ? batch
+              : batch.flatMap(n -> this.purgeExpiredEntries(hashName, deadline).map(m -> n + m));
+        });
+  }
+
+  /**
+   * Gets the number of entries (the total length of the hashes). The hashes are read concurrently.
+   *
+   * @return the number of entries, or -1 for {@link StorageMode#KEY}
+   */
+  public Mono<Long> countEntries() {
+    if (this.storageMode == StorageMode.KEY) {
+      return Mono.just(-1L);
+    }
+    return Flux.range(0, this.bucketCount)
+        .flatMap(bucket -> this.hashOps.size(this.getBucketName(bucket)))
+        .reduce(0L, Long::sum);
+  }
+
+  /**
+   * Blocking adapter for {@link #getEntry(String)}.
+   */
+  @Override
+  protected CacheEntry<T> getCacheEntry(final String id) {
+    return this.getEntry(id).block();
+  }
+
+  /**
+   * If {@code remove} is {@code true}, the entry is claimed by the requester (see {@link #claimEntry(String, String)}),
+   * so that only one caller gets the entry.
+   */
+  @Override
+  public T get(final String id, final boolean remove, final String requesterId) {
+    if (!remove) {
+      return super.get(id, false, requesterId);
+    }
+    return AbstractRedisIntegrationServiceCache.getClaimedObject(this.claimEntry(id, requesterId).block(), id,
+        requesterId, this.getRedisHashName(), () -> super.get(id, true, requesterId));
+  }
+
+  /**
+   * Blocking adapter for {@link #putEntry(String, Object, String, long)}.
+   */
+  @Override
+  protected void putCacheObject(final String id, final T object, final String ownerId, final long expirationTime) {
+    this.putEntry(id, object, ownerId, expirationTime).block();
+  }
+
+  /**
+   * Blocking adapter for {@link #removeEntry(String)}.
+   */
+  @Override
+  protected void removeCacheObject(final String id) {
+    this.removeEntry(id).block();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void clearExpired() {
+    this.purgeExpired();
+  }
+
+  /**
+   * Blocking adapter for {@link #purgeExpiredEntries()}.
+   */
+  @Override
+  public int purgeExpired() {
+    return Optional.ofNullable(this.purgeExpiredEntries().block()).orElse(0);
+  }
+
+  /**
+   * Blocking adapter for {@link #countEntries()}.
+   */
+  @Override
+  public long getEntryCount() {
+    return Optional.ofNullable(this.countEntries().block()).orElse(-1L);
+  }
+
+  /**
+   * Tests the connection (so that we get failures at start-up).
+   */
+  @PostConstruct
+  public void testConnection() {
+    log.debug("Checking Redis connection for '{}' ...", this.getRedisHashName());
+    final String pong = this.redisTemplate.execute(ReactiveRedisConnection::ping).blockFirst();
+    log.debug("Redis responded '{}' for '{}'", pong, this.getRedisHashName());
+  }
+
+}
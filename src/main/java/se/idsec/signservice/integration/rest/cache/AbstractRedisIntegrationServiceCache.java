@@ -22,20 +22,66 @@ import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.DefaultTypedTuple;
 import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.ZSetOperations.TypedTuple;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import se.idsec.signservice.integration.core.IntegrationServiceCache;
 import se.idsec.signservice.integration.core.impl.AbstractIntegrationServiceCache;
 import se.idsec.signservice.integration.rest.cache.AbstractRedisIntegrationServiceCache.AbstractRedisCachedObject;
 
 import java.io.Serial;
 import java.io.Serializable;
-import java.util.Collections;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * Abstract base class for implemeting the {@link IntegrationServiceCache} using Redis.
+ * <p>
+ * If {@link #isExpiryNotifications()} is set (and {@link StorageMode#HASH} is used), each entry is accompanied by a
+ * key with a TTL (see {@link #getRedisExpirationKey(String, String)}). The cache should then be registered as a
+ * listener for Redis keyspace notifications for expired keys ({@code __keyevent@*__:expired}), and removes each entry
+ * when its key expires. Since notifications are not delivered when no node is subscribing, expired entries are still
+ * purged by {@link #clearExpired()}. Every subscribing node is notified, but the entry is only removed by the first of
+ * them (see {@link #REMOVE_EXPIRED_SCRIPT}). Expiry notifications are only supported for standalone Redis, since Redis
+ * Cluster only publishes keyspace notifications on the node holding the key.
+ * </p>
  *
  * @param <T> the actual type that is cached
  * @param <R> the type encapsulating the objects that are cached
@@ -43,7 +89,67 @@ import java.util.Optional;
  */
 @Slf4j
 public abstract class AbstractRedisIntegrationServiceCache<T extends Serializable, R extends AbstractRedisCachedObject<T>>
-    extends AbstractIntegrationServiceCache<T> {
+    extends AbstractIntegrationServiceCache<T>
+    implements PurgeableCache, MeasurableCache, MessageListener, DisposableBean {
+
+  /** The default value for {@link #getPurgeBatchSize()}. */
+  public static final int DEFAULT_PURGE_BATCH_SIZE = 500;
+
+  /** The default value for {@link #getPurgeTimeBudget()}. */
+  public static final Duration DEFAULT_PURGE_TIME_BUDGET = Duration.ofSeconds(2);
+
+  /** The maximum number of expiration index updates waiting to be written (if {@link #isAsyncExpirationIndex()}). */
+  public static final int MAX_PENDING_INDEX_UPDATES = 10_000;
+
+  /** Queued to tell the thread writing the expiration index updates to stop. */
+  private static final Consumer<RedisOperations<String, Object>> STOP_INDEX_UPDATES = ops -> {};
+
+  /** How far ahead of the local clock an entry's expiration time may be when removed on an expiry notification. */
+  private static final long EXPIRY_NOTIFICATION_TOLERANCE = 1000L;
+
+  /**
+   * Script that reads and removes a hash entry and its expiration index entry in one step. KEYS[1] is the hash, KEYS[2]
+   * the expiration index, ARGV[1] the (serialized) hash field and ARGV[2] the (serialized) index member. If KEYS[3] is
+   * given, it is the expiration key of the entry, which is also removed. If ARGV[3] is given, the entry is only removed
+   * if its (serialized) value equals ARGV[3]. Returns the value of the removed entry.
+   */
+  static final RedisScript<byte[]> CLAIM_SCRIPT = new DefaultRedisScript<>("""
+      local v = redis.call('HGET', KEYS[1], ARGV[1])
+      if v and (ARGV[3] == nil or v == ARGV[3]) then
+        redis.call('HDEL', KEYS[1], ARGV[1])
+        redis.call('ZREM', KEYS[2], ARGV[2])
+        if KEYS[3] then
+          redis.call('DEL', KEYS[3])
+        end
+        return v
+      end
+      return false""", byte[].class);
+
+  /**
+   * Script that removes a hash entry and its expiration index entry if the expiration time given by the index is not
+   * later than ARGV[3] (millis since epoch). KEYS[1] is the hash, KEYS[2] the expiration index, ARGV[1] the (serialized)
+   * hash field and ARGV[2] the (serialized) index member. Returns 1 if the entry was removed and 0 otherwise, so that
+   * when several nodes are notified about the same expired key, only the first of them writes anything.
+   */
+  static final RedisScript<Long> REMOVE_EXPIRED_SCRIPT = new DefaultRedisScript<>("""
+      local score = redis.call('ZSCORE', KEYS[2], ARGV[2])
+      if score and tonumber(score) <= tonumber(ARGV[3]) then
+        redis.call('HDEL', KEYS[1], ARGV[1])
+        redis.call('ZREM', KEYS[2], ARGV[2])
+        return 1
+      end
+      return 0""", Long.class);
+
+  /**
+   * Script that removes the key KEYS[1] if its value equals ARGV[1]. Returns the value of the removed key.
+   */
+  static final RedisScript<byte[]> CLAIM_KEY_SCRIPT = new DefaultRedisScript<>("""
+      local v = redis.call('GET', KEYS[1])
+      if v and v == ARGV[1] then
+        redis.call('DEL', KEYS[1])
+        return v
+      end
+      return false""", byte[].class);
 
   /** The Redis template object. */
   private final RedisTemplate<String, Object> redisTemplate;
@@ -51,8 +157,57 @@ public abstract class AbstractRedisIntegrationServiceCache<T extends Serializabl
   /** The Redis hash operations object. */
   private final HashOperations<String, String, R> operations;
 
-  /** For keeping a small cache so that we can check expired entries (Redis doesn't support TTL on each entry). */
-  private final HashOperations<String, String, ExpirationHelperObject> expOps;
+  /**
+   * For the expiration index - a sorted set of entry ID:s scored by their expiration times (Redis doesn't support TTL
+   * on hash fields).
+   */
+  private final ZSetOperations<String, Object> expIndexOps;
+
+  /** For reading the expiration hash used by earlier versions (migrated to the expiration index). */
+  private final HashOperations<String, String, ExpirationHelperObject> legacyExpOps;
+
+  /** The Redis value operations object (used when entries are stored under their own keys). */
+  private final ValueOperations<String, Object> valueOps;
+
+  /** How the cached entries are stored in Redis. */
+  @Getter
+  private StorageMode storageMode = StorageMode.HASH;
+
+  /** The maximum number of expired entries that are purged in one batch by {@link #clearExpired()}. */
+  @Getter
+  private int purgeBatchSize = DEFAULT_PURGE_BATCH_SIZE;
+
+  /** The maximum time that one invocation of {@link #clearExpired()} may spend purging batches. */
+  @Getter
+  private Duration purgeTimeBudget = DEFAULT_PURGE_TIME_BUDGET;
+
+  /** The number of hashes (buckets) that the entries are spread over (for the hash storage mode). */
+  @Getter
+  private int bucketCount = 1;
+
+  /** Whether the paired hash and expiration index writes are wrapped in MULTI/EXEC. */
+  @Getter
+  @Setter
+  private boolean transactionalWrites = false;
+
+  /** Whether the expiration index is updated asynchronously (without waiting for the reply). */
+  @Getter
+  private boolean asyncExpirationIndex = false;
+
+  /** Expiration index updates waiting to be written (if {@link #isAsyncExpirationIndex()}). */
+  private final BlockingQueue<Consumer<RedisOperations<String, Object>>> pendingIndexUpdates =
+      new LinkedBlockingQueue<>(MAX_PENDING_INDEX_UPDATES);
+
+  /** Writes the pending expiration index updates (created if {@link #isAsyncExpirationIndex()}). */
+  private ExecutorService indexUpdater;
+
+  /** Whether entries are removed when notified that their expiration keys have expired. */
+  @Getter
+  @Setter
+  private boolean expiryNotifications = false;
+
+  /** Template using the serialization settings of earlier versions (for migrating entries). */
+  private RedisTemplate<String, Object> legacyRedisTemplate;
 
   /**
    * Constructor.
@@ -62,7 +217,93 @@ public abstract class AbstractRedisIntegrationServiceCache<T extends Serializabl
   public AbstractRedisIntegrationServiceCache(final RedisTemplate<String, Object> redisTemplate) {
     this.redisTemplate = redisTemplate;
     this.operations = this.redisTemplate.opsForHash();
-    this.expOps = this.redisTemplate.opsForHash();
+    this.expIndexOps = this.redisTemplate.opsForZSet();
+    this.legacyExpOps = this.redisTemplate.opsForHash();
+    this.valueOps = this.redisTemplate.opsForValue();
+  }
+
+  /**
+   * Assigns how the cached entries are stored in Redis. The default is {@link StorageMode#HASH}.
+   *
+   * @param storageMode the storage mode
+   */
+  public void setStorageMode(final StorageMode storageMode) {
+    this.storageMode = Optional.ofNullable(storageMode).orElse(StorageMode.HASH);
+  }
+
+  /**
+   * Assigns the number of hashes (buckets) that the entries are spread over when {@link StorageMode#HASH} is used. The
+   * default is 1, which means that all entries are stored in the hash named {@link #getRedisHashName()}. See
+   * {@link #getBucketName(int)}.
+   * <p>
+   * Entries stored using another bucket count are moved into the correct buckets (at start-up and by
+   * {@link #clearExpired()}) only if the previous count was 1.
+   * </p>
+   *
+   * @param bucketCount the number of buckets
+   */
+  public void setBucketCount(final int bucketCount) {
+    if (bucketCount <= 0) {
+      throw new IllegalArgumentException("bucketCount must be greater than 0");
+    }
+    this.bucketCount = bucketCount;
+  }
+
+  /**
+   * Assigns whether the expiration index (and the expiration keys, if {@link #isExpiryNotifications()} is set) should
+   * be updated without waiting for the reply from Redis. If so, the updates are queued and written in batches by a
+   * dedicated thread. If the queue is full, updates are written by the calling thread.
+   *
+   * @param asyncExpirationIndex whether the expiration index is updated asynchronously
+   */
+  public synchronized void setAsyncExpirationIndex(final boolean asyncExpirationIndex) {
+    this.asyncExpirationIndex = asyncExpirationIndex;
+    if (asyncExpirationIndex && this.indexUpdater == null) {
+      final CustomizableThreadFactory threadFactory =
+          new CustomizableThreadFactory(this.getRedisHashName() + "-expidx-");
+      threadFactory.setDaemon(true);
+      this.indexUpdater = Executors.newSingleThreadExecutor(threadFactory);
+      this.indexUpdater.execute(this::writeIndexUpdates);
+    }
+  }
+
+  /**
+   * Assigns the maximum number of expired entries that are purged in one batch by {@link #clearExpired()}. The default
+   * is {@value #DEFAULT_PURGE_BATCH_SIZE}.
+   *
+   * @param purgeBatchSize the batch size
+   */
+  public void setPurgeBatchSize(final int purgeBatchSize) {
+    if (purgeBatchSize <= 0) {
+      throw new IllegalArgumentException("purgeBatchSize must be greater than 0");
+    }
+    this.purgeBatchSize = purgeBatchSize;
+  }
+
+  /**
+   * Assigns the maximum time that one invocation of {@link #clearExpired()} may spend purging batches. When the time
+   * has elapsed no further batches are purged, and the remaining expired entries are handled by the next invocation.
+   * The default is 2 seconds.
+   *
+   * @param purgeTimeBudget the time budget
+   */
+  public void setPurgeTimeBudget(final Duration purgeTimeBudget) {
+    this.purgeTimeBudget = Optional.ofNullable(purgeTimeBudget).orElse(DEFAULT_PURGE_TIME_BUDGET);
+  }
+
+  /**
+   * Assigns a template that uses Java serialization for keys and values, i.e., the default {@link RedisTemplate}
+   * settings used by earlier versions. Should be assigned if the main template uses other serializers. Entries
+   * written by earlier versions are then moved into the hash written using the main template (at start-up and by
+   * {@link #clearExpired()}).
+   * <p>
+   * Only applies to the {@link StorageMode#HASH} storage mode.
+   * </p>
+   *
+   * @param legacyRedisTemplate template for reading entries written by earlier versions
+   */
+  public void setLegacyRedisTemplate(final RedisTemplate<String, Object> legacyRedisTemplate) {
+    this.legacyRedisTemplate = legacyRedisTemplate;
   }
 
   /**
@@ -84,48 +325,653 @@ public abstract class AbstractRedisIntegrationServiceCache<T extends Serializabl
   protected abstract R createCacheObject(final String id, final T object, final String ownerId,
       final long expirationTime);
 
+  /**
+   * Gets the Redis key under which the entry with the given ID is stored when {@link StorageMode#KEY} is used.
+   *
+   * @param id the entry ID
+   * @return the Redis key
+   */
+  protected String getRedisEntryKey(final String id) {
+    return this.getRedisHashName() + ":" + id;
+  }
+
+  /**
+   * Gets the name of the hash for the given bucket. If only one bucket is used, this is {@link #getRedisHashName()}.
+   * Otherwise, the name is {@code {<hash name>:<bucket>}}, where the braces make the name a hash tag, so that the hash
+   * and its expiration index are stored in the same slot when running Redis Cluster.
+   *
+   * @param bucket the bucket number
+   * @return the Redis key for the hash
+   */
+  protected String getBucketName(final int bucket) {
+    return this.bucketCount == 1 ? this.getRedisHashName() : "{" + this.getRedisHashName() + ":" + bucket + "}";
+  }
+
+  /**
+   * Gets the name of the hash holding the entry with the given ID.
+   *
+   * @param id the entry ID
+   * @return the Redis key for the hash
+   */
+  protected String getBucketName(final String id) {
+    return this.getBucketName(Math.floorMod(id.hashCode(), this.bucketCount));
+  }
+
+  /**
+   * Gets the name of the sorted set holding the expiration index for the entries of the given hash.
+   *
+   * @param hashName the hash name
+   * @return the Redis key for the expiration index
+   */
+  protected String getRedisExpirationIndexName(final String hashName) {
+    return hashName + "_expidx";
+  }
+
+  /**
+   * Gets the name of the key that expires together with the given entry (if {@link #isExpiryNotifications()} is set).
+   * When more than one bucket is used, the key shares the hash tag of the bucket.
+   *
+   * @param hashName the name of the hash holding the entry
+   * @param id the entry ID
+   * @return the key name
+   */
+  protected String getRedisExpirationKey(final String hashName, final String id) {
+    return hashName + "_exp:" + id;
+  }
+
+  /**
+   * Gets the keys for {@link #CLAIM_SCRIPT} - the hash, its expiration index and, if {@link #isExpiryNotifications()}
+   * is set, the expiration key of the entry.
+   *
+   * @param hashName the name of the hash holding the entry
+   * @param id the entry ID
+   * @return the script keys
+   */
+  private List<String> getClaimKeys(final String hashName, final String id) {
+    final String indexName = this.getRedisExpirationIndexName(hashName);
+    return this.expiryNotifications
+        ? List.of(hashName, indexName, this.getRedisExpirationKey(hashName, id))
+        : List.of(hashName, indexName);
+  }
+
   /** {@inheritDoc} */
+  @SuppressWarnings("unchecked")
   @Override
   protected CacheEntry<T> getCacheEntry(final String id) {
-    return this.operations.get(this.getRedisHashName(), id);
+    if (this.storageMode == StorageMode.KEY) {
+      return (R) this.valueOps.get(this.getRedisEntryKey(id));
+    }
+    return this.operations.get(this.getBucketName(id), id);
+  }
+
+  /**
+   * If {@code remove} is {@code true}, the entry is claimed by the requester (see
+   * {@link #claimCacheEntry(String, String)}). This means that if two callers ask for the same entry at the same time,
+   * only one of them will get it.
+   */
+  @Override
+  public T get(final String id, final boolean remove, final String requesterId) {
+    if (!remove) {
+      return super.get(id, false, requesterId);
+    }
+    return getClaimedObject(this.claimCacheEntry(id, requesterId), id, requesterId, this.getRedisHashName(),
+        () -> super.get(id, true, requesterId));
+  }
+
+  /**
+   * Gets the object of an entry read by {@link #claimCacheEntry(String, String)} (or the corresponding method of
+   * {@link AbstractReactiveRedisIntegrationServiceCache}).
+   *
+   * @param entry the claimed entry (may be {@code null})
+   * @param id the entry ID
+   * @param requesterId the ID of the requester
+   * @param cacheName the cache name (for logging)
+   * @param accessCheck invoked if the entry is not owned by the requester (in which case it was not removed), so that
+   *     the default implementation handles the access check
+   * @return the object, or {@code null} if no entry exists or if it has expired
+   */
+  static <T extends Serializable> T getClaimedObject(final CacheEntry<T> entry, final String id,
+      final String requesterId, final String cacheName, final Supplier<T> accessCheck) {
+    if (entry == null) {
+      return null;
+    }
+    if (!Objects.equals(entry.getOwnerId(), requesterId)) {
+      return accessCheck.get();
+    }
+    if (entry.getExpirationTime() != null && entry.getExpirationTime() < System.currentTimeMillis()) {
+      log.debug("Claimed entry '{}' from {} has expired", id, cacheName);
+      return null;
+    }
+    return entry.getObject();
+  }
+
+  /**
+   * Reads the entry with the given ID, and if it is owned by the given requester, removes it. The removal is done
+   * using a script that removes the entry only if it is unchanged since it was read (see {@link #CLAIM_SCRIPT} and
+   * {@link #CLAIM_KEY_SCRIPT}), so an entry is only removed after its owner has been checked, and only one of several
+   * concurrent callers gets the entry.
+   *
+   * @param id the entry ID
+   * @param requesterId the ID of the requester
+   * @return the entry (that is only removed if owned by the requester), or {@code null} if no entry exists or if it
+   *     was claimed by another caller
+   */
+  @SuppressWarnings("unchecked")
+  protected CacheEntry<T> claimCacheEntry(final String id, final String requesterId) {
+    final RedisSerializer<Object> keySerializer = (RedisSerializer<Object>) this.redisTemplate.getKeySerializer();
+    final byte[] value;
+    final R entry;
+    if (this.storageMode == StorageMode.KEY) {
+      final byte[] key = keySerializer.serialize(this.getRedisEntryKey(id));
+      value = this.redisTemplate.execute((RedisCallback<byte[]>) c -> c.stringCommands().get(key));
+      entry = value != null ? (R) this.redisTemplate.getValueSerializer().deserialize(value) : null;
+    }
+    else {
+      final byte[] hash = keySerializer.serialize(this.getBucketName(id));
+      final byte[] field = ((RedisSerializer<Object>) this.redisTemplate.getHashKeySerializer()).serialize(id);
+      value = this.redisTemplate.execute((RedisCallback<byte[]>) c -> c.hashCommands().hGet(hash, field));
+      entry = value != null ? (R) this.redisTemplate.getHashValueSerializer().deserialize(value) : null;
+    }
+    if (entry == null || !Objects.equals(entry.getOwnerId(), requesterId)) {
+      return entry;
+    }
+
+    final byte[] claimed;
+    if (this.storageMode == StorageMode.KEY) {
+      claimed = this.redisTemplate.execute(CLAIM_KEY_SCRIPT, RedisSerializer.byteArray(),
+          RedisSerializer.byteArray(), List.of(this.getRedisEntryKey(id)), value);
+    }
+    else {
+      final byte[] field = ((RedisSerializer<Object>) this.redisTemplate.getHashKeySerializer()).serialize(id);
+      final byte[] member = ((RedisSerializer<Object>) this.redisTemplate.getValueSerializer()).serialize(id);
+      final String hashName = this.getBucketName(id);
+      claimed = this.redisTemplate.execute(CLAIM_SCRIPT, RedisSerializer.byteArray(),
+          RedisSerializer.byteArray(), this.getClaimKeys(hashName, id), field, member, value);
+    }
+    if (claimed == null) {
+      log.debug("Entry '{}' in {} was claimed by another caller", id, this.getRedisHashName());
+      return null;
+    }
+    return entry;
+  }
+
+  /**
+   * Reads and removes the entry with the given ID in one atomic step. For {@link StorageMode#HASH} this is done using
+   * a Lua script that also removes the entry from the expiration index, and for {@link StorageMode#KEY} using
+   * {@code GETDEL}.
+   *
+   * @param id the entry ID
+   * @return the entry, or {@code null} if no entry exists
+   */
+  @SuppressWarnings("unchecked")
+  protected CacheEntry<T> claimCacheEntry(final String id) {
+    if (this.storageMode == StorageMode.KEY) {
+      return (R) this.valueOps.getAndDelete(this.getRedisEntryKey(id));
+    }
+    final byte[] field = ((RedisSerializer<Object>) this.redisTemplate.getHashKeySerializer()).serialize(id);
+    final byte[] member = ((RedisSerializer<Object>) this.redisTemplate.getValueSerializer()).serialize(id);
+    final String hashName = this.getBucketName(id);
+    final byte[] value = this.redisTemplate.execute(CLAIM_SCRIPT, RedisSerializer.byteArray(),
+        RedisSerializer.byteArray(), this.getClaimKeys(hashName, id), field, member);
+    return value != null ? (R) this.redisTemplate.getHashValueSerializer().deserialize(value) : null;
   }
 
   /** {@inheritDoc} */
   @Override
   protected void putCacheObject(final String id, final T object, final String ownerId, final long expirationTime) {
-    this.operations.put(this.getRedisHashName(), id, this.createCacheObject(id, object, ownerId, expirationTime));
-    this.expOps.put(this.getRedisHashName() + "_exp", id, new ExpirationHelperObject(id, expirationTime));
+    this.writeCacheObject(id, object, ownerId, expirationTime);
+  }
+
+  /**
+   * Writes the entry (see {@link #putCacheObject(String, Serializable, String, long)}) and tells whether it replaced an
+   * existing entry with the same ID.
+   *
+   * @param id the entry ID
+   * @param object the object to cache
+   * @param ownerId the owner ID
+   * @param expirationTime the expiration time
+   * @return {@code false} if no entry with the given ID existed, and {@code true} otherwise (or if not known)
+   */
+  protected boolean writeCacheObject(
+      final String id, final T object, final String ownerId, final long expirationTime) {
+    final R cacheObject = this.createCacheObject(id, object, ownerId, expirationTime);
+    if (this.storageMode == StorageMode.KEY) {
+      // SET with PX so that the entry and its TTL are written in one command ...
+      final String key = this.getRedisEntryKey(id);
+      final List<Object> results = this.executeWrites(ops -> {
+        ops.hasKey(key);
+        ops.opsForValue().set(key, cacheObject, this.getTimeToLive(expirationTime));
+      });
+      return !Boolean.FALSE.equals(firstBoolean(results));
+    }
+    final String hashName = this.getBucketName(id);
+    final String indexName = this.getRedisExpirationIndexName(hashName);
+    if (this.asyncExpirationIndex) {
+      final List<Object> results = this.executeWrites(ops -> ops.opsForHash().put(hashName, id, cacheObject));
+      this.updateExpirationIndexAsync(ops -> {
+        ops.opsForZSet().add(indexName, id, expirationTime);
+        if (this.expiryNotifications) {
+          ops.opsForValue().set(this.getRedisExpirationKey(hashName, id), "", this.getTimeToLive(expirationTime));
+        }
+      });
+      return !Boolean.TRUE.equals(firstBoolean(results));
+    }
+    final List<Object> results = this.executeWrites(ops -> {
+      // HSET replies whether the field is new ...
+      ops.opsForHash().put(hashName, id, cacheObject);
+      ops.opsForZSet().add(indexName, id, expirationTime);
+      if (this.expiryNotifications) {
+        ops.opsForValue().set(this.getRedisExpirationKey(hashName, id), "", this.getTimeToLive(expirationTime));
+      }
+    });
+    return !Boolean.TRUE.equals(firstBoolean(results));
+  }
+
+  /**
+   * Gets the first boolean reply of the supplied pipeline results. If the commands were wrapped in
+   * {@code MULTI}/{@code EXEC}, the replies may be given as a nested list.
+   *
+   * @param results the pipeline results
+   * @return the first boolean reply, or {@code null} if there is none
+   */
+  private static Boolean firstBoolean(final List<?> results) {
+    for (final Object result : Optional.ofNullable(results).orElseGet(List::of)) {
+      if (result instanceof final Boolean b) {
+        return b;
+      }
+      if (result instanceof final List<?> nested) {
+        final Boolean b = firstBoolean(nested);
+        if (b != null) {
+          return b;
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Gets the time left until the given expiration time (at least one millisecond).
+   *
+   * @param expirationTime the expiration time (in millis since epoch)
+   * @return the time to live
+   */
+  private Duration getTimeToLive(final long expirationTime) {
+    return Duration.ofMillis(Math.max(1L, expirationTime - System.currentTimeMillis()));
   }
 
   /** {@inheritDoc} */
   @Override
   protected void removeCacheObject(final String id) {
-    this.operations.delete(this.getRedisHashName(), id);
-    this.expOps.delete(this.getRedisHashName() + "_exp", id);
+    if (this.storageMode == StorageMode.KEY) {
+      this.redisTemplate.delete(this.getRedisEntryKey(id));
+      return;
+    }
+    final String hashName = this.getBucketName(id);
+    final String indexName = this.getRedisExpirationIndexName(hashName);
+    if (this.asyncExpirationIndex) {
+      this.executeWrites(ops -> {
+        ops.opsForHash().delete(hashName, id);
+        this.removeExpirationKeys(ops, hashName, List.of(id));
+      });
+      this.updateExpirationIndexAsync(ops -> ops.opsForZSet().remove(indexName, id));
+      return;
+    }
+    this.executeWrites(ops -> {
+      ops.opsForHash().delete(hashName, id);
+      ops.opsForZSet().remove(indexName, id);
+      this.removeExpirationKeys(ops, hashName, List.of(id));
+    });
   }
 
-  /** {@inheritDoc} */
+  /**
+   * Removes the expiration keys of the given entries if {@link #isExpiryNotifications()} is set, so that no
+   * notifications are published for removed entries.
+   *
+   * @param ops the operations to use
+   * @param hashName the name of the hash holding the entries
+   * @param ids the entry ID:s
+   */
+  private void removeExpirationKeys(
+      final RedisOperations<String, Object> ops, final String hashName, final Collection<?> ids) {
+    if (this.expiryNotifications && !ids.isEmpty()) {
+      ops.delete(ids.stream().map(id -> this.getRedisExpirationKey(hashName, String.valueOf(id))).toList());
+    }
+  }
+
+  /**
+   * Sends the supplied commands to Redis in one pipeline, i.e., in one round trip. If
+   * {@link #isTransactionalWrites()} is {@code true}, the commands are also wrapped in {@code MULTI}/{@code EXEC} so
+   * that either all or none of them are applied.
+   *
+   * @param commands the commands to send
+   * @return the replies
+   */
+  private List<Object> executeWrites(final Consumer<RedisOperations<String, Object>> commands) {
+    return this.redisTemplate.executePipelined(new SessionCallback<Object>() {
+      @SuppressWarnings("unchecked")
+      @Override
+      public <K, V> Object execute(final RedisOperations<K, V> operations) throws DataAccessException {
+        final RedisOperations<String, Object> ops = (RedisOperations<String, Object>) operations;
+        if (transactionalWrites) {
+          ops.multi();
+        }
+        commands.accept(ops);
+        if (transactionalWrites) {
+          ops.exec();
+        }
+        return null;
+      }
+    });
+  }
+
+  /**
+   * Queues an update of the expiration index (see {@link #writeIndexUpdates()}). If the queue is full, the update is
+   * written at once, so that writers are slowed down rather than updates lost.
+   *
+   * @param update the update
+   */
+  private void updateExpirationIndexAsync(final Consumer<RedisOperations<String, Object>> update) {
+    if (!this.pendingIndexUpdates.offer(update)) {
+      log.debug("Expiration index update queue for {} is full - writing update at once", this.getRedisHashName());
+      this.executeWrites(update);
+    }
+  }
+
+  /**
+   * Writes the queued expiration index updates, in pipelines of at most {@link #getPurgeBatchSize()} updates, until
+   * {@link #STOP_INDEX_UPDATES} is read. A failure is logged, and means that the entries will not be purged by
+   * {@link #clearExpired()} (or, for removals, that the index keeps members without entries until they expire).
+   */
+  private void writeIndexUpdates() {
+    final List<Consumer<RedisOperations<String, Object>>> batch = new ArrayList<>();
+    boolean stop = false;
+    while (!stop) {
+      try {
+        batch.add(this.pendingIndexUpdates.take());
+      }
+      catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+      this.pendingIndexUpdates.drainTo(batch, this.purgeBatchSize - 1);
+      stop = batch.remove(STOP_INDEX_UPDATES);
+      try {
+        this.executeWrites(ops -> batch.forEach(u -> u.accept(ops)));
+      }
+      catch (final RuntimeException e) {
+        log.warn("Failed to write {} expiration index update(s) for {} - {}", batch.size(), this.getRedisHashName(),
+            e.getMessage(), e);
+      }
+      batch.clear();
+    }
+  }
+
+  /**
+   * Stops the thread writing asynchronous expiration index updates after it has written the queued updates.
+   *
+   * @throws InterruptedException if interrupted while waiting for the updates to be written
+   */
+  @Override
+  public synchronized void destroy() throws InterruptedException {
+    if (this.indexUpdater == null) {
+      return;
+    }
+    this.pendingIndexUpdates.put(STOP_INDEX_UPDATES);
+    this.indexUpdater.shutdown();
+    if (!this.indexUpdater.awaitTermination(10, TimeUnit.SECONDS)) {
+      log.warn("Timed out writing queued expiration index updates for {}", this.getRedisHashName());
+      this.indexUpdater.shutdownNow();
+    }
+    this.indexUpdater = null;
+  }
+
+  /**
+   * Purges expired entries. If {@link StorageMode#KEY} is used, this method does nothing since Redis expires the
+   * entries itself.
+   */
   @Override
   public void clearExpired() {
     log.trace("clearExpired called ...");
+    this.purgeExpired();
+  }
 
-    final List<ExpirationHelperObject> values =
-        Optional.ofNullable(this.expOps.values(this.getRedisHashName() + "_exp")).orElse(Collections.emptyList());
+  /**
+   * Purges expired entries (see {@link #clearExpired()}).
+   */
+  @Override
+  public int purgeExpired() {
+    if (this.storageMode == StorageMode.KEY) {
+      log.trace("Entries of {} are expired by Redis - nothing to purge", this.getRedisHashName());
+      return 0;
+    }
+
+    final long deadline = System.currentTimeMillis() + this.purgeTimeBudget.toMillis();
+    this.migrateUnbucketedEntries(deadline);
+    this.migrateLegacyExpirationHash(deadline);
 
-    final long now = System.currentTimeMillis();
-    final Object[] forRemoval = values.stream()
-        .filter(v -> now > Optional.ofNullable(v.getExpirationTime()).orElse(Long.MAX_VALUE))
-        .map(ExpirationHelperObject::getId)
-        .toArray(String[]::new);
+    int purged = 0;
+    for (int bucket = 0; bucket < this.bucketCount && System.currentTimeMillis() <= deadline; bucket++) {
+      purged += this.purgeExpired(this.getBucketName(bucket), deadline);
+    }
 
-    if (forRemoval.length == 0) {
+    if (purged == 0) {
       log.trace("No expired entries to purge ...");
+    }
+    else {
+      log.debug("Purged {} expired cached entries from {}/{}", purged, this.getClass().getSimpleName(),
+          this.getRedisHashName());
+    }
+    return purged;
+  }
+
+  /**
+   * Purges expired entries from the given hash.
+   *
+   * @param hashName the hash name
+   * @param deadline the time (millis since epoch) after which no more batches should be processed
+   * @return the number of purged entries
+   */
+  private int purgeExpired(final String hashName, final long deadline) {
+    final String indexName = this.getRedisExpirationIndexName(hashName);
+
+    // Fetch the expired ID:s from the expiration index in batches so that the cost is proportional to the
+    // number of expired entries (and not to the size of the cache) ...
+    //
+    int purged = 0;
+    while (true) {
+      final Object[] forRemoval = Optional.ofNullable(
+              this.expIndexOps.rangeByScore(indexName, 0, System.currentTimeMillis(), 0, this.purgeBatchSize))
+          .map(Set::toArray)
+          .orElseGet(() -> new Object[0]);
+
+      if (forRemoval.length > 0) {
+        log.trace("Purging {} expired cached entries from {}/{}: {}", forRemoval.length,
+            this.getClass().getSimpleName(), hashName, forRemoval);
+        this.executeWrites(ops -> {
+          ops.opsForHash().delete(hashName, forRemoval);
+          ops.opsForZSet().remove(indexName, forRemoval);
+          this.removeExpirationKeys(ops, hashName, Arrays.asList(forRemoval));
+        });
+        purged += forRemoval.length;
+      }
+      if (forRemoval.length < this.purgeBatchSize) {
+        break;
+      }
+      if (System.currentTimeMillis() > deadline) {
+        log.debug("Time budget for purging {} exhausted - remaining expired entries will be purged later",
+            this.getRedisHashName());
+        break;
+      }
+    }
+    return purged;
+  }
+
+  /**
+   * Moves entries that are not stored in the hashes given by the current settings into the correct hashes (in batches
+   * and within the time budget). This applies to:
+   * <ul>
+   * <li>Entries written using Java serialization, if a legacy template has been assigned (see
+   * {@link #setLegacyRedisTemplate(RedisTemplate)}).</li>
+   * <li>Entries written to the single hash {@link #getRedisHashName()}, if more than one bucket is used.</li>
+   * </ul>
+   *
+   * @param deadline the time (millis since epoch) after which no more batches should be processed
+   */
+  private void migrateUnbucketedEntries(final long deadline) {
+    if (this.storageMode != StorageMode.HASH) {
+      return;
+    }
+    if (this.legacyRedisTemplate != null) {
+      this.migrateHash(this.legacyRedisTemplate, deadline);
+    }
+    if (this.bucketCount > 1) {
+      this.migrateHash(this.redisTemplate, deadline);
+    }
+  }
+
+  /**
+   * Moves the entries of the hash {@link #getRedisHashName()}, read using the supplied template, into the hashes given
+   * by the current settings. When the hash is empty, it is removed along with its expiration index (and the expiration
+   * hash used by earlier versions).
+   *
+   * @param template the template for reading the hash
+   * @param deadline the time (millis since epoch) after which no more batches should be processed
+   */
+  private void migrateHash(final RedisTemplate<String, Object> template, final long deadline) {
+    final String hashName = this.getRedisHashName();
+    if (!Boolean.TRUE.equals(template.hasKey(hashName))) {
+      return;
+    }
+    log.debug("Migrating entries of '{}' ...", hashName);
+
+    final HashOperations<String, String, R> sourceOps = template.opsForHash();
+    while (System.currentTimeMillis() <= deadline) {
+      final Map<String, R> entries = new HashMap<>();
+      final ScanOptions scanOptions = ScanOptions.scanOptions().count(this.purgeBatchSize).build();
+      try (final Cursor<Map.Entry<String, R>> cursor = sourceOps.scan(hashName, scanOptions)) {
+        while (cursor.hasNext() && entries.size() < this.purgeBatchSize) {
+          final Map.Entry<String, R> entry = cursor.next();
+          entries.put(entry.getKey(), entry.getValue());
+        }
+      }
+      if (entries.isEmpty()) {
+        template.delete(List.of(hashName, hashName + "_exp", this.getRedisExpirationIndexName(hashName)));
+        log.debug("Migration of entries of '{}' completed", hashName);
+        return;
+      }
+
+      final long now = System.currentTimeMillis();
+      final Map<String, Map<String, R>> valid = new HashMap<>();
+      final Map<String, Set<TypedTuple<Object>>> tuples = new HashMap<>();
+      entries.forEach((id, entry) -> {
+        if (entry != null && entry.getExpirationTime() != null && entry.getExpirationTime() > now) {
+          final String bucketName = this.getBucketName(id);
+          valid.computeIfAbsent(bucketName, b -> new HashMap<>()).put(id, entry);
+          tuples.computeIfAbsent(bucketName, b -> new HashSet<>())
+              .add(new DefaultTypedTuple<>(id, entry.getExpirationTime().doubleValue()));
+        }
+      });
+      valid.forEach((bucketName, bucketEntries) -> {
+        this.operations.putAll(bucketName, bucketEntries);
+        this.expIndexOps.add(this.getRedisExpirationIndexName(bucketName), tuples.get(bucketName));
+      });
+      sourceOps.delete(hashName, entries.keySet().toArray());
+    }
+  }
+
+  /**
+   * Earlier versions kept the expiration times in a hash named {@code <hash>_exp}. This method moves any such entries
+   * into the expiration index (in batches and within the time budget) and finally removes the old hash.
+   *
+   * @param deadline the time (millis since epoch) after which no more batches should be processed
+   */
+  private void migrateLegacyExpirationHash(final long deadline) {
+    final String legacyName = this.getRedisHashName() + "_exp";
+    if (!Boolean.TRUE.equals(this.redisTemplate.hasKey(legacyName))) {
+      return;
+    }
+    log.debug("Migrating expiration times from '{}' to the expiration index ...", legacyName);
+
+    while (System.currentTimeMillis() <= deadline) {
+      final Map<String, Set<TypedTuple<Object>>> tuples = new HashMap<>();
+      final Set<Object> ids = new HashSet<>();
+      final ScanOptions scanOptions = ScanOptions.scanOptions().count(this.purgeBatchSize).build();
+      try (final Cursor<Map.Entry<String, ExpirationHelperObject>> cursor =
+          this.legacyExpOps.scan(legacyName, scanOptions)) {
+        while (cursor.hasNext() && ids.size() < this.purgeBatchSize) {
+          final Map.Entry<String, ExpirationHelperObject> entry = cursor.next();
+          final Long expirationTime = Optional.ofNullable(entry.getValue())
+              .map(ExpirationHelperObject::getExpirationTime)
+              .orElse(0L);
+          tuples.computeIfAbsent(this.getRedisExpirationIndexName(this.getBucketName(entry.getKey())),
+                  i -> new HashSet<>())
+              .add(new DefaultTypedTuple<>(entry.getKey(), expirationTime.doubleValue()));
+          ids.add(entry.getKey());
+        }
+      }
+      if (ids.isEmpty()) {
+        this.redisTemplate.delete(legacyName);
+        log.debug("Migration of '{}' completed", legacyName);
+        return;
+      }
+      tuples.forEach(this.expIndexOps::add);
+      this.legacyExpOps.delete(legacyName, ids.toArray());
+    }
+  }
+
+  /**
+   * Removes the entry whose expiration key has expired (see {@link #getRedisExpirationKey(String, String)}). The
+   * message body is the name of the expired key. Notifications for keys not belonging to this cache are ignored.
+   * <p>
+   * Since every subscribing node is notified, the entry is removed using {@link #REMOVE_EXPIRED_SCRIPT}, which only
+   * removes it if it has expired according to the expiration index. Thus, only the first node writes anything, and an
+   * entry that has been written again with a later expiration time is kept.
+   * </p>
+   */
+  @SuppressWarnings("unchecked")
+  @Override
+  public void onMessage(final Message message, final byte[] pattern) {
+    if (!this.expiryNotifications || this.storageMode == StorageMode.KEY) {
+      return;
+    }
+    final Object key = this.redisTemplate.getKeySerializer().deserialize(message.getBody());
+    if (!(key instanceof final String keyName)) {
+      return;
+    }
+    final int separator = keyName.indexOf("_exp:");
+    if (separator < 0) {
+      return;
+    }
+    final String hashName = keyName.substring(0, separator);
+    final String id = keyName.substring(separator + 5);
+    if (!hashName.equals(this.getBucketName(id))) {
       return;
     }
-    log.debug("Purging expired cached entries from {}/{}: {}", this.getClass().getSimpleName(), this.getRedisHashName(),
-        forRemoval);
-    this.operations.delete(this.getRedisHashName(), forRemoval);
-    this.expOps.delete(this.getRedisHashName() + "_exp", forRemoval);
+    final byte[] field = ((RedisSerializer<Object>) this.redisTemplate.getHashKeySerializer()).serialize(id);
+    final byte[] member = ((RedisSerializer<Object>) this.redisTemplate.getValueSerializer()).serialize(id);
+    final byte[] maxExpirationTime = Long.toString(System.currentTimeMillis() + EXPIRY_NOTIFICATION_TOLERANCE)
+        .getBytes(StandardCharsets.US_ASCII);
+    final Long removed = this.redisTemplate.execute(REMOVE_EXPIRED_SCRIPT, RedisSerializer.byteArray(),
+        new GenericToStringSerializer<>(Long.class), List.of(hashName, this.getRedisExpirationIndexName(hashName)),
+        field, member, maxExpirationTime);
+    if (Long.valueOf(1L).equals(removed)) {
+      log.trace("Expiration key for '{}' in '{}' expired - removed entry", id, hashName);
+    }
+  }
+
+  /**
+   * Gets the number of entries (the total length of the hashes). Not known for {@link StorageMode#KEY}.
+   */
+  @Override
+  public long getEntryCount() {
+    if (this.storageMode == StorageMode.KEY) {
+      return -1L;
+    }
+    long size = 0;
+    for (int bucket = 0; bucket < this.bucketCount; bucket++) {
+      size += Optional.ofNullable(this.operations.size(this.getBucketName(bucket))).orElse(0L);
+    }
+    return size;
   }
 
   /**
@@ -135,9 +981,70 @@ public abstract class AbstractRedisIntegrationServiceCache<T extends Serializabl
    */
   @PostConstruct
   public void testConnection() throws Exception {
-    log.debug("Checking connection for Redis hash '{}' ...", this.getRedisHashName());
-    final Long size = this.operations.size(this.getRedisHashName());
-    log.debug("Size for Redis hash '{}' is '{}'", this.getRedisHashName(), size);
+    if (this.storageMode == StorageMode.KEY) {
+      log.debug("Checking Redis connection for '{}' ...", this.getRedisHashName());
+      final String pong = this.redisTemplate.execute((RedisCallback<String>) RedisConnection::ping);
+      log.debug("Redis responded '{}' for '{}'", pong, this.getRedisHashName());
+      return;
+    }
+    log.debug("Checking connection for Redis hash '{}' ({} bucket(s)) ...", this.getRedisHashName(), this.bucketCount);
+    log.debug("Size for Redis hash '{}' is '{}'", this.getRedisHashName(), this.getEntryCount());
+    if (this.expiryNotifications) {
+      this.checkExpiryNotifications();
+    }
+
+    this.migrateUnbucketedEntries(System.currentTimeMillis() + this.purgeTimeBudget.toMillis());
+  }
+
+  /**
+   * Logs a warning if Redis is not configured to publish keyspace notifications for expired keys, or if Redis Cluster
+   * is used (which is not supported for expiry notifications). The configuration is not changed by the cache since it
+   * affects all users of the Redis server.
+   */
+  private void checkExpiryNotifications() {
+    if (Boolean.TRUE.equals(this.redisTemplate.execute(
+        (RedisCallback<Boolean>) c -> c instanceof RedisClusterConnection))) {
+      log.warn("Expiry notifications are not supported for Redis Cluster - expired entries of '{}' may only be removed "
+          + "by the periodic clean-up", this.getRedisHashName());
+      return;
+    }
+    try {
+      final Properties config = this.redisTemplate.execute(
+          (RedisCallback<Properties>) c -> c.serverCommands().getConfig("notify-keyspace-events"));
+      final String flags = Optional.ofNullable(config)
+          .map(c -> c.getProperty("notify-keyspace-events"))
+          .orElse("");
+      if (!flags.contains("E") || !(flags.contains("x") || flags.contains("A"))) {
+        log.warn("Redis is not configured to publish expired key events (notify-keyspace-events is '{}') - "
+            + "expired entries of '{}' will only be removed by the periodic clean-up", flags, this.getRedisHashName());
+      }
+    }
+    catch (final DataAccessException e) {
+      log.info("Could not read notify-keyspace-events from Redis ({}) - make sure that it includes 'Ex'",
+          e.getMessage());
+    }
+  }
+
+  /**
+   * Enumeration of the ways cached entries may be stored in Redis.
+   */
+  public enum StorageMode {
+
+    /**
+     * Entries are stored as fields in Redis hashes (see
+     * {@link AbstractRedisIntegrationServiceCache#getBucketName(int)}). Since Redis can not expire hash fields,
+     * expiration times are kept in a sorted set for each hash (see
+     * {@link AbstractRedisIntegrationServiceCache#getRedisExpirationIndexName(String)}) and expired entries are purged
+     * by {@link AbstractRedisIntegrationServiceCache#clearExpired()}.
+     */
+    HASH,
+
+    /**
+     * Each entry is stored under its own key (see
+     * {@link AbstractRedisIntegrationServiceCache#getRedisEntryKey(String)}) that is given a TTL based on the entry
+     * expiration time. Redis expires the entries, so no purging is needed.
+     */
+    KEY
   }
 
   /**
@@ -189,6 +1096,9 @@ public abstract class AbstractRedisIntegrationServiceCache<T extends Serializabl
 
   }
 
+  /**
+   * The representation of expiration times used by earlier versions. Only used for migration to the expiration index.
+   */
   @Data
   @NoArgsConstructor
   @AllArgsConstructor
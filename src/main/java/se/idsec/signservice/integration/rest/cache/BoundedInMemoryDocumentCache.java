@@ -0,0 +1,90 @@
+/*
+ * Copyright 2020-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.rest.cache;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Setter;
+import se.idsec.signservice.integration.core.DocumentCache;
+import se.idsec.signservice.integration.rest.cache.DocumentCompressor.CompressedDocument;
+
+/**
+ * A size-bounded in-memory {@link DocumentCache}. If a {@link DocumentCompressor} is assigned, the documents are stored
+ * compressed.
+ *
+ * @author Martin Lindström
+ */
+public class BoundedInMemoryDocumentCache extends AbstractBoundedInMemoryIntegrationServiceCache<String>
+    implements DocumentCache {
+
+  /** Optional document compressor. */
+  @Setter
+  private DocumentCompressor documentCompressor;
+
+  /**
+   * Constructor.
+   *
+   * @param maxEntries the maximum number of entries (0 for no limit)
+   * @param maxSize the maximum total size in bytes (0 for no limit)
+   * @param fullPolicy what to do when the cache is full
+   * @param meterRegistry the meter registry (may be {@code null})
+   */
+  public BoundedInMemoryDocumentCache(
+      final long maxEntries, final long maxSize, final FullPolicy fullPolicy, final MeterRegistry meterRegistry) {
+    super("documents", maxEntries, maxSize, fullPolicy, meterRegistry);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param maxEntries the maximum number of entries (0 for no limit)
+   * @param maxSize the maximum total size in bytes (0 for no limit)
+   * @param fullPolicy what to do when the cache is full
+   * @param scheduledExpiry whether entries should be removed at their expiration times
+   * @param meterRegistry the meter registry (may be {@code null})
+   */
+  public BoundedInMemoryDocumentCache(final long maxEntries, final long maxSize, final FullPolicy fullPolicy,
+      final boolean scheduledExpiry, final MeterRegistry meterRegistry) {
+    super("documents", maxEntries, maxSize, fullPolicy, scheduledExpiry, meterRegistry);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  protected Object toStoredObject(final String object) {
+    final CompressedDocument compressed =
+        this.documentCompressor != null ? this.documentCompressor.compress(object) : null;
+    return compressed != null ? compressed : object;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  protected String fromStoredObject(final Object stored) {
+    return stored instanceof final CompressedDocument compressed
+        ? this.documentCompressor.decompress(compressed)
+        : (String) stored;
+  }
+
+  /**
+   * Documents are Base64 strings (one byte per character), and compressed documents are weighed by their data.
+   */
+  @Override
+  protected int estimateSize(final Object object) {
+    if (object instanceof final CompressedDocument compressed) {
+      return compressed.getData().length + ENTRY_OVERHEAD;
+    }
+    return object != null ? ((String) object).length() + ENTRY_OVERHEAD : ENTRY_OVERHEAD;
+  }
+
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2020-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.rest.cache;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import se.idsec.signservice.integration.state.CacheableSignatureState;
+import se.idsec.signservice.integration.state.IntegrationServiceStateCache;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+
+/**
+ * A size-bounded in-memory {@link IntegrationServiceStateCache}. The size of a state is estimated as the size of its
+ * serialization.
+ *
+ * @author Martin Lindström
+ */
+@Slf4j
+public class BoundedInMemoryStateCache extends AbstractBoundedInMemoryIntegrationServiceCache<CacheableSignatureState>
+    implements IntegrationServiceStateCache {
+
+  /** The size used for states that can not be serialized. */
+  private static final int DEFAULT_STATE_SIZE = 16 * 1024;
+
+  /**
+   * Constructor.
+   *
+   * @param maxEntries the maximum number of entries (0 for no limit)
+   * @param maxSize the maximum total size in bytes (0 for no limit)
+   * @param fullPolicy what to do when the cache is full
+   * @param meterRegistry the meter registry (may be {@code null})
+   */
+  public BoundedInMemoryStateCache(
+      final long maxEntries, final long maxSize, final FullPolicy fullPolicy, final MeterRegistry meterRegistry) {
+    super("state", maxEntries, maxSize, fullPolicy, meterRegistry);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param maxEntries the maximum number of entries (0 for no limit)
+   * @param maxSize the maximum total size in bytes (0 for no limit)
+   * @param fullPolicy what to do when the cache is full
+   * @param scheduledExpiry whether entries should be removed at their expiration times
+   * @param meterRegistry the meter registry (may be {@code null})
+   */
+  public BoundedInMemoryStateCache(final long maxEntries, final long maxSize, final FullPolicy fullPolicy,
+      final boolean scheduledExpiry, final MeterRegistry meterRegistry) {
+    super("state", maxEntries, maxSize, fullPolicy, scheduledExpiry, meterRegistry);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  protected int estimateSize(final Object object) {
+    if (object == null) {
+      return ENTRY_OVERHEAD;
+    }
+    final CountingOutputStream counter = new CountingOutputStream();
+    try (final ObjectOutputStream out = new ObjectOutputStream(counter)) {
+      out.writeObject(object);
+    }
+    catch (final IOException e) {
+      log.debug("Failed to estimate size of state - using default", e);
+      return DEFAULT_STATE_SIZE;
+    }
+    return (int) Math.min(Integer.MAX_VALUE, counter.count + ENTRY_OVERHEAD);
+  }
+
+  /**
+   * An output stream that only counts the written bytes.
+   */
+  private static class CountingOutputStream extends OutputStream {
+
+    /** The number of bytes written. */
+    private long count;
+
+    /** {@inheritDoc} */
+    @Override
+    public void write(final int b) {
+      this.count++;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void write(final byte[] b, final int off, final int len) {
+      this.count += len;
+    }
+  }
+
+}
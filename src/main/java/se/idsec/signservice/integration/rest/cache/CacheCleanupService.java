@@ -15,14 +15,34 @@
  */
 package se.idsec.signservice.integration.rest.cache;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import se.idsec.signservice.integration.core.DocumentCache;
+import se.idsec.signservice.integration.core.IntegrationServiceCache;
 import se.idsec.signservice.integration.state.IntegrationServiceStateCache;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * Service for cleaning up expired cache entries.
+ * <p>
+ * If a {@link RedisCacheSweepLock} is available, only the node that holds the lock for a cache cleans it up. The
+ * other nodes skip the clean-up. Each clean-up is then scheduled to run after a random delay (up to the configured
+ * jitter) so that the same node does not always win. The delay does not block the scheduler thread.
+ * </p>
  *
  * @author Martin Lindström
  */
@@ -30,50 +50,184 @@ import se.idsec.signservice.integration.state.IntegrationServiceStateCache;
 @Slf4j
 public class CacheCleanupService {
 
+  /** Lock name for the document cache. */
+  private static final String DOCUMENT_CACHE = "documents";
+
+  /** Lock name for the state cache. */
+  private static final String STATE_CACHE = "state";
+
   /** The document cache. */
   private final DocumentCache documentCache;
 
   /** The state cache. */
   private final IntegrationServiceStateCache signatureStateCache;
 
+  /** The sweep lock (only available in Redis mode). */
+  private final RedisCacheSweepLock sweepLock;
+
+  /** The meter registry (may be {@code null}). */
+  private final MeterRegistry meterRegistry;
+
+  /** The scheduler used to delay the clean-ups by the jitter (may be {@code null}). */
+  private final TaskScheduler taskScheduler;
+
+  /** Whether this node held the sweep lock at the last clean-up (per cache). */
+  private final Map<String, AtomicInteger> lockOwner = new ConcurrentHashMap<>();
+
   /**
    * Constructor.
    *
    * @param documentCache the document cache
    * @param signatureStateCache the state cache
+   * @param sweepLock the sweep lock (available if Redis is used)
+   * @param meterRegistry the meter registry (for clean-up metrics)
+   * @param taskScheduler the scheduler (for delaying the clean-ups when the sweep lock is used)
    */
   public CacheCleanupService(
-      final DocumentCache documentCache, final IntegrationServiceStateCache signatureStateCache) {
+      final DocumentCache documentCache, final IntegrationServiceStateCache signatureStateCache,
+      final ObjectProvider<RedisCacheSweepLock> sweepLock, final ObjectProvider<MeterRegistry> meterRegistry,
+      final ObjectProvider<TaskScheduler> taskScheduler) {
     this.documentCache = documentCache;
     this.signatureStateCache = signatureStateCache;
+    this.sweepLock = sweepLock.getIfAvailable();
+    this.meterRegistry = meterRegistry.getIfAvailable();
+    this.taskScheduler = taskScheduler.getIfUnique();
   }
 
   /**
-   * Invokes the {@link DocumentCache#clearExpired()} method periodically.
+   * Invokes the {@link DocumentCache#clearExpired()} method periodically.
    */
   @Scheduled(fixedDelayString = "${signservice.cache.document.cleanup-interval:300000}", initialDelayString = "${signservice.cache.document.cleanup-interval:300000}")
   public void cleanupDocumentCache() {
-    try {
-      log.trace("Cleaning up expired cached documents ...");
-      this.documentCache.clearExpired();
-    }
-    catch (final Exception e) {
-      log.error("Error during document cache clean up", e);
-    }
+    this.schedule(() -> {
+      try {
+        log.trace("Cleaning up expired cached documents ...");
+        this.cleanup(DOCUMENT_CACHE, this.documentCache);
+      }
+      catch (final Exception e) {
+        log.error("Error during document cache clean up", e);
+      }
+    });
   }
 
   /**
-   * Invokes the {@link IntegrationServiceStateCache#clearExpired()} method periodically.
+   * Invokes the {@link IntegrationServiceStateCache#clearExpired()} method periodically.
    */
   @Scheduled(fixedDelayString = "${signservice.cache.state.cleanup-interval:300000}", initialDelayString = "${signservice.cache.state.cleanup-interval:300000}")
   public void cleanupStateCache() {
-    try {
-      log.trace("Cleaning up expired cached state objects ...");
-      this.signatureStateCache.clearExpired();
+    this.schedule(() -> {
+      try {
+        log.trace("Cleaning up expired cached state objects ...");
+        this.cleanup(STATE_CACHE, this.signatureStateCache);
+      }
+      catch (final Exception e) {
+        log.error("Error during signature state cache clean up", e);
+      }
+    });
+  }
+
+  /**
+   * Releases any sweep locks held by this node.
+   */
+  @PreDestroy
+  public void releaseLocks() {
+    if (this.sweepLock != null) {
+      this.lockOwner.forEach((name, owner) -> {
+        if (owner.get() == 1) {
+          this.sweepLock.release(name);
+        }
+      });
+    }
+  }
+
+  /**
+   * Runs the supplied clean-up. If the sweep lock is used, the clean-up is scheduled to run after a random delay (up to
+   * the configured jitter), and otherwise it is run at once.
+   *
+   * @param cleanup the clean-up
+   */
+  private void schedule(final Runnable cleanup) {
+    final long jitter = this.sweepLock != null ? this.sweepLock.getMaxJitter().toMillis() : 0;
+    if (jitter > 0 && this.taskScheduler != null) {
+      this.taskScheduler.schedule(cleanup, Instant.now().plusMillis(ThreadLocalRandom.current().nextLong(jitter + 1)));
     }
-    catch (final Exception e) {
-      log.error("Error during signature state cache clean up", e);
+    else {
+      cleanup.run();
     }
   }
 
+  /**
+   * Cleans up the supplied cache, provided that this node gets the sweep lock (if used).
+   *
+   * @param name the cache (and lock) name
+   * @param cache the cache
+   */
+  private void cleanup(final String name, final IntegrationServiceCache<?> cache) {
+    if (this.sweepLock != null) {
+      final boolean acquired = this.sweepLock.tryAcquire(name);
+      this.getLockOwner(name).set(acquired ? 1 : 0);
+      if (!acquired) {
+        log.debug("Clean-up of {} cache is handled by another node", name);
+        if (this.meterRegistry != null) {
+          this.counter("signservice.cache.sweep.skipped", "Number of clean-ups skipped since another node held the lock",
+              name).increment();
+        }
+        return;
+      }
+      log.trace("Sweep lock for {} cache acquired", name);
+    }
+
+    final long start = System.nanoTime();
+    if (cache instanceof final PurgeableCache purgeableCache) {
+      final int purged = purgeableCache.purgeExpired();
+      if (this.meterRegistry != null) {
+        this.counter("signservice.cache.sweep.purged", "Number of expired entries purged", name).increment(purged);
+      }
+    }
+    else {
+      cache.clearExpired();
+    }
+    if (this.meterRegistry != null) {
+      Timer.builder("signservice.cache.sweep.duration")
+          .description("Time spent cleaning up expired cache entries")
+          .tag("cache", name)
+          .register(this.meterRegistry)
+          .record(Duration.ofNanos(System.nanoTime() - start));
+    }
+  }
+
+  /**
+   * Gets the holder telling whether this node owns the sweep lock for the given cache.
+   *
+   * @param name the cache name
+   * @return the lock owner holder (1 if owner and 0 otherwise)
+   */
+  private AtomicInteger getLockOwner(final String name) {
+    return this.lockOwner.computeIfAbsent(name, n -> {
+      final AtomicInteger owner = new AtomicInteger();
+      if (this.meterRegistry != null) {
+        Gauge.builder("signservice.cache.sweep.lock-owner", owner, AtomicInteger::get)
+            .description("Whether this node held the clean-up lock at the last clean-up (1) or not (0)")
+            .tag("cache", n)
+            .register(this.meterRegistry);
+      }
+      return owner;
+    });
+  }
+
+  /**
+   * Gets a clean-up counter.
+   *
+   * @param meterName the meter name
+   * @param description the description
+   * @param name the cache name
+   * @return a counter
+   */
+  private Counter counter(final String meterName, final String description, final String name) {
+    return Counter.builder(meterName)
+        .description(description)
+        .tag("cache", name)
+        .register(this.meterRegistry);
+  }
+
 }
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2020-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.rest.cache;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A codec that encodes and decodes objects of a given type for the {@link CachedObjectRedisSerializer}.
+ *
+ * @param <T> the type handled by the codec
+ * @author Martin Lindström
+ */
+public interface CachedObjectCodec<T> {
+
+  /**
+   * Gets the type identifier that is written in the header of each encoded object. Type identifiers must be unique
+   * among the codecs installed in a serializer, and {@code 0} is reserved.
+   *
+   * @return the type identifier
+   */
+  byte getTypeId();
+
+  /**
+   * Gets the type of objects handled by this codec.
+   *
+   * @return the type
+   */
+  Class<T> getType();
+
+  /**
+   * Gets the lowest format version that can represent the supplied object. This version is written in the header of
+   * the encoded object, so that nodes running an earlier version of the service can read all objects that do not use
+   * features added later (which allows for rolling upgrades). The default implementation returns {@code 1}.
+   *
+   * @param object the object to encode
+   * @return the format version (at most {@link CachedObjectRedisSerializer#VERSION})
+   */
+  default int getVersion(final T object) {
+    return 1;
+  }
+
+  /**
+   * Encodes the supplied object using the format given by {@link #getVersion(Object)}.
+   *
+   * @param object the object to encode
+   * @param out the output to write to
+   * @throws IOException for write errors
+   */
+  void encode(final T object, final DataOutput out) throws IOException;
+
+  /**
+   * Decodes an object.
+   *
+   * @param in the input to read from
+   * @param version the format version given in the header of the encoded object
+   * @return the decoded object
+   * @throws IOException for read errors
+   */
+  T decode(final DataInput in, final int version) throws IOException;
+
+  /**
+   * Writes a length-prefixed UTF-8 string ({@code null} is written as length -1).
+   *
+   * @param value the string to write (may be {@code null})
+   * @param out the output to write to
+   * @throws IOException for write errors
+   */
+  static void writeString(final String value, final DataOutput out) throws IOException {
+    writeBytes(value != null ? value.getBytes(StandardCharsets.UTF_8) : null, out);
+  }
+
+  /**
+   * Reads a string written by {@link #writeString(String, DataOutput)}.
+   *
+   * @param in the input to read from
+   * @return the string (may be {@code null})
+   * @throws IOException for read errors
+   */
+  static String readString(final DataInput in) throws IOException {
+    final byte[] bytes = readBytes(in);
+    return bytes != null ? new String(bytes, StandardCharsets.UTF_8) : null;
+  }
+
+  /**
+   * Writes a length-prefixed byte array ({@code null} is written as length -1).
+   *
+   * @param value the bytes to write (may be {@code null})
+   * @param out the output to write to
+   * @throws IOException for write errors
+   */
+  static void writeBytes(final byte[] value, final DataOutput out) throws IOException {
+    if (value == null) {
+      out.writeInt(-1);
+      return;
+    }
+    out.writeInt(value.length);
+    out.write(value);
+  }
+
+  /**
+   * Reads a byte array written by {@link #writeBytes(byte[], DataOutput)}.
+   *
+   * @param in the input to read from
+   * @return the bytes (may be {@code null})
+   * @throws IOException for read errors
+   */
+  static byte[] readBytes(final DataInput in) throws IOException {
+    final int length = in.readInt();
+    if (length < 0) {
+      return null;
+    }
+    final byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return bytes;
+  }
+
+  /**
+   * Writes an optional long value.
+   *
+   * @param value the value to write (may be {@code null})
+   * @param out the output to write to
+   * @throws IOException for write errors
+   */
+  static void writeLong(final Long value, final DataOutput out) throws IOException {
+    out.writeBoolean(value != null);
+    if (value != null) {
+      out.writeLong(value);
+    }
+  }
+
+  /**
+   * Reads a value written by {@link #writeLong(Long, DataOutput)}.
+   *
+   * @param in the input to read from
+   * @return the value (may be {@code null})
+   * @throws IOException for read errors
+   */
+  static Long readLong(final DataInput in) throws IOException {
+    return in.readBoolean() ? in.readLong() : null;
+  }
+
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2020-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.rest.cache;
+
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A {@link RedisSerializer} for the objects stored by the Redis caches. Objects are written using a compact, versioned,
+ * binary format:
+ *
+ * <pre>
+ * magic (1 byte) | version (1 byte) | type (1 byte) | type specific encoding ...
+ * </pre>
+ * <p>
+ * The type specific encoding is performed by the installed {@link CachedObjectCodec}s. Objects for which no codec is
+ * installed are written using Java serialization (type 0).
+ * </p>
+ * <p>
+ * When decoding, values written using Java serialization (i.e., by a {@link JdkSerializationRedisSerializer}, which is
+ * the default serializer of a {@code RedisTemplate}) are also accepted.
+ * </p>
+ *
+ * @author Martin Lindström
+ */
+public class CachedObjectRedisSerializer implements RedisSerializer<Object> {
+
+  /** The first byte of all objects written by this serializer. */
+  public static final byte MAGIC = (byte) 0xC5;
+
+  /**
+   * The current (highest) format version. Each object is written using the lowest version that can represent it (see
+   * {@link CachedObjectCodec#getVersion(Object)}), so a node only fails to read objects that use features it does not
+   * know about.
+   * <ul>
+   * <li>1 - Initial version.</li>
+   * <li>2 - Support for compressed documents.</li>
+   * <li>3 - Support for documents referring to content-addressed contents.</li>
+   * </ul>
+   */
+  public static final byte VERSION = 3;
+
+  /** Type identifier for objects written using Java serialization. */
+  private static final byte JDK_TYPE_ID = 0;
+
+  /** The codecs indexed by type. */
+  private final Map<Class<?>, CachedObjectCodec<?>> codecsByType = new HashMap<>();
+
+  /** The codecs indexed by type identifier. */
+  private final Map<Byte, CachedObjectCodec<?>> codecsById = new HashMap<>();
+
+  /** For objects not handled by any codec, and for values written by earlier versions. */
+  private final JdkSerializationRedisSerializer jdkSerializer = new JdkSerializationRedisSerializer();
+
+  /**
+   * Creates a serializer with codecs for strings, {@link RedisDocumentCache.CachedDocument} and
+   * {@link RedisSignatureStateCache.CachedSignatureState} objects.
+   */
+  public CachedObjectRedisSerializer() {
+    this(List.of(new StringCodec(),
+        new RedisDocumentCache.CachedDocumentCodec(),
+        new RedisSignatureStateCache.CachedSignatureStateCodec()));
+  }
+
+  /**
+   * Creates a serializer with the supplied codecs.
+   *
+   * @param codecs the codecs to install
+   */
+  public CachedObjectRedisSerializer(final List<CachedObjectCodec<?>> codecs) {
+    for (final CachedObjectCodec<?> codec : Objects.requireNonNull(codecs, "codecs must not be null")) {
+      if (codec.getTypeId() == JDK_TYPE_ID) {
+        throw new IllegalArgumentException("Type identifier 0 is reserved");
+      }
+      if (this.codecsById.put(codec.getTypeId(), codec) != null) {
+        throw new IllegalArgumentException("Duplicate type identifier: " + codec.getTypeId());
+      }
+      this.codecsByType.put(codec.getType(), codec);
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public byte[] serialize(final Object value) throws SerializationException {
+    if (value == null) {
+      return new byte[0];
+    }
+    final CachedObjectCodec<?> codec = this.codecsByType.get(value.getClass());
+    try {
+      final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      final DataOutputStream out = new DataOutputStream(bytes);
+      out.writeByte(MAGIC);
+      if (codec == null) {
+        out.writeByte(1);
+        out.writeByte(JDK_TYPE_ID);
+        out.write(this.jdkSerializer.serialize(value));
+      }
+      else {
+        out.writeByte(getVersion(codec, value));
+        out.writeByte(codec.getTypeId());
+        encode(codec, value, out);
+      }
+      out.flush();
+      return bytes.toByteArray();
+    }
+    catch (final IOException e) {
+      throw new SerializationException("Failed to serialize " + value.getClass().getSimpleName(), e);
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public Object deserialize(final byte[] bytes) throws SerializationException {
+    if (bytes == null || bytes.length == 0) {
+      return null;
+    }
+    if (isJavaSerialized(bytes)) {
+      return this.jdkSerializer.deserialize(bytes);
+    }
+    if (bytes.length < 3 || bytes[0] != MAGIC) {
+      throw new SerializationException("Unknown serialization format");
+    }
+    final int version = bytes[1];
+    if (version < 1 || version > VERSION) {
+      throw new SerializationException("Unsupported serialization format version: " + version);
+    }
+    if (bytes[2] == JDK_TYPE_ID) {
+      final byte[] serialized = new byte[bytes.length - 3];
+      System.arraycopy(bytes, 3, serialized, 0, serialized.length);
+      return this.jdkSerializer.deserialize(serialized);
+    }
+    final CachedObjectCodec<?> codec = this.codecsById.get(bytes[2]);
+    if (codec == null) {
+      throw new SerializationException("No codec installed for type identifier " + bytes[2]);
+    }
+    try {
+      final DataInput in = new DataInputStream(new ByteArrayInputStream(bytes, 3, bytes.length - 3));
+      return codec.decode(in, version);
+    }
+    catch (final IOException e) {
+      throw new SerializationException("Failed to deserialize " + codec.getType().getSimpleName(), e);
+    }
+  }
+
+  /**
+   * Predicate telling whether the supplied bytes is a Java serialization stream.
+   *
+   * @param bytes the bytes to test
+   * @return {@code true} if the bytes start with the Java serialization stream magic
+   */
+  private static boolean isJavaSerialized(final byte[] bytes) {
+    return bytes.length > 1 && bytes[0] == (byte) 0xAC && bytes[1] == (byte) 0xED;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> int getVersion(final CachedObjectCodec<T> codec, final Object value) {
+    return codec.getVersion((T) value);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> void encode(final CachedObjectCodec<T> codec, final Object value, final DataOutput out)
+      throws IOException {
+    codec.encode((T) value, out);
+  }
+
+  /**
+   * Codec for strings (used for expiration index members).
+   */
+  private static class StringCodec implements CachedObjectCodec<String> {
+
+    /** {@inheritDoc} */
+    @Override
+    public byte getTypeId() {
+      return 1;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Class<String> getType() {
+      return String.class;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void encode(final String object, final DataOutput out) throws IOException {
+      CachedObjectCodec.writeString(object, out);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String decode(final DataInput in, final int version) throws IOException {
+      return CachedObjectCodec.readString(in);
+    }
+
+  }
+
+}
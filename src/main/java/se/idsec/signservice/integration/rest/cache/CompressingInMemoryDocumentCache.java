@@ -0,0 +1,138 @@
+/*
+ * Copyright 2020-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.rest.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import se.idsec.signservice.integration.core.DocumentCache;
+import se.idsec.signservice.integration.core.impl.AbstractIntegrationServiceCache;
+import se.idsec.signservice.integration.rest.cache.DocumentCompressor.CompressedDocument;
+
+import java.io.Serial;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An in-memory {@link DocumentCache} that stores the documents compressed using a {@link DocumentCompressor}.
+ *
+ * @author Martin Lindström
+ */
+@Slf4j
+public class CompressingInMemoryDocumentCache extends AbstractIntegrationServiceCache<String>
+    implements DocumentCache, MeasurableCache {
+
+  /** The cached entries. */
+  private final Map<String, CompressedCacheEntry> cache = new ConcurrentHashMap<>();
+
+  /** The document compressor. */
+  private final DocumentCompressor documentCompressor;
+
+  /**
+   * Constructor.
+   *
+   * @param documentCompressor the document compressor
+   */
+  public CompressingInMemoryDocumentCache(final DocumentCompressor documentCompressor) {
+    this.documentCompressor = Objects.requireNonNull(documentCompressor, "documentCompressor must not be null");
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  protected CacheEntry<String> getCacheEntry(final String id) {
+    final CompressedCacheEntry entry = this.cache.get(id);
+    if (entry == null || entry.compressedDocument == null) {
+      return entry;
+    }
+    return new CompressedCacheEntry(this.documentCompressor.decompress(entry.compressedDocument), null,
+        entry.ownerId, entry.expirationTime);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  protected void putCacheObject(
+      final String id, final String object, final String ownerId, final long expirationTime) {
+    final CompressedDocument compressed = this.documentCompressor.compress(object);
+    this.cache.put(id, new CompressedCacheEntry(compressed == null ? object : null, compressed, ownerId,
+        expirationTime));
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  protected void removeCacheObject(final String id) {
+    this.cache.remove(id);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public long getEntryCount() {
+    return this.cache.size();
+  }
+
+  /**
+   * Gets the size of the stored (compressed or Base64-encoded) documents.
+   */
+  @Override
+  public long getByteSize() {
+    return this.cache.values().stream()
+        .mapToLong(e -> e.compressedDocument != null ? e.compressedDocument.getData().length
+            : e.document != null ? e.document.length() : 0)
+        .sum();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void clearExpired() {
+    final long now = System.currentTimeMillis();
+    final int size = this.cache.size();
+    this.cache.values().removeIf(e -> now > e.expirationTime);
+    log.trace("Purged {} expired documents from the document cache", size - this.cache.size());
+  }
+
+  /**
+   * A cache entry holding the document either as is or compressed.
+   *
+   * @param document the document (if not compressed)
+   * @param compressedDocument the compressed document
+   * @param ownerId the owner ID
+   * @param expirationTime the expiration time
+   */
+  private record CompressedCacheEntry(String document, CompressedDocument compressedDocument, String ownerId,
+      long expirationTime) implements CacheEntry<String> {
+
+    /** For serialization. */
+    @Serial
+    private static final long serialVersionUID = 2446624564377287413L;
+
+    /** {@inheritDoc} */
+    @Override
+    public String getObject() {
+      return this.document;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String getOwnerId() {
+      return this.ownerId;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Long getExpirationTime() {
+      return this.expirationTime;
+    }
+  }
+
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2020-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.rest.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import se.idsec.signservice.integration.core.DocumentCache;
+import se.idsec.signservice.integration.core.impl.AbstractIntegrationServiceCache;
+import se.idsec.signservice.integration.rest.cache.DocumentCompressor.CompressedDocument;
+
+import java.io.Serial;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An in-memory {@link DocumentCache} where each distinct document is stored only once. The document contents are
+ * stored under their SHA-256 digest (see {@link DocumentDigest}), and each cached entry is a reference to these
+ * contents. The contents keep count of their references, and are removed when the last reference is removed or has
+ * expired.
+ * <p>
+ * This saves a lot of memory when many entries hold the same document, for example when the same template document is
+ * prepared for many signers.
+ * </p>
+ *
+ * @author Martin Lindström
+ */
+@Slf4j
+public class ContentAddressedInMemoryDocumentCache extends AbstractIntegrationServiceCache<String>
+    implements DocumentCache, MeasurableCache {
+
+  /** The cached entries (references to the document contents). */
+  private final Map<String, DocumentReference> references = new ConcurrentHashMap<>();
+
+  /** The document contents, indexed by their digests. */
+  private final Map<String, DocumentContent> contents = new ConcurrentHashMap<>();
+
+  /** The document compressor. If {@code null}, documents are not compressed. */
+  private final DocumentCompressor documentCompressor;
+
+  /**
+   * Constructor.
+   *
+   * @param documentCompressor the document compressor (if {@code null}, documents are not compressed)
+   */
+  public ContentAddressedInMemoryDocumentCache(final DocumentCompressor documentCompressor) {
+    this.documentCompressor = documentCompressor;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  protected CacheEntry<String> getCacheEntry(final String id) {
+    final DocumentReference reference = this.references.get(id);
+    if (reference == null) {
+      return null;
+    }
+    final DocumentContent content = this.contents.get(reference.digest());
+    if (content == null) {
+      // Released by a concurrent removal of the same entry ...
+      return null;
+    }
+    final String document = content.compressedDocument() != null
+        ? this.documentCompressor.decompress(content.compressedDocument())
+        : content.document();
+    return new DocumentReference(reference.digest(), document, reference.ownerId(), reference.expirationTime());
+  }
+
+  /**
+   * Adds a reference to the document contents. The contents are only stored (and compressed) if no other entry holds
+   * the same document.
+   */
+  @Override
+  protected void putCacheObject(
+      final String id, final String object, final String ownerId, final long expirationTime) {
+    final String digest = DocumentDigest.calculate(object);
+    if (this.contents.computeIfPresent(digest, (d, c) -> c.acquire()) == null) {
+      final CompressedDocument compressed =
+          this.documentCompressor != null ? this.documentCompressor.compress(object) : null;
+      this.contents.merge(digest, new DocumentContent(compressed == null ? object : null, compressed, 1),
+          (current, added) -> current.acquire());
+    }
+    else {
+      log.trace("Document for '{}' is already cached - adding reference to {}", id, digest);
+    }
+    final DocumentReference previous =
+        this.references.put(id, new DocumentReference(digest, null, ownerId, expirationTime));
+    if (previous != null) {
+      this.release(previous.digest());
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  protected void removeCacheObject(final String id) {
+    final DocumentReference reference = this.references.remove(id);
+    if (reference != null) {
+      this.release(reference.digest());
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void clearExpired() {
+    final long now = System.currentTimeMillis();
+    int purged = 0;
+    for (final Map.Entry<String, DocumentReference> entry : this.references.entrySet()) {
+      if (now > entry.getValue().expirationTime() && this.references.remove(entry.getKey(), entry.getValue())) {
+        this.release(entry.getValue().digest());
+        purged++;
+      }
+    }
+    log.trace("Purged {} expired documents from the document cache", purged);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public long getEntryCount() {
+    return this.references.size();
+  }
+
+  /**
+   * Gets the size of the stored (compressed or Base64-encoded) document contents. Contents referenced by several
+   * entries are only counted once.
+   */
+  @Override
+  public long getByteSize() {
+    return this.contents.values().stream()
+        .mapToLong(c -> c.compressedDocument() != null ? c.compressedDocument().getData().length
+            : c.document().length())
+        .sum();
+  }
+
+  /**
+   * Removes a reference to the given contents. If this was the last reference, the contents are removed.
+   *
+   * @param digest the digest of the contents
+   */
+  private void release(final String digest) {
+    this.contents.computeIfPresent(digest, (d, c) -> c.references() > 1 ? c.release() : null);
+  }
+
+  /**
+   * The stored contents of a document.
+   *
+   * @param document the document (if not compressed)
+   * @param compressedDocument the compressed document
+   * @param references the number of cache entries referring to the contents
+   */
+  private record DocumentContent(String document, CompressedDocument compressedDocument, int references) {
+
+    /**
+     * Returns a copy with one more reference.
+     *
+     * @return a DocumentContent
+     */
+    DocumentContent acquire() {
+      return new DocumentContent(this.document, this.compressedDocument, this.references + 1);
+    }
+
+    /**
+     * Returns a copy with one less reference.
+     *
+     * @return a DocumentContent
+     */
+    DocumentContent release() {
+      return new DocumentContent(this.document, this.compressedDocument, this.references - 1);
+    }
+  }
+
+  /**
+   * A cached entry referring to the document contents. When returned from {@link #getCacheEntry(String)}, the document
+   * is also included.
+   *
+   * @param digest the digest of the document contents
+   * @param document the document (only set when returned from {@link #getCacheEntry(String)})
+   * @param ownerId the owner ID
+   * @param expirationTime the expiration time
+   */
+  private record DocumentReference(String digest, String document, String ownerId, long expirationTime)
+      implements CacheEntry<String> {
+
+    /** For serialization. */
+    @Serial
+    private static final long serialVersionUID = 5052381796434297015L;
+
+    /** {@inheritDoc} */
+    @Override
+    public String getObject() {
+      return this.document;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String getOwnerId() {
+      return this.ownerId;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Long getExpirationTime() {
+      return this.expirationTime;
+    }
+  }
+
+}
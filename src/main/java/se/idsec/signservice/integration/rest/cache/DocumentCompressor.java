@@ -0,0 +1,259 @@
+/*
+ * Copyright 2020-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.rest.cache;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Serial;
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses cached documents. The documents handled by the document caches are Base64-encoded, so the compressor first
+ * decodes the document (saving a fourth of the size) and then deflates the bytes. If deflating does not make the
+ * document smaller (which may be the case for PDF documents with compressed streams) the decoded bytes are kept as they
+ * are.
+ * <p>
+ * The compression ratio and the CPU time spent compressing and decompressing are recorded as metrics (if a
+ * {@link MeterRegistry} is given).
+ * </p>
+ *
+ * @author Martin Lindström
+ */
+@Slf4j
+public class DocumentCompressor {
+
+  /** The default size threshold (in bytes) - 16 KB. */
+  public static final int DEFAULT_THRESHOLD = 16 * 1024;
+
+  /** The default compression level. */
+  public static final int DEFAULT_LEVEL = Deflater.BEST_SPEED;
+
+  /** Documents smaller than this (in bytes, after Base64 decoding) are not compressed. */
+  @Getter
+  private final int threshold;
+
+  /** The compression level (0-9). */
+  @Getter
+  private final int level;
+
+  /** Records the ratio between the stored size and the original (Base64) size. */
+  private final DistributionSummary compressionRatio;
+
+  /** Records the CPU time spent compressing. */
+  private final Timer compressTime;
+
+  /** Records the CPU time spent decompressing. */
+  private final Timer decompressTime;
+
+  /** For getting the CPU time of the current thread. */
+  private static final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+  /**
+   * Constructor.
+   *
+   * @param threshold documents smaller than this (in bytes, after Base64 decoding) are not compressed
+   * @param level the compression level (0-9)
+   * @param meterRegistry the meter registry (may be {@code null})
+   */
+  public DocumentCompressor(final int threshold, final int level, final MeterRegistry meterRegistry) {
+    if (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+      throw new IllegalArgumentException("Invalid compression level: " + level);
+    }
+    this.threshold = threshold;
+    this.level = level;
+    if (meterRegistry != null) {
+      this.compressionRatio = DistributionSummary.builder("signservice.cache.document.compression.ratio")
+          .description("Ratio between the stored size and the original size of compressed cached documents")
+          .register(meterRegistry);
+      this.compressTime = Timer.builder("signservice.cache.document.compression.cpu-time")
+          .description("CPU time spent compressing and decompressing cached documents")
+          .tag("operation", "compress")
+          .register(meterRegistry);
+      this.decompressTime = Timer.builder("signservice.cache.document.compression.cpu-time")
+          .description("CPU time spent compressing and decompressing cached documents")
+          .tag("operation", "decompress")
+          .register(meterRegistry);
+    }
+    else {
+      this.compressionRatio = null;
+      this.compressTime = null;
+      this.decompressTime = null;
+    }
+  }
+
+  /**
+   * Compresses the supplied (Base64-encoded) document.
+   *
+   * @param document the document
+   * @return the compressed document, or {@code null} if the document is smaller than the threshold or is not a
+   *     canonically Base64-encoded string (and should be stored as is)
+   */
+  public CompressedDocument compress(final String document) {
+    if (document == null || document.length() < (this.threshold / 3) * 4) {
+      return null;
+    }
+    final long start = cpuTime();
+    final byte[] bytes;
+    try {
+      bytes = Base64.getDecoder().decode(document);
+    }
+    catch (final IllegalArgumentException e) {
+      log.debug("Cached document is not Base64-encoded - will not compress");
+      return null;
+    }
+    if (bytes.length < this.threshold || !isCanonical(document, bytes)) {
+      // Too small, or not canonically encoded, in which case we can not restore the exact string.
+      return null;
+    }
+
+    final Deflater deflater = new Deflater(this.level);
+    final byte[] deflated;
+    try {
+      deflater.setInput(bytes);
+      deflater.finish();
+      final ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 2);
+      final byte[] buffer = new byte[8192];
+      while (!deflater.finished() && out.size() < bytes.length) {
+        out.write(buffer, 0, deflater.deflate(buffer));
+      }
+      deflated = deflater.finished() && out.size() < bytes.length ? out.toByteArray() : null;
+    }
+    finally {
+      deflater.end();
+    }
+
+    final CompressedDocument compressed = deflated != null
+        ? new CompressedDocument(deflated, bytes.length, true)
+        : new CompressedDocument(bytes, bytes.length, false);
+
+    if (this.compressTime != null) {
+      this.compressTime.record(cpuTime() - start, TimeUnit.NANOSECONDS);
+      this.compressionRatio.record((double) compressed.getData().length / document.length());
+    }
+    return compressed;
+  }
+
+  /**
+   * Restores a document compressed by {@link #compress(String)}.
+   *
+   * @param compressed the compressed document
+   * @return the (Base64-encoded) document
+   * @throws IllegalArgumentException if the compressed data is invalid
+   */
+  public String decompress(final CompressedDocument compressed) throws IllegalArgumentException {
+    final long start = cpuTime();
+    byte[] bytes = compressed.getData();
+    if (compressed.isDeflated()) {
+      final Inflater inflater = new Inflater();
+      try {
+        inflater.setInput(compressed.getData());
+        bytes = new byte[compressed.getLength()];
+        int pos = 0;
+        while (pos < bytes.length && !inflater.finished()) {
+          final int n = inflater.inflate(bytes, pos, bytes.length - pos);
+          if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+            throw new IllegalArgumentException("Truncated compressed document");
+          }
+          pos += n;
+        }
+      }
+      catch (final DataFormatException e) {
+        throw new IllegalArgumentException("Invalid compressed document", e);
+      }
+      finally {
+        inflater.end();
+      }
+    }
+    final String document = Base64.getEncoder().encodeToString(bytes);
+    if (this.decompressTime != null) {
+      this.decompressTime.record(cpuTime() - start, TimeUnit.NANOSECONDS);
+    }
+    return document;
+  }
+
+  /**
+   * Tells whether encoding the decoded bytes gives back the exact document. This is not the case if the document is
+   * not padded, or if the unused bits of the last character are not zero (which the decoder accepts).
+   *
+   * @param document the Base64-encoded document
+   * @param bytes the decoded bytes
+   * @return {@code true} if the document is canonically encoded
+   */
+  static boolean isCanonical(final String document, final byte[] bytes) {
+    if (document.length() != 4 * ((bytes.length + 2) / 3)) {
+      return false;
+    }
+    if (bytes.length == 0) {
+      return true;
+    }
+    // Only the last group can differ, so re-encode the bytes of that group ...
+    final int tail = bytes.length % 3 == 0 ? 3 : bytes.length % 3;
+    final byte[] last = new byte[tail];
+    System.arraycopy(bytes, bytes.length - tail, last, 0, tail);
+    return document.endsWith(Base64.getEncoder().encodeToString(last));
+  }
+
+  /**
+   * Gets the CPU time for the current thread (falls back to wall clock time if CPU time is not supported).
+   *
+   * @return time in nanoseconds
+   */
+  private static long cpuTime() {
+    return threadMXBean.isCurrentThreadCpuTimeSupported()
+        ? threadMXBean.getCurrentThreadCpuTime()
+        : System.nanoTime();
+  }
+
+  /**
+   * Representation of a compressed document.
+   */
+  @Getter
+  @Setter
+  @NoArgsConstructor
+  @AllArgsConstructor
+  public static class CompressedDocument implements Serializable {
+
+    /** For serialization. */
+    @Serial
+    private static final long serialVersionUID = 4469347727317521807L;
+
+    /** The stored bytes. */
+    private byte[] data;
+
+    /** The length of the document bytes (after Base64 decoding). */
+    private int length;
+
+    /** Whether the data is deflated (or just the decoded document bytes). */
+    private boolean deflated;
+
+  }
+
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2020-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.rest.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Calculates the digests used to identify document contents in content-addressed document caches.
+ *
+ * @author Martin Lindström
+ */
+public final class DocumentDigest {
+
+  /**
+   * Calculates the SHA-256 digest of the supplied (Base64-encoded) document.
+   *
+   * @param document the document
+   * @return the hex-encoded digest
+   */
+  public static String calculate(final String document) {
+    try {
+      final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      return HexFormat.of().formatHex(digest.digest(document.getBytes(StandardCharsets.UTF_8)));
+    }
+    catch (final NoSuchAlgorithmException e) {
+      // SHA-256 is supported by all Java implementations ...
+      throw new IllegalStateException("SHA-256 is not supported", e);
+    }
+  }
+
+  // Hidden constructor
+  private DocumentDigest() {
+  }
+
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2020-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.rest.cache;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import se.idsec.signservice.integration.core.DocumentCache;
+
+/**
+ * A {@link DocumentCache} decorator that records metrics (see {@link AbstractInstrumentedIntegrationServiceCache}).
+ *
+ * @author Martin Lindström
+ */
+public class InstrumentedDocumentCache extends AbstractInstrumentedIntegrationServiceCache<String>
+    implements DocumentCache {
+
+  /**
+   * Constructor.
+   *
+   * @param cache the cache to decorate
+   * @param meterRegistry the meter registry
+   */
+  public InstrumentedDocumentCache(final DocumentCache cache, final MeterRegistry meterRegistry) {
+    super(cache, "documents", meterRegistry);
+  }
+
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2020-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.rest.cache;
+
+/**
+ * A cache that can report its number of entries and the (estimated) size of these.
+ *
+ * @author Martin Lindström
+ */
+public interface MeasurableCache {
+
+  /**
+   * Gets the number of entries held by the cache.
+   *
+   * @return the number of entries, or -1 if not known
+   */
+  long getEntryCount();
+
+  /**
+   * Gets the (estimated) total size in bytes of the entries held by the cache.
+   *
+   * @return the size in bytes, or -1 if not known
+   */
+  default long getByteSize() {
+    return -1L;
+  }
+
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2020-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.rest.cache;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.data.redis.core.RedisTemplate;
+import se.idsec.signservice.integration.core.DocumentCache;
+
+import java.time.Duration;
+
+/**
+ * A {@link DocumentCache} with a near cache in front of a {@link RedisDocumentCache}.
+ * <p>
+ * Note that the near cache holds the documents uncompressed.
+ * </p>
+ *
+ * @author Martin Lindström
+ */
+public class NearCacheDocumentCache extends AbstractNearCacheIntegrationServiceCache<String> implements DocumentCache {
+
+  /**
+   * Constructor.
+   *
+   * @param redisCache the Redis cache
+   * @param redisTemplate the Redis template used for publishing invalidation messages
+   * @param maximumSize the maximum number of entries held in the near cache
+   * @param maxSize the maximum total size (in bytes) of the entries held in the near cache
+   * @param timeToLive the maximum time that an entry is held in the near cache
+   * @param meterRegistry the meter registry (may be {@code null})
+   */
+  public NearCacheDocumentCache(final RedisDocumentCache redisCache,
+      final RedisTemplate<String, Object> redisTemplate, final long maximumSize, final long maxSize,
+      final Duration timeToLive, final MeterRegistry meterRegistry) {
+    super(redisCache, redisTemplate, maximumSize, maxSize, timeToLive, meterRegistry);
+  }
+
+  /**
+   * Documents are Base64 strings (one byte per character).
+   */
+  @Override
+  protected int estimateSize(final String object) {
+    return object != null ? object.length() : 0;
+  }
+
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2020-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.rest.cache;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.data.redis.core.RedisTemplate;
+import se.idsec.signservice.integration.state.CacheableSignatureState;
+import se.idsec.signservice.integration.state.IntegrationServiceStateCache;
+
+import java.time.Duration;
+
+/**
+ * An {@link IntegrationServiceStateCache} with a near cache in front of a {@link RedisSignatureStateCache}.
+ *
+ * @author Martin Lindström
+ */
+public class NearCacheSignatureStateCache extends AbstractNearCacheIntegrationServiceCache<CacheableSignatureState>
+    implements IntegrationServiceStateCache {
+
+  /**
+   * Constructor.
+   *
+   * @param redisCache the Redis cache
+   * @param redisTemplate the Redis template used for publishing invalidation messages
+   * @param maximumSize the maximum number of entries held in the near cache
+   * @param maxSize the maximum total size (in bytes) of the entries held in the near cache
+   * @param timeToLive the maximum time that an entry is held in the near cache
+   * @param meterRegistry the meter registry (may be {@code null})
+   */
+  public NearCacheSignatureStateCache(final RedisSignatureStateCache redisCache,
+      final RedisTemplate<String, Object> redisTemplate, final long maximumSize, final long maxSize,
+      final Duration timeToLive, final MeterRegistry meterRegistry) {
+    super(redisCache, redisTemplate, maximumSize, maxSize, timeToLive, meterRegistry);
+  }
+
+}
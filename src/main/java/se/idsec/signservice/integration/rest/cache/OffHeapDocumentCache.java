@@ -0,0 +1,502 @@
+/*
+ * Copyright 2020-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.rest.cache;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import se.idsec.signservice.integration.core.DocumentCache;
+import se.idsec.signservice.integration.core.impl.AbstractIntegrationServiceCache;
+
+import java.io.IOException;
+import java.io.Serial;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Base64;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A {@link DocumentCache} that keeps the documents outside of the Java heap. Only a small handle for each document is
+ * kept on the heap.
+ * <p>
+ * The storage (the arena) is a number of slabs that are either direct byte buffers or memory mapped regions of a
+ * temporary file. The arena is divided into blocks of a fixed size, and a document is stored in as many blocks as
+ * needed. Free blocks are kept in a free list. If there are not enough free blocks for a new document, a
+ * {@link CacheFullException} is thrown.
+ * </p>
+ * <p>
+ * Documents are stored Base64-decoded (which saves a fourth of the size) if encoding the decoded bytes gives back the
+ * exact document. Other documents are stored as they are.
+ * </p>
+ * <p>
+ * The slabs are freed (and the file is unmapped and removed) by {@link #destroy()}, after which the cache can not be
+ * used.
+ * </p>
+ *
+ * @author Martin Lindström
+ */
+@Slf4j
+public class OffHeapDocumentCache extends AbstractIntegrationServiceCache<String>
+    implements DocumentCache, MeasurableCache, DisposableBean {
+
+  /** The default block size - 64 KB. */
+  public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+
+  /** The maximum size of a slab - 1 GB. */
+  private static final long MAX_SLAB_SIZE = 1024L * 1024L * 1024L;
+
+  /** The block size. */
+  @Getter
+  private final int blockSize;
+
+  /** The number of blocks in each slab. */
+  private final int blocksPerSlab;
+
+  /** The slabs. */
+  private final ByteBuffer[] slabs;
+
+  /** The file backing the slabs (if memory mapped). */
+  private final Path file;
+
+  /** The free blocks. */
+  private final Deque<Integer> freeBlocks = new ArrayDeque<>();
+
+  /** Guards the free blocks. */
+  private final Lock freeBlocksLock = new ReentrantLock();
+
+  /** The total number of blocks. */
+  @Getter
+  private final int totalBlocks;
+
+  /** The handles for the stored documents. */
+  private final Map<String, Handle> handles = new ConcurrentHashMap<>();
+
+  /**
+   * Guards the slabs - the read lock is held while accessing the slabs, and the write lock while freeing them (since
+   * accessing a freed buffer may crash the JVM).
+   */
+  private final ReadWriteLock slabsLock = new ReentrantReadWriteLock();
+
+  /** Whether the slabs have been freed. */
+  private boolean destroyed = false;
+
+  /**
+   * Constructor.
+   *
+   * @param capacity the total capacity (in bytes)
+   * @param blockSize the block size (in bytes)
+   * @param storage the type of storage to use
+   * @param directory the directory for the memory mapped file (only used for {@link Storage#MAPPED}, if {@code null}
+   *     the system temporary directory is used)
+   * @param meterRegistry the meter registry (may be {@code null})
+   * @throws IOException if the memory mapped file can not be created
+   */
+  public OffHeapDocumentCache(final long capacity, final int blockSize, final Storage storage, final Path directory,
+      final MeterRegistry meterRegistry) throws IOException {
+    if (blockSize <= 0 || capacity < blockSize) {
+      throw new IllegalArgumentException("Invalid capacity or block size");
+    }
+    this.blockSize = blockSize;
+    this.blocksPerSlab = (int) (MAX_SLAB_SIZE / blockSize);
+    this.totalBlocks = (int) Math.min(Integer.MAX_VALUE, capacity / blockSize);
+    final int slabCount = (this.totalBlocks + this.blocksPerSlab - 1) / this.blocksPerSlab;
+    this.slabs = new ByteBuffer[slabCount];
+
+    if (storage == Storage.MAPPED) {
+      this.file = Files.createTempFile(
+          Optional.ofNullable(directory).orElseGet(() -> Path.of(System.getProperty("java.io.tmpdir"))),
+          "ss-documents-", ".arena");
+      this.file.toFile().deleteOnExit();
+      try (final FileChannel channel = FileChannel.open(this.file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+        for (int i = 0; i < slabCount; i++) {
+          final long offset = (long) i * this.blocksPerSlab * blockSize;
+          this.slabs[i] = channel.map(FileChannel.MapMode.READ_WRITE, offset, this.slabSize(i));
+        }
+      }
+    }
+    else {
+      this.file = null;
+      for (int i = 0; i < slabCount; i++) {
+        this.slabs[i] = ByteBuffer.allocateDirect((int) this.slabSize(i));
+      }
+    }
+    for (int i = 0; i < this.totalBlocks; i++) {
+      this.freeBlocks.add(i);
+    }
+    log.info("Off-heap document cache created - {} blocks of {} bytes ({})", this.totalBlocks, blockSize,
+        this.file != null ? "mapped to " + this.file : "direct memory");
+
+    if (meterRegistry != null) {
+      Gauge.builder("signservice.cache.offheap.used-blocks", this, c -> c.totalBlocks - c.getFreeBlocks())
+          .description("Number of blocks in use by the off-heap document cache")
+          .register(meterRegistry);
+      Gauge.builder("signservice.cache.offheap.entries", this.handles, Map::size)
+          .description("Number of documents held by the off-heap document cache")
+          .register(meterRegistry);
+    }
+  }
+
+  /**
+   * Gets the number of free blocks.
+   *
+   * @return the number of free blocks
+   */
+  public int getFreeBlocks() {
+    this.freeBlocksLock.lock();
+    try {
+      return this.freeBlocks.size();
+    }
+    finally {
+      this.freeBlocksLock.unlock();
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public long getEntryCount() {
+    return this.handles.size();
+  }
+
+  /**
+   * Gets the size of the blocks in use.
+   */
+  @Override
+  public long getByteSize() {
+    return (long) (this.totalBlocks - this.getFreeBlocks()) * this.blockSize;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  protected CacheEntry<String> getCacheEntry(final String id) {
+    final Handle handle = this.handles.get(id);
+    if (handle == null) {
+      return null;
+    }
+    final byte[] bytes = new byte[handle.length];
+    this.slabsLock.readLock().lock();
+    try {
+      this.checkNotDestroyed();
+      int offset = 0;
+      for (final int block : handle.blocks) {
+        final int len = Math.min(this.blockSize, handle.length - offset);
+        this.slab(block).get(this.position(block), bytes, offset, len);
+        offset += len;
+      }
+    }
+    finally {
+      this.slabsLock.readLock().unlock();
+    }
+    // The handle may have been removed (and its blocks reused) while we were reading ...
+    if (this.handles.get(id) != handle) {
+      return this.getCacheEntry(id);
+    }
+    final String document = handle.decoded
+        ? Base64.getEncoder().encodeToString(bytes)
+        : new String(bytes, StandardCharsets.UTF_8);
+    return new OffHeapCacheEntry(document, handle.ownerId, handle.expirationTime);
+  }
+
+  /**
+   * Stores the document in the arena. If there are not enough free blocks, a {@link CacheFullException} is thrown.
+   */
+  @Override
+  protected void putCacheObject(
+      final String id, final String object, final String ownerId, final long expirationTime) {
+    byte[] bytes = decode(object);
+    final boolean decoded = bytes != null;
+    if (bytes == null) {
+      bytes = object != null ? object.getBytes(StandardCharsets.UTF_8) : new byte[0];
+    }
+    final int[] blocks = this.allocate((bytes.length + this.blockSize - 1) / this.blockSize);
+    this.slabsLock.readLock().lock();
+    try {
+      this.checkNotDestroyed();
+      int offset = 0;
+      for (final int block : blocks) {
+        final int len = Math.min(this.blockSize, bytes.length - offset);
+        this.slab(block).put(this.position(block), bytes, offset, len);
+        offset += len;
+      }
+    }
+    catch (final RuntimeException e) {
+      this.release(blocks);
+      throw e;
+    }
+    finally {
+      this.slabsLock.readLock().unlock();
+    }
+    this.release(this.handles.put(id, new Handle(blocks, bytes.length, decoded, ownerId, expirationTime)));
+  }
+
+  /**
+   * Decodes the supplied document, provided that it is canonically Base64-encoded (so that encoding the decoded bytes
+   * gives back the exact document).
+   *
+   * @param document the document (may be {@code null})
+   * @return the decoded bytes, or {@code null} if the document can not be stored decoded
+   */
+  private static byte[] decode(final String document) {
+    if (document == null) {
+      return null;
+    }
+    try {
+      final byte[] bytes = Base64.getDecoder().decode(document);
+      return DocumentCompressor.isCanonical(document, bytes) ? bytes : null;
+    }
+    catch (final IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  protected void removeCacheObject(final String id) {
+    this.release(this.handles.remove(id));
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void clearExpired() {
+    final long now = System.currentTimeMillis();
+    int purged = 0;
+    for (final Map.Entry<String, Handle> entry : this.handles.entrySet()) {
+      if (entry.getValue().expirationTime < now && this.handles.remove(entry.getKey(), entry.getValue())) {
+        this.release(entry.getValue());
+        purged++;
+      }
+    }
+    log.trace("Purged {} expired documents from off-heap document cache", purged);
+  }
+
+  /**
+   * Frees the slabs and removes the memory mapped file (if used). The cache can not be used after this call.
+   */
+  @Override
+  public void destroy() {
+    this.slabsLock.writeLock().lock();
+    try {
+      if (this.destroyed) {
+        return;
+      }
+      this.destroyed = true;
+      this.handles.clear();
+      for (int i = 0; i < this.slabs.length; i++) {
+        free(this.slabs[i]);
+        this.slabs[i] = null;
+      }
+    }
+    finally {
+      this.slabsLock.writeLock().unlock();
+    }
+    if (this.file != null) {
+      try {
+        Files.deleteIfExists(this.file);
+      }
+      catch (final IOException e) {
+        log.warn("Failed to delete {}", this.file, e);
+      }
+    }
+  }
+
+  /**
+   * Allocates the given number of blocks.
+   *
+   * @param count the number of blocks
+   * @return the allocated blocks
+   * @throws CacheFullException if there are not enough free blocks
+   */
+  private int[] allocate(final int count) throws CacheFullException {
+    final int available;
+    this.freeBlocksLock.lock();
+    try {
+      available = this.freeBlocks.size();
+      if (available >= count) {
+        final int[] blocks = new int[count];
+        for (int i = 0; i < count; i++) {
+          blocks[i] = this.freeBlocks.pop();
+        }
+        return blocks;
+      }
+    }
+    finally {
+      this.freeBlocksLock.unlock();
+    }
+    log.info("Off-heap document cache is full - {} blocks needed, {} available", count, available);
+    throw new CacheFullException("Document cache is full", AbstractBoundedInMemoryIntegrationServiceCache.RETRY_AFTER);
+  }
+
+  /**
+   * Returns the blocks of the supplied handle to the free list.
+   *
+   * @param handle the handle (may be {@code null})
+   */
+  private void release(final Handle handle) {
+    if (handle != null) {
+      this.release(handle.blocks);
+    }
+  }
+
+  /**
+   * Returns the supplied blocks to the free list.
+   *
+   * @param blocks the blocks
+   */
+  private void release(final int[] blocks) {
+    this.freeBlocksLock.lock();
+    try {
+      for (final int block : blocks) {
+        this.freeBlocks.push(block);
+      }
+    }
+    finally {
+      this.freeBlocksLock.unlock();
+    }
+  }
+
+  /**
+   * Throws an {@link IllegalStateException} if the slabs have been freed. Must be called with the slabs lock held.
+   */
+  private void checkNotDestroyed() {
+    if (this.destroyed) {
+      throw new IllegalStateException("Off-heap document cache has been destroyed");
+    }
+  }
+
+  /**
+   * Frees the memory of a direct or memory mapped buffer at once (instead of when the buffer is garbage collected).
+   * This is done using {@code sun.misc.Unsafe.invokeCleaner}, and if not available, the memory is released by the
+   * garbage collector.
+   *
+   * @param buffer the buffer (may be {@code null})
+   */
+  private static void free(final ByteBuffer buffer) {
+    if (buffer == null) {
+      return;
+    }
+    try {
+      final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      final Field field = unsafeClass.getDeclaredField("theUnsafe");
+      field.setAccessible(true);
+      unsafeClass.getMethod("invokeCleaner", ByteBuffer.class).invoke(field.get(null), buffer);
+    }
+    catch (final ReflectiveOperationException | RuntimeException e) {
+      log.debug("Could not free off-heap buffer - memory is released when the buffer is garbage collected", e);
+    }
+  }
+
+  /**
+   * Gets the slab holding the given block.
+   *
+   * @param block the block index
+   * @return the slab
+   */
+  private ByteBuffer slab(final int block) {
+    return this.slabs[block / this.blocksPerSlab];
+  }
+
+  /**
+   * Gets the position of the given block within its slab.
+   *
+   * @param block the block index
+   * @return the position
+   */
+  private int position(final int block) {
+    return (block % this.blocksPerSlab) * this.blockSize;
+  }
+
+  /**
+   * Gets the size (in bytes) of the given slab.
+   *
+   * @param slab the slab index
+   * @return the slab size
+   */
+  private long slabSize(final int slab) {
+    return (long) Math.min(this.blocksPerSlab, this.totalBlocks - slab * this.blocksPerSlab) * this.blockSize;
+  }
+
+  /**
+   * The type of storage used for the arena.
+   */
+  public enum Storage {
+
+    /** Direct byte buffers (allocated outside of the heap). */
+    DIRECT,
+
+    /** Memory mapped regions of a temporary file. */
+    MAPPED
+  }
+
+  /**
+   * The on-heap handle for a stored document.
+   *
+   * @param blocks the blocks holding the document
+   * @param length the length (in bytes) of the stored document
+   * @param decoded whether the document is stored Base64-decoded (and otherwise as UTF-8)
+   * @param ownerId the owner ID
+   * @param expirationTime the expiration time
+   */
+  private record Handle(int[] blocks, int length, boolean decoded, String ownerId, long expirationTime) {
+  }
+
+  /**
+   * The cache entry returned by {@link #getCacheEntry(String)}.
+   *
+   * @param document the document
+   * @param ownerId the owner ID
+   * @param expirationTime the expiration time
+   */
+  private record OffHeapCacheEntry(String document, String ownerId, Long expirationTime)
+      implements CacheEntry<String> {
+
+    /** For serialization. */
+    @Serial
+    private static final long serialVersionUID = -2466315470587451340L;
+
+    /** {@inheritDoc} */
+    @Override
+    public String getObject() {
+      return this.document;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String getOwnerId() {
+      return this.ownerId;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Long getExpirationTime() {
+      return this.expirationTime;
+    }
+  }
+
+}
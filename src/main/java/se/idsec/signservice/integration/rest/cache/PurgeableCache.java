@@ -0,0 +1,34 @@
+/*
+ * Copyright 2020-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.rest.cache;
+
+import se.idsec.signservice.integration.core.IntegrationServiceCache;
+
+/**
+ * A cache that can report how many expired entries that were purged.
+ *
+ * @author Martin Lindström
+ */
+public interface PurgeableCache {
+
+  /**
+   * Purges expired entries. Has the same effect as {@link IntegrationServiceCache#clearExpired()}.
+   *
+   * @return the number of purged entries
+   */
+  int purgeExpired();
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2020-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.rest.cache;
+
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import se.idsec.signservice.integration.core.DocumentCache;
+import se.idsec.signservice.integration.rest.cache.DocumentCompressor.CompressedDocument;
+import se.idsec.signservice.integration.rest.cache.RedisDocumentCache.CachedDocument;
+
+/**
+ * A {@link DocumentCache} using the non-blocking {@link ReactiveRedisTemplate}. The documents are stored in the same
+ * way as by {@link RedisDocumentCache}, except that content-addressed storage is not supported.
+ *
+ * @author Martin Lindström
+ */
+@Slf4j
+public class ReactiveRedisDocumentCache extends AbstractReactiveRedisIntegrationServiceCache<String, CachedDocument>
+    implements DocumentCache {
+
+  /** Used to restore compressed documents if no compressor has been assigned. */
+  private static final DocumentCompressor defaultDecompressor =
+      new DocumentCompressor(DocumentCompressor.DEFAULT_THRESHOLD, DocumentCompressor.DEFAULT_LEVEL, null);
+
+  /** The document compressor. If {@code null}, documents are not compressed. */
+  @Setter
+  private DocumentCompressor documentCompressor;
+
+  /**
+   * Constructor.
+   *
+   * @param redisTemplate the reactive Redis template
+   */
+  public ReactiveRedisDocumentCache(final ReactiveRedisTemplate<String, Object> redisTemplate) {
+    super(redisTemplate);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  protected String getRedisHashName() {
+    return "ssDocuments";
+  }
+
+  /**
+   * Creates the cached document. If a {@link DocumentCompressor} has been assigned the document is compressed.
+   */
+  @Override
+  protected CachedDocument createCacheObject(final String id, final String object, final String ownerId,
+      final long expirationTime) {
+    final CompressedDocument compressed =
+        this.documentCompressor != null ? this.documentCompressor.compress(object) : null;
+    if (compressed != null) {
+      final CachedDocument document = new CachedDocument(id, null, ownerId, expirationTime);
+      document.setCompressedDocument(compressed);
+      return document;
+    }
+    return new CachedDocument(id, object, ownerId, expirationTime);
+  }
+
+  /**
+   * Restores the document if it has been stored compressed.
+   */
+  @Override
+  protected CacheEntry<String> restoreCacheEntry(final CachedDocument object) {
+    if (object.getContentDigest() != null) {
+      log.warn("Document '{}' refers to content-addressed contents - not supported by {}", object.getId(),
+          this.getClass().getSimpleName());
+      return null;
+    }
+    if (object.getCompressedDocument() == null) {
+      return object;
+    }
+    final DocumentCompressor decompressor =
+        this.documentCompressor != null ? this.documentCompressor : defaultDecompressor;
+    return new CachedDocument(object.getId(), decompressor.decompress(object.getCompressedDocument()),
+        object.getOwnerId(), object.getExpirationTime());
+  }
+
+}
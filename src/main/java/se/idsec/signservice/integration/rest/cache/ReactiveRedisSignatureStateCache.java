@@ -0,0 +1,55 @@
+/*
+ * Copyright 2020-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.rest.cache;
+
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import se.idsec.signservice.integration.rest.cache.RedisSignatureStateCache.CachedSignatureState;
+import se.idsec.signservice.integration.state.CacheableSignatureState;
+import se.idsec.signservice.integration.state.IntegrationServiceStateCache;
+
+/**
+ * An {@link IntegrationServiceStateCache} using the non-blocking {@link ReactiveRedisTemplate}. The states are stored
+ * in the same way as by {@link RedisSignatureStateCache}.
+ *
+ * @author Martin Lindström
+ */
+public class ReactiveRedisSignatureStateCache
+    extends AbstractReactiveRedisIntegrationServiceCache<CacheableSignatureState, CachedSignatureState>
+    implements IntegrationServiceStateCache {
+
+  /**
+   * Constructor.
+   *
+   * @param redisTemplate the reactive Redis template
+   */
+  public ReactiveRedisSignatureStateCache(final ReactiveRedisTemplate<String, Object> redisTemplate) {
+    super(redisTemplate);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  protected String getRedisHashName() {
+    return "ssSignatureState";
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  protected CachedSignatureState createCacheObject(
+      final String id, final CacheableSignatureState object, final String ownerId, final long expirationTime) {
+    return new CachedSignatureState(id, object, ownerId, expirationTime);
+  }
+
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2020-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.rest.cache;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * A lease-based lock stored in Redis that is used to ensure that only one node (of those sharing a Redis) purges
+ * expired entries from a cache.
+ * <p>
+ * A node that acquires the lock holds it until the lease expires. The lease is not released when the sweep is done,
+ * since other nodes running the sweep at (almost) the same time should skip it. The lease time should therefore be
+ * shorter than the cleanup interval, and longer than the time budget for purging (see
+ * {@link AbstractRedisIntegrationServiceCache#setPurgeTimeBudget(Duration)}). A node that already holds the lock may
+ * acquire it again (which extends the lease).
+ * </p>
+ * <p>
+ * The lock only serves to avoid duplicate work. Purging is idempotent, so if a lease expires while its holder is still
+ * purging, the worst outcome is that two nodes purge the same entries.
+ * </p>
+ *
+ * @author Martin Lindström
+ */
+@Slf4j
+public class RedisCacheSweepLock {
+
+  /** The default lease time. */
+  public static final Duration DEFAULT_LEASE_TIME = Duration.ofMinutes(1);
+
+  /** The default maximum jitter. */
+  public static final Duration DEFAULT_MAX_JITTER = Duration.ofSeconds(5);
+
+  /**
+   * Acquires the lock if it is free, or already held by us. KEYS[1] is the lock key, ARGV[1] the node ID and ARGV[2]
+   * the lease time (in millis). Returns 1 if the lock was acquired, and 0 if it is held by someone else.
+   */
+  private static final RedisScript<Long> ACQUIRE_SCRIPT = new DefaultRedisScript<>("""
+      local owner = redis.call('GET', KEYS[1])
+      if (not owner) or owner == ARGV[1] then
+        redis.call('SET', KEYS[1], ARGV[1], 'PX', ARGV[2])
+        return 1
+      end
+      return 0""", Long.class);
+
+  /** Releases the lock if held by us. KEYS[1] is the lock key and ARGV[1] the node ID. */
+  private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>("""
+      if redis.call('GET', KEYS[1]) == ARGV[1] then
+        return redis.call('DEL', KEYS[1])
+      end
+      return 0""", Long.class);
+
+  /** The Redis template. */
+  private final StringRedisTemplate redisTemplate;
+
+  /** The lease time. */
+  @Getter
+  private final Duration leaseTime;
+
+  /** Identifies this node as the lock owner. */
+  @Getter
+  private final String nodeId = UUID.randomUUID().toString();
+
+  /**
+   * The maximum random delay that a node should wait before trying to acquire the lock (so that the same node does not
+   * always win).
+   */
+  @Getter
+  private Duration maxJitter = DEFAULT_MAX_JITTER;
+
+  /**
+   * Constructor.
+   *
+   * @param redisTemplate the Redis template
+   * @param leaseTime the lease time (if {@code null}, {@link #DEFAULT_LEASE_TIME} is used)
+   */
+  public RedisCacheSweepLock(final StringRedisTemplate redisTemplate, final Duration leaseTime) {
+    this.redisTemplate = Objects.requireNonNull(redisTemplate, "redisTemplate must not be null");
+    this.leaseTime = Optional.ofNullable(leaseTime).orElse(DEFAULT_LEASE_TIME);
+  }
+
+  /**
+   * Assigns the maximum random delay that a node should wait before trying to acquire the lock. The default is
+   * {@link #DEFAULT_MAX_JITTER}.
+   *
+   * @param maxJitter the maximum jitter
+   */
+  public void setMaxJitter(final Duration maxJitter) {
+    this.maxJitter = Optional.ofNullable(maxJitter).orElse(Duration.ZERO);
+  }
+
+  /**
+   * Tries to acquire the lock with the given name.
+   *
+   * @param name the lock name
+   * @return {@code true} if the lock was acquired (or extended), and {@code false} if it is held by another node
+   */
+  public boolean tryAcquire(final String name) {
+    final Long result = this.redisTemplate.execute(ACQUIRE_SCRIPT, List.of(getLockKey(name)),
+        this.nodeId, String.valueOf(this.leaseTime.toMillis()));
+    final boolean acquired = result != null && result > 0;
+    log.trace("Sweep lock '{}' {}", name, acquired ? "acquired" : "not acquired");
+    return acquired;
+  }
+
+  /**
+   * Releases the lock with the given name (if held by this node).
+   *
+   * @param name the lock name
+   */
+  public void release(final String name) {
+    this.redisTemplate.execute(RELEASE_SCRIPT, List.of(getLockKey(name)), this.nodeId);
+  }
+
+  /**
+   * Gets the Redis key for the lock.
+   *
+   * @param name the lock name
+   * @return the key
+   */
+  private static String getLockKey(final String name) {
+    return "ssCacheSweepLock:{" + name + "}";
+  }
+
+}
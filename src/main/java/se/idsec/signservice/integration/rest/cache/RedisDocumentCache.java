@@ -15,20 +15,88 @@
  */
 package se.idsec.signservice.integration.rest.cache;
 
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import se.idsec.signservice.integration.core.DocumentCache;
+import se.idsec.signservice.integration.rest.cache.DocumentCompressor.CompressedDocument;
 import se.idsec.signservice.integration.rest.cache.RedisDocumentCache.CachedDocument;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serial;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Objects;
 
 /**
  * A Redis {@link DocumentCache}.
+ * <p>
+ * If content-addressed storage is enabled (see {@link #setContentAddressed(boolean)}), each distinct document is only
+ * stored once. The document contents are stored under a key given by their SHA-256 digest, and the cached entries only
+ * hold the digest. The number of entries referring to the contents is kept in a counter next to the contents, and the
+ * contents are removed when the last entry is removed. Since expired entries that are purged do not update the counter,
+ * the contents are also given a TTL that is extended to the expiration time of the longest living entry referring to
+ * them.
+ * </p>
  *
  * @author Martin Lindström
  */
+@Slf4j
 public class RedisDocumentCache extends AbstractRedisIntegrationServiceCache<String, CachedDocument>
     implements DocumentCache {
 
+  /** Used to restore compressed documents if no compressor has been assigned. */
+  private static final DocumentCompressor defaultDecompressor =
+      new DocumentCompressor(DocumentCompressor.DEFAULT_THRESHOLD, DocumentCompressor.DEFAULT_LEVEL, null);
+
+  /**
+   * Adds a reference to document contents and extends their TTL. The contents (ARGV[2]) are written if they do not
+   * exist. If not given and the contents do not exist, 0 is returned, otherwise the number of references.
+   */
+  private static final RedisScript<Long> ACQUIRE_CONTENT_SCRIPT = new DefaultRedisScript<>("""
+      if redis.call('EXISTS', KEYS[1]) == 0 then
+        if #ARGV < 2 then
+          return 0
+        end
+        redis.call('SET', KEYS[1], ARGV[2])
+      end
+      local references = redis.call('INCR', KEYS[2])
+      local ttl = tonumber(ARGV[1])
+      if redis.call('PTTL', KEYS[1]) < ttl then
+        redis.call('PEXPIRE', KEYS[1], ttl)
+        redis.call('PEXPIRE', KEYS[2], ttl)
+      end
+      return references
+      """, Long.class);
+
+  /** Removes a reference to document contents, and removes the contents if this was the last reference. */
+  private static final RedisScript<Long> RELEASE_CONTENT_SCRIPT = new DefaultRedisScript<>("""
+      local references = redis.call('DECR', KEYS[2])
+      if references <= 0 then
+        redis.call('DEL', KEYS[1], KEYS[2])
+      end
+      return references
+      """, Long.class);
+
+  /** The Redis template. */
+  private final RedisTemplate<String, Object> redisTemplate;
+
+  /** The document compressor. If {@code null}, documents are not compressed. */
+  @Setter
+  private DocumentCompressor documentCompressor;
+
+  /** Whether each distinct document should be stored only once. */
+  @Setter
+  @Getter
+  private boolean contentAddressed = false;
+
   /**
    * Constructor.
    *
@@ -36,6 +104,7 @@ public class RedisDocumentCache extends AbstractRedisIntegrationServiceCache<Str
    */
   public RedisDocumentCache(final RedisTemplate<String, Object> redisTemplate) {
     super(redisTemplate);
+    this.redisTemplate = redisTemplate;
   }
 
   /** {@inheritDoc} */
@@ -44,13 +113,181 @@ public class RedisDocumentCache extends AbstractRedisIntegrationServiceCache<Str
     return "ssDocuments";
   }
 
-  /** {@inheritDoc} */
+  /**
+   * Restores the document if it has been stored compressed, or reads the document contents if the entry refers to
+   * content-addressed contents.
+   */
+  @Override
+  protected CacheEntry<String> getCacheEntry(final String id) {
+    return this.resolve(super.getCacheEntry(id));
+  }
+
+  /**
+   * Also releases the document contents if the entry was claimed and refers to content-addressed contents.
+   */
+  @Override
+  protected CacheEntry<String> claimCacheEntry(final String id, final String requesterId) {
+    final CacheEntry<String> entry = super.claimCacheEntry(id, requesterId);
+    final CacheEntry<String> resolved = this.resolve(entry);
+    if (entry instanceof final CachedDocument document && document.getContentDigest() != null
+        && Objects.equals(document.getOwnerId(), requesterId)) {
+      this.releaseContent(document.getContentDigest());
+    }
+    return resolved;
+  }
+
+  /**
+   * If content-addressed storage is enabled, the entry is claimed so that the contents it refers to can be released.
+   */
+  @Override
+  protected void removeCacheObject(final String id) {
+    if (!this.contentAddressed) {
+      super.removeCacheObject(id);
+      return;
+    }
+    if (super.claimCacheEntry(id) instanceof final CachedDocument document && document.getContentDigest() != null) {
+      this.releaseContent(document.getContentDigest());
+    }
+  }
+
+  /**
+   * Creates the cached document. If content-addressed storage is enabled, the document contents are stored (unless
+   * they already exist) and the returned object refers to them. Otherwise, if a {@link DocumentCompressor} has been
+   * assigned, the document is compressed.
+   */
   @Override
   protected CachedDocument createCacheObject(final String id, final String object, final String ownerId,
       final long expirationTime) {
+    if (this.contentAddressed) {
+      final String digest = DocumentDigest.calculate(object);
+      this.acquireContent(digest, object, expirationTime);
+      final CachedDocument document = new CachedDocument(id, null, ownerId, expirationTime);
+      document.setContentDigest(digest);
+      return document;
+    }
+    return this.createStoredDocument(id, object, ownerId, expirationTime);
+  }
+
+  /**
+   * Creates a cached document holding the (possibly compressed) document.
+   *
+   * @param id the ID
+   * @param object the document
+   * @param ownerId the owner ID
+   * @param expirationTime the expiration time
+   * @return a CachedDocument
+   */
+  private CachedDocument createStoredDocument(
+      final String id, final String object, final String ownerId, final Long expirationTime) {
+    final CompressedDocument compressed =
+        this.documentCompressor != null ? this.documentCompressor.compress(object) : null;
+    if (compressed != null) {
+      final CachedDocument document = new CachedDocument(id, null, ownerId, expirationTime);
+      document.setCompressedDocument(compressed);
+      return document;
+    }
     return new CachedDocument(id, object, ownerId, expirationTime);
   }
 
+  /**
+   * Gets an entry holding the actual document for the supplied entry.
+   *
+   * @param entry the entry read from Redis
+   * @return an entry holding the document, or {@code null} if the document contents no longer exist
+   */
+  private CacheEntry<String> resolve(final CacheEntry<String> entry) {
+    if (!(entry instanceof final CachedDocument document)) {
+      return entry;
+    }
+    if (document.getContentDigest() != null) {
+      final Object content = this.redisTemplate.opsForValue().get(this.getContentKey(document.getContentDigest()));
+      if (!(content instanceof final CachedDocument contentDocument)) {
+        log.warn("Contents {} for document '{}' no longer exist", document.getContentDigest(), document.getId());
+        return null;
+      }
+      return new CachedDocument(document.getId(), this.getDocument(contentDocument), document.getOwnerId(),
+          document.getExpirationTime());
+    }
+    if (document.getCompressedDocument() != null) {
+      return new CachedDocument(document.getId(), this.getDocument(document), document.getOwnerId(),
+          document.getExpirationTime());
+    }
+    return entry;
+  }
+
+  /**
+   * Gets the document held by the supplied object (decompressing it if needed).
+   *
+   * @param document the cached document
+   * @return the document
+   */
+  private String getDocument(final CachedDocument document) {
+    if (document.getCompressedDocument() == null) {
+      return document.getObject();
+    }
+    final DocumentCompressor decompressor =
+        this.documentCompressor != null ? this.documentCompressor : defaultDecompressor;
+    return decompressor.decompress(document.getCompressedDocument());
+  }
+
+  /**
+   * Adds a reference to the document contents with the given digest. The contents are only sent to Redis if they are
+   * not already stored.
+   *
+   * @param digest the digest of the document
+   * @param document the document
+   * @param expirationTime the expiration time of the entry referring to the contents
+   */
+  @SuppressWarnings("unchecked")
+  private void acquireContent(final String digest, final String document, final long expirationTime) {
+    final List<String> keys = List.of(this.getContentKey(digest), this.getContentReferencesKey(digest));
+    final byte[] ttl = Long.toString(Math.max(1L, expirationTime - System.currentTimeMillis()))
+        .getBytes(StandardCharsets.UTF_8);
+    final RedisSerializer<Long> resultSerializer = new GenericToStringSerializer<>(Long.class);
+
+    final Long references = this.redisTemplate.execute(
+        ACQUIRE_CONTENT_SCRIPT, RedisSerializer.byteArray(), resultSerializer, keys, ttl);
+    if (references != null && references > 0) {
+      log.trace("Document contents {} already stored in Redis - {} references", digest, references);
+      return;
+    }
+    final byte[] content = ((RedisSerializer<Object>) this.redisTemplate.getValueSerializer())
+        .serialize(this.createStoredDocument(digest, document, null, null));
+    this.redisTemplate.execute(ACQUIRE_CONTENT_SCRIPT, RedisSerializer.byteArray(), resultSerializer, keys, ttl,
+        content);
+  }
+
+  /**
+   * Removes a reference to the document contents with the given digest.
+   *
+   * @param digest the digest of the document
+   */
+  private void releaseContent(final String digest) {
+    this.redisTemplate.execute(RELEASE_CONTENT_SCRIPT,
+        List.of(this.getContentKey(digest), this.getContentReferencesKey(digest)));
+  }
+
+  /**
+   * Gets the key under which the document contents with the given digest are stored. The digest is a hash tag, so that
+   * the contents and the reference counter are stored in the same slot when running Redis Cluster.
+   *
+   * @param digest the digest of the document
+   * @return the key
+   */
+  protected String getContentKey(final String digest) {
+    return this.getRedisHashName() + "_content:{" + digest + "}";
+  }
+
+  /**
+   * Gets the key for the counter holding the number of entries referring to the document contents.
+   *
+   * @param digest the digest of the document
+   * @return the key
+   */
+  protected String getContentReferencesKey(final String digest) {
+    return this.getContentKey(digest) + ":refs";
+  }
+
   /**
    * Representation of a cached document.
    */
@@ -60,6 +297,19 @@ public class RedisDocumentCache extends AbstractRedisIntegrationServiceCache<Str
     @Serial
     private static final long serialVersionUID = -8324998523618078986L;
 
+    /** The compressed document (if the document was stored compressed, the object is {@code null}). */
+    @Getter
+    @Setter
+    private CompressedDocument compressedDocument;
+
+    /**
+     * The digest of the document contents, if the contents are stored separately (content-addressed storage). The
+     * object is then {@code null}.
+     */
+    @Getter
+    @Setter
+    private String contentDigest;
+
     /**
      * Default constructor.
      */
@@ -79,4 +329,82 @@ public class RedisDocumentCache extends AbstractRedisIntegrationServiceCache<Str
     }
   }
 
+  /**
+   * Codec for {@link CachedDocument} objects.
+   */
+  static class CachedDocumentCodec implements CachedObjectCodec<CachedDocument> {
+
+    /** {@inheritDoc} */
+    @Override
+    public byte getTypeId() {
+      return 2;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Class<CachedDocument> getType() {
+      return CachedDocument.class;
+    }
+
+    /**
+     * Documents referring to content-addressed contents need version 3, compressed documents version 2, and plain
+     * documents version 1.
+     */
+    @Override
+    public int getVersion(final CachedDocument object) {
+      if (object.getContentDigest() != null) {
+        return 3;
+      }
+      return object.getCompressedDocument() != null ? 2 : 1;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void encode(final CachedDocument object, final DataOutput out) throws IOException {
+      CachedObjectCodec.writeString(object.getId(), out);
+      CachedObjectCodec.writeString(object.getOwnerId(), out);
+      CachedObjectCodec.writeLong(object.getExpirationTime(), out);
+      final CompressedDocument compressed = object.getCompressedDocument();
+      if (object.getContentDigest() != null) {
+        out.writeByte(2);
+        CachedObjectCodec.writeString(object.getContentDigest(), out);
+      }
+      else if (compressed == null) {
+        // Version 1 - no storage type ...
+        CachedObjectCodec.writeString(object.getObject(), out);
+      }
+      else {
+        out.writeByte(1);
+        out.writeBoolean(compressed.isDeflated());
+        out.writeInt(compressed.getLength());
+        CachedObjectCodec.writeBytes(compressed.getData(), out);
+      }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public CachedDocument decode(final DataInput in, final int version) throws IOException {
+      final String id = CachedObjectCodec.readString(in);
+      final String ownerId = CachedObjectCodec.readString(in);
+      final Long expirationTime = CachedObjectCodec.readLong(in);
+
+      // Version 1 only supported uncompressed documents ...
+      final int storage = version < 2 ? 0 : in.readByte();
+      if (storage == 0) {
+        return new CachedDocument(id, CachedObjectCodec.readString(in), ownerId, expirationTime);
+      }
+      if (storage == 2) {
+        final CachedDocument document = new CachedDocument(id, null, ownerId, expirationTime);
+        document.setContentDigest(CachedObjectCodec.readString(in));
+        return document;
+      }
+      final boolean deflated = in.readBoolean();
+      final int length = in.readInt();
+      final CachedDocument document = new CachedDocument(id, null, ownerId, expirationTime);
+      document.setCompressedDocument(new CompressedDocument(CachedObjectCodec.readBytes(in), length, deflated));
+      return document;
+    }
+
+  }
+
 }
@@ -16,10 +16,14 @@
 package se.idsec.signservice.integration.rest.cache;
 
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
 import se.idsec.signservice.integration.rest.cache.RedisSignatureStateCache.CachedSignatureState;
 import se.idsec.signservice.integration.state.CacheableSignatureState;
 import se.idsec.signservice.integration.state.IntegrationServiceStateCache;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serial;
 
 /**
@@ -83,4 +87,49 @@ public class RedisSignatureStateCache
 
   }
 
+  /**
+   * Codec for {@link CachedSignatureState} objects. The signature state itself is written using Java serialization
+   * (its implementation class is not known to this codec).
+   */
+  static class CachedSignatureStateCodec implements CachedObjectCodec<CachedSignatureState> {
+
+    /** For serializing the state object. */
+    private final JdkSerializationRedisSerializer stateSerializer = new JdkSerializationRedisSerializer();
+
+    /** {@inheritDoc} */
+    @Override
+    public byte getTypeId() {
+      return 3;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Class<CachedSignatureState> getType() {
+      return CachedSignatureState.class;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void encode(final CachedSignatureState object, final DataOutput out) throws IOException {
+      CachedObjectCodec.writeString(object.getId(), out);
+      CachedObjectCodec.writeString(object.getOwnerId(), out);
+      CachedObjectCodec.writeLong(object.getExpirationTime(), out);
+      CachedObjectCodec.writeBytes(
+          object.getObject() != null ? this.stateSerializer.serialize(object.getObject()) : null, out);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public CachedSignatureState decode(final DataInput in, final int version) throws IOException {
+      final String id = CachedObjectCodec.readString(in);
+      final String ownerId = CachedObjectCodec.readString(in);
+      final Long expirationTime = CachedObjectCodec.readLong(in);
+      final byte[] state = CachedObjectCodec.readBytes(in);
+      return new CachedSignatureState(id,
+          state != null ? (CacheableSignatureState) this.stateSerializer.deserialize(state) : null,
+          ownerId, expirationTime);
+    }
+
+  }
+
 }
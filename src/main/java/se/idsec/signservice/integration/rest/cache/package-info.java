@@ -15,6 +15,6 @@
  */
 
 /**
- * Redis caches.
+ * Cache implementations (Redis and in-memory) and support classes.
  */
 package se.idsec.signservice.integration.rest.cache;
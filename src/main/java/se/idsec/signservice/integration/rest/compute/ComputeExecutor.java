@@ -0,0 +1,202 @@
+/*
+ * Copyright 2020-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.rest.compute;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A size-bounded executor for the CPU-heavy parts of request processing (creating and signing SignRequests, processing
+ * SignResponses and preparing PDF documents). The endpoints hand their work to the executor and release the request
+ * thread, and when the queue is full, new work is rejected at once (see {@link ComputeExecutorFullException}) instead
+ * of queueing invisibly in the web server.
+ * <p>
+ * If the executor is disabled, the work is performed by the calling thread. Since the work also includes blocking I/O
+ * (for example, Redis cache calls), the compute threads may be virtual threads (if the request threads are virtual
+ * threads). The number of threads still bounds the number of calls processed at the same time.
+ * </p>
+ * <p>
+ * If a {@link MeterRegistry} is given, the time that tasks wait in the queue ({@code signservice.compute.queue.wait}),
+ * the number of rejected tasks ({@code signservice.compute.rejected}), and the queue size and the number of active
+ * threads ({@code signservice.compute.queue.size} and {@code signservice.compute.active}) are recorded.
+ * </p>
+ *
+ * @author Martin Lindström
+ */
+@Slf4j
+public class ComputeExecutor implements DisposableBean {
+
+  /** The executor (null if disabled). */
+  private final ThreadPoolExecutor executor;
+
+  /** The time after which a rejected caller may retry. */
+  private final Duration retryAfter;
+
+  /** Records the queue wait time. */
+  private final Timer queueWait;
+
+  /** Counts rejected tasks. */
+  private final Counter rejected;
+
+  /**
+   * Constructor creating an executor that uses platform threads.
+   *
+   * @param enabled whether the executor is enabled (if not, tasks are run by the calling thread)
+   * @param threads the number of threads
+   * @param queueCapacity the number of tasks that may wait for a thread
+   * @param retryAfter the time after which a rejected caller may retry
+   * @param meterRegistry the meter registry (may be {@code null})
+   */
+  public ComputeExecutor(final boolean enabled, final int threads, final int queueCapacity,
+      final Duration retryAfter, final MeterRegistry meterRegistry) {
+    this(enabled, threads, queueCapacity, retryAfter, false, meterRegistry);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param enabled whether the executor is enabled (if not, tasks are run by the calling thread)
+   * @param threads the number of threads
+   * @param queueCapacity the number of tasks that may wait for a thread
+   * @param retryAfter the time after which a rejected caller may retry
+   * @param virtualThreads whether the tasks should be run by virtual threads
+   * @param meterRegistry the meter registry (may be {@code null})
+   */
+  public ComputeExecutor(final boolean enabled, final int threads, final int queueCapacity,
+      final Duration retryAfter, final boolean virtualThreads, final MeterRegistry meterRegistry) {
+    this.retryAfter = Objects.requireNonNull(retryAfter, "retryAfter must not be null");
+    if (!enabled) {
+      this.executor = null;
+      this.queueWait = null;
+      this.rejected = null;
+      return;
+    }
+    final ThreadFactory threadFactory = virtualThreads
+        ? Thread.ofVirtual().name("compute-", 1).factory()
+        : new CustomizableThreadFactory("compute-");
+    this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(queueCapacity), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+
+    if (meterRegistry != null) {
+      this.queueWait = Timer.builder("signservice.compute.queue.wait")
+          .description("Time that requests wait for a compute thread")
+          .publishPercentileHistogram()
+          .register(meterRegistry);
+      this.rejected = Counter.builder("signservice.compute.rejected")
+          .description("Number of requests rejected because the compute queue was full")
+          .register(meterRegistry);
+      Gauge.builder("signservice.compute.queue.size", this.executor, e -> e.getQueue().size())
+          .description("Number of requests waiting for a compute thread")
+          .register(meterRegistry);
+      Gauge.builder("signservice.compute.active", this.executor, ThreadPoolExecutor::getActiveCount)
+          .description("Number of compute threads processing requests")
+          .register(meterRegistry);
+    }
+    else {
+      this.queueWait = null;
+      this.rejected = null;
+    }
+  }
+
+  /**
+   * Tells whether the executor is enabled. If not, submitted tasks are run by the calling thread.
+   *
+   * @return {@code true} if the executor is enabled, and {@code false} otherwise
+   */
+  public boolean isEnabled() {
+    return this.executor != null;
+  }
+
+  /**
+   * Submits a task.
+   *
+   * @param task the task
+   * @param <T> the result type
+   * @return a future that is completed with the result of the task (or its exception)
+   * @throws ComputeExecutorFullException if the queue is full
+   */
+  public <T> CompletableFuture<T> submit(final Callable<T> task) throws ComputeExecutorFullException {
+    final CompletableFuture<T> future = new CompletableFuture<>();
+    if (this.executor == null) {
+      run(task, future);
+      return future;
+    }
+    final long queued = System.nanoTime();
+    try {
+      this.executor.execute(() -> {
+        if (this.queueWait != null) {
+          this.queueWait.record(System.nanoTime() - queued, TimeUnit.NANOSECONDS);
+        }
+        run(task, future);
+      });
+    }
+    catch (final RejectedExecutionException e) {
+      if (this.rejected != null) {
+        this.rejected.increment();
+      }
+      log.debug("Compute queue is full - rejecting request");
+      throw new ComputeExecutorFullException("The service is overloaded", this.retryAfter);
+    }
+    return future;
+  }
+
+  /**
+   * Shuts down the executor.
+   */
+  @Override
+  public void destroy() {
+    if (this.executor != null) {
+      this.executor.shutdown();
+    }
+  }
+
+  /**
+   * Runs the task and completes the future. The future is always completed, also if the task throws an
+   * {@link Error} (which is then rethrown).
+   *
+   * @param task the task
+   * @param future the future
+   * @param <T> the result type
+   */
+  private static <T> void run(final Callable<T> task, final CompletableFuture<T> future) {
+    try {
+      future.complete(task.call());
+    }
+    catch (final Exception e) {
+      future.completeExceptionally(e);
+    }
+    catch (final Throwable e) {
+      future.completeExceptionally(e);
+      throw e;
+    }
+  }
+
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2020-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.rest.compute;
+
+import se.idsec.signservice.integration.core.error.ErrorCode;
+import se.idsec.signservice.integration.rest.ServiceOverloadedException;
+
+import java.io.Serial;
+import java.time.Duration;
+
+/**
+ * Exception thrown by the {@link ComputeExecutor} when its queue is full.
+ *
+ * @author Martin Lindström
+ */
+public class ComputeExecutorFullException extends ServiceOverloadedException {
+
+  /** For serializing. */
+  @Serial
+  private static final long serialVersionUID = 6329911526452880913L;
+
+  /** The error code reported to the caller. */
+  public static final ErrorCode ERROR_CODE = new ErrorCode("internal", "overloaded");
+
+  /**
+   * Constructor.
+   *
+   * @param message the error message
+   * @param retryAfter the time after which the caller may retry
+   */
+  public ComputeExecutorFullException(final String message, final Duration retryAfter) {
+    super(message, retryAfter);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public ErrorCode getErrorCode() {
+    return ERROR_CODE;
+  }
+
+}
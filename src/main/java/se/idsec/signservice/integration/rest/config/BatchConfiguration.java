@@ -0,0 +1,62 @@
+/*
+ * Copyright 2020-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.rest.config;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import se.idsec.signservice.integration.rest.batch.BatchProcessor;
+
+/**
+ * Configuration for the batch endpoints.
+ *
+ * @author Martin Lindström
+ */
+@Configuration
+@EnableConfigurationProperties(BatchConfigurationProperties.class)
+public class BatchConfiguration {
+
+  /**
+   * Gets the processor for batch calls to {@code /create}.
+   *
+   * @param properties the batch settings
+   * @return a BatchProcessor
+   */
+  @Bean
+  BatchProcessor createBatchProcessor(final BatchConfigurationProperties properties) {
+    final BatchProcessor processor = new BatchProcessor("create-batch", properties.getCreate().getThreads(),
+        properties.getCreate().getQueueCapacity(), properties.getMaxItems());
+    processor.setRetryAfter(properties.getRetryAfter());
+    return processor;
+  }
+
+  /**
+   * Gets the processor for batch calls to {@code /prepare}. A separate pool is used since preparing PDF documents is
+   * CPU-heavy.
+   *
+   * @param properties the batch settings
+   * @return a BatchProcessor
+   */
+  @Bean
+  BatchProcessor prepareBatchProcessor(final BatchConfigurationProperties properties) {
+    final BatchProcessor processor = new BatchProcessor("prepare-batch", properties.getPrepare().getThreads(),
+        properties.getPrepare().getQueueCapacity(), properties.getMaxItems());
+    processor.setStreamTimeout(properties.getStreamTimeout());
+    processor.setRetryAfter(properties.getRetryAfter());
+    return processor;
+  }
+
+}
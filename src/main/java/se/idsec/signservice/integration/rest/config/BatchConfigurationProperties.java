@@ -0,0 +1,65 @@
+/*
+ * Copyright 2020-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.rest.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import se.idsec.signservice.integration.rest.batch.BatchProcessor;
+
+import java.time.Duration;
+
+/**
+ * Configuration properties for the batch endpoints.
+ *
+ * @author Martin Lindström
+ */
+@Setter
+@Getter
+@ConfigurationProperties("signservice.batch")
+public class BatchConfigurationProperties {
+
+  /** The maximum number of items in one batch call. */
+  private int maxItems = 100;
+
+  /** The thread pool for batch calls to {@code /create}. */
+  private Pool create = new Pool();
+
+  /** The thread pool for batch calls to {@code /prepare}. */
+  private Pool prepare = new Pool();
+
+  /** The maximum time that a streamed batch response may take. */
+  private Duration streamTimeout = BatchProcessor.DEFAULT_STREAM_TIMEOUT;
+
+  /** The retry hint given for items that are rejected since the queue is full. */
+  private Duration retryAfter = BatchProcessor.DEFAULT_RETRY_AFTER;
+
+  /**
+   * Thread pool settings.
+   */
+  @Setter
+  @Getter
+  public static class Pool {
+
+    /** The number of threads. */
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    /** The number of items that may wait for a thread. If the queue is full, further items are rejected. */
+    private int queueCapacity = 100;
+
+  }
+
+}
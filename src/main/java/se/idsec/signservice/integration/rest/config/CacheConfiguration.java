@@ -15,28 +15,72 @@
  */
 package se.idsec.signservice.integration.rest.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.Setter;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.PatternTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import se.idsec.signservice.integration.core.DocumentCache;
 import se.idsec.signservice.integration.core.impl.InMemoryDocumentCache;
+import se.idsec.signservice.integration.rest.cache.AbstractReactiveRedisIntegrationServiceCache;
+import se.idsec.signservice.integration.rest.cache.AbstractRedisIntegrationServiceCache;
+import se.idsec.signservice.integration.rest.cache.AbstractRedisIntegrationServiceCache.StorageMode;
+import se.idsec.signservice.integration.rest.cache.BoundedInMemoryDocumentCache;
+import se.idsec.signservice.integration.rest.cache.BoundedInMemoryStateCache;
+import se.idsec.signservice.integration.rest.cache.CachedObjectRedisSerializer;
+import se.idsec.signservice.integration.rest.cache.CompressingInMemoryDocumentCache;
+import se.idsec.signservice.integration.rest.cache.ContentAddressedInMemoryDocumentCache;
+import se.idsec.signservice.integration.rest.cache.DocumentCompressor;
+import se.idsec.signservice.integration.rest.cache.InstrumentedDocumentCache;
+import se.idsec.signservice.integration.rest.cache.InstrumentedStateCache;
+import se.idsec.signservice.integration.rest.cache.NearCacheDocumentCache;
+import se.idsec.signservice.integration.rest.cache.NearCacheSignatureStateCache;
+import se.idsec.signservice.integration.rest.cache.OffHeapDocumentCache;
+import se.idsec.signservice.integration.rest.cache.ReactiveRedisDocumentCache;
+import se.idsec.signservice.integration.rest.cache.ReactiveRedisSignatureStateCache;
+import se.idsec.signservice.integration.rest.cache.RedisCacheSweepLock;
 import se.idsec.signservice.integration.rest.cache.RedisDocumentCache;
 import se.idsec.signservice.integration.rest.cache.RedisSignatureStateCache;
 import se.idsec.signservice.integration.state.IntegrationServiceStateCache;
+import se.idsec.signservice.integration.rest.config.CacheConfigurationProperties.ExpiryMode;
+import se.idsec.signservice.integration.rest.config.CacheConfigurationProperties.Redis.SerializationFormat;
 import se.idsec.signservice.integration.state.impl.InMemoryIntegrationServiceStateCache;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Configuration class for setting up caches.
  *
  * @author Martin Lindström
  */
 @Configuration
+@EnableConfigurationProperties(CacheConfigurationProperties.class)
 public class CacheConfiguration {
 
+  /** Keyspace notifications for expired keys (in any database). */
+  private static final PatternTopic EXPIRED_KEY_EVENTS = new PatternTopic("__keyevent@*__:expired");
+
+  /** The cache settings. */
+  private final CacheConfigurationProperties properties;
+
   /** Max age for objects in state cache (in milliseconds). */
   @Setter
   @Value("${signservice.cache.state.max-age:3600000}")
@@ -47,6 +91,15 @@ public class CacheConfiguration {
   @Value("${signservice.cache.document.max-age:240000}")
   private long maxDocumentCacheAge;
 
+  /**
+   * Constructor.
+   *
+   * @param properties the cache settings
+   */
+  public CacheConfiguration(final CacheConfigurationProperties properties) {
+    this.properties = properties;
+  }
+
   /**
    * The Redis template.
    *
@@ -58,46 +111,177 @@ public class CacheConfiguration {
   RedisTemplate<String, Object> redisTemplate(final RedisConnectionFactory connectionFactory) {
     final RedisTemplate<String, Object> template = new RedisTemplate<>();
     template.setConnectionFactory(connectionFactory);
+    if (this.properties.getRedis().getSerialization() == SerializationFormat.BINARY) {
+      final CachedObjectRedisSerializer serializer = new CachedObjectRedisSerializer();
+      template.setKeySerializer(RedisSerializer.string());
+      template.setHashKeySerializer(RedisSerializer.string());
+      template.setValueSerializer(serializer);
+      template.setHashValueSerializer(serializer);
+    }
     return template;
   }
 
+  /**
+   * The reactive Redis template (used if the reactive Redis caches are enabled). The template uses the same
+   * serialization settings as {@link #redisTemplate(RedisConnectionFactory)}.
+   *
+   * @param connectionFactory the reactive Redis connection factory
+   * @return a ReactiveRedisTemplate bean
+   */
+  @ConditionalOnExpression("${spring.redis.enabled:false} and ${signservice.cache.redis.reactive:false}")
+  @Bean
+  ReactiveRedisTemplate<String, Object> reactiveRedisTemplate(final ReactiveRedisConnectionFactory connectionFactory) {
+    final RedisSerializationContext<String, Object> context;
+    if (this.properties.getRedis().getSerialization() == SerializationFormat.BINARY) {
+      context = RedisSerializationContext.<String, Object>newSerializationContext(new CachedObjectRedisSerializer())
+          .key(RedisSerializer.string())
+          .hashKey(RedisSerializer.string())
+          .build();
+    }
+    else {
+      context = RedisSerializationContext.<String, Object>newSerializationContext(RedisSerializer.java()).build();
+    }
+    return new ReactiveRedisTemplate<>(connectionFactory, context);
+  }
+
+  /**
+   * The lock used to ensure that only one node cleans up each cache.
+   *
+   * @param connectionFactory the Redis connection factory
+   * @return a RedisCacheSweepLock bean
+   */
+  @ConditionalOnExpression("${spring.redis.enabled:false} and ${signservice.cache.redis.sweep-lock.enabled:true}")
+  @Bean
+  RedisCacheSweepLock redisCacheSweepLock(final RedisConnectionFactory connectionFactory) {
+    final CacheConfigurationProperties.Redis.SweepLock settings = this.properties.getRedis().getSweepLock();
+    final RedisCacheSweepLock lock =
+        new RedisCacheSweepLock(new StringRedisTemplate(connectionFactory), settings.getLeaseTime());
+    lock.setMaxJitter(settings.getMaxJitter());
+    return lock;
+  }
+
+  /**
+   * Listener container for the Redis pub/sub channels used to invalidate near cache entries, and for keyspace
+   * notifications of expired keys.
+   *
+   * @param connectionFactory the Redis connection factory
+   * @return a RedisMessageListenerContainer bean
+   */
+  @ConditionalOnExpression("${spring.redis.enabled:false} and (${signservice.cache.redis.near-cache.enabled:false} "
+      + "or '${signservice.cache.expiry-mode:polling}'.equalsIgnoreCase('events'))")
+  @Bean
+  RedisMessageListenerContainer cacheListenerContainer(final RedisConnectionFactory connectionFactory) {
+    final RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+    container.setConnectionFactory(connectionFactory);
+    return container;
+  }
+
   /**
    * Gets a Redis IntegrationServiceStateCache bean.
    *
    * @param redisTemplate the Redis template
-   * @return a RedisSignatureStateCache bean
+   * @param reactiveRedisTemplate the reactive Redis template (only available if the reactive caches are enabled)
+   * @param listenerContainer the listener container (only available if the near cache or expiry events are enabled)
+   * @param meterRegistry the meter registry (for near cache metrics)
+   * @return a RedisSignatureStateCache bean, or a NearCacheSignatureStateCache bean if the near cache is enabled, or
+   *     a ReactiveRedisSignatureStateCache if the reactive caches are enabled
    */
   @ConditionalOnProperty(name = "spring.redis.enabled", havingValue = "true", matchIfMissing = false)
   @Bean
   public IntegrationServiceStateCache redisIntegrationServiceStateCache(
-      final RedisTemplate<String, Object> redisTemplate) {
+      final RedisTemplate<String, Object> redisTemplate,
+      final ObjectProvider<ReactiveRedisTemplate<String, Object>> reactiveRedisTemplate,
+      final ObjectProvider<RedisMessageListenerContainer> listenerContainer,
+      final ObjectProvider<MeterRegistry> meterRegistry) {
+    if (this.properties.getRedis().isReactive()) {
+      final ReactiveRedisSignatureStateCache cache =
+          new ReactiveRedisSignatureStateCache(reactiveRedisTemplate.getObject());
+      cache.setMaxAge(this.maxStateCacheAge);
+      this.configureReactiveRedisCache(cache);
+      return cache;
+    }
     final RedisSignatureStateCache cache = new RedisSignatureStateCache(redisTemplate);
     cache.setMaxAge(this.maxStateCacheAge);
-    return cache;
+    this.configureRedisCache(cache, redisTemplate);
+    if (cache.isExpiryNotifications()) {
+      listenerContainer.getObject().addMessageListener(cache, EXPIRED_KEY_EVENTS);
+    }
+
+    final CacheConfigurationProperties.Redis.NearCache nearCacheSettings = this.properties.getRedis().getNearCache();
+    if (!nearCacheSettings.isEnabled()) {
+      return cache;
+    }
+    final NearCacheSignatureStateCache nearCache = new NearCacheSignatureStateCache(cache, redisTemplate,
+        nearCacheSettings.getMaximumSize(), nearCacheSettings.getMaxSize().toBytes(),
+        nearCacheSettings.getTimeToLive(), meterRegistry.getIfAvailable());
+    nearCache.setMaxAge(this.maxStateCacheAge);
+    listenerContainer.getObject()
+        .addMessageListener(nearCache, new ChannelTopic(nearCache.getInvalidationChannel()));
+    return nearCache;
   }
 
   /**
    * Gets a Redis {@link DocumentCache}.
    *
    * @param redisTemplate the Redis template
-   * @return a RedisDocumentCache bean
+   * @param reactiveRedisTemplate the reactive Redis template (only available if the reactive caches are enabled)
+   * @param listenerContainer the listener container (only available if the near cache or expiry events are enabled)
+   * @param meterRegistry the meter registry (for compression and near cache metrics)
+   * @return a RedisDocumentCache bean, or a NearCacheDocumentCache bean if the near cache is enabled, or a
+   *     ReactiveRedisDocumentCache if the reactive caches are enabled
    */
   @ConditionalOnProperty(name = "spring.redis.enabled", havingValue = "true", matchIfMissing = false)
   @Bean
-  public DocumentCache redisDocumentCache(final RedisTemplate<String, Object> redisTemplate) {
+  public DocumentCache redisDocumentCache(final RedisTemplate<String, Object> redisTemplate,
+      final ObjectProvider<ReactiveRedisTemplate<String, Object>> reactiveRedisTemplate,
+      final ObjectProvider<RedisMessageListenerContainer> listenerContainer,
+      final ObjectProvider<MeterRegistry> meterRegistry) {
+    if (this.properties.getRedis().isReactive()) {
+      final ReactiveRedisDocumentCache cache = new ReactiveRedisDocumentCache(reactiveRedisTemplate.getObject());
+      cache.setMaxAge(this.maxDocumentCacheAge);
+      cache.setDocumentCompressor(this.createDocumentCompressor(meterRegistry.getIfAvailable()));
+      this.configureReactiveRedisCache(cache);
+      return cache;
+    }
     final RedisDocumentCache cache = new RedisDocumentCache(redisTemplate);
     cache.setMaxAge(this.maxDocumentCacheAge);
-    return cache;
+    cache.setDocumentCompressor(this.createDocumentCompressor(meterRegistry.getIfAvailable()));
+    cache.setContentAddressed(this.properties.getDocument().isContentAddressed());
+    this.configureRedisCache(cache, redisTemplate);
+    if (cache.isExpiryNotifications()) {
+      listenerContainer.getObject().addMessageListener(cache, EXPIRED_KEY_EVENTS);
+    }
+
+    final CacheConfigurationProperties.Redis.NearCache nearCacheSettings = this.properties.getRedis().getNearCache();
+    if (!nearCacheSettings.isEnabled()) {
+      return cache;
+    }
+    final NearCacheDocumentCache nearCache = new NearCacheDocumentCache(cache, redisTemplate,
+        nearCacheSettings.getMaximumSize(), nearCacheSettings.getMaxSize().toBytes(),
+        nearCacheSettings.getTimeToLive(), meterRegistry.getIfAvailable());
+    nearCache.setMaxAge(this.maxDocumentCacheAge);
+    listenerContainer.getObject()
+        .addMessageListener(nearCache, new ChannelTopic(nearCache.getInvalidationChannel()));
+    return nearCache;
   }
 
   /**
    * Gets an in-memory IntegrationServiceStateCache bean.
    *
+   * @param meterRegistry the meter registry (for cache metrics)
    * @return an in-memory IntegrationServiceStateCache bean
    */
   @ConditionalOnProperty(name = "spring.redis.enabled", havingValue = "false", matchIfMissing = true)
   @Bean
-  public IntegrationServiceStateCache integrationServiceStateCache() {
+  public IntegrationServiceStateCache integrationServiceStateCache(final ObjectProvider<MeterRegistry> meterRegistry) {
+    final CacheConfigurationProperties.MemoryLimits limits = this.properties.getState().getMemoryLimits();
+    final boolean scheduledExpiry = this.properties.getExpiryMode() == ExpiryMode.EVENTS;
+    if (limits.isBounded() || scheduledExpiry) {
+      final BoundedInMemoryStateCache cache = new BoundedInMemoryStateCache(limits.getMaxEntries(),
+          maxSize(limits), limits.getWhenFull(), scheduledExpiry, meterRegistry.getIfAvailable());
+      cache.setMaxAge(this.maxStateCacheAge);
+      return cache;
+    }
     final InMemoryIntegrationServiceStateCache cache = new InMemoryIntegrationServiceStateCache();
     cache.setMaxAge(this.maxStateCacheAge);
     return cache;
@@ -106,14 +290,167 @@ public class CacheConfiguration {
   /**
    * Gets an in-memory DocumentCache bean
    *
+   * @param meterRegistry the meter registry (for compression and cache metrics)
    * @return an in-memory DocumentCache bean
+   * @throws IOException if the off-heap document cache can not be created
    */
   @ConditionalOnProperty(name = "spring.redis.enabled", havingValue = "false", matchIfMissing = true)
   @Bean
-  public DocumentCache docmentCache() {
+  public DocumentCache docmentCache(final ObjectProvider<MeterRegistry> meterRegistry) throws IOException {
+    final CacheConfigurationProperties.Document.OffHeap offHeap = this.properties.getDocument().getOffHeap();
+    if (offHeap.isEnabled()) {
+      final OffHeapDocumentCache cache = new OffHeapDocumentCache(offHeap.getCapacity().toBytes(),
+          (int) offHeap.getBlockSize().toBytes(), offHeap.getStorage(), offHeap.getDirectory(),
+          meterRegistry.getIfAvailable());
+      cache.setMaxAge(this.maxDocumentCacheAge);
+      return cache;
+    }
+    final DocumentCompressor compressor = this.createDocumentCompressor(meterRegistry.getIfAvailable());
+    if (this.properties.getDocument().isContentAddressed()) {
+      final ContentAddressedInMemoryDocumentCache cache = new ContentAddressedInMemoryDocumentCache(compressor);
+      cache.setMaxAge(this.maxDocumentCacheAge);
+      return cache;
+    }
+    final CacheConfigurationProperties.MemoryLimits limits = this.properties.getDocument().getMemoryLimits();
+    final boolean scheduledExpiry = this.properties.getExpiryMode() == ExpiryMode.EVENTS;
+    if (limits.isBounded() || scheduledExpiry) {
+      final BoundedInMemoryDocumentCache cache = new BoundedInMemoryDocumentCache(limits.getMaxEntries(),
+          maxSize(limits), limits.getWhenFull(), scheduledExpiry, meterRegistry.getIfAvailable());
+      cache.setDocumentCompressor(compressor);
+      cache.setMaxAge(this.maxDocumentCacheAge);
+      return cache;
+    }
+    if (compressor != null) {
+      final CompressingInMemoryDocumentCache cache = new CompressingInMemoryDocumentCache(compressor);
+      cache.setMaxAge(this.maxDocumentCacheAge);
+      return cache;
+    }
     final InMemoryDocumentCache cache = new InMemoryDocumentCache();
     cache.setMaxAge(this.maxDocumentCacheAge);
     return cache;
   }
 
+  /**
+   * Wraps the cache beans so that metrics are recorded for the cache operations (see
+   * {@link InstrumentedDocumentCache} and {@link InstrumentedStateCache}). The caches are wrapped after they have been
+   * initialized. Spring only invokes the destroy callback of the exposed bean, i.e., the wrapper, so caches that need
+   * to be shut down must implement {@link org.springframework.beans.factory.DisposableBean DisposableBean} (the
+   * wrapper passes the call on).
+   *
+   * @param meterRegistry the meter registry
+   * @return a BeanPostProcessor
+   */
+  @ConditionalOnProperty(name = "signservice.cache.metrics.enabled", havingValue = "true", matchIfMissing = true)
+  @Bean
+  public static BeanPostProcessor cacheMetricsPostProcessor(final ObjectProvider<MeterRegistry> meterRegistry) {
+    return new BeanPostProcessor() {
+
+      @Override
+      public Object postProcessAfterInitialization(final Object bean, final String beanName) throws BeansException {
+        if (bean instanceof InstrumentedDocumentCache || bean instanceof InstrumentedStateCache) {
+          return bean;
+        }
+        if (bean instanceof final DocumentCache documentCache) {
+          final MeterRegistry registry = meterRegistry.getIfAvailable();
+          return registry != null ? new InstrumentedDocumentCache(documentCache, registry) : bean;
+        }
+        if (bean instanceof final IntegrationServiceStateCache stateCache) {
+          final MeterRegistry registry = meterRegistry.getIfAvailable();
+          return registry != null ? new InstrumentedStateCache(stateCache, registry) : bean;
+        }
+        return bean;
+      }
+    };
+  }
+
+  /**
+   * Gets the maximum size (in bytes) from the supplied limits.
+   *
+   * @param limits the limits
+   * @return the maximum size, or 0 if no size limit is given
+   */
+  private static long maxSize(final CacheConfigurationProperties.MemoryLimits limits) {
+    return limits.getMaxSize() != null ? limits.getMaxSize().toBytes() : 0L;
+  }
+
+  /**
+   * Creates a {@link DocumentCompressor} if compression of cached documents is enabled.
+   *
+   * @param meterRegistry the meter registry (may be {@code null})
+   * @return a DocumentCompressor or {@code null} if compression is not enabled
+   */
+  private DocumentCompressor createDocumentCompressor(final MeterRegistry meterRegistry) {
+    final CacheConfigurationProperties.Document.Compression compression =
+        this.properties.getDocument().getCompression();
+    if (!compression.isEnabled()) {
+      return null;
+    }
+    return new DocumentCompressor(
+        (int) Math.min(Integer.MAX_VALUE, compression.getThreshold().toBytes()), compression.getLevel(),
+        meterRegistry);
+  }
+
+  /**
+   * Applies the Redis cache settings to the supplied cache.
+   *
+   * @param cache the cache to configure
+   * @param redisTemplate the Redis template used by the cache
+   */
+  private void configureRedisCache(
+      final AbstractRedisIntegrationServiceCache<?, ?> cache, final RedisTemplate<String, Object> redisTemplate) {
+    final CacheConfigurationProperties.Redis redis = this.properties.getRedis();
+    cache.setStorageMode(redis.getStorageMode());
+    cache.setBucketCount(redis.getBucketCount());
+    cache.setPurgeBatchSize(redis.getPurgeBatchSize());
+    cache.setPurgeTimeBudget(redis.getPurgeTimeBudget());
+    cache.setTransactionalWrites(redis.isTransactionalWrites());
+    cache.setAsyncExpirationIndex(redis.isAsyncExpirationIndex());
+    // With the key storage mode Redis expires the entries itself ...
+    cache.setExpiryNotifications(
+        this.properties.getExpiryMode() == ExpiryMode.EVENTS && redis.getStorageMode() == StorageMode.HASH);
+
+    if (redis.getSerialization() != SerializationFormat.JDK) {
+      // Entries written by earlier versions (using Java serialization) are moved over by the cache ...
+      final RedisTemplate<String, Object> legacyTemplate = new RedisTemplate<>();
+      legacyTemplate.setConnectionFactory(redisTemplate.getConnectionFactory());
+      legacyTemplate.afterPropertiesSet();
+      cache.setLegacyRedisTemplate(legacyTemplate);
+    }
+  }
+
+  /**
+   * Applies the Redis cache settings supported by the reactive caches to the supplied cache. Since the reactive caches
+   * would silently ignore the other settings, start-up fails if any of them is set.
+   *
+   * @param cache the cache to configure
+   * @throws IllegalStateException if settings not supported by the reactive caches are set
+   */
+  private void configureReactiveRedisCache(final AbstractReactiveRedisIntegrationServiceCache<?, ?> cache) {
+    final CacheConfigurationProperties.Redis redis = this.properties.getRedis();
+    final List<String> unsupported = new ArrayList<>();
+    if (redis.getNearCache().isEnabled()) {
+      unsupported.add("signservice.cache.redis.near-cache.enabled");
+    }
+    if (this.properties.getDocument().isContentAddressed()) {
+      unsupported.add("signservice.cache.document.content-addressed");
+    }
+    if (this.properties.getExpiryMode() == ExpiryMode.EVENTS && redis.getStorageMode() == StorageMode.HASH) {
+      unsupported.add("signservice.cache.expiry-mode=events");
+    }
+    if (redis.isTransactionalWrites()) {
+      unsupported.add("signservice.cache.redis.transactional-writes");
+    }
+    if (redis.isAsyncExpirationIndex()) {
+      unsupported.add("signservice.cache.redis.async-expiration-index");
+    }
+    if (!unsupported.isEmpty()) {
+      throw new IllegalStateException(
+          "Not supported when signservice.cache.redis.reactive is set: " + String.join(", ", unsupported));
+    }
+    cache.setStorageMode(redis.getStorageMode());
+    cache.setBucketCount(redis.getBucketCount());
+    cache.setPurgeBatchSize(redis.getPurgeBatchSize());
+    cache.setPurgeTimeBudget(redis.getPurgeTimeBudget());
+  }
+
 }
@@ -0,0 +1,275 @@
+/*
+ * Copyright 2020-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.rest.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+import se.idsec.signservice.integration.rest.cache.AbstractBoundedInMemoryIntegrationServiceCache.FullPolicy;
+import se.idsec.signservice.integration.rest.cache.AbstractNearCacheIntegrationServiceCache;
+import se.idsec.signservice.integration.rest.cache.AbstractRedisIntegrationServiceCache;
+import se.idsec.signservice.integration.rest.cache.AbstractRedisIntegrationServiceCache.StorageMode;
+import se.idsec.signservice.integration.rest.cache.DocumentCompressor;
+import se.idsec.signservice.integration.rest.cache.OffHeapDocumentCache;
+import se.idsec.signservice.integration.rest.cache.RedisCacheSweepLock;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Configuration properties for the caches.
+ *
+ * @author Martin Lindström
+ */
+@Setter
+@Getter
+@ConfigurationProperties("signservice.cache")
+public class CacheConfigurationProperties {
+
+  /** State cache settings. */
+  private State state = new State();
+
+  /** Document cache settings. */
+  private Document document = new Document();
+
+  /** Redis cache settings. */
+  private Redis redis = new Redis();
+
+  /** How expired entries are removed from the caches. */
+  private ExpiryMode expiryMode = ExpiryMode.POLLING;
+
+  /**
+   * How expired entries are removed from the caches.
+   */
+  public enum ExpiryMode {
+
+    /** Expired entries are only removed by the periodic clean-up. */
+    POLLING,
+
+    /**
+     * Expired entries are removed close to their expiration times - using keyspace notifications for Redis, and
+     * scheduled removal for the in-memory caches. The periodic clean-up is still performed.
+     */
+    EVENTS
+  }
+
+  /**
+   * Limits for the in-memory caches (used when Redis is not used). If no limit is given, the cache is only bounded by
+   * the max age of its entries.
+   */
+  @Setter
+  @Getter
+  public static class MemoryLimits {
+
+    /** The maximum number of entries (0 for no limit). */
+    private long maxEntries = 0;
+
+    /** The maximum total (estimated) size of the entries ({@code null} for no limit). */
+    private DataSize maxSize;
+
+    /** What to do with new entries when the cache is full. */
+    private FullPolicy whenFull = FullPolicy.EVICT;
+
+    /**
+     * Tells whether any limit has been given.
+     *
+     * @return {@code true} if the cache is bounded, and {@code false} otherwise
+     */
+    public boolean isBounded() {
+      return this.maxEntries > 0 || (this.maxSize != null && this.maxSize.toBytes() > 0);
+    }
+
+  }
+
+  /**
+   * State cache settings.
+   */
+  @Setter
+  @Getter
+  public static class State {
+
+    /** Limits for the in-memory state cache. */
+    private MemoryLimits memoryLimits = new MemoryLimits();
+
+  }
+
+  /**
+   * Document cache settings.
+   */
+  @Setter
+  @Getter
+  public static class Document {
+
+    /** Whether each distinct document should be stored only once (content-addressed storage). */
+    private boolean contentAddressed = false;
+
+    /** Limits for the in-memory document cache. */
+    private MemoryLimits memoryLimits = new MemoryLimits();
+
+    /** Settings for storing the documents outside of the heap (when Redis is not used). */
+    private OffHeap offHeap = new OffHeap();
+
+    /**
+     * Settings for storing the documents outside of the heap.
+     */
+    @Setter
+    @Getter
+    public static class OffHeap {
+
+      /** Whether documents should be stored outside of the heap. */
+      private boolean enabled = false;
+
+      /** The total capacity. */
+      private DataSize capacity = DataSize.ofMegabytes(512);
+
+      /** The size of each block. A document is stored in as many blocks as needed. */
+      private DataSize blockSize = DataSize.ofBytes(OffHeapDocumentCache.DEFAULT_BLOCK_SIZE);
+
+      /** Whether direct memory or a memory mapped file should be used. */
+      private OffHeapDocumentCache.Storage storage = OffHeapDocumentCache.Storage.DIRECT;
+
+      /** The directory for the memory mapped file. If not set, the system temporary directory is used. */
+      private Path directory;
+
+    }
+
+    /** Settings for compression of cached documents. */
+    private Compression compression = new Compression();
+
+    /**
+     * Settings for compression of cached documents.
+     */
+    @Setter
+    @Getter
+    public static class Compression {
+
+      /** Whether cached documents are stored compressed. */
+      private boolean enabled = false;
+
+      /** Documents smaller than this (after Base64 decoding) are not compressed. */
+      private DataSize threshold = DataSize.ofBytes(DocumentCompressor.DEFAULT_THRESHOLD);
+
+      /** The compression level (0-9), where 1 gives the fastest and 9 the best compression. */
+      private int level = DocumentCompressor.DEFAULT_LEVEL;
+
+    }
+
+  }
+
+  /**
+   * Redis cache settings.
+   */
+  @Setter
+  @Getter
+  public static class Redis {
+
+    /** The serialization format for keys and cached entries. */
+    private SerializationFormat serialization = SerializationFormat.JDK;
+
+    /** How cached entries are stored in Redis. */
+    private StorageMode storageMode = StorageMode.HASH;
+
+    /** The number of hashes (buckets) that the entries of each cache are spread over (hash storage mode). */
+    private int bucketCount = 1;
+
+    /** The maximum number of expired entries that are purged in one batch (when using the hash storage mode). */
+    private int purgeBatchSize = AbstractRedisIntegrationServiceCache.DEFAULT_PURGE_BATCH_SIZE;
+
+    /** The maximum time that one cache clean-up may spend purging batches of expired entries. */
+    private Duration purgeTimeBudget = AbstractRedisIntegrationServiceCache.DEFAULT_PURGE_TIME_BUDGET;
+
+    /**
+     * Whether the writes of an entry and its expiration index record (hash storage mode) should be wrapped in
+     * MULTI/EXEC. The writes are always sent in one pipeline.
+     */
+    private boolean transactionalWrites = false;
+
+    /**
+     * Whether the expiration index (hash storage mode) should be updated without waiting for the reply from Redis.
+     */
+    private boolean asyncExpirationIndex = false;
+
+    /**
+     * Whether the caches should use the non-blocking (reactive) Redis client. Near caches, content-addressed storage,
+     * expiry notifications and the migration of entries written by earlier versions are then not supported.
+     */
+    private boolean reactive = false;
+
+    /** Settings for the lock that ensures that only one node cleans up each cache. */
+    private SweepLock sweepLock = new SweepLock();
+
+    /** Settings for the near cache placed in front of the Redis caches. */
+    private NearCache nearCache = new NearCache();
+
+    /**
+     * Settings for the lock that ensures that only one node cleans up each cache.
+     */
+    @Setter
+    @Getter
+    public static class SweepLock {
+
+      /** Whether the lock is used. If not, all nodes clean up the caches. */
+      private boolean enabled = true;
+
+      /** The lease time of the lock. Should be shorter than the clean-up intervals. */
+      private Duration leaseTime = RedisCacheSweepLock.DEFAULT_LEASE_TIME;
+
+      /** The maximum random delay before a node tries to acquire the lock. */
+      private Duration maxJitter = RedisCacheSweepLock.DEFAULT_MAX_JITTER;
+
+    }
+
+    /**
+     * Settings for the near cache, i.e., a bounded in-process cache placed in front of each Redis cache.
+     */
+    @Setter
+    @Getter
+    public static class NearCache {
+
+      /** Whether a near cache should be used. */
+      private boolean enabled = false;
+
+      /** The maximum number of entries held in the near cache (for each cache). */
+      private long maximumSize = AbstractNearCacheIntegrationServiceCache.DEFAULT_MAXIMUM_SIZE;
+
+      /** The maximum total size of the entries held in the near cache (for each cache). */
+      private DataSize maxSize = DataSize.ofBytes(AbstractNearCacheIntegrationServiceCache.DEFAULT_MAX_SIZE);
+
+      /** The maximum time that an entry is held in the near cache. */
+      private Duration timeToLive = AbstractNearCacheIntegrationServiceCache.DEFAULT_TIME_TO_LIVE;
+
+    }
+
+    /**
+     * Serialization formats for the Redis caches.
+     */
+    public enum SerializationFormat {
+
+      /** Java serialization of keys and values (the {@code RedisTemplate} default). */
+      JDK,
+
+      /**
+       * Plain string keys and the compact binary format of
+       * {@link se.idsec.signservice.integration.rest.cache.CachedObjectRedisSerializer CachedObjectRedisSerializer}
+       * for values.
+       */
+      BINARY
+    }
+
+  }
+
+}
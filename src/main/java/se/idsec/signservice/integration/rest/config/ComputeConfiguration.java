@@ -0,0 +1,51 @@
+/*
+ * Copyright 2020-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.rest.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.thread.Threading;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import se.idsec.signservice.integration.rest.compute.ComputeExecutor;
+
+/**
+ * Configuration for the compute executor.
+ *
+ * @author Martin Lindström
+ */
+@Configuration
+@EnableConfigurationProperties(ComputeConfigurationProperties.class)
+public class ComputeConfiguration {
+
+  /**
+   * Gets the executor that processes the {@code /create}, {@code /process} and {@code /prepare} calls.
+   *
+   * @param properties the compute settings
+   * @param environment the environment (to find out whether virtual threads are enabled)
+   * @param meterRegistry the meter registry (for queue metrics)
+   * @return a ComputeExecutor
+   */
+  @Bean
+  ComputeExecutor computeExecutor(final ComputeConfigurationProperties properties, final Environment environment,
+      final ObjectProvider<MeterRegistry> meterRegistry) {
+    return new ComputeExecutor(properties.isEnabled(), properties.getThreads(), properties.getQueueCapacity(),
+        properties.getRetryAfter(), Threading.VIRTUAL.isActive(environment), meterRegistry.getIfAvailable());
+  }
+
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2020-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.rest.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Configuration properties for the compute executor that processes the {@code /create}, {@code /process} and
+ * {@code /prepare} calls.
+ *
+ * @author Martin Lindström
+ */
+@Setter
+@Getter
+@ConfigurationProperties("signservice.compute")
+public class ComputeConfigurationProperties {
+
+  /**
+   * Whether the calls are processed by the compute executor. If not, they are processed by the request threads.
+   * Disabled by default, since the calls also wait for I/O (such as Redis cache calls), so a pool sized for CPU-bound
+   * work may limit throughput, and since the request threads are then used (also if they are virtual threads).
+   */
+  private boolean enabled = false;
+
+  /**
+   * The number of threads. If the calls wait for I/O (for example, if Redis caches are used), more threads than the
+   * number of processors should be configured.
+   */
+  private int threads = Runtime.getRuntime().availableProcessors();
+
+  /** The number of calls that may wait for a thread. If the queue is full, new calls are rejected with a 503. */
+  private int queueCapacity = 500;
+
+  /** The value of the Retry-After header when a call is rejected. */
+  private Duration retryAfter = Duration.ofSeconds(5);
+
+}
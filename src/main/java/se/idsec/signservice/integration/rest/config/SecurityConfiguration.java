@@ -15,8 +15,10 @@
  */
 package se.idsec.signservice.integration.rest.config;
 
+import jakarta.servlet.DispatcherType;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.actuate.autoconfigure.security.servlet.EndpointRequest;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
@@ -41,19 +43,30 @@ import java.util.Collection;
 import java.util.List;
 
 /**
- * Security configuration.
+ * Security configuration (for the servlet stack).
  *
  * @author Martin Lindström
  */
 @Configuration
 @EnableMethodSecurity
 @EnableWebSecurity
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class SecurityConfiguration {
 
   @Bean
   UserDetailsService userDetailsService(
       @Qualifier("signservice.users") final Collection<UsersConfiguration.UserEntry> users) {
+    return new InMemoryUserDetailsManager(toUserDetails(users));
+  }
 
+  /**
+   * Maps the configured users to {@link UserDetails} objects, where roles are given as {@code ROLE_} authorities and
+   * policies as {@code POLICY_} authorities.
+   *
+   * @param users the configured users
+   * @return a list of user details
+   */
+  public static List<UserDetails> toUserDetails(final Collection<UsersConfiguration.UserEntry> users) {
     final List<UserDetails> userDetails = new ArrayList<>();
     for (final UsersConfiguration.UserEntry u : users) {
       final List<SimpleGrantedAuthority> authorities = new ArrayList<>();
@@ -65,13 +78,16 @@ public class SecurityConfiguration {
       }
       userDetails.add(new User(u.getUserId(), u.getPassword(), authorities));
     }
-    return new InMemoryUserDetailsManager(userDetails);
+    return userDetails;
   }
 
   @Bean
   public SecurityFilterChain securityFilterChain(final HttpSecurity http) throws Exception {
     http
         .authorizeHttpRequests(authorize -> authorize
+            // Streamed responses (batch calls) are completed in an async dispatch, and the request was
+            // authorized when it was first dispatched ...
+            .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
             .requestMatchers(
                 new AntPathRequestMatcher("/v1/version", HttpMethod.GET.toString()),
                 new AntPathRequestMatcher("/error")
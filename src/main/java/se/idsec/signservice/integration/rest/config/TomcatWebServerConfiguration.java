@@ -17,10 +17,13 @@ package se.idsec.signservice.integration.rest.config;
 
 import org.apache.catalina.connector.Connector;
 import org.apache.coyote.ajp.AbstractAjpProtocol;
+import org.apache.tomcat.util.threads.VirtualThreadExecutor;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.thread.Threading;
 import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
 import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Component;
 
 import java.util.Objects;
@@ -38,13 +41,18 @@ public class TomcatWebServerConfiguration implements WebServerFactoryCustomizer<
   /** The Tomcat AJP settings. */
   private final TomcatAjpConfigurationProperties ajp;
 
+  /** Whether requests are handled by virtual threads ({@code spring.threads.virtual.enabled}). */
+  private final boolean virtualThreads;
+
   /**
    * Constructor.
    *
    * @param ajp the Tomcat AJP settings
+   * @param environment the environment
    */
-  public TomcatWebServerConfiguration(final TomcatAjpConfigurationProperties ajp) {
+  public TomcatWebServerConfiguration(final TomcatAjpConfigurationProperties ajp, final Environment environment) {
     this.ajp = Objects.requireNonNull(ajp, "ajp must not be null");
+    this.virtualThreads = Threading.VIRTUAL.isActive(environment);
   }
 
   /** {@inheritDoc} */
@@ -70,6 +78,11 @@ public class TomcatWebServerConfiguration implements WebServerFactoryCustomizer<
         protocol.setSecretRequired(false);
       }
 
+      // Spring Boot only sets up virtual threads for the main connector ...
+      if (this.virtualThreads) {
+        protocol.setExecutor(new VirtualThreadExecutor("tomcat-ajp-"));
+      }
+
       factory.addAdditionalTomcatConnectors(ajpConnector);
     }
   }
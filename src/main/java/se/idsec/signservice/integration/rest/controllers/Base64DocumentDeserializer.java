@@ -0,0 +1,134 @@
+/*
+ * Copyright 2020-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.rest.controllers;
+
+import com.fasterxml.jackson.core.Base64Variant;
+import com.fasterxml.jackson.core.Base64Variants;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.exc.StreamReadException;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import lombok.Getter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Serial;
+
+/**
+ * Deserializes a Base64-encoded JSON string into a byte array without materializing the string. The characters are
+ * decoded as they are read from the parser input, and the decoded bytes are written to a {@link DocumentBuffer} (that
+ * spills over to a temporary file for large documents). This means that only the decoded document is held in memory.
+ * <p>
+ * Both padded and unpadded input is accepted, as well as line breaks.
+ * </p>
+ *
+ * @author Martin Lindström
+ */
+public class Base64DocumentDeserializer extends StdDeserializer<byte[]> {
+
+  /** For serialization. */
+  @Serial
+  private static final long serialVersionUID = 4377512318834458155L;
+
+  /** The Base64 variant (accepts the same input as the Java Base64 decoder, and line breaks). */
+  private static final Base64Variant BASE64 =
+      Base64Variants.MIME_NO_LINEFEEDS.withReadPadding(Base64Variant.PaddingReadBehaviour.PADDING_ALLOWED);
+
+  /** The number of decoded bytes that are held in memory before spilling over to a temporary file. */
+  private final int memoryThreshold;
+
+  /**
+   * Default constructor.
+   */
+  public Base64DocumentDeserializer() {
+    this(DocumentBuffer.DEFAULT_MEMORY_THRESHOLD);
+  }
+
+  /**
+   * Constructor setting the memory threshold.
+   *
+   * @param memoryThreshold the number of decoded bytes that are held in memory before spilling over to a temporary
+   *     file
+   */
+  public Base64DocumentDeserializer(final int memoryThreshold) {
+    super(byte[].class);
+    this.memoryThreshold = memoryThreshold;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public byte[] deserialize(final JsonParser parser, final DeserializationContext context) throws IOException {
+    if (!parser.hasToken(JsonToken.VALUE_STRING)) {
+      return (byte[]) context.handleUnexpectedToken(byte[].class, parser);
+    }
+    final String fieldName = parser.currentName();
+    try (final DocumentBuffer buffer = new DocumentBuffer(this.memoryThreshold)) {
+      parser.readBinaryValue(BASE64, buffer);
+      return buffer.toByteArray();
+    }
+    catch (final StreamReadException e) {
+      throw new InvalidEncodingException(parser, fieldName, e);
+    }
+  }
+
+  /**
+   * Exception that is thrown if the Base64 encoding of a document is invalid.
+   */
+  public static class InvalidEncodingException extends JsonMappingException {
+
+    /** For serialization. */
+    @Serial
+    private static final long serialVersionUID = -2497785339958315104L;
+
+    /** The name of the field holding the invalid document. */
+    @Getter
+    private final String fieldName;
+
+    /**
+     * Constructor.
+     *
+     * @param parser the parser
+     * @param fieldName the name of the field holding the invalid document
+     * @param cause the cause of the error
+     */
+    public InvalidEncodingException(final Closeable parser, final String fieldName, final Throwable cause) {
+      super(parser, "Invalid Base64 encoding", cause);
+      this.fieldName = fieldName;
+    }
+  }
+
+  /**
+   * A {@link Base64DocumentDeserializer} that holds the decoded document in memory, i.e., it never writes to a
+   * temporary file. For use where the deserializer must not block, such as in the JSON decoder of the reactive stack,
+   * which runs on the event loop (and where the complete request body is held in memory anyway).
+   */
+  public static class InMemory extends Base64DocumentDeserializer {
+
+    /** For serialization. */
+    @Serial
+    private static final long serialVersionUID = 1812935420985328562L;
+
+    /**
+     * Default constructor.
+     */
+    public InMemory() {
+      super(Integer.MAX_VALUE);
+    }
+  }
+
+}
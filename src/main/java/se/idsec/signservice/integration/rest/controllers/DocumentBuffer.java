@@ -0,0 +1,142 @@
+/*
+ * Copyright 2020-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.rest.controllers;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * An output stream for decoded documents. The bytes are held in memory up to a threshold, after which they are
+ * written to a temporary file. When the document is complete, it is returned as a byte array of the exact size. This
+ * way, the peak memory used for a large document is (close to) the document size - not the size of a growing buffer
+ * and its copy.
+ * <p>
+ * The temporary file is deleted when the stream is closed.
+ * </p>
+ *
+ * @author Martin Lindström
+ */
+@Slf4j
+class DocumentBuffer extends OutputStream {
+
+  /** The default number of bytes held in memory before spilling over to a temporary file. */
+  public static final int DEFAULT_MEMORY_THRESHOLD = 1024 * 1024;
+
+  /** The threshold. */
+  private final int memoryThreshold;
+
+  /** The in-memory buffer (until the threshold is reached). */
+  private ByteArrayOutputStream memory;
+
+  /** The temporary file (after the threshold has been reached). */
+  private Path file;
+
+  /** The stream to the temporary file. */
+  private OutputStream fileStream;
+
+  /** The number of bytes written. */
+  private long size;
+
+  /**
+   * Constructor.
+   *
+   * @param memoryThreshold the number of bytes held in memory before spilling over to a temporary file
+   */
+  DocumentBuffer(final int memoryThreshold) {
+    this.memoryThreshold = memoryThreshold;
+    this.memory = new ByteArrayOutputStream(Math.min(memoryThreshold, 8192));
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void write(final int b) throws IOException {
+    this.write(new byte[] { (byte) b }, 0, 1);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void write(final byte[] b, final int off, final int len) throws IOException {
+    if (this.fileStream == null && this.size + len > this.memoryThreshold) {
+      this.spill();
+    }
+    if (this.fileStream != null) {
+      this.fileStream.write(b, off, len);
+    }
+    else {
+      this.memory.write(b, off, len);
+    }
+    this.size += len;
+  }
+
+  /**
+   * Gets the written bytes.
+   *
+   * @return a byte array holding the written bytes
+   * @throws IOException for errors reading the temporary file
+   */
+  byte[] toByteArray() throws IOException {
+    if (this.fileStream == null) {
+      return this.memory.toByteArray();
+    }
+    if (this.size > Integer.MAX_VALUE - 8) {
+      throw new IOException("Document is too large");
+    }
+    this.fileStream.flush();
+    return Files.readAllBytes(this.file);
+  }
+
+  /**
+   * Closes the stream and deletes the temporary file (if created).
+   */
+  @Override
+  public void close() throws IOException {
+    if (this.fileStream != null) {
+      try {
+        this.fileStream.close();
+      }
+      finally {
+        Files.deleteIfExists(this.file);
+        this.fileStream = null;
+      }
+    }
+  }
+
+  /**
+   * Moves the bytes held in memory to a temporary file.
+   *
+   * @throws IOException for errors creating the file
+   */
+  private void spill() throws IOException {
+    this.file = Files.createTempFile("signservice-document-", ".tmp");
+    log.trace("Document exceeds {} bytes, writing to {}", this.memoryThreshold, this.file);
+    try {
+      this.fileStream = new BufferedOutputStream(Files.newOutputStream(this.file));
+    }
+    catch (final IOException e) {
+      Files.deleteIfExists(this.file);
+      throw e;
+    }
+    this.memory.writeTo(this.fileStream);
+    this.memory = null;
+  }
+
+}
@@ -24,19 +24,30 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PostFilter;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.parameters.P;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RequestPart;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
 import se.idsec.signservice.integration.ApiVersion;
 import se.idsec.signservice.integration.ExtendedSignServiceIntegrationService;
 import se.idsec.signservice.integration.ProcessSignResponseInput;
@@ -53,26 +64,46 @@ import se.idsec.signservice.integration.core.error.InputValidationException;
 import se.idsec.signservice.integration.core.error.SignServiceIntegrationException;
 import se.idsec.signservice.integration.document.pdf.PdfSignaturePageFullException;
 import se.idsec.signservice.integration.document.pdf.PdfSignaturePagePreferences;
-import se.idsec.signservice.integration.document.pdf.PreparePdfSignaturePageInput;
 import se.idsec.signservice.integration.document.pdf.PreparedPdfDocument;
+import se.idsec.signservice.integration.rest.batch.BatchItemResult;
+import se.idsec.signservice.integration.rest.batch.BatchProcessor;
+import se.idsec.signservice.integration.rest.compute.ComputeExecutor;
+import se.idsec.signservice.integration.rest.compute.ComputeExecutorFullException;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Base64;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Main controller for the Sign Service Integration service.
+ * <p>
+ * The calls to {@code /create}, {@code /process} and {@code /prepare} are processed by the {@link ComputeExecutor},
+ * and the request thread is released while they wait for, and are processed by, a compute thread. If the executor
+ * queue is full, the call is rejected at once with a 503 (see {@link ComputeExecutorFullException}).
+ * </p>
  *
  * @author Martin Lindström
  */
 @RestController
 @RequestMapping("v1")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @Slf4j
 class SignServiceIntegrationController {
 
   /** The service logic. */
   private final ExtendedSignServiceIntegrationService signServiceIntegrationService;
 
+  /** Processes the items of batch calls to /create. */
+  private final BatchProcessor createBatchProcessor;
+
+  /** Processes the items of batch calls to /prepare. */
+  private final BatchProcessor prepareBatchProcessor;
+
+  /** Processes the calls to /create, /process and /prepare. */
+  private final ComputeExecutor computeExecutor;
+
   // For JSON serialization into logs.
   private final ObjectMapper mapper;
 
@@ -80,11 +111,20 @@ class SignServiceIntegrationController {
    * Constructor.
    *
    * @param signServiceIntegrationService the service logic
+   * @param createBatchProcessor processes the items of batch calls to /create
+   * @param prepareBatchProcessor processes the items of batch calls to /prepare
+   * @param computeExecutor processes the calls to /create, /process and /prepare
    */
-  public SignServiceIntegrationController(final ExtendedSignServiceIntegrationService signServiceIntegrationService) {
+  public SignServiceIntegrationController(final ExtendedSignServiceIntegrationService signServiceIntegrationService,
+      @Qualifier("createBatchProcessor") final BatchProcessor createBatchProcessor,
+      @Qualifier("prepareBatchProcessor") final BatchProcessor prepareBatchProcessor,
+      final ComputeExecutor computeExecutor) {
     this.mapper = new ObjectMapper();
     this.mapper.setSerializationInclusion(Include.NON_NULL);
     this.signServiceIntegrationService = signServiceIntegrationService;
+    this.createBatchProcessor = createBatchProcessor;
+    this.prepareBatchProcessor = prepareBatchProcessor;
+    this.computeExecutor = computeExecutor;
   }
 
   /**
@@ -98,11 +138,12 @@ class SignServiceIntegrationController {
    * @return a SignRequestData object
    * @throws InputValidationException if the provided input does not validate correctly
    * @throws SignServiceIntegrationException for processing errors
+   * @throws ComputeExecutorFullException if the compute queue is full
    */
   @PreAuthorize("@evaluator.hasPermission(authentication, #policy, 'use')")
   @PostMapping(value = "/create/{policy}", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
   @ResponseBody
-  public SignRequestData createSignRequest(
+  public CompletableFuture<SignRequestData> createSignRequest(
       final HttpServletRequest request,
       final Authentication authentication,
       @PathVariable("policy") @P("policy") final String policy,
@@ -112,14 +153,16 @@ class SignServiceIntegrationController {
     log.debug("Processing POST request '{}' [user='{}', client-ip'{}']",
         request.getServletPath(), authentication.getName(), request.getRemoteAddr());
 
-    log.trace("POST {}{}{}", request.getServletPath(), System.lineSeparator(), this.getJsonString(signRequestInput));
+    final String path = request.getServletPath();
+    final String owner = authentication.getName();
+    this.traceJson("POST {}{}{}", path, signRequestInput);
 
     // Check to ensure that the policy is correct ...
     //
     if (signRequestInput.getPolicy() == null) {
       signRequestInput.setPolicy(policy);
     }
-    else if (signRequestInput.getPolicy().equals(policy)) {
+    else if (!signRequestInput.getPolicy().equals(policy)) {
       log.info("Bad policy ({}) in input passed to '{}' [user='{}', client-ip'{}']",
           policy, request.getServletPath(), authentication.getName(), request.getRemoteAddr());
       throw new InputValidationException("policy", "Supplied policy in input does not match URI");
@@ -127,13 +170,51 @@ class SignServiceIntegrationController {
 
     // Invoke the API implementation and create a SignRequestData ...
     //
-    final SignRequestData signRequestData =
-        this.signServiceIntegrationService.createSignRequest(signRequestInput, authentication.getName());
+    return this.computeExecutor.submit(() -> {
+      final SignRequestData signRequestData =
+          this.signServiceIntegrationService.createSignRequest(signRequestInput, owner);
 
-    log.trace("Response to POST {}:{}{}", request.getServletPath(), System.lineSeparator(),
-        this.getJsonString(signRequestData));
+      this.traceJson("Response to POST {}:{}{}", path, signRequestData);
 
-    return signRequestData;
+      return signRequestData;
+    });
+  }
+
+  /**
+   * Endpoint for creating the sign request data for several independent signature operations in one call. The inputs
+   * are processed in parallel, and the result for each input is either the {@link SignRequestData} or an error.
+   *
+   * @param request the HTTP servlet request
+   * @param authentication the user authentication object
+   * @param policy the policy for the operations
+   * @param signRequestInputs the sign request inputs
+   * @return a list of results, in the same order as the inputs
+   * @throws InputValidationException if too many inputs are given
+   */
+  @PreAuthorize("@evaluator.hasPermission(authentication, #policy, 'use')")
+  @PostMapping(value = "/create/{policy}/batch", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+  @ResponseBody
+  public List<BatchItemResult<SignRequestData>> createSignRequests(
+      final HttpServletRequest request,
+      final Authentication authentication,
+      @PathVariable("policy") @P("policy") final String policy,
+      @RequestBody final List<SignRequestInput> signRequestInputs) throws InputValidationException {
+
+    log.debug("Processing POST request '{}' with {} items [user='{}', client-ip'{}']",
+        request.getServletPath(), signRequestInputs.size(), authentication.getName(), request.getRemoteAddr());
+
+    this.checkBatchSize(signRequestInputs.size(), this.createBatchProcessor, "signRequestInputs");
+
+    final String owner = authentication.getName();
+    return this.createBatchProcessor.processAll(signRequestInputs, signRequestInput -> {
+      if (signRequestInput.getPolicy() == null) {
+        signRequestInput.setPolicy(policy);
+      }
+      else if (!signRequestInput.getPolicy().equals(policy)) {
+        throw new InputValidationException("policy", "Supplied policy in input does not match URI");
+      }
+      return this.signServiceIntegrationService.createSignRequest(signRequestInput, owner);
+    }, request.getServletPath());
   }
 
   /**
@@ -149,10 +230,11 @@ class SignServiceIntegrationController {
    * @throws SignResponseErrorStatusException if the SignService reported an error during processing of the
    *     SignRequest
    * @throws SignServiceIntegrationException for processing errors
+   * @throws ComputeExecutorFullException if the compute queue is full
    */
   @PostMapping(value = "/process", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
   @ResponseBody
-  public SignatureResult processSignResponse(
+  public CompletableFuture<SignatureResult> processSignResponse(
       final HttpServletRequest request,
       final Authentication authentication,
       @RequestBody final ProcessSignResponseInput processSignResponseInput)
@@ -161,8 +243,9 @@ class SignServiceIntegrationController {
     log.debug("Processing POST request '{}' [user='{}', client-ip'{}']",
         request.getServletPath(), authentication.getName(), request.getRemoteAddr());
 
-    log.trace("POST {}{}{}", request.getServletPath(), System.lineSeparator(),
-        this.getJsonString(processSignResponseInput));
+    final String path = request.getServletPath();
+    final String owner = authentication.getName();
+    this.traceJson("POST {}{}{}", path, processSignResponseInput);
 
     // Make sure we have the state ...
     //
@@ -174,14 +257,15 @@ class SignServiceIntegrationController {
 
     // Invoke the API implementation and create a SignResponse.
     //
-    final SignatureResult signatureResult = this.signServiceIntegrationService.processSignResponse(
-        processSignResponseInput.getSignResponse(), processSignResponseInput.getRelayState(),
-        processSignResponseInput.getState(), processSignResponseInput.getParameters(), authentication.getName());
+    return this.computeExecutor.submit(() -> {
+      final SignatureResult signatureResult = this.signServiceIntegrationService.processSignResponse(
+          processSignResponseInput.getSignResponse(), processSignResponseInput.getRelayState(),
+          processSignResponseInput.getState(), processSignResponseInput.getParameters(), owner);
 
-    log.trace("Response to POST {}:{}{}", request.getServletPath(), System.lineSeparator(),
-        this.getJsonString(signatureResult));
+      this.traceJson("Response to POST {}:{}{}", path, signatureResult);
 
-    return signatureResult;
+      return signatureResult;
+    });
   }
 
   /**
@@ -197,40 +281,136 @@ class SignServiceIntegrationController {
    * @throws SignServiceIntegrationException for processing errors
    * @throws PdfSignaturePageFullException if the PDF document contains more signatures than there is room for in
    *     the PDF signature page (and {@link PdfSignaturePagePreferences#isFailWhenSignPageFull()} evaluates to true)
+   * @throws ComputeExecutorFullException if the compute queue is full
    */
   @PreAuthorize("@evaluator.hasPermission(authentication, #policy, 'use')")
   @PostMapping(value = "/prepare/{policy}", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
   @ResponseBody
-  public PreparedPdfDocument preparePdfSignaturePage(
+  public CompletableFuture<PreparedPdfDocument> preparePdfSignaturePage(
       final HttpServletRequest request,
       final Authentication authentication,
       @PathVariable("policy") @P("policy") final String policy,
-      @RequestBody final PreparePdfSignaturePageInput input,
+      @RequestBody final PreparePdfDocumentInput input,
       @RequestParam(value = "returnDocReference", required = false) final Boolean returnDocumentReference)
       throws InputValidationException, SignServiceIntegrationException, PdfSignaturePageFullException {
 
     log.debug("Processing POST request '{}' [user='{}', client-ip'{}']",
         request.getServletPath(), authentication.getName(), request.getRemoteAddr());
 
-    log.trace("POST {}{}{}", request.getServletPath(), System.lineSeparator(), this.getJsonString(input));
+    final String path = request.getServletPath();
+    final String owner = authentication.getName();
+    this.traceJson("POST {}{}{}", path, input);
 
-    byte[] pdfBytes = null;
-    if (input.getPdfDocument() != null) {
-      try {
-        pdfBytes = Base64.getDecoder().decode(input.getPdfDocument());
-      }
-      catch (final IllegalArgumentException e) {
-        throw new InputValidationException("pdfDocument", "Invalid Base64 encoding", e);
-      }
-    }
+    return this.computeExecutor.submit(() -> {
+      final PreparedPdfDocument preparedPdfDocument = this.signServiceIntegrationService.preparePdfDocument(policy,
+          input.getPdfDocument(), input.getSignaturePagePreferences(), returnDocumentReference, owner);
 
-    final PreparedPdfDocument preparedPdfDocument = this.signServiceIntegrationService.preparePdfDocument(
-        policy, pdfBytes, input.getSignaturePagePreferences(), returnDocumentReference, authentication.getName());
+      this.traceJson("Response to POST {}:{}{}", path, preparedPdfDocument);
 
-    log.trace("Response to POST {}:{}{}", request.getServletPath(), System.lineSeparator(),
-        this.getJsonString(preparedPdfDocument));
+      return preparedPdfDocument;
+    });
+  }
 
-    return preparedPdfDocument;
+  /**
+   * Variant of {@link #preparePdfSignaturePage(HttpServletRequest, Authentication, String, PreparePdfDocumentInput,
+   * Boolean)} where the PDF document is passed as the (binary) request body. The default signature page preferences
+   * are used.
+   * <p>
+   * If the client accepts {@code multipart/mixed}, the response is returned as described in
+   * {@link #toPrepareResponse(PreparedPdfDocument, String)}. Otherwise, a JSON-encoded {@link PreparedPdfDocument} is
+   * returned.
+   * </p>
+   *
+   * @param request the HTTP request
+   * @param authentication the user authentication object
+   * @param policy the policy for the operation
+   * @param pdfDocument the PDF document to prepare
+   * @param returnDocumentReference whether a reference to the updated document should be returned
+   * @param accept the Accept header
+   * @return the prepared document
+   * @throws InputValidationException for input validation errors
+   * @throws SignServiceIntegrationException for processing errors
+   * @throws PdfSignaturePageFullException if the PDF document contains more signatures than there is room for in
+   *     the PDF signature page
+   * @throws ComputeExecutorFullException if the compute queue is full
+   */
+  @PreAuthorize("@evaluator.hasPermission(authentication, #policy, 'use')")
+  @PostMapping(value = "/prepare/{policy}", consumes = MediaType.APPLICATION_PDF_VALUE,
+      produces = { MediaType.APPLICATION_JSON_VALUE, MediaType.MULTIPART_MIXED_VALUE })
+  public CompletableFuture<ResponseEntity<Object>> preparePdfSignaturePageBinary(
+      final HttpServletRequest request,
+      final Authentication authentication,
+      @PathVariable("policy") @P("policy") final String policy,
+      @RequestBody final byte[] pdfDocument,
+      @RequestParam(value = "returnDocReference", required = false) final Boolean returnDocumentReference,
+      @RequestHeader(value = HttpHeaders.ACCEPT, required = false) final String accept)
+      throws InputValidationException, SignServiceIntegrationException, PdfSignaturePageFullException {
+
+    log.debug("Processing POST request '{}' ({} bytes) [user='{}', client-ip'{}']",
+        request.getServletPath(), pdfDocument.length, authentication.getName(), request.getRemoteAddr());
+
+    final String owner = authentication.getName();
+    return this.computeExecutor.submit(() -> toPrepareResponse(
+        this.signServiceIntegrationService.preparePdfDocument(policy, pdfDocument, null, returnDocumentReference,
+            owner),
+        accept));
+  }
+
+  /**
+   * Variant of {@link #preparePdfSignaturePage(HttpServletRequest, Authentication, String, PreparePdfDocumentInput,
+   * Boolean)} where the PDF document is passed as the (binary) {@code document} part of a multipart request. The
+   * signature page preferences may be passed as the JSON {@code preferences} part.
+   * <p>
+   * If the client accepts {@code multipart/mixed}, the response is returned as described in
+   * {@link #toPrepareResponse(PreparedPdfDocument, String)}. Otherwise, a JSON-encoded {@link PreparedPdfDocument} is
+   * returned.
+   * </p>
+   *
+   * @param request the HTTP request
+   * @param authentication the user authentication object
+   * @param policy the policy for the operation
+   * @param document the PDF document to prepare
+   * @param preferences the signature page preferences (optional)
+   * @param returnDocumentReference whether a reference to the updated document should be returned
+   * @param accept the Accept header
+   * @return the prepared document
+   * @throws InputValidationException for input validation errors
+   * @throws SignServiceIntegrationException for processing errors
+   * @throws PdfSignaturePageFullException if the PDF document contains more signatures than there is room for in
+   *     the PDF signature page (and {@link PdfSignaturePagePreferences#isFailWhenSignPageFull()} evaluates to true)
+   * @throws ComputeExecutorFullException if the compute queue is full
+   */
+  @PreAuthorize("@evaluator.hasPermission(authentication, #policy, 'use')")
+  @PostMapping(value = "/prepare/{policy}", consumes = MediaType.MULTIPART_FORM_DATA_VALUE,
+      produces = { MediaType.APPLICATION_JSON_VALUE, MediaType.MULTIPART_MIXED_VALUE })
+  public CompletableFuture<ResponseEntity<Object>> preparePdfSignaturePageMultipart(
+      final HttpServletRequest request,
+      final Authentication authentication,
+      @PathVariable("policy") @P("policy") final String policy,
+      @RequestPart("document") final MultipartFile document,
+      @RequestPart(value = "preferences", required = false) final PdfSignaturePagePreferences preferences,
+      @RequestParam(value = "returnDocReference", required = false) final Boolean returnDocumentReference,
+      @RequestHeader(value = HttpHeaders.ACCEPT, required = false) final String accept)
+      throws InputValidationException, SignServiceIntegrationException, PdfSignaturePageFullException {
+
+    log.debug("Processing POST request '{}' ({} bytes) [user='{}', client-ip'{}']",
+        request.getServletPath(), document.getSize(), authentication.getName(), request.getRemoteAddr());
+
+    final byte[] pdfBytes;
+    try {
+      pdfBytes = document.getBytes();
+    }
+    catch (final IOException e) {
+      throw new InputValidationException("document", "Failed to read document", e);
+    }
+
+    // The document is read on the request thread since the uploaded parts are cleaned up when the request returns.
+    //
+    final String owner = authentication.getName();
+    return this.computeExecutor.submit(() -> toPrepareResponse(
+        this.signServiceIntegrationService.preparePdfDocument(policy, pdfBytes, preferences, returnDocumentReference,
+            owner),
+        accept));
   }
 
   @PostFilter("@evaluator.hasPermission(authentication, filterObject, 'use')")
@@ -278,6 +458,156 @@ class SignServiceIntegrationController {
     private String apiVersion;
   }
 
+  /**
+   * Endpoint that prepares several PDF documents in one call. The documents are prepared in parallel, and the results
+   * are streamed back as newline-delimited JSON in the order that they complete. Each line holds a
+   * {@link BatchItemResult} whose {@code index} tells which input it belongs to, and whose result is either a
+   * {@link PreparedPdfDocument} or an error.
+   *
+   * @param request the HTTP request
+   * @param authentication the user authentication object
+   * @param policy the policy for the operations
+   * @param inputs the PDF documents to prepare along with preferences
+   * @param returnDocumentReference whether references to the updated documents should be returned
+   * @return an emitter for the results
+   * @throws InputValidationException if too many inputs are given
+   */
+  @PreAuthorize("@evaluator.hasPermission(authentication, #policy, 'use')")
+  @PostMapping(value = "/prepare/{policy}/batch", consumes = MediaType.APPLICATION_JSON_VALUE,
+      produces = MediaType.APPLICATION_NDJSON_VALUE)
+  public ResponseBodyEmitter preparePdfSignaturePages(
+      final HttpServletRequest request,
+      final Authentication authentication,
+      @PathVariable("policy") @P("policy") final String policy,
+      @RequestBody final List<PreparePdfDocumentInput> inputs,
+      @RequestParam(value = "returnDocReference", required = false) final Boolean returnDocumentReference)
+      throws InputValidationException {
+
+    log.debug("Processing POST request '{}' with {} items [user='{}', client-ip'{}']",
+        request.getServletPath(), inputs.size(), authentication.getName(), request.getRemoteAddr());
+
+    this.checkBatchSize(inputs.size(), this.prepareBatchProcessor, "inputs");
+
+    final String owner = authentication.getName();
+    return this.prepareBatchProcessor.streamAll(inputs,
+        input -> this.signServiceIntegrationService.preparePdfDocument(policy, input.getPdfDocument(),
+            input.getSignaturePagePreferences(), returnDocumentReference, owner),
+        request.getServletPath());
+  }
+
+  /**
+   * Variant of {@link #preparePdfSignaturePages(HttpServletRequest, Authentication, String, List, Boolean)} where the
+   * PDF documents are passed as (binary) {@code documents} parts of a multipart request. The signature page
+   * preferences, that are used for all documents, may be passed as the JSON {@code preferences} part.
+   *
+   * @param request the HTTP request
+   * @param authentication the user authentication object
+   * @param policy the policy for the operations
+   * @param documents the PDF documents to prepare
+   * @param preferences the signature page preferences (optional)
+   * @param returnDocumentReference whether references to the updated documents should be returned
+   * @return an emitter for the results
+   * @throws InputValidationException if too many documents are given
+   */
+  @PreAuthorize("@evaluator.hasPermission(authentication, #policy, 'use')")
+  @PostMapping(value = "/prepare/{policy}/batch", consumes = MediaType.MULTIPART_FORM_DATA_VALUE,
+      produces = MediaType.APPLICATION_NDJSON_VALUE)
+  public ResponseBodyEmitter preparePdfSignaturePagesMultipart(
+      final HttpServletRequest request,
+      final Authentication authentication,
+      @PathVariable("policy") @P("policy") final String policy,
+      @RequestPart("documents") final List<MultipartFile> documents,
+      @RequestPart(value = "preferences", required = false) final PdfSignaturePagePreferences preferences,
+      @RequestParam(value = "returnDocReference", required = false) final Boolean returnDocumentReference)
+      throws InputValidationException {
+
+    log.debug("Processing POST request '{}' with {} documents [user='{}', client-ip'{}']",
+        request.getServletPath(), documents.size(), authentication.getName(), request.getRemoteAddr());
+
+    this.checkBatchSize(documents.size(), this.prepareBatchProcessor, "documents");
+
+    // The documents are read on the request thread since the uploaded parts are cleaned up when the request returns.
+    //
+    final List<byte[]> pdfDocuments = new ArrayList<>(documents.size());
+    for (final MultipartFile document : documents) {
+      try {
+        pdfDocuments.add(document.getBytes());
+      }
+      catch (final IOException e) {
+        throw new InputValidationException("documents", "Failed to read document", e);
+      }
+    }
+
+    final String owner = authentication.getName();
+    return this.prepareBatchProcessor.streamAll(pdfDocuments,
+        pdfBytes -> this.signServiceIntegrationService.preparePdfDocument(
+            policy, pdfBytes, preferences, returnDocumentReference, owner),
+        request.getServletPath());
+  }
+
+  /**
+   * Checks that a batch call does not hold too many items.
+   *
+   * @param size the number of items
+   * @param processor the batch processor
+   * @param objectName the name of the input (for the error)
+   * @throws InputValidationException if there are too many items
+   */
+  private void checkBatchSize(final int size, final BatchProcessor processor, final String objectName)
+      throws InputValidationException {
+    if (size > processor.getMaxItems()) {
+      throw new InputValidationException(objectName,
+          String.format("At most %d items may be given", processor.getMaxItems()));
+    }
+  }
+
+  /**
+   * Creates the response for the binary variants of the prepare endpoint. If the client accepts
+   * {@code multipart/mixed}, a multipart response is returned, where the {@code result} part holds the JSON-encoded
+   * {@link PreparedPdfDocument} (without the updated document), and the {@code document} part holds the updated PDF
+   * document in binary form (if it was returned). Otherwise, the JSON-encoded {@link PreparedPdfDocument} is returned.
+   *
+   * @param preparedPdfDocument the result from the prepare operation
+   * @param accept the Accept header
+   * @return a response entity
+   */
+  static ResponseEntity<Object> toPrepareResponse(final PreparedPdfDocument preparedPdfDocument, final String accept) {
+    if (accept == null || MediaType.parseMediaTypes(accept).stream()
+        .noneMatch(MediaType.MULTIPART_MIXED::includes)) {
+      return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(preparedPdfDocument);
+    }
+
+    final byte[] document = preparedPdfDocument.getUpdatedPdfDocument() != null
+        ? Base64.getDecoder().decode(preparedPdfDocument.getUpdatedPdfDocument())
+        : null;
+    preparedPdfDocument.setUpdatedPdfDocument(null);
+
+    final MultiValueMap<String, Object> parts = new LinkedMultiValueMap<>();
+    final HttpHeaders resultHeaders = new HttpHeaders();
+    resultHeaders.setContentType(MediaType.APPLICATION_JSON);
+    parts.add("result", new HttpEntity<>(preparedPdfDocument, resultHeaders));
+    if (document != null) {
+      final HttpHeaders documentHeaders = new HttpHeaders();
+      documentHeaders.setContentType(MediaType.APPLICATION_PDF);
+      parts.add("document", new HttpEntity<>(document, documentHeaders));
+    }
+    return ResponseEntity.ok().contentType(MediaType.MULTIPART_MIXED).body(parts);
+  }
+
+  /**
+   * Logs the supplied object as JSON (if trace logging is enabled). The object may hold complete documents, so it must
+   * not be serialized unless it is actually logged.
+   *
+   * @param format the log message format (with placeholders for the path, a line separator and the JSON)
+   * @param path the servlet path of the request
+   * @param object the object to log
+   */
+  private void traceJson(final String format, final String path, final Object object) {
+    if (log.isTraceEnabled()) {
+      log.trace(format, path, System.lineSeparator(), this.getJsonString(object));
+    }
+  }
+
   /**
    * Serializes the supplied object into a JSON string. For logging purposes.
    *
@@ -18,6 +18,7 @@ package se.idsec.signservice.integration.rest.controllers.error;
 import java.util.Date;
 import java.util.Map;
 
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.boot.web.error.ErrorAttributeOptions;
 import org.springframework.boot.web.servlet.error.DefaultErrorAttributes;
 import org.springframework.http.HttpStatus;
@@ -34,6 +35,7 @@ import se.idsec.signservice.integration.core.error.NoAccessException;
  * @author Martin Lindström
  */
 @Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class CustomErrorAttributes extends DefaultErrorAttributes {
 
   /** {@inheritDoc} */
@@ -15,12 +15,14 @@
  */
 package se.idsec.signservice.integration.rest.controllers.error;
 
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.core.Ordered;
 import org.springframework.core.annotation.Order;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.HttpStatusCode;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.HttpMessageNotReadableException;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.context.request.ServletWebRequest;
@@ -36,6 +38,10 @@ import se.idsec.signservice.integration.core.error.SignServiceIntegrationErrorBo
 import se.idsec.signservice.integration.core.error.SignServiceIntegrationErrorBody.DssError;
 import se.idsec.signservice.integration.core.error.SignServiceIntegrationErrorBody.ValidationError;
 import se.idsec.signservice.integration.core.error.SignServiceIntegrationException;
+import se.idsec.signservice.integration.rest.ServiceOverloadedException;
+import se.idsec.signservice.integration.rest.controllers.Base64DocumentDeserializer;
+
+import java.time.Duration;
 
 /**
  * Exception handler for the Sign Service Integration service.
@@ -44,6 +50,7 @@ import se.idsec.signservice.integration.core.error.SignServiceIntegrationExcepti
  */
 @Order(Ordered.HIGHEST_PRECEDENCE)
 @ControllerAdvice
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class SignServiceIntegrationExceptionHandler extends ResponseEntityExceptionHandler {
 
   /**
@@ -59,6 +66,21 @@ public class SignServiceIntegrationExceptionHandler extends ResponseEntityExcept
   protected ResponseEntity<Object> handleSignServiceIntegrationException(
       final SignServiceIntegrationException ex, final WebRequest request) {
 
+    final SignServiceIntegrationErrorBody body = toErrorBody(ex, this.getPath(request));
+    return this.handleExceptionInternal(ex, body, new HttpHeaders(), HttpStatus.valueOf(body.getStatus()), request);
+  }
+
+  /**
+   * Creates the error body for an exception from the SignService Integration API. Also used for the per-item errors
+   * of batch calls.
+   *
+   * @param ex
+   *          the exception
+   * @param path
+   *          the request path
+   * @return an error body
+   */
+  public static SignServiceIntegrationErrorBody toErrorBody(final SignServiceIntegrationException ex, final String path) {
     HttpStatus status = HttpStatus.resolve(ex.getHttpStatus());
     if (status == null) {
       status = HttpStatus.INTERNAL_SERVER_ERROR;
@@ -69,7 +91,7 @@ public class SignServiceIntegrationExceptionHandler extends ResponseEntityExcept
       .timestamp(System.currentTimeMillis())
       .errorCode(ex.getErrorCode().getErrorCode())
       .message(ex.getMessage())
-      .path(this.getPath(request))
+      .path(path)
       .exceptionClass(ex.getClass().getName())
       .build();
     if (InputValidationException.class.isInstance(ex)) {
@@ -78,8 +100,7 @@ public class SignServiceIntegrationExceptionHandler extends ResponseEntityExcept
         .details((((InputValidationException) ex).getDetails()))
         .build());
     }
-
-    return this.handleExceptionInternal(ex, body, new HttpHeaders(), status, request);
+    return body;
   }
 
   /**
@@ -95,9 +116,25 @@ public class SignServiceIntegrationExceptionHandler extends ResponseEntityExcept
   protected ResponseEntity<Object> handleDssError(
       final SignResponseErrorStatusException ex, final WebRequest request) {
 
+    final SignServiceIntegrationErrorBody body = toDssErrorBody(ex, this.getPath(request));
+    return this.handleExceptionInternal(ex, body, new HttpHeaders(), HttpStatus.BAD_REQUEST, request);
+  }
+
+  /**
+   * Creates the error body for a DSS error from the SignService Integration API.
+   *
+   * @param ex
+   *          the exception
+   * @param path
+   *          the request path
+   * @return an error body
+   */
+  public static SignServiceIntegrationErrorBody toDssErrorBody(
+      final SignResponseErrorStatusException ex, final String path) {
+
     final String errorCode = SignResponseCancelStatusException.class.isInstance(ex) ? "dss.cancel" : "dss.error";
 
-    final SignServiceIntegrationErrorBody body = SignServiceIntegrationErrorBody.builder()
+    return SignServiceIntegrationErrorBody.builder()
       .status(HttpStatus.BAD_REQUEST.value())
       .timestamp(System.currentTimeMillis())
       .errorCode(errorCode)
@@ -106,11 +143,85 @@ public class SignServiceIntegrationExceptionHandler extends ResponseEntityExcept
         .minorCode(ex.getMinorCode())
         .build())
       .message(ex.getMessage())
-      .path(this.getPath(request))
+      .path(path)
       .exceptionClass(ex.getClass().getName())
       .build();
+  }
 
-    return this.handleExceptionInternal(ex, body, new HttpHeaders(), HttpStatus.BAD_REQUEST, request);
+  /**
+   * Handles calls rejected since the service is temporarily out of resources (a full cache or compute queue).
+   * Responds with 503 and a Retry-After header.
+   *
+   * @param ex
+   *          the exception
+   * @param request
+   *          the web request
+   * @return a response entity
+   */
+  @ExceptionHandler(ServiceOverloadedException.class)
+  protected ResponseEntity<Object> handleServiceOverloaded(final ServiceOverloadedException ex,
+      final WebRequest request) {
+
+    final SignServiceIntegrationErrorBody body =
+        toServiceUnavailableErrorBody(ex, ex.getErrorCode(), this.getPath(request));
+    return this.handleExceptionInternal(ex, body, retryAfterHeaders(ex.getRetryAfter()),
+        HttpStatus.SERVICE_UNAVAILABLE, request);
+  }
+
+  /**
+   * Creates the error body for a call that is rejected since the service is temporarily out of resources (a full
+   * cache or compute queue). Also used for the per-item errors of batch calls.
+   *
+   * @param ex
+   *          the exception
+   * @param errorCode
+   *          the error code
+   * @param path
+   *          the request path
+   * @return an error body
+   */
+  public static SignServiceIntegrationErrorBody toServiceUnavailableErrorBody(
+      final Exception ex, final ErrorCode errorCode, final String path) {
+
+    return SignServiceIntegrationErrorBody.builder()
+      .status(HttpStatus.SERVICE_UNAVAILABLE.value())
+      .timestamp(System.currentTimeMillis())
+      .errorCode(errorCode.getErrorCode())
+      .message(ex.getMessage())
+      .path(path)
+      .exceptionClass(ex.getClass().getName())
+      .build();
+  }
+
+  /**
+   * Creates the headers for a 503 response.
+   *
+   * @param retryAfter
+   *          the time after which the caller may retry
+   * @return the headers
+   */
+  public static HttpHeaders retryAfterHeaders(final Duration retryAfter) {
+    final HttpHeaders headers = new HttpHeaders();
+    headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfter.toSeconds()));
+    return headers;
+  }
+
+  /**
+   * Reports documents with an invalid Base64 encoding (see {@link Base64DocumentDeserializer}) as input validation
+   * errors, just as if the document had been decoded after the request body was parsed.
+   */
+  @Override
+  protected ResponseEntity<Object> handleHttpMessageNotReadable(final HttpMessageNotReadableException ex,
+      final HttpHeaders headers, final HttpStatusCode status, final WebRequest request) {
+
+    for (Throwable cause = ex.getCause(); cause != null; cause = cause.getCause()) {
+      if (cause instanceof final Base64DocumentDeserializer.InvalidEncodingException encodingException) {
+        return this.handleSignServiceIntegrationException(
+          new InputValidationException(encodingException.getFieldName(), "Invalid Base64 encoding", encodingException),
+          request);
+      }
+    }
+    return super.handleHttpMessageNotReadable(ex, headers, status, request);
   }
 
   @Override
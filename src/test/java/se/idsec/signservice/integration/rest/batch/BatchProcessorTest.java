@@ -0,0 +1,146 @@
+/*
+ * Copyright 2020-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.idsec.signservice.integration.rest.batch;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import se.idsec.signservice.integration.core.error.InputValidationException;
+import se.idsec.signservice.integration.rest.cache.CacheFullException;
+import se.idsec.signservice.integration.rest.compute.ComputeExecutorFullException;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test cases for {@link BatchProcessor}.
+ *
+ * @author Martin Lindström
+ */
+class BatchProcessorTest {
+
+  private BatchProcessor processor;
+
+  @BeforeEach
+  void setup() {
+    this.processor = new BatchProcessor("test", 2, 10, 100);
+  }
+
+  @AfterEach
+  void destroy() {
+    this.processor.destroy();
+  }
+
+  @Test
+  void testProcessAll() {
+    final List<BatchItemResult<String>> results = this.processor.processAll(List.of("a", "b", "c"),
+        String::toUpperCase, "/v1/test");
+    Assertions.assertEquals(3, results.size());
+    for (int i = 0; i < results.size(); i++) {
+      Assertions.assertEquals(i, results.get(i).getIndex());
+      Assertions.assertNull(results.get(i).getError());
+    }
+    Assertions.assertEquals(List.of("A", "B", "C"), results.stream().map(BatchItemResult::getResult).toList());
+  }
+
+  @Test
+  void testItemErrors() {
+    final List<BatchItemResult<String>> results = this.processor.processAll(
+        List.of("ok", "invalid", "cache-full", "overloaded", "bug"), item -> switch (item) {
+          case "invalid" -> throw new InputValidationException("item", "Invalid item");
+          case "cache-full" -> throw new CacheFullException("Cache is full", Duration.ofSeconds(3));
+          case "overloaded" -> throw new ComputeExecutorFullException("Queue is full", Duration.ofSeconds(7));
+          case "bug" -> throw new IllegalStateException("secret details");
+          default -> item;
+        }, "/v1/test");
+
+    Assertions.assertEquals("ok", results.get(0).getResult());
+
+    Assertions.assertEquals(400, results.get(1).getError().getStatus());
+    Assertions.assertEquals("item", results.get(1).getError().getValidationError().getObject());
+    Assertions.assertNull(results.get(1).getRetryAfter());
+
+    Assertions.assertEquals(503, results.get(2).getError().getStatus());
+    Assertions.assertEquals(CacheFullException.ERROR_CODE.getErrorCode(), results.get(2).getError().getErrorCode());
+    Assertions.assertEquals(3L, results.get(2).getRetryAfter());
+
+    Assertions.assertEquals(503, results.get(3).getError().getStatus());
+    Assertions.assertEquals(ComputeExecutorFullException.ERROR_CODE.getErrorCode(),
+        results.get(3).getError().getErrorCode());
+    Assertions.assertEquals(7L, results.get(3).getRetryAfter());
+
+    // No details of unexpected errors are given to the caller ...
+    Assertions.assertEquals(500, results.get(4).getError().getStatus());
+    Assertions.assertEquals("/v1/test", results.get(4).getError().getPath());
+    Assertions.assertFalse(results.get(4).getError().getMessage().contains("secret"));
+    Assertions.assertNull(results.get(4).getError().getExceptionClass());
+  }
+
+  @Test
+  void testPoolFull() throws Exception {
+    final BatchProcessor full = new BatchProcessor("full", 1, 1, 100);
+    full.setRetryAfter(Duration.ofSeconds(9));
+    final CountDownLatch latch = new CountDownLatch(1);
+    try {
+      final BatchProcessor.BatchOperation<String, String> operation = item -> {
+        try {
+          latch.await();
+        }
+        catch (final InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        return item;
+      };
+
+      // One item is processed and one is queued, the next is rejected at once (and not run by this thread) ...
+      final CompletableFuture<BatchItemResult<String>> running = full.submit(0, "a", operation, "/v1/test");
+      final CompletableFuture<BatchItemResult<String>> queued = full.submit(1, "b", operation, "/v1/test");
+      final CompletableFuture<BatchItemResult<String>> rejected = full.submit(2, "c", operation, "/v1/test");
+
+      Assertions.assertTrue(rejected.isDone());
+      Assertions.assertEquals(2, rejected.get().getIndex());
+      Assertions.assertEquals(503, rejected.get().getError().getStatus());
+      Assertions.assertEquals(BatchProcessorFullException.ERROR_CODE.getErrorCode(),
+          rejected.get().getError().getErrorCode());
+      Assertions.assertEquals(9L, rejected.get().getRetryAfter());
+
+      latch.countDown();
+      Assertions.assertEquals("a", running.get(5, TimeUnit.SECONDS).getResult());
+      Assertions.assertEquals("b", queued.get(5, TimeUnit.SECONDS).getResult());
+    }
+    finally {
+      latch.countDown();
+      full.destroy();
+    }
+  }
+
+  @Test
+  void testProcessAfterDestroy() {
+    this.processor.destroy();
+
+    // The items are rejected instead of never being processed ...
+    final List<BatchItemResult<String>> results = Assertions.assertTimeoutPreemptively(Duration.ofSeconds(5),
+        () -> this.processor.processAll(List.of("a", "b"), String::toUpperCase, "/v1/test"));
+    Assertions.assertEquals(2, results.size());
+    Assertions.assertTrue(results.stream().allMatch(r -> r.getError().getStatus() == 503));
+  }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2020-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.rest.cache;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+
+/**
+ * Base class for test cases using an embedded Redis server. The server is started once for each test class, and all
+ * data is removed before each test.
+ *
+ * @author Martin Lindström
+ */
+abstract class AbstractEmbeddedRedisTest {
+
+  private static RedisServer redisServer;
+
+  /** The connection factory for the embedded server. */
+  protected static LettuceConnectionFactory connectionFactory;
+
+  @BeforeAll
+  static void startRedis() throws IOException {
+    final int port;
+    try (final ServerSocket socket = new ServerSocket(0)) {
+      port = socket.getLocalPort();
+    }
+    redisServer = new RedisServer(port);
+    redisServer.start();
+    connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("localhost", port));
+    connectionFactory.afterPropertiesSet();
+    connectionFactory.start();
+  }
+
+  @AfterAll
+  static void stopRedis() throws IOException {
+    if (connectionFactory != null) {
+      connectionFactory.destroy();
+      connectionFactory = null;
+    }
+    if (redisServer != null) {
+      redisServer.stop();
+      redisServer = null;
+    }
+  }
+
+  @BeforeEach
+  void flushRedis() {
+    try (final RedisConnection connection = connectionFactory.getConnection()) {
+      connection.serverCommands().flushAll();
+    }
+  }
+
+  /**
+   * Creates a template (using the default serializers) for the embedded server.
+   *
+   * @return a template
+   */
+  protected static RedisTemplate<String, Object> createRedisTemplate() {
+    final RedisTemplate<String, Object> redisTemplate = new RedisTemplate<>();
+    redisTemplate.setConnectionFactory(connectionFactory);
+    redisTemplate.afterPropertiesSet();
+    return redisTemplate;
+  }
+
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2020-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.rest.cache;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import se.idsec.signservice.integration.rest.cache.AbstractBoundedInMemoryIntegrationServiceCache.FullPolicy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Test cases for {@link BoundedInMemoryDocumentCache}.
+ *
+ * @author Martin Lindström
+ */
+class BoundedInMemoryDocumentCacheTest {
+
+  @Test
+  void testRejectWhenFull() {
+    final BoundedInMemoryDocumentCache cache = new BoundedInMemoryDocumentCache(2, 0, FullPolicy.REJECT, null);
+    cache.put("id1", "document1", "owner");
+    cache.put("id2", "document2", "owner");
+
+    final CacheFullException e =
+        Assertions.assertThrows(CacheFullException.class, () -> cache.put("id3", "document3", "owner"));
+    Assertions.assertEquals(AbstractBoundedInMemoryIntegrationServiceCache.RETRY_AFTER, e.getRetryAfter());
+
+    // Replacing an entry does not need more room ...
+    cache.put("id2", "updated", "owner");
+    Assertions.assertEquals("updated", cache.get("id2", "owner"));
+
+    // Removing an entry makes room ...
+    Assertions.assertEquals("document1", cache.get("id1", true, "owner"));
+    cache.put("id3", "document3", "owner");
+    Assertions.assertEquals("document3", cache.get("id3", "owner"));
+  }
+
+  @Test
+  void testRejectBySize() {
+    final BoundedInMemoryDocumentCache cache = new BoundedInMemoryDocumentCache(0,
+        3 * (1000 + AbstractBoundedInMemoryIntegrationServiceCache.ENTRY_OVERHEAD) + 200, FullPolicy.REJECT, null);
+    final String document = "A".repeat(1000);
+    cache.put("id1", document, "owner");
+    cache.put("id2", document, "owner");
+    cache.put("id3", document, "owner");
+    Assertions.assertThrows(CacheFullException.class, () -> cache.put("id4", document, "owner"));
+
+    // A smaller entry still fits ...
+    cache.put("id5", "small", "owner");
+  }
+
+  @Test
+  void testRejectIsAtomic() throws Exception {
+    final int maxEntries = 10;
+    final BoundedInMemoryDocumentCache cache =
+        new BoundedInMemoryDocumentCache(maxEntries, 0, FullPolicy.REJECT, null);
+
+    final int writers = 16;
+    final ExecutorService executor = Executors.newFixedThreadPool(writers);
+    try {
+      final CountDownLatch start = new CountDownLatch(1);
+      final List<Future<Integer>> results = new ArrayList<>();
+      for (int i = 0; i < writers; i++) {
+        final int writer = i;
+        results.add(executor.submit(() -> {
+          start.await();
+          int stored = 0;
+          for (int j = 0; j < 100; j++) {
+            try {
+              cache.put("id-" + writer + "-" + j, "document", "owner");
+              stored++;
+            }
+            catch (final CacheFullException e) {
+              // Expected when full ...
+            }
+          }
+          return stored;
+        }));
+      }
+      start.countDown();
+
+      int stored = 0;
+      for (final Future<Integer> result : results) {
+        stored += result.get();
+      }
+      Assertions.assertEquals(maxEntries, stored);
+      Assertions.assertEquals(maxEntries, cache.getEntryCount());
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  void testEvictWhenFull() {
+    final BoundedInMemoryDocumentCache cache = new BoundedInMemoryDocumentCache(10, 0, FullPolicy.EVICT, null);
+    for (int i = 0; i < 100; i++) {
+      cache.put("id" + i, "document", "owner");
+    }
+    cache.clearExpired();
+    Assertions.assertTrue(cache.getEntryCount() <= 10);
+  }
+
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2020-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.rest.cache;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+import se.idsec.signservice.integration.rest.cache.RedisDocumentCache.CachedDocument;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Test cases for {@link CachedObjectRedisSerializer}.
+ *
+ * @author Martin Lindström
+ */
+class CachedObjectRedisSerializerTest {
+
+  private final CachedObjectRedisSerializer serializer = new CachedObjectRedisSerializer();
+
+  @Test
+  void testDocument() {
+    final CachedDocument document = createDocument(10_000);
+
+    final byte[] bytes = this.serializer.serialize(document);
+    Assertions.assertEquals(CachedObjectRedisSerializer.MAGIC, bytes[0]);
+    Assertions.assertTrue(bytes.length < new JdkSerializationRedisSerializer().serialize(document).length);
+
+    final CachedDocument decoded = (CachedDocument) this.serializer.deserialize(bytes);
+    assertEquals(document, decoded);
+  }
+
+  @Test
+  void testNullValues() {
+    final CachedDocument document = new CachedDocument("id", null, null, null);
+    assertEquals(document, (CachedDocument) this.serializer.deserialize(this.serializer.serialize(document)));
+
+    Assertions.assertEquals(0, this.serializer.serialize(null).length);
+    Assertions.assertNull(this.serializer.deserialize(null));
+    Assertions.assertNull(this.serializer.deserialize(new byte[0]));
+  }
+
+  @Test
+  void testString() {
+    Assertions.assertEquals("abc-åäö",
+        this.serializer.deserialize(this.serializer.serialize("abc-åäö")));
+  }
+
+  @Test
+  void testReadJavaSerialized() {
+    final CachedDocument document = createDocument(1_000);
+    final byte[] bytes = new JdkSerializationRedisSerializer().serialize(document);
+
+    assertEquals(document, (CachedDocument) this.serializer.deserialize(bytes));
+  }
+
+  @Test
+  void testNoCodecUsesJavaSerialization() {
+    final CachedObjectRedisSerializer stringOnly = new CachedObjectRedisSerializer(List.of());
+    final CachedDocument document = createDocument(100);
+
+    final byte[] bytes = stringOnly.serialize(document);
+    Assertions.assertEquals(CachedObjectRedisSerializer.MAGIC, bytes[0]);
+    assertEquals(document, (CachedDocument) stringOnly.deserialize(bytes));
+
+    // But the default serializer can read it ...
+    assertEquals(document, (CachedDocument) this.serializer.deserialize(bytes));
+  }
+
+  @Test
+  void testLowestVersionIsWritten() throws Exception {
+    final CachedDocument plain = createDocument(100);
+    final byte[] plainBytes = this.serializer.serialize(plain);
+    Assertions.assertEquals(1, plainBytes[1]);
+
+    final CachedDocument contentAddressed = new CachedDocument("id", null, "client1", null);
+    contentAddressed.setContentDigest("digest");
+    final byte[] contentAddressedBytes = this.serializer.serialize(contentAddressed);
+    Assertions.assertEquals(3, contentAddressedBytes[1]);
+    Assertions.assertEquals("digest",
+        ((CachedDocument) this.serializer.deserialize(contentAddressedBytes)).getContentDigest());
+
+    // A plain document written using version 3 (with the storage type) is still readable ...
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final DataOutputStream out = new DataOutputStream(bytes);
+    out.write(new byte[] { CachedObjectRedisSerializer.MAGIC, 3, 2 });
+    CachedObjectCodec.writeString(plain.getId(), out);
+    CachedObjectCodec.writeString(plain.getOwnerId(), out);
+    CachedObjectCodec.writeLong(plain.getExpirationTime(), out);
+    out.writeByte(0);
+    CachedObjectCodec.writeString(plain.getObject(), out);
+    out.flush();
+    assertEquals(plain, (CachedDocument) this.serializer.deserialize(bytes.toByteArray()));
+  }
+
+  @Test
+  void testUnknownFormat() {
+    Assertions.assertThrows(SerializationException.class,
+        () -> this.serializer.deserialize(new byte[] { 1, 2, 3, 4 }));
+    Assertions.assertThrows(SerializationException.class,
+        () -> this.serializer.deserialize(new byte[] { CachedObjectRedisSerializer.MAGIC, 99, 2, 0 }));
+  }
+
+  private static CachedDocument createDocument(final int size) {
+    final byte[] contents = new byte[size];
+    new Random().nextBytes(contents);
+    return new CachedDocument("c6b3e1f0-2f5e-4b0d-a2a3-7d1d2a6c1e20", Base64.getEncoder().encodeToString(contents),
+        "client1", System.currentTimeMillis() + 60000L);
+  }
+
+  private static void assertEquals(final CachedDocument expected, final CachedDocument actual) {
+    Assertions.assertEquals(expected.getId(), actual.getId());
+    Assertions.assertEquals(expected.getObject(), actual.getObject());
+    Assertions.assertEquals(expected.getOwnerId(), actual.getOwnerId());
+    Assertions.assertEquals(expected.getExpirationTime(), actual.getExpirationTime());
+  }
+
+}
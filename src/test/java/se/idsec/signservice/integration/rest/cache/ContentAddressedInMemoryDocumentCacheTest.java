@@ -0,0 +1,78 @@
+/*
+ * Copyright 2020-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.rest.cache;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Base64;
+import java.util.Random;
+
+/**
+ * Test cases for {@link ContentAddressedInMemoryDocumentCache}.
+ *
+ * @author Martin Lindström
+ */
+class ContentAddressedInMemoryDocumentCacheTest {
+
+  @Test
+  void testSameDocumentStoredOnce() {
+    final ContentAddressedInMemoryDocumentCache cache = new ContentAddressedInMemoryDocumentCache(null);
+    final String document = createDocument(10_000);
+
+    cache.put("id1", document, "client1");
+    cache.put("id2", document, "client2");
+    Assertions.assertEquals(2, cache.getEntryCount());
+    Assertions.assertEquals(document.length(), cache.getByteSize());
+
+    Assertions.assertEquals(document, cache.get("id1", "client1"));
+    Assertions.assertEquals(document, cache.get("id2", "client2"));
+
+    cache.remove("id1");
+    Assertions.assertNull(cache.get("id1", "client1"));
+    Assertions.assertEquals(document, cache.get("id2", "client2"));
+    Assertions.assertEquals(document.length(), cache.getByteSize());
+
+    cache.remove("id2");
+    Assertions.assertEquals(0, cache.getEntryCount());
+    Assertions.assertEquals(0, cache.getByteSize());
+  }
+
+  @Test
+  void testExpiredReferencesReleaseContents() throws Exception {
+    final ContentAddressedInMemoryDocumentCache cache = new ContentAddressedInMemoryDocumentCache(
+        new DocumentCompressor(1024, DocumentCompressor.DEFAULT_LEVEL, null));
+    cache.setMaxAge(50);
+    final String document = createDocument(10_000);
+
+    cache.put("id1", document, "client1");
+    cache.put("id2", createDocument(2_000), "client1");
+    Assertions.assertEquals(document, cache.get("id1", true, "client1"));
+    Assertions.assertEquals(1, cache.getEntryCount());
+
+    Thread.sleep(100);
+    cache.clearExpired();
+    Assertions.assertEquals(0, cache.getEntryCount());
+    Assertions.assertEquals(0, cache.getByteSize());
+  }
+
+  private static String createDocument(final int size) {
+    final byte[] contents = new byte[size];
+    new Random().nextBytes(contents);
+    return Base64.getEncoder().encodeToString(contents);
+  }
+
+}
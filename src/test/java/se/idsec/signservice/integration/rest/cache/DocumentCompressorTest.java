@@ -0,0 +1,117 @@
+/*
+ * Copyright 2020-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.rest.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import se.idsec.signservice.integration.rest.cache.DocumentCompressor.CompressedDocument;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Random;
+
+/**
+ * Test cases for {@link DocumentCompressor}.
+ *
+ * @author Martin Lindström
+ */
+class DocumentCompressorTest {
+
+  private final DocumentCompressor compressor =
+      new DocumentCompressor(DocumentCompressor.DEFAULT_THRESHOLD, DocumentCompressor.DEFAULT_LEVEL, null);
+
+  @Test
+  void testCompressibleDocument() {
+    final String document = Base64.getEncoder().encodeToString(
+        "%PDF-1.7 compressible contents ".repeat(2000).getBytes(StandardCharsets.US_ASCII));
+
+    final CompressedDocument compressed = this.compressor.compress(document);
+    Assertions.assertNotNull(compressed);
+    Assertions.assertTrue(compressed.isDeflated());
+    Assertions.assertTrue(compressed.getData().length < document.length() / 10);
+    Assertions.assertEquals(document, this.compressor.decompress(compressed));
+  }
+
+  @Test
+  void testIncompressibleDocumentIsStoredDecoded() {
+    final byte[] bytes = randomBytes(50_001);
+    final String document = Base64.getEncoder().encodeToString(bytes);
+
+    final CompressedDocument compressed = this.compressor.compress(document);
+    Assertions.assertNotNull(compressed);
+    Assertions.assertFalse(compressed.isDeflated());
+    Assertions.assertArrayEquals(bytes, compressed.getData());
+    Assertions.assertEquals(document, this.compressor.decompress(compressed));
+  }
+
+  @Test
+  void testSmallDocumentIsNotCompressed() {
+    Assertions.assertNull(this.compressor.compress(Base64.getEncoder().encodeToString(randomBytes(1000))));
+    Assertions.assertNull(this.compressor.compress(null));
+  }
+
+  @Test
+  void testNonCanonicalEncodingIsPassedThrough() {
+    final byte[] bytes = randomBytes(30_001);
+    final String document = Base64.getEncoder().encodeToString(bytes);
+
+    // Without padding ...
+    Assertions.assertNull(this.compressor.compress(Base64.getEncoder().withoutPadding().encodeToString(bytes)));
+
+    // With line breaks ...
+    Assertions.assertNull(this.compressor.compress(Base64.getMimeEncoder().encodeToString(bytes)));
+
+    // URL-safe alphabet ...
+    final byte[] urlBytes = bytes.clone();
+    urlBytes[0] = urlBytes[1] = urlBytes[2] = (byte) 0xFF;
+    Assertions.assertNull(this.compressor.compress(Base64.getUrlEncoder().encodeToString(urlBytes)));
+
+    // Non-zero unused bits in the last character (decodes to the same bytes) ...
+    Assertions.assertTrue(document.endsWith("=="));
+    final char last = document.charAt(document.length() - 3);
+    final String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+    final String modified = document.substring(0, document.length() - 3)
+        + alphabet.charAt(alphabet.indexOf(last) | 1) + "==";
+    Assertions.assertArrayEquals(bytes, Base64.getDecoder().decode(modified));
+    Assertions.assertNull(this.compressor.compress(modified));
+  }
+
+  @Test
+  void testInvalidCompressedData() {
+    Assertions.assertThrows(IllegalArgumentException.class,
+        () -> this.compressor.decompress(new CompressedDocument(randomBytes(100), 1000, true)));
+  }
+
+  @Test
+  void testMetrics() {
+    final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    final DocumentCompressor instrumented = new DocumentCompressor(1024, 6, registry);
+    instrumented.decompress(instrumented.compress(
+        Base64.getEncoder().encodeToString("abc".repeat(1000).getBytes(StandardCharsets.US_ASCII))));
+
+    Assertions.assertEquals(1, registry.get("signservice.cache.document.compression.ratio").summary().count());
+    Assertions.assertEquals(1, registry.get("signservice.cache.document.compression.cpu-time")
+        .tag("operation", "decompress").timer().count());
+  }
+
+  private static byte[] randomBytes(final int size) {
+    final byte[] bytes = new byte[size];
+    new Random().nextBytes(bytes);
+    return bytes;
+  }
+
+}
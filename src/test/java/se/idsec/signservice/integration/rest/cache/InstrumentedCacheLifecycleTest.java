@@ -0,0 +1,87 @@
+/*
+ * Copyright 2020-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.idsec.signservice.integration.rest.cache;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.data.redis.core.RedisTemplate;
+import se.idsec.signservice.integration.core.DocumentCache;
+import se.idsec.signservice.integration.rest.config.CacheConfiguration;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+/**
+ * Test cases for the life cycle of caches that are decorated with metrics (see
+ * {@link CacheConfiguration#cacheMetricsPostProcessor}).
+ *
+ * @author Martin Lindström
+ */
+class InstrumentedCacheLifecycleTest extends AbstractEmbeddedRedisTest {
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void testDestroyOnContextClose() throws Exception {
+    final OffHeapDocumentCache offHeapCache =
+        new OffHeapDocumentCache(32 * 1024, 1024, OffHeapDocumentCache.Storage.MAPPED, this.directory, null);
+    final RedisTemplate<String, Object> redisTemplate = createRedisTemplate();
+    final RedisDocumentCache redisCache = new RedisDocumentCache(redisTemplate);
+    redisCache.setAsyncExpirationIndex(true);
+
+    try (final AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext()) {
+      context.registerBean("meterRegistry", MeterRegistry.class, SimpleMeterRegistry::new);
+      context.registerBean("cacheMetricsPostProcessor", BeanPostProcessor.class,
+          () -> CacheConfiguration.cacheMetricsPostProcessor(context.getBeanProvider(MeterRegistry.class)));
+      context.registerBean("offHeapDocumentCache", DocumentCache.class, () -> offHeapCache);
+      context.registerBean("redisDocumentCache", DocumentCache.class, () -> redisCache);
+      context.refresh();
+
+      // The exposed beans are the decorators ...
+      final DocumentCache offHeapBean = context.getBean("offHeapDocumentCache", DocumentCache.class);
+      final DocumentCache redisBean = context.getBean("redisDocumentCache", DocumentCache.class);
+      Assertions.assertInstanceOf(InstrumentedDocumentCache.class, offHeapBean);
+      Assertions.assertInstanceOf(InstrumentedDocumentCache.class, redisBean);
+
+      offHeapBean.put("id1", "document", "owner");
+      for (int i = 0; i < 100; i++) {
+        redisBean.put("id" + i, "document", "owner");
+      }
+      try (final Stream<Path> files = Files.list(this.directory)) {
+        Assertions.assertEquals(1, files.count());
+      }
+    }
+
+    // The slabs are freed and the memory mapped file is removed ...
+    Assertions.assertEquals(0, offHeapCache.getEntryCount());
+    try (final Stream<Path> files = Files.list(this.directory)) {
+      Assertions.assertEquals(0, files.count());
+    }
+
+    // The queued expiration index updates are written ...
+    final String indexName = redisCache.getRedisExpirationIndexName(redisCache.getRedisHashName());
+    Assertions.assertEquals(100L, redisTemplate.opsForZSet().size(indexName));
+  }
+
+}
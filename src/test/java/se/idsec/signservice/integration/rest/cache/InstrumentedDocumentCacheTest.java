@@ -0,0 +1,104 @@
+/*
+ * Copyright 2020-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.idsec.signservice.integration.rest.cache;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import se.idsec.signservice.integration.core.impl.InMemoryDocumentCache;
+import se.idsec.signservice.integration.rest.cache.AbstractBoundedInMemoryIntegrationServiceCache.FullPolicy;
+
+/**
+ * Test cases for {@link InstrumentedDocumentCache}.
+ *
+ * @author Martin Lindström
+ */
+class InstrumentedDocumentCacheTest {
+
+  private SimpleMeterRegistry registry;
+
+  @BeforeEach
+  void setup() {
+    this.registry = new SimpleMeterRegistry();
+  }
+
+  @Test
+  void testOperations() {
+    final InstrumentedDocumentCache cache = new InstrumentedDocumentCache(
+        new BoundedInMemoryDocumentCache(100, 0, FullPolicy.REJECT, null), this.registry);
+
+    cache.put("id1", "document1", "owner");
+    cache.put("id2", "document2", "owner");
+    Assertions.assertEquals("document1", cache.get("id1", "owner"));
+    Assertions.assertNull(cache.get("unknown", "owner"));
+    Assertions.assertEquals("document2", cache.get("id2", true, "owner"));
+    cache.remove("id1");
+    cache.clearExpired();
+
+    Assertions.assertEquals(2L, this.timer("put").count());
+    Assertions.assertEquals(2L, this.timer("get").count());
+    Assertions.assertEquals(1L, this.timer("claim").count());
+    Assertions.assertEquals(1L, this.timer("remove").count());
+    Assertions.assertEquals(1L,
+        this.registry.get("signservice.cache.purge").tag("cache", "documents").timer().count());
+    Assertions.assertEquals(2.0, this.counter("hit"));
+    Assertions.assertEquals(1.0, this.counter("miss"));
+  }
+
+  @Test
+  void testSizeGauges() {
+    final BoundedInMemoryDocumentCache bounded = new BoundedInMemoryDocumentCache(0, 1_000_000, FullPolicy.REJECT,
+        null);
+    final InstrumentedDocumentCache cache = new InstrumentedDocumentCache(bounded, this.registry);
+
+    cache.put("id1", "A".repeat(1000), "owner");
+    bounded.clearExpired();
+
+    Assertions.assertEquals(1.0, this.registry.get("signservice.cache.entries").gauge().value());
+    Assertions.assertEquals(bounded.getByteSize(), this.registry.get("signservice.cache.size").gauge().value());
+    Assertions.assertTrue(bounded.getByteSize() >= 1000);
+  }
+
+  @Test
+  void testNotMeasurable() {
+    final InstrumentedDocumentCache cache = new InstrumentedDocumentCache(new InMemoryDocumentCache(), this.registry);
+    cache.put("id1", "document1", "owner");
+
+    // No size gauges for caches that can not tell their size ...
+    Assertions.assertNull(this.registry.find("signservice.cache.entries").gauge());
+    Assertions.assertEquals(-1L, cache.getEntryCount());
+    Assertions.assertEquals("document1", cache.get("id1", "owner"));
+  }
+
+  private Timer timer(final String operation) {
+    return this.registry.get("signservice.cache.operations")
+        .tag("cache", "documents")
+        .tag("operation", operation)
+        .timer();
+  }
+
+  private double counter(final String result) {
+    return this.registry.get("signservice.cache.gets")
+        .tag("cache", "documents")
+        .tag("result", result)
+        .counter()
+        .count();
+  }
+
+}
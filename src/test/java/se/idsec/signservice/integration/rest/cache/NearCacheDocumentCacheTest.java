@@ -0,0 +1,157 @@
+/*
+ * Copyright 2020-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.rest.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test cases for the near cache ({@link AbstractNearCacheIntegrationServiceCache}) using an embedded Redis server.
+ *
+ * @author Martin Lindström
+ */
+class NearCacheDocumentCacheTest extends AbstractEmbeddedRedisTest {
+
+  private RedisTemplate<String, Object> redisTemplate;
+
+  private RedisMessageListenerContainer listenerContainer;
+
+  private SimpleMeterRegistry meterRegistry;
+
+  @BeforeEach
+  void setup() {
+    this.redisTemplate = createRedisTemplate();
+
+    this.listenerContainer = new RedisMessageListenerContainer();
+    this.listenerContainer.setConnectionFactory(connectionFactory);
+    this.listenerContainer.afterPropertiesSet();
+
+    this.meterRegistry = new SimpleMeterRegistry();
+  }
+
+  @AfterEach
+  void tearDown() throws Exception {
+    this.listenerContainer.destroy();
+  }
+
+  @Test
+  void testTierHits() {
+    final NearCacheDocumentCache cache = this.createNode(this.meterRegistry);
+
+    cache.put("id1", "document", "owner");
+    Assertions.assertEquals("document", cache.get("id1", "owner"));
+    Assertions.assertEquals(1.0, this.count("near", "hit"));
+    Assertions.assertEquals(0.0, this.count("redis", "hit"));
+
+    // Another node finds the entry in Redis, and thereafter in its near cache ...
+    final SimpleMeterRegistry otherRegistry = new SimpleMeterRegistry();
+    final NearCacheDocumentCache other = this.createNode(otherRegistry);
+    this.listenerContainer.start();
+    Assertions.assertEquals("document", other.get("id1", "owner"));
+    Assertions.assertEquals("document", other.get("id1", "owner"));
+    Assertions.assertEquals(1.0, count(otherRegistry, "redis", "hit"));
+    Assertions.assertEquals(1.0, count(otherRegistry, "near", "hit"));
+
+    Assertions.assertNull(other.get("id2", "owner"));
+    Assertions.assertEquals(1.0, count(otherRegistry, "redis", "miss"));
+  }
+
+  @Test
+  void testInvalidation() throws Exception {
+    final NearCacheDocumentCache node1 = this.createNode(this.meterRegistry);
+    final NearCacheDocumentCache node2 = this.createNode(null);
+    this.listenerContainer.start();
+
+    node1.put("id1", "document", "owner");
+    Assertions.assertEquals("document", node2.get("id1", "owner"));
+
+    // Removing the entry on node 1 should drop it from the near cache of node 2 ...
+    node1.remove("id1");
+    final long deadline = System.currentTimeMillis() + 5000;
+    String document = node2.get("id1", "owner");
+    while (document != null && System.currentTimeMillis() < deadline) {
+      Thread.sleep(50);
+      document = node2.get("id1", "owner");
+    }
+    Assertions.assertNull(document);
+  }
+
+  @Test
+  void testNoInvalidationForNewIds() throws Exception {
+    final NearCacheDocumentCache node1 = this.createNode(this.meterRegistry);
+    final NearCacheDocumentCache node2 = this.createNode(null);
+    final AtomicInteger messages = new AtomicInteger();
+    this.listenerContainer.addMessageListener(
+        (message, pattern) -> messages.incrementAndGet(), new ChannelTopic(node1.getInvalidationChannel()));
+    this.listenerContainer.start();
+
+    node1.put("id1", "document", "owner");
+    Assertions.assertEquals("document", node2.get("id1", "owner"));
+
+    // Overwriting the entry should drop it from the near cache of node 2. Since messages are delivered in order, the
+    // count tells us that no message was published for the first put ...
+    node1.put("id1", "updated", "owner");
+    final long deadline = System.currentTimeMillis() + 5000;
+    while (messages.get() == 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(50);
+    }
+    Assertions.assertEquals(1, messages.get());
+    Assertions.assertEquals("updated", node2.get("id1", "owner"));
+  }
+
+  @Test
+  void testBoundedBySize() {
+    final NearCacheDocumentCache cache = new NearCacheDocumentCache(new RedisDocumentCache(this.redisTemplate),
+        this.redisTemplate, 100, 1000, Duration.ofMinutes(1), this.meterRegistry);
+
+    final String document = "A".repeat(600);
+    cache.put("id1", document, "owner");
+    cache.put("id2", document, "owner");
+    cache.purgeExpired();
+    Assertions.assertEquals(1.0, this.meterRegistry.get("signservice.cache.near.size").gauge().value());
+
+    // Both entries are still available from Redis ...
+    Assertions.assertEquals(document, cache.get("id1", "owner"));
+    Assertions.assertEquals(document, cache.get("id2", "owner"));
+  }
+
+  private NearCacheDocumentCache createNode(final SimpleMeterRegistry registry) {
+    final RedisDocumentCache redisCache = new RedisDocumentCache(this.redisTemplate);
+    final NearCacheDocumentCache cache = new NearCacheDocumentCache(
+        redisCache, this.redisTemplate, 100, AbstractNearCacheIntegrationServiceCache.DEFAULT_MAX_SIZE,
+        Duration.ofMinutes(1), registry);
+    this.listenerContainer.addMessageListener(cache, new ChannelTopic(cache.getInvalidationChannel()));
+    return cache;
+  }
+
+  private double count(final String tier, final String result) {
+    return count(this.meterRegistry, tier, result);
+  }
+
+  private static double count(final SimpleMeterRegistry registry, final String tier, final String result) {
+    return registry.get("signservice.cache.near.requests").tag("tier", tier).tag("result", result).counter().count();
+  }
+
+}
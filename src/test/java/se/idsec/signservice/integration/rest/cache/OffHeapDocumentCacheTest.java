@@ -0,0 +1,107 @@
+/*
+ * Copyright 2020-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.rest.cache;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Base64;
+import java.util.Random;
+
+/**
+ * Test cases for {@link OffHeapDocumentCache}.
+ *
+ * @author Martin Lindström
+ */
+class OffHeapDocumentCacheTest {
+
+  @Test
+  void testDirect() throws Exception {
+    this.test(OffHeapDocumentCache.Storage.DIRECT);
+  }
+
+  @Test
+  void testMapped() throws Exception {
+    this.test(OffHeapDocumentCache.Storage.MAPPED);
+  }
+
+  private void test(final OffHeapDocumentCache.Storage storage) throws Exception {
+    final OffHeapDocumentCache cache = new OffHeapDocumentCache(32 * 1024, 1024, storage, null, null);
+    try {
+      Assertions.assertEquals(32, cache.getFreeBlocks());
+
+      // The documents are stored decoded (7500 and 22500 bytes) ...
+      final String document1 = createDocument(10_000);
+      final String document2 = createDocument(30_000);
+      cache.put("id1", document1, "owner");
+      cache.put("id2", document2, "owner");
+      Assertions.assertEquals(32 - 8 - 22, cache.getFreeBlocks());
+
+      Assertions.assertEquals(document1, cache.get("id1", "owner"));
+      Assertions.assertEquals(document2, cache.get("id2", "owner"));
+
+      Assertions.assertThrows(CacheFullException.class, () -> cache.put("id3", createDocument(30_000), "owner"));
+
+      cache.remove("id2");
+      Assertions.assertEquals(32 - 8, cache.getFreeBlocks());
+      Assertions.assertNull(cache.get("id2", "owner"));
+
+      cache.put("id3", document2, "owner");
+      Assertions.assertEquals(document2, cache.get("id3", "owner"));
+      Assertions.assertEquals(document1, cache.get("id1", "owner"));
+    }
+    finally {
+      cache.destroy();
+    }
+  }
+
+  @Test
+  void testNonCanonicalDocuments() throws Exception {
+    final OffHeapDocumentCache cache =
+        new OffHeapDocumentCache(32 * 1024, 1024, OffHeapDocumentCache.Storage.DIRECT, null, null);
+    try {
+      // Not Base64, not padded, and non-zero unused bits - all should be stored as they are ...
+      for (final String document : new String[] { "not a Base64 document", "QUI", "QUJ=", "", "åäö" }) {
+        cache.put("id", document, "owner");
+        Assertions.assertEquals(document, cache.get("id", "owner"));
+      }
+    }
+    finally {
+      cache.destroy();
+    }
+  }
+
+  @Test
+  void testDestroy() throws Exception {
+    final OffHeapDocumentCache cache =
+        new OffHeapDocumentCache(32 * 1024, 1024, OffHeapDocumentCache.Storage.MAPPED, null, null);
+    cache.put("id1", createDocument(1000), "owner");
+    cache.destroy();
+
+    Assertions.assertNull(cache.get("id1", "owner"));
+    Assertions.assertThrows(IllegalStateException.class, () -> cache.put("id2", createDocument(1000), "owner"));
+
+    // Destroying twice is harmless ...
+    cache.destroy();
+  }
+
+  private static String createDocument(final int size) {
+    final byte[] bytes = new byte[size * 3 / 4];
+    new Random().nextBytes(bytes);
+    return Base64.getEncoder().encodeToString(bytes);
+  }
+
+}
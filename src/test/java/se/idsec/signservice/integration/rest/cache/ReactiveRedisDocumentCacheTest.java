@@ -0,0 +1,130 @@
+/*
+ * Copyright 2020-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.rest.cache;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+/**
+ * Test cases for {@link ReactiveRedisDocumentCache} using an embedded Redis server. Each test is run using Java
+ * serialization and using {@link CachedObjectRedisSerializer}.
+ *
+ * @author Martin Lindström
+ */
+class ReactiveRedisDocumentCacheTest extends AbstractEmbeddedRedisTest {
+
+  private ReactiveRedisDocumentCache cache;
+
+  private RedisDocumentCache blockingCache;
+
+  private void setup(final boolean binary) {
+    final RedisTemplate<String, Object> redisTemplate;
+    final RedisSerializationContext<String, Object> context;
+    if (binary) {
+      final CachedObjectRedisSerializer serializer = new CachedObjectRedisSerializer();
+      redisTemplate = new RedisTemplate<>();
+      redisTemplate.setConnectionFactory(connectionFactory);
+      redisTemplate.setKeySerializer(RedisSerializer.string());
+      redisTemplate.setHashKeySerializer(RedisSerializer.string());
+      redisTemplate.setValueSerializer(serializer);
+      redisTemplate.setHashValueSerializer(serializer);
+      redisTemplate.afterPropertiesSet();
+      context = RedisSerializationContext.<String, Object>newSerializationContext(serializer)
+          .key(RedisSerializer.string())
+          .hashKey(RedisSerializer.string())
+          .build();
+    }
+    else {
+      redisTemplate = createRedisTemplate();
+      context = RedisSerializationContext.<String, Object>newSerializationContext(RedisSerializer.java()).build();
+    }
+    this.cache = new ReactiveRedisDocumentCache(new ReactiveRedisTemplate<>(connectionFactory, context));
+    this.cache.setBucketCount(4);
+    this.blockingCache = new RedisDocumentCache(redisTemplate);
+    this.blockingCache.setBucketCount(4);
+  }
+
+  @ParameterizedTest
+  @ValueSource(booleans = { false, true })
+  void testSharedWithBlockingCache(final boolean binary) {
+    this.setup(binary);
+    this.cache.put("id1", "document1", "owner");
+    Assertions.assertEquals("document1", this.blockingCache.get("id1", "owner"));
+
+    this.blockingCache.put("id2", "document2", "owner");
+    Assertions.assertEquals("document2", this.cache.get("id2", "owner"));
+    Assertions.assertEquals(2, this.cache.getEntryCount());
+
+    // An entry written by one cache is claimed by the other ...
+    Assertions.assertEquals("document1", this.blockingCache.get("id1", true, "owner"));
+    Assertions.assertEquals("document2", this.cache.get("id2", true, "owner"));
+    Assertions.assertEquals(0, this.blockingCache.getEntryCount());
+  }
+
+  @ParameterizedTest
+  @ValueSource(booleans = { false, true })
+  void testClaim(final boolean binary) {
+    this.setup(binary);
+    this.cache.put("id1", "document", "owner");
+    Assertions.assertEquals("document", this.cache.get("id1", true, "owner"));
+    Assertions.assertNull(this.cache.get("id1", "owner"));
+    Assertions.assertNull(this.cache.claimEntry("id1").block());
+  }
+
+  @ParameterizedTest
+  @ValueSource(booleans = { false, true })
+  void testClaimByOtherLeavesEntry(final boolean binary) {
+    this.setup(binary);
+    this.cache.put("id1", "document", "owner");
+    try {
+      Assertions.assertNull(this.cache.get("id1", true, "other"));
+    }
+    catch (final RuntimeException e) {
+      // Depending on the access check, we may get an exception ...
+    }
+    Assertions.assertEquals("document", this.cache.get("id1", true, "owner"));
+  }
+
+  @ParameterizedTest
+  @ValueSource(booleans = { false, true })
+  void testClaimExpired(final boolean binary) {
+    this.setup(binary);
+    this.cache.putEntry("id1", "document", "owner", System.currentTimeMillis() - 1000).block();
+    Assertions.assertNull(this.cache.get("id1", true, "owner"));
+    Assertions.assertEquals(0, this.cache.getEntryCount());
+  }
+
+  @ParameterizedTest
+  @ValueSource(booleans = { false, true })
+  void testPurge(final boolean binary) {
+    this.setup(binary);
+    for (int i = 0; i < 10; i++) {
+      this.cache.putEntry("expired" + i, "document", "owner", System.currentTimeMillis() - 1000).block();
+    }
+    this.cache.put("id1", "document", "owner");
+    this.cache.setPurgeBatchSize(2);
+
+    Assertions.assertEquals(10, this.cache.purgeExpired());
+    Assertions.assertEquals(1, this.cache.getEntryCount());
+    Assertions.assertEquals("document", this.cache.get("id1", "owner"));
+  }
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2020-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.rest.cache;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.Duration;
+
+/**
+ * Test cases for {@link RedisCacheSweepLock} using an embedded Redis server.
+ *
+ * @author Martin Lindström
+ */
+class RedisCacheSweepLockTest extends AbstractEmbeddedRedisTest {
+
+  private StringRedisTemplate redisTemplate;
+
+  @BeforeEach
+  void setup() {
+    this.redisTemplate = new StringRedisTemplate(connectionFactory);
+  }
+
+  @Test
+  void testAcquire() {
+    final RedisCacheSweepLock node1 = new RedisCacheSweepLock(this.redisTemplate, Duration.ofMinutes(1));
+    final RedisCacheSweepLock node2 = new RedisCacheSweepLock(this.redisTemplate, Duration.ofMinutes(1));
+
+    Assertions.assertTrue(node1.tryAcquire("documents"));
+    Assertions.assertFalse(node2.tryAcquire("documents"));
+
+    // The locks are independent ...
+    Assertions.assertTrue(node2.tryAcquire("state"));
+    Assertions.assertFalse(node1.tryAcquire("state"));
+  }
+
+  @Test
+  void testReentry() {
+    final RedisCacheSweepLock node1 = new RedisCacheSweepLock(this.redisTemplate, Duration.ofSeconds(10));
+    final RedisCacheSweepLock node2 = new RedisCacheSweepLock(this.redisTemplate, Duration.ofSeconds(10));
+
+    Assertions.assertTrue(node1.tryAcquire("documents"));
+    this.redisTemplate.expire("ssCacheSweepLock:{documents}", Duration.ofSeconds(1));
+
+    // Acquiring the lock again extends the lease ...
+    Assertions.assertTrue(node1.tryAcquire("documents"));
+    final Long ttl = this.redisTemplate.getExpire("ssCacheSweepLock:{documents}");
+    Assertions.assertNotNull(ttl);
+    Assertions.assertTrue(ttl > 1, "Lease should have been extended");
+    Assertions.assertFalse(node2.tryAcquire("documents"));
+  }
+
+  @Test
+  void testExpiry() throws Exception {
+    final RedisCacheSweepLock node1 = new RedisCacheSweepLock(this.redisTemplate, Duration.ofMillis(200));
+    final RedisCacheSweepLock node2 = new RedisCacheSweepLock(this.redisTemplate, Duration.ofMillis(200));
+
+    Assertions.assertTrue(node1.tryAcquire("documents"));
+    Assertions.assertFalse(node2.tryAcquire("documents"));
+
+    Thread.sleep(400);
+    Assertions.assertTrue(node2.tryAcquire("documents"));
+    Assertions.assertFalse(node1.tryAcquire("documents"));
+  }
+
+  @Test
+  void testRelease() {
+    final RedisCacheSweepLock node1 = new RedisCacheSweepLock(this.redisTemplate, Duration.ofMinutes(1));
+    final RedisCacheSweepLock node2 = new RedisCacheSweepLock(this.redisTemplate, Duration.ofMinutes(1));
+
+    Assertions.assertTrue(node1.tryAcquire("documents"));
+
+    // Only the holder can release the lock ...
+    node2.release("documents");
+    Assertions.assertFalse(node2.tryAcquire("documents"));
+
+    node1.release("documents");
+    Assertions.assertTrue(node2.tryAcquire("documents"));
+  }
+
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright 2020-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.rest.cache;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import se.idsec.signservice.integration.rest.cache.AbstractRedisIntegrationServiceCache.StorageMode;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test cases for {@link RedisDocumentCache} using an embedded Redis server.
+ *
+ * @author Martin Lindström
+ */
+class RedisDocumentCacheTest extends AbstractEmbeddedRedisTest {
+
+  private RedisTemplate<String, Object> redisTemplate;
+
+  private RedisDocumentCache cache;
+
+  @BeforeEach
+  void setup() {
+    this.redisTemplate = createRedisTemplate();
+    this.cache = new RedisDocumentCache(this.redisTemplate);
+  }
+
+  @Test
+  void testPurgeInBatches() {
+    final long now = System.currentTimeMillis();
+    for (int i = 0; i < 10; i++) {
+      this.cache.putCacheObject("expired" + i, "document", "owner", now - 1000 - i);
+    }
+    this.cache.putCacheObject("id1", "document", "owner", now + 60_000);
+    this.cache.putCacheObject("id2", "document", "owner", now + 60_000);
+
+    // The expiration index holds the expiration time of each entry ...
+    final String indexName = this.cache.getRedisExpirationIndexName(this.cache.getRedisHashName());
+    Assertions.assertEquals(12L, this.redisTemplate.opsForZSet().size(indexName));
+    Assertions.assertEquals((double) (now + 60_000), this.redisTemplate.opsForZSet().score(indexName, "id1"));
+
+    this.cache.setPurgeBatchSize(3);
+    Assertions.assertEquals(10, this.cache.purgeExpired());
+    Assertions.assertEquals(2, this.cache.getEntryCount());
+    Assertions.assertEquals(2L, this.redisTemplate.opsForZSet().size(indexName));
+    Assertions.assertEquals(0, this.cache.purgeExpired());
+    Assertions.assertEquals("document", this.cache.get("id1", "owner"));
+  }
+
+  @Test
+  void testBuckets() {
+    this.cache.setBucketCount(4);
+    for (int i = 0; i < 20; i++) {
+      this.cache.put("id" + i, "document" + i, "owner");
+    }
+    Assertions.assertFalse(this.redisTemplate.hasKey(this.cache.getRedisHashName()));
+    long total = 0;
+    for (int bucket = 0; bucket < 4; bucket++) {
+      final String bucketName = this.cache.getBucketName(bucket);
+      Assertions.assertEquals("{" + this.cache.getRedisHashName() + ":" + bucket + "}", bucketName);
+      final long size = this.redisTemplate.opsForHash().size(bucketName);
+      Assertions.assertTrue(size > 0, "Expected entries in " + bucketName);
+      total += size;
+    }
+    Assertions.assertEquals(20, total);
+    Assertions.assertEquals(20, this.cache.getEntryCount());
+    Assertions.assertEquals("document7", this.cache.get("id7", true, "owner"));
+    Assertions.assertEquals(19, this.cache.getEntryCount());
+  }
+
+  @Test
+  void testMigrateToBuckets() throws Exception {
+    for (int i = 0; i < 10; i++) {
+      this.cache.put("id" + i, "document" + i, "owner");
+    }
+    this.cache.putCacheObject("expired", "document", "owner", System.currentTimeMillis() - 1000);
+
+    final RedisDocumentCache bucketed = new RedisDocumentCache(this.redisTemplate);
+    bucketed.setBucketCount(4);
+    bucketed.testConnection();
+
+    // The entries of the single hash are moved to the buckets (and expired entries dropped) ...
+    Assertions.assertFalse(this.redisTemplate.hasKey(this.cache.getRedisHashName()));
+    Assertions.assertEquals(10, bucketed.getEntryCount());
+    for (int i = 0; i < 10; i++) {
+      Assertions.assertEquals("document" + i, bucketed.get("id" + i, "owner"));
+    }
+  }
+
+  @Test
+  void testKeyStorageMode() {
+    this.cache.setStorageMode(StorageMode.KEY);
+    this.cache.put("id1", "document", "owner");
+
+    // Each entry is stored under its own key with a TTL, and no hash is used ...
+    final Long ttl = this.redisTemplate.getExpire(this.cache.getRedisEntryKey("id1"), TimeUnit.MILLISECONDS);
+    Assertions.assertNotNull(ttl);
+    Assertions.assertTrue(ttl > 0);
+    Assertions.assertFalse(this.redisTemplate.hasKey(this.cache.getRedisHashName()));
+
+    Assertions.assertEquals("document", this.cache.get("id1", "owner"));
+    Assertions.assertEquals(0, this.cache.purgeExpired());
+    Assertions.assertEquals(-1L, this.cache.getEntryCount());
+  }
+
+  @Test
+  void testKeyStorageModeExpiredByRedis() throws Exception {
+    this.cache.setStorageMode(StorageMode.KEY);
+    this.cache.putCacheObject("id1", "document", "owner", System.currentTimeMillis() + 100);
+    Thread.sleep(300);
+    Assertions.assertFalse(this.redisTemplate.hasKey(this.cache.getRedisEntryKey("id1")));
+    Assertions.assertNull(this.cache.get("id1", "owner"));
+  }
+
+  @ParameterizedTest
+  @EnumSource(StorageMode.class)
+  void testConcurrentClaim(final StorageMode storageMode) throws Exception {
+    this.cache.setStorageMode(storageMode);
+    final int claimers = 8;
+    final ExecutorService executor = Executors.newFixedThreadPool(claimers);
+    try {
+      for (int i = 0; i < 20; i++) {
+        final String id = "id" + i;
+        this.cache.put(id, "document", "owner");
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<String>> results = new ArrayList<>();
+        for (int j = 0; j < claimers; j++) {
+          results.add(executor.submit(() -> {
+            start.await();
+            return this.cache.get(id, true, "owner");
+          }));
+        }
+        start.countDown();
+
+        int claimed = 0;
+        for (final Future<String> result : results) {
+          if (result.get() != null) {
+            claimed++;
+          }
+        }
+        Assertions.assertEquals(1, claimed, "Entry should be claimed exactly once");
+        Assertions.assertNull(this.cache.get(id, "owner"));
+      }
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @ParameterizedTest
+  @EnumSource(StorageMode.class)
+  void testClaimByOtherLeavesEntry(final StorageMode storageMode) {
+    this.cache.setStorageMode(storageMode);
+    this.cache.put("id1", "document", "owner");
+
+    try {
+      Assertions.assertNull(this.cache.get("id1", true, "other"));
+    }
+    catch (final RuntimeException e) {
+      // Depending on the access check, we may get an exception ...
+    }
+    Assertions.assertEquals("document", this.cache.get("id1", true, "owner"));
+    Assertions.assertNull(this.cache.get("id1", "owner"));
+  }
+
+  @Test
+  void testAsyncExpirationIndex() throws Exception {
+    this.cache.setAsyncExpirationIndex(true);
+    try {
+      for (int i = 0; i < 100; i++) {
+        this.cache.putCacheObject("expired" + i, "document", "owner", System.currentTimeMillis() - 1000);
+      }
+      this.cache.put("id1", "document", "owner");
+
+      // The index updates are written in the background ...
+      int purged = this.cache.purgeExpired();
+      final long deadline = System.currentTimeMillis() + 5000;
+      while (purged < 100 && System.currentTimeMillis() < deadline) {
+        Thread.sleep(50);
+        purged += this.cache.purgeExpired();
+      }
+      Assertions.assertEquals(100, purged);
+      Assertions.assertEquals(1, this.cache.getEntryCount());
+      Assertions.assertEquals("document", this.cache.get("id1", "owner"));
+    }
+    finally {
+      this.cache.destroy();
+    }
+  }
+
+  @Test
+  void testPendingIndexUpdatesWrittenOnDestroy() throws Exception {
+    this.cache.setAsyncExpirationIndex(true);
+    this.cache.putCacheObject("expired", "document", "owner", System.currentTimeMillis() - 1000);
+    this.cache.destroy();
+    this.cache.setAsyncExpirationIndex(false);
+    Assertions.assertEquals(1, this.cache.purgeExpired());
+  }
+
+  @Test
+  void testClaimExpired() {
+    this.cache.putCacheObject("id1", "document", "owner", System.currentTimeMillis() - 1000);
+    Assertions.assertNull(this.cache.get("id1", true, "owner"));
+    Assertions.assertEquals(0, this.cache.getEntryCount());
+  }
+
+  @Test
+  void testExpirationKeyRemovedWithEntry() {
+    this.cache.setExpiryNotifications(true);
+    final String hashName = this.cache.getRedisHashName();
+
+    this.cache.put("id1", "document", "owner");
+    Assertions.assertTrue(this.redisTemplate.hasKey(this.cache.getRedisExpirationKey(hashName, "id1")));
+    Assertions.assertEquals("document", this.cache.get("id1", true, "owner"));
+    Assertions.assertFalse(this.redisTemplate.hasKey(this.cache.getRedisExpirationKey(hashName, "id1")));
+
+    this.cache.put("id2", "document", "owner");
+    this.cache.removeCacheObject("id2");
+    Assertions.assertFalse(this.redisTemplate.hasKey(this.cache.getRedisExpirationKey(hashName, "id2")));
+
+    this.cache.putCacheObject("id3", "document", "owner", System.currentTimeMillis() + 60_000);
+    this.redisTemplate.opsForZSet().add(this.cache.getRedisExpirationIndexName(hashName), "id3", 0);
+    Assertions.assertEquals(1, this.cache.purgeExpired());
+    Assertions.assertFalse(this.redisTemplate.hasKey(this.cache.getRedisExpirationKey(hashName, "id3")));
+  }
+
+  @Test
+  void testExpiryNotification() {
+    this.cache.setExpiryNotifications(true);
+    final String hashName = this.cache.getRedisHashName();
+
+    this.cache.putCacheObject("expired", "document", "owner", System.currentTimeMillis() - 1000);
+    this.cache.put("valid", "document", "owner");
+
+    this.cache.onMessage(this.expiredKeyMessage(this.cache.getRedisExpirationKey(hashName, "expired")), null);
+    Assertions.assertEquals(1, this.cache.getEntryCount());
+
+    // Another node being notified about the same key does not remove anything ...
+    this.cache.onMessage(this.expiredKeyMessage(this.cache.getRedisExpirationKey(hashName, "expired")), null);
+    Assertions.assertEquals(1, this.cache.getEntryCount());
+
+    // An entry that has not expired (e.g., written again) is kept ...
+    this.cache.onMessage(this.expiredKeyMessage(this.cache.getRedisExpirationKey(hashName, "valid")), null);
+    Assertions.assertEquals("document", this.cache.get("valid", "owner"));
+
+    // Keys not belonging to the cache are ignored ...
+    this.cache.onMessage(this.expiredKeyMessage("other_exp:valid"), null);
+    Assertions.assertEquals(1, this.cache.getEntryCount());
+  }
+
+  @SuppressWarnings("unchecked")
+  private Message expiredKeyMessage(final String key) {
+    return new DefaultMessage("__keyevent@0__:expired".getBytes(StandardCharsets.UTF_8),
+        ((RedisSerializer<Object>) this.redisTemplate.getKeySerializer()).serialize(key));
+  }
+
+}
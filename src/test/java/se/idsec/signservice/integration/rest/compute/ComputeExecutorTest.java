@@ -0,0 +1,125 @@
+/*
+ * Copyright 2020-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.rest.compute;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test cases for {@link ComputeExecutor}.
+ *
+ * @author Martin Lindström
+ */
+class ComputeExecutorTest {
+
+  @Test
+  void testSubmit() throws Exception {
+    final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    final ComputeExecutor executor = new ComputeExecutor(true, 2, 10, Duration.ofSeconds(5), registry);
+    try {
+      Assertions.assertEquals("result", executor.submit(() -> "result").get(5, TimeUnit.SECONDS));
+      Assertions.assertEquals(1L, registry.get("signservice.compute.queue.wait").timer().count());
+
+      final CompletableFuture<String> failed = executor.submit(() -> {
+        throw new IllegalStateException("failed");
+      });
+      final ExecutionException e =
+          Assertions.assertThrows(ExecutionException.class, () -> failed.get(5, TimeUnit.SECONDS));
+      Assertions.assertInstanceOf(IllegalStateException.class, e.getCause());
+    }
+    finally {
+      executor.destroy();
+    }
+  }
+
+  @Test
+  void testError() throws Exception {
+    final ComputeExecutor executor = new ComputeExecutor(true, 1, 10, Duration.ofSeconds(5), null);
+    try {
+      final CompletableFuture<String> failed = executor.submit(() -> {
+        throw new AssertionError("failed");
+      });
+      final ExecutionException e =
+          Assertions.assertThrows(ExecutionException.class, () -> failed.get(5, TimeUnit.SECONDS));
+      Assertions.assertInstanceOf(AssertionError.class, e.getCause());
+
+      // The executor is still usable ...
+      Assertions.assertEquals("result", executor.submit(() -> "result").get(5, TimeUnit.SECONDS));
+    }
+    finally {
+      executor.destroy();
+    }
+  }
+
+  @Test
+  void testVirtualThreads() throws Exception {
+    final ComputeExecutor executor = new ComputeExecutor(true, 2, 10, Duration.ofSeconds(5), true, null);
+    try {
+      Assertions.assertTrue(executor.submit(() -> Thread.currentThread().isVirtual()).get(5, TimeUnit.SECONDS));
+    }
+    finally {
+      executor.destroy();
+    }
+  }
+
+  @Test
+  void testRejectWhenQueueIsFull() throws Exception {
+    final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    final ComputeExecutor executor = new ComputeExecutor(true, 1, 1, Duration.ofSeconds(7), registry);
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    try {
+      final CompletableFuture<String> running = executor.submit(() -> {
+        started.countDown();
+        release.await();
+        return "running";
+      });
+      Assertions.assertTrue(started.await(5, TimeUnit.SECONDS));
+      final CompletableFuture<String> queued = executor.submit(() -> "queued");
+
+      final ComputeExecutorFullException e =
+          Assertions.assertThrows(ComputeExecutorFullException.class, () -> executor.submit(() -> "rejected"));
+      Assertions.assertEquals(Duration.ofSeconds(7), e.getRetryAfter());
+      Assertions.assertEquals(1.0, registry.get("signservice.compute.rejected").counter().count());
+      Assertions.assertEquals(1.0, registry.get("signservice.compute.queue.size").gauge().value());
+
+      release.countDown();
+      Assertions.assertEquals("running", running.get(5, TimeUnit.SECONDS));
+      Assertions.assertEquals("queued", queued.get(5, TimeUnit.SECONDS));
+    }
+    finally {
+      release.countDown();
+      executor.destroy();
+    }
+  }
+
+  @Test
+  void testDisabled() throws Exception {
+    final ComputeExecutor executor = new ComputeExecutor(false, 1, 1, Duration.ofSeconds(5), null);
+    final Thread caller = Thread.currentThread();
+    final CompletableFuture<Thread> future = executor.submit(Thread::currentThread);
+    Assertions.assertTrue(future.isDone());
+    Assertions.assertSame(caller, future.get());
+  }
+
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2020-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.idsec.signservice.integration.rest.config;
+
+import org.apache.catalina.connector.Connector;
+import org.apache.coyote.ajp.AbstractAjpProtocol;
+import org.apache.tomcat.util.threads.VirtualThreadExecutor;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.List;
+
+/**
+ * Test cases for {@link TomcatWebServerConfiguration}.
+ *
+ * @author Martin Lindström
+ */
+class TomcatWebServerConfigurationTest {
+
+  @Test
+  void testAjpConnector() {
+    final TomcatAjpConfigurationProperties ajp = this.ajp();
+    ajp.setSecretRequired(true);
+    ajp.setSecret("secret");
+
+    final List<Connector> connectors = this.customize(ajp, new MockEnvironment());
+    Assertions.assertEquals(1, connectors.size());
+    Assertions.assertEquals(8009, connectors.get(0).getPort());
+    Assertions.assertTrue(connectors.get(0).getSecure());
+
+    final AbstractAjpProtocol<?> protocol = (AbstractAjpProtocol<?>) connectors.get(0).getProtocolHandler();
+    Assertions.assertTrue(protocol.getSecretRequired());
+
+    // Platform threads - Tomcat creates its own executor when the connector is started ...
+    Assertions.assertNull(protocol.getExecutor());
+  }
+
+  @Test
+  void testAjpConnectorVirtualThreads() {
+    final MockEnvironment environment = new MockEnvironment();
+    environment.setProperty("spring.threads.virtual.enabled", "true");
+
+    final List<Connector> connectors = this.customize(this.ajp(), environment);
+    Assertions.assertEquals(1, connectors.size());
+    Assertions.assertInstanceOf(VirtualThreadExecutor.class, connectors.get(0).getProtocolHandler().getExecutor());
+  }
+
+  @Test
+  void testAjpDisabled() {
+    final TomcatAjpConfigurationProperties ajp = this.ajp();
+    ajp.setEnabled(false);
+    Assertions.assertTrue(this.customize(ajp, new MockEnvironment()).isEmpty());
+  }
+
+  private List<Connector> customize(final TomcatAjpConfigurationProperties ajp, final MockEnvironment environment) {
+    final TomcatServletWebServerFactory factory = new TomcatServletWebServerFactory();
+    new TomcatWebServerConfiguration(ajp, environment).customize(factory);
+    return factory.getAdditionalTomcatConnectors();
+  }
+
+  private TomcatAjpConfigurationProperties ajp() {
+    final TomcatAjpConfigurationProperties ajp = new TomcatAjpConfigurationProperties();
+    ajp.setEnabled(true);
+    ajp.setPort(8009);
+    return ajp;
+  }
+
+}
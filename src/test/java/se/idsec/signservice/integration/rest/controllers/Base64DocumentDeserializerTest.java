@@ -0,0 +1,96 @@
+/*
+ * Copyright 2020-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.rest.controllers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import lombok.Data;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Random;
+
+/**
+ * Test cases for {@link Base64DocumentDeserializer}.
+ *
+ * @author Martin Lindström
+ */
+class Base64DocumentDeserializerTest {
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+
+  @Test
+  void testDecodeInMemory() throws Exception {
+    final byte[] document = createDocument(10_000);
+    final PreparePdfDocumentInput input = this.read(Base64.getEncoder().encodeToString(document));
+    Assertions.assertArrayEquals(document, input.getPdfDocument());
+    Assertions.assertTrue(input.getSignaturePagePreferences().isFailWhenSignPageFull());
+  }
+
+  @Test
+  void testDecodeViaTemporaryFile() throws Exception {
+    final byte[] document = createDocument(DocumentBuffer.DEFAULT_MEMORY_THRESHOLD * 3 + 17);
+    final PreparePdfDocumentInput input = this.read(Base64.getEncoder().encodeToString(document));
+    Assertions.assertArrayEquals(document, input.getPdfDocument());
+  }
+
+  @Test
+  void testDecodeLargeDocumentInMemory() throws Exception {
+    final byte[] document = createDocument(DocumentBuffer.DEFAULT_MEMORY_THRESHOLD * 3 + 17);
+    final String json = "{\"pdfDocument\":\"" + Base64.getEncoder().encodeToString(document) + "\"}";
+    final InMemoryInput input =
+        this.objectMapper.readValue(json.getBytes(StandardCharsets.UTF_8), InMemoryInput.class);
+    Assertions.assertArrayEquals(document, input.getPdfDocument());
+  }
+
+  @Test
+  void testDecodeWithoutPadding() throws Exception {
+    final byte[] document = createDocument(1001);
+    final PreparePdfDocumentInput input =
+        this.read(Base64.getEncoder().withoutPadding().encodeToString(document));
+    Assertions.assertArrayEquals(document, input.getPdfDocument());
+  }
+
+  @Test
+  void testInvalidEncoding() {
+    final Base64DocumentDeserializer.InvalidEncodingException e = Assertions.assertThrows(
+        Base64DocumentDeserializer.InvalidEncodingException.class, () -> this.read("AAAA*not-base64*"));
+    Assertions.assertEquals("pdfDocument", e.getFieldName());
+  }
+
+  private PreparePdfDocumentInput read(final String encodedDocument) throws Exception {
+    final String json = "{\"signaturePagePreferences\":{\"failWhenSignPageFull\":true},\"pdfDocument\":\""
+        + encodedDocument + "\"}";
+    return this.objectMapper.readValue(json.getBytes(StandardCharsets.UTF_8), PreparePdfDocumentInput.class);
+  }
+
+  @Data
+  static class InMemoryInput {
+
+    @JsonDeserialize(using = Base64DocumentDeserializer.InMemory.class)
+    private byte[] pdfDocument;
+
+  }
+
+  private static byte[] createDocument(final int size) {
+    final byte[] document = new byte[size];
+    new Random(size).nextBytes(document);
+    return document;
+  }
+
+}
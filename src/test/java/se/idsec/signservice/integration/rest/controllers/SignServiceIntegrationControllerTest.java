@@ -0,0 +1,397 @@
+/*
+ * Copyright 2020-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.idsec.signservice.integration.rest.controllers;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.Filter;
+import jakarta.servlet.MultipartConfigElement;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.boot.web.servlet.ServletRegistrationBean;
+import org.springframework.boot.web.servlet.context.AnnotationConfigServletWebServerApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.MultipartBodyBuilder;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.mock.web.MockPart;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.multipart.MultipartResolver;
+import org.springframework.web.multipart.support.StandardServletMultipartResolver;
+import org.springframework.web.servlet.DispatcherServlet;
+import org.springframework.web.servlet.config.annotation.EnableWebMvc;
+import se.idsec.signservice.integration.ExtendedSignServiceIntegrationService;
+import se.idsec.signservice.integration.SignRequestData;
+import se.idsec.signservice.integration.SignRequestInput;
+import se.idsec.signservice.integration.core.error.InputValidationException;
+import se.idsec.signservice.integration.document.pdf.PdfSignaturePagePreferences;
+import se.idsec.signservice.integration.document.pdf.PreparedPdfDocument;
+import se.idsec.signservice.integration.rest.batch.BatchItemResult;
+import se.idsec.signservice.integration.rest.batch.BatchProcessor;
+import se.idsec.signservice.integration.rest.compute.ComputeExecutor;
+
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Test cases for {@link SignServiceIntegrationController}.
+ *
+ * @author Martin Lindström
+ */
+class SignServiceIntegrationControllerTest {
+
+  private ExtendedSignServiceIntegrationService service;
+
+  private BatchProcessor batchProcessor;
+
+  private SignServiceIntegrationController controller;
+
+  private final Authentication authentication = new TestingAuthenticationToken("user", null);
+
+  @BeforeEach
+  void setup() throws Exception {
+    this.service = Mockito.mock(ExtendedSignServiceIntegrationService.class);
+    Mockito.when(this.service.createSignRequest(ArgumentMatchers.any(), ArgumentMatchers.eq("user")))
+        .thenReturn(Mockito.mock(SignRequestData.class));
+    this.batchProcessor = new BatchProcessor("test", 2, 10, 10);
+    this.controller = new SignServiceIntegrationController(this.service, this.batchProcessor, this.batchProcessor,
+        new ComputeExecutor(false, 1, 1, Duration.ofSeconds(5), null));
+  }
+
+  @AfterEach
+  void destroy() {
+    this.batchProcessor.destroy();
+  }
+
+  @Test
+  void testCreatePolicy() throws Exception {
+    // No policy in the input - the policy of the URI is used ...
+    final SignRequestInput input = new SignRequestInput();
+    Assertions.assertNotNull(this.controller.createSignRequest(this.request("/v1/create/default"),
+        this.authentication, "default", input).join());
+    Assertions.assertEquals("default", input.getPolicy());
+
+    // The same policy as in the URI ...
+    final SignRequestInput input2 = new SignRequestInput();
+    input2.setPolicy("default");
+    Assertions.assertNotNull(this.controller.createSignRequest(this.request("/v1/create/default"),
+        this.authentication, "default", input2).join());
+
+    // Another policy than in the URI ...
+    final SignRequestInput input3 = new SignRequestInput();
+    input3.setPolicy("other");
+    final InputValidationException e = Assertions.assertThrows(InputValidationException.class,
+        () -> this.controller.createSignRequest(this.request("/v1/create/default"), this.authentication, "default",
+            input3));
+    Assertions.assertEquals("policy", e.getObjectName());
+    Mockito.verify(this.service, Mockito.times(2)).createSignRequest(ArgumentMatchers.any(), ArgumentMatchers.any());
+  }
+
+  @Test
+  void testCreateBatch() throws Exception {
+    final SignRequestInput matching = new SignRequestInput();
+    matching.setPolicy("default");
+    final SignRequestInput other = new SignRequestInput();
+    other.setPolicy("other");
+
+    final List<BatchItemResult<SignRequestData>> results = this.controller.createSignRequests(
+        this.request("/v1/create/default/batch"), this.authentication, "default",
+        List.of(new SignRequestInput(), matching, other));
+
+    Assertions.assertEquals(3, results.size());
+    Assertions.assertNotNull(results.get(0).getResult());
+    Assertions.assertNotNull(results.get(1).getResult());
+    Assertions.assertNull(results.get(2).getResult());
+    Assertions.assertEquals(400, results.get(2).getError().getStatus());
+    Assertions.assertEquals("/v1/create/default/batch", results.get(2).getError().getPath());
+  }
+
+  @Test
+  void testCreateBatchTooManyItems() {
+    final List<SignRequestInput> inputs = Stream.generate(SignRequestInput::new).limit(11).toList();
+    Assertions.assertThrows(InputValidationException.class, () -> this.controller.createSignRequests(
+        this.request("/v1/create/default/batch"), this.authentication, "default", inputs));
+  }
+
+  @Test
+  void testPrepareBatchStream() throws Exception {
+    Mockito.when(this.service.preparePdfDocument(ArgumentMatchers.eq("default"), ArgumentMatchers.any(byte[].class),
+            ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.eq("user")))
+        .thenAnswer(invocation -> {
+          if ("invalid".equals(new String((byte[]) invocation.getArgument(1), StandardCharsets.UTF_8))) {
+            throw new InputValidationException("pdfDocument", "Invalid document");
+          }
+          return new PreparedPdfDocument();
+        });
+    final MockMvc mockMvc = MockMvcBuilders.standaloneSetup(this.controller).build();
+
+    final MvcResult result = mockMvc.perform(MockMvcRequestBuilders.multipart("/v1/prepare/default/batch")
+            .file(this.document("valid"))
+            .file(this.document("invalid"))
+            .file(this.document("valid"))
+            .principal(this.authentication)
+            .accept(MediaType.APPLICATION_NDJSON))
+        .andExpect(MockMvcResultMatchers.request().asyncStarted())
+        .andReturn();
+    result.getAsyncResult(5000);
+
+    // One JSON object per line, in the order that the items complete ...
+    final ObjectMapper mapper = new ObjectMapper();
+    final Map<Integer, JsonNode> items = new HashMap<>();
+    for (final String line : result.getResponse().getContentAsString().split("\n")) {
+      final JsonNode item = mapper.readTree(line);
+      items.put(item.get("index").asInt(), item);
+    }
+    Assertions.assertEquals(Set.of(0, 1, 2), items.keySet());
+    Assertions.assertTrue(items.get(0).has("result"));
+    Assertions.assertTrue(items.get(2).has("result"));
+    Assertions.assertFalse(items.get(1).has("result"));
+    Assertions.assertEquals(400, items.get(1).get("error").get("status").asInt());
+  }
+
+  @Test
+  void testPrepareBatchMultipartParsed() throws Exception {
+    final Set<String> prepared = ConcurrentHashMap.newKeySet();
+    Mockito.when(this.service.preparePdfDocument(ArgumentMatchers.eq("default"), ArgumentMatchers.any(byte[].class),
+            ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.eq("user")))
+        .thenAnswer(invocation -> {
+          prepared.add(new String((byte[]) invocation.getArgument(1), StandardCharsets.UTF_8));
+          return new PreparedPdfDocument();
+        });
+
+    // Tomcat parses the request and stores the uploaded parts in temporary files ...
+    try (final AnnotationConfigServletWebServerApplicationContext context =
+        new AnnotationConfigServletWebServerApplicationContext()) {
+      context.registerBean(SignServiceIntegrationController.class, () -> this.controller);
+      context.register(MultipartServerConfiguration.class);
+      context.refresh();
+
+      final MultipartBodyBuilder body = new MultipartBodyBuilder();
+      for (final String contents : List.of("document1", "document2", "document3")) {
+        body.part("documents", new ByteArrayResource(contents.getBytes(StandardCharsets.UTF_8)))
+            .filename(contents + ".pdf")
+            .contentType(MediaType.APPLICATION_PDF);
+      }
+      final String response = RestClient.create("http://localhost:" + context.getWebServer().getPort())
+          .post()
+          .uri("/v1/prepare/default/batch")
+          .contentType(MediaType.MULTIPART_FORM_DATA)
+          .accept(MediaType.APPLICATION_NDJSON)
+          .body(body.build())
+          .retrieve()
+          .body(String.class);
+
+      final ObjectMapper mapper = new ObjectMapper();
+      final String[] lines = response.strip().split("\n");
+      Assertions.assertEquals(3, lines.length);
+      for (final String line : lines) {
+        Assertions.assertTrue(mapper.readTree(line).has("result"));
+      }
+    }
+    Assertions.assertEquals(Set.of("document1", "document2", "document3"), prepared);
+  }
+
+  @Test
+  void testPrepareBinary() throws Exception {
+    final byte[] pdf = "%PDF-original".getBytes(StandardCharsets.UTF_8);
+    this.mockPrepare();
+    final MockMvc mockMvc = MockMvcBuilders.standaloneSetup(this.controller).build();
+
+    final MvcResult result = mockMvc.perform(MockMvcRequestBuilders.post("/v1/prepare/default")
+            .contentType(MediaType.APPLICATION_PDF)
+            .content(pdf)
+            .principal(this.authentication)
+            .accept(MediaType.APPLICATION_JSON))
+        .andExpect(MockMvcResultMatchers.request().asyncStarted())
+        .andReturn();
+
+    mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(result))
+        .andExpect(MockMvcResultMatchers.status().isOk())
+        .andExpect(MockMvcResultMatchers.content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+        .andExpect(MockMvcResultMatchers.jsonPath("$.updatedPdfDocument").value(
+            Base64.getEncoder().encodeToString("%PDF-updated".getBytes(StandardCharsets.UTF_8))));
+
+    // The default signature page preferences are used ...
+    Mockito.verify(this.service).preparePdfDocument(ArgumentMatchers.eq("default"), ArgumentMatchers.eq(pdf),
+        ArgumentMatchers.isNull(), ArgumentMatchers.any(), ArgumentMatchers.eq("user"));
+  }
+
+  @Test
+  void testPrepareBinaryMultipartResponse() throws Exception {
+    this.mockPrepare();
+    final MockMvc mockMvc = MockMvcBuilders.standaloneSetup(this.controller).build();
+
+    final MvcResult result = mockMvc.perform(MockMvcRequestBuilders.post("/v1/prepare/default")
+            .contentType(MediaType.APPLICATION_PDF)
+            .content("%PDF-original".getBytes(StandardCharsets.UTF_8))
+            .principal(this.authentication)
+            .header(HttpHeaders.ACCEPT, MediaType.MULTIPART_MIXED_VALUE))
+        .andExpect(MockMvcResultMatchers.request().asyncStarted())
+        .andReturn();
+
+    final MvcResult dispatched = mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(result))
+        .andExpect(MockMvcResultMatchers.status().isOk())
+        .andExpect(MockMvcResultMatchers.content().contentTypeCompatibleWith(MediaType.MULTIPART_MIXED))
+        .andReturn();
+
+    // The updated document is passed in binary form in its own part, and not within the JSON result ...
+    final String body = dispatched.getResponse().getContentAsString(StandardCharsets.UTF_8);
+    Assertions.assertTrue(body.contains("name=\"result\""));
+    Assertions.assertTrue(body.contains("name=\"document\""));
+    Assertions.assertTrue(body.contains("%PDF-updated"));
+    Assertions.assertFalse(body.contains("updatedPdfDocument\":\""));
+  }
+
+  @Test
+  void testPrepareResponseWithoutDocument() {
+    final PreparedPdfDocument prepared = new PreparedPdfDocument();
+
+    // No updated document (a reference was requested) - only the result part ...
+    final Object body = SignServiceIntegrationController.toPrepareResponse(prepared,
+        MediaType.MULTIPART_MIXED_VALUE).getBody();
+    Assertions.assertInstanceOf(MultiValueMap.class, body);
+    Assertions.assertEquals(Set.of("result"), ((MultiValueMap<?, ?>) body).keySet());
+
+    // The client does not accept multipart ...
+    Assertions.assertSame(prepared, SignServiceIntegrationController.toPrepareResponse(prepared,
+        MediaType.APPLICATION_JSON_VALUE).getBody());
+    Assertions.assertSame(prepared, SignServiceIntegrationController.toPrepareResponse(prepared, null).getBody());
+  }
+
+  @Test
+  void testPrepareMultipartUpload() throws Exception {
+    this.mockPrepare();
+    final MockMvc mockMvc = MockMvcBuilders.standaloneSetup(this.controller).build();
+
+    final MockPart preferences = new MockPart("preferences", "{}".getBytes(StandardCharsets.UTF_8));
+    preferences.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+
+    final MvcResult result = mockMvc.perform(MockMvcRequestBuilders.multipart("/v1/prepare/default")
+            .file(new MockMultipartFile("document", "document.pdf", MediaType.APPLICATION_PDF_VALUE,
+                "%PDF-original".getBytes(StandardCharsets.UTF_8)))
+            .part(preferences)
+            .principal(this.authentication)
+            .accept(MediaType.APPLICATION_JSON))
+        .andExpect(MockMvcResultMatchers.request().asyncStarted())
+        .andReturn();
+
+    mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(result))
+        .andExpect(MockMvcResultMatchers.status().isOk())
+        .andExpect(MockMvcResultMatchers.jsonPath("$.updatedPdfDocument").exists());
+
+    Mockito.verify(this.service).preparePdfDocument(ArgumentMatchers.eq("default"),
+        ArgumentMatchers.eq("%PDF-original".getBytes(StandardCharsets.UTF_8)),
+        ArgumentMatchers.any(PdfSignaturePagePreferences.class), ArgumentMatchers.any(), ArgumentMatchers.eq("user"));
+  }
+
+  private void mockPrepare() throws Exception {
+    Mockito.when(this.service.preparePdfDocument(ArgumentMatchers.eq("default"), ArgumentMatchers.any(byte[].class),
+            ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.eq("user")))
+        .thenAnswer(invocation -> {
+          final PreparedPdfDocument prepared = new PreparedPdfDocument();
+          prepared.setUpdatedPdfDocument(
+              Base64.getEncoder().encodeToString("%PDF-updated".getBytes(StandardCharsets.UTF_8)));
+          return prepared;
+        });
+  }
+
+  private MockMultipartFile document(final String contents) {
+    return new MockMultipartFile("documents", "document.pdf", MediaType.APPLICATION_PDF_VALUE,
+        contents.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private MockHttpServletRequest request(final String path) {
+    final MockHttpServletRequest request = new MockHttpServletRequest("POST", path);
+    request.setServletPath(path);
+    return request;
+  }
+
+  /**
+   * Serves the controller from an embedded Tomcat, where multipart requests are parsed by the container. The user
+   * principal is set by a filter.
+   */
+  @Configuration
+  @EnableWebMvc
+  static class MultipartServerConfiguration {
+
+    @Bean
+    TomcatServletWebServerFactory webServerFactory() {
+      return new TomcatServletWebServerFactory(0);
+    }
+
+    @Bean
+    ServletRegistrationBean<DispatcherServlet> dispatcherServlet(final WebApplicationContext context) {
+      final ServletRegistrationBean<DispatcherServlet> registration =
+          new ServletRegistrationBean<>(new DispatcherServlet(context), "/");
+      registration.setMultipartConfig(new MultipartConfigElement(""));
+      return registration;
+    }
+
+    @Bean(DispatcherServlet.MULTIPART_RESOLVER_BEAN_NAME)
+    MultipartResolver multipartResolver() {
+      return new StandardServletMultipartResolver();
+    }
+
+    @Bean
+    FilterRegistrationBean<Filter> principalFilter() {
+      final Principal principal = new TestingAuthenticationToken("user", null);
+      final FilterRegistrationBean<Filter> registration = new FilterRegistrationBean<>(
+          (request, response, chain) -> chain.doFilter(
+              new HttpServletRequestWrapper((HttpServletRequest) request) {
+                @Override
+                public Principal getUserPrincipal() {
+                  return principal;
+                }
+              }, response));
+      registration.setDispatcherTypes(EnumSet.allOf(DispatcherType.class));
+      return registration;
+    }
+
+  }
+
+}
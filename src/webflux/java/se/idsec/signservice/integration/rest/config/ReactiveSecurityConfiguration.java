@@ -0,0 +1,70 @@
+/*
+ * Copyright 2020-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.rest.config;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.actuate.autoconfigure.security.reactive.EndpointRequest;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpMethod;
+import org.springframework.security.config.Customizer;
+import org.springframework.security.config.annotation.method.configuration.EnableReactiveMethodSecurity;
+import org.springframework.security.config.annotation.web.reactive.EnableWebFluxSecurity;
+import org.springframework.security.config.web.server.ServerHttpSecurity;
+import org.springframework.security.core.userdetails.MapReactiveUserDetailsService;
+import org.springframework.security.core.userdetails.ReactiveUserDetailsService;
+import org.springframework.security.web.server.SecurityWebFilterChain;
+import org.springframework.security.web.server.context.NoOpServerSecurityContextRepository;
+
+import java.util.Collection;
+
+/**
+ * Security configuration for the reactive (WebFlux) stack. Corresponds to {@link SecurityConfiguration}.
+ *
+ * @author Martin Lindström
+ */
+@Configuration
+@EnableReactiveMethodSecurity
+@EnableWebFluxSecurity
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveSecurityConfiguration {
+
+  @Bean
+  ReactiveUserDetailsService reactiveUserDetailsService(
+      @Qualifier("signservice.users") final Collection<UsersConfiguration.UserEntry> users) {
+    return new MapReactiveUserDetailsService(SecurityConfiguration.toUserDetails(users));
+  }
+
+  @Bean
+  public SecurityWebFilterChain securityWebFilterChain(final ServerHttpSecurity http) {
+    http
+        .authorizeExchange(authorize -> authorize
+            .pathMatchers(HttpMethod.GET, "/v1/version").permitAll()
+            .pathMatchers("/v1/policy/list", "/v1/policy/get/**").hasAnyRole("USER", "ADMIN")
+            .pathMatchers(HttpMethod.POST, "/v1/create/**", "/v1/process/**", "/v1/prepare/**")
+            .hasAnyRole("USER", "ADMIN")
+            .matchers(EndpointRequest.toAnyEndpoint()).permitAll()
+            .anyExchange().authenticated()
+        )
+        .securityContextRepository(NoOpServerSecurityContextRepository.getInstance())
+        .csrf(ServerHttpSecurity.CsrfSpec::disable)
+        .httpBasic(Customizer.withDefaults());
+
+    return http.build();
+  }
+
+}
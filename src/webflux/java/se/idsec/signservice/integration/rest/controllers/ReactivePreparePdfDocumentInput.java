@@ -0,0 +1,47 @@
+/*
+ * Copyright 2020-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.idsec.signservice.integration.rest.controllers;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import se.idsec.signservice.integration.document.pdf.PdfSignaturePagePreferences;
+
+/**
+ * The input for the {@code /prepare} endpoint on the reactive stack. Has the same JSON representation as
+ * {@link PreparePdfDocumentInput}, but the PDF document is always decoded into memory (see
+ * {@link Base64DocumentDeserializer.InMemory}) since the request body is parsed on the event loop, where no blocking
+ * file I/O may be performed.
+ *
+ * @author Martin Lindström
+ */
+@Data
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonIgnoreProperties(ignoreUnknown = true)
+class ReactivePreparePdfDocumentInput {
+
+  /** The (decoded) PDF document. */
+  @JsonDeserialize(using = Base64DocumentDeserializer.InMemory.class)
+  private byte[] pdfDocument;
+
+  /** The signature page preferences. */
+  private PdfSignaturePagePreferences signaturePagePreferences;
+
+}
@@ -0,0 +1,348 @@
+/*
+ * Copyright 2020-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.rest.controllers;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.multipart.FilePart;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.security.access.prepost.PostFilter;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.parameters.P;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RequestPart;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import se.idsec.signservice.integration.ApiVersion;
+import se.idsec.signservice.integration.ExtendedSignServiceIntegrationService;
+import se.idsec.signservice.integration.ProcessSignResponseInput;
+import se.idsec.signservice.integration.SignRequestData;
+import se.idsec.signservice.integration.SignRequestInput;
+import se.idsec.signservice.integration.SignatureResult;
+import se.idsec.signservice.integration.config.IntegrationServiceDefaultConfiguration;
+import se.idsec.signservice.integration.core.error.BadRequestException;
+import se.idsec.signservice.integration.core.error.ErrorCode;
+import se.idsec.signservice.integration.core.error.InputValidationException;
+import se.idsec.signservice.integration.document.pdf.PdfSignaturePagePreferences;
+import se.idsec.signservice.integration.document.pdf.PreparedPdfDocument;
+import se.idsec.signservice.integration.rest.compute.ComputeExecutor;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+
+/**
+ * Controller for the Sign Service Integration service on the reactive (WebFlux) stack. Exposes the same API as
+ * {@link SignServiceIntegrationController}.
+ * <p>
+ * Request bodies are read without holding a thread, and the calls to {@code /create}, {@code /process} and
+ * {@code /prepare} are then processed by the {@link ComputeExecutor}, so that the (blocking) service logic and the
+ * caches that it uses are never invoked on the event loop. If the executor is disabled, the calls are processed on the
+ * bounded elastic scheduler.
+ * </p>
+ *
+ * @author Martin Lindström
+ */
+@RestController
+@RequestMapping("v1")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@Slf4j
+class ReactiveSignServiceIntegrationController {
+
+  /** The service logic. */
+  private final ExtendedSignServiceIntegrationService signServiceIntegrationService;
+
+  /** Processes the calls to /create, /process and /prepare. */
+  private final ComputeExecutor computeExecutor;
+
+  /**
+   * Constructor.
+   *
+   * @param signServiceIntegrationService the service logic
+   * @param computeExecutor processes the calls to /create, /process and /prepare
+   */
+  public ReactiveSignServiceIntegrationController(
+      final ExtendedSignServiceIntegrationService signServiceIntegrationService,
+      final ComputeExecutor computeExecutor) {
+    this.signServiceIntegrationService = signServiceIntegrationService;
+    this.computeExecutor = computeExecutor;
+  }
+
+  /**
+   * Endpoint for creating the sign request data, i.e., called to obtain the data needed to initiate a signature
+   * operation.
+   *
+   * @param request the HTTP request
+   * @param authentication the user authentication object
+   * @param policy the policy for the operation
+   * @param signRequestInput the sign request input
+   * @return a SignRequestData object
+   */
+  @PreAuthorize("@evaluator.hasPermission(authentication, #policy, 'use')")
+  @PostMapping(value = "/create/{policy}", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+  public Mono<SignRequestData> createSignRequest(
+      final ServerHttpRequest request,
+      final Authentication authentication,
+      @PathVariable("policy") @P("policy") final String policy,
+      @RequestBody final SignRequestInput signRequestInput) {
+
+    log.debug("Processing POST request '{}' [user='{}', client-ip'{}']",
+        getPath(request), authentication.getName(), getRemoteAddress(request));
+
+    // Check to ensure that the policy is correct ...
+    //
+    if (signRequestInput.getPolicy() == null) {
+      signRequestInput.setPolicy(policy);
+    }
+    else if (!signRequestInput.getPolicy().equals(policy)) {
+      log.info("Bad policy ({}) in input passed to '{}' [user='{}', client-ip'{}']",
+          policy, getPath(request), authentication.getName(), getRemoteAddress(request));
+      return Mono.error(new InputValidationException("policy", "Supplied policy in input does not match URI"));
+    }
+
+    final String owner = authentication.getName();
+    return this.compute(() -> this.signServiceIntegrationService.createSignRequest(signRequestInput, owner));
+  }
+
+  /**
+   * Endpoint that processes a SignResponse data that was received from the sign service and returns a
+   * {@link SignatureResult}.
+   *
+   * @param request the HTTP request
+   * @param authentication the user authentication object
+   * @param processSignResponseInput the input (holds the SignResponse along with the state)
+   * @return a SignatureResult
+   */
+  @PostMapping(value = "/process", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+  public Mono<SignatureResult> processSignResponse(
+      final ServerHttpRequest request,
+      final Authentication authentication,
+      @RequestBody final ProcessSignResponseInput processSignResponseInput) {
+
+    log.debug("Processing POST request '{}' [user='{}', client-ip'{}']",
+        getPath(request), authentication.getName(), getRemoteAddress(request));
+
+    // Make sure we have the state ...
+    //
+    if (processSignResponseInput.getState() == null || processSignResponseInput.getState().getId() == null) {
+      final String msg = "Can not process SignResponse - No state is available";
+      log.info("{} [user='{}', client-ip'{}']", msg, authentication.getName(), getRemoteAddress(request));
+      return Mono.error(new BadRequestException(new ErrorCode.Code("session"), msg));
+    }
+
+    final String owner = authentication.getName();
+    return this.compute(() -> this.signServiceIntegrationService.processSignResponse(
+        processSignResponseInput.getSignResponse(), processSignResponseInput.getRelayState(),
+        processSignResponseInput.getState(), processSignResponseInput.getParameters(), owner));
+  }
+
+  /**
+   * Endpoint the gets a prepared PDF document possible containing a PDF signature image along with placement
+   * indications for a PDF signature image.
+   *
+   * @param request the HTTP request
+   * @param authentication the user authentication object
+   * @param policy the policy for the operation
+   * @param input the PDF document to prepare along with preferences
+   * @param returnDocumentReference whether a reference to the updated document should be returned
+   * @return a PreparedPdfDocument object
+   */
+  @PreAuthorize("@evaluator.hasPermission(authentication, #policy, 'use')")
+  @PostMapping(value = "/prepare/{policy}", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+  public Mono<PreparedPdfDocument> preparePdfSignaturePage(
+      final ServerHttpRequest request,
+      final Authentication authentication,
+      @PathVariable("policy") @P("policy") final String policy,
+      @RequestBody final ReactivePreparePdfDocumentInput input,
+      @RequestParam(value = "returnDocReference", required = false) final Boolean returnDocumentReference) {
+
+    log.debug("Processing POST request '{}' [user='{}', client-ip'{}']",
+        getPath(request), authentication.getName(), getRemoteAddress(request));
+
+    final String owner = authentication.getName();
+    return this.compute(() -> this.signServiceIntegrationService.preparePdfDocument(policy,
+        input.getPdfDocument(), input.getSignaturePagePreferences(), returnDocumentReference, owner));
+  }
+
+  /**
+   * Variant of the prepare endpoint where the PDF document is passed as the (binary) request body. See
+   * {@link SignServiceIntegrationController#preparePdfSignaturePageBinary}.
+   *
+   * @param request the HTTP request
+   * @param authentication the user authentication object
+   * @param policy the policy for the operation
+   * @param pdfDocument the PDF document to prepare
+   * @param returnDocumentReference whether a reference to the updated document should be returned
+   * @param accept the Accept header
+   * @return the prepared document
+   */
+  @PreAuthorize("@evaluator.hasPermission(authentication, #policy, 'use')")
+  @PostMapping(value = "/prepare/{policy}", consumes = MediaType.APPLICATION_PDF_VALUE,
+      produces = { MediaType.APPLICATION_JSON_VALUE, MediaType.MULTIPART_MIXED_VALUE })
+  public Mono<ResponseEntity<Object>> preparePdfSignaturePageBinary(
+      final ServerHttpRequest request,
+      final Authentication authentication,
+      @PathVariable("policy") @P("policy") final String policy,
+      @RequestBody final byte[] pdfDocument,
+      @RequestParam(value = "returnDocReference", required = false) final Boolean returnDocumentReference,
+      @RequestHeader(value = HttpHeaders.ACCEPT, required = false) final String accept) {
+
+    log.debug("Processing POST request '{}' ({} bytes) [user='{}', client-ip'{}']",
+        getPath(request), pdfDocument.length, authentication.getName(), getRemoteAddress(request));
+
+    final String owner = authentication.getName();
+    return this.compute(() -> SignServiceIntegrationController.toPrepareResponse(
+        this.signServiceIntegrationService.preparePdfDocument(policy, pdfDocument, null, returnDocumentReference,
+            owner),
+        accept));
+  }
+
+  /**
+   * Variant of the prepare endpoint where the PDF document is passed as the (binary) {@code document} part of a
+   * multipart request. See {@link SignServiceIntegrationController#preparePdfSignaturePageMultipart}.
+   *
+   * @param request the HTTP request
+   * @param authentication the user authentication object
+   * @param policy the policy for the operation
+   * @param document the PDF document to prepare
+   * @param preferences the signature page preferences (optional)
+   * @param returnDocumentReference whether a reference to the updated document should be returned
+   * @param accept the Accept header
+   * @return the prepared document
+   */
+  @PreAuthorize("@evaluator.hasPermission(authentication, #policy, 'use')")
+  @PostMapping(value = "/prepare/{policy}", consumes = MediaType.MULTIPART_FORM_DATA_VALUE,
+      produces = { MediaType.APPLICATION_JSON_VALUE, MediaType.MULTIPART_MIXED_VALUE })
+  public Mono<ResponseEntity<Object>> preparePdfSignaturePageMultipart(
+      final ServerHttpRequest request,
+      final Authentication authentication,
+      @PathVariable("policy") @P("policy") final String policy,
+      @RequestPart("document") final FilePart document,
+      @RequestPart(value = "preferences", required = false) final PdfSignaturePagePreferences preferences,
+      @RequestParam(value = "returnDocReference", required = false) final Boolean returnDocumentReference,
+      @RequestHeader(value = HttpHeaders.ACCEPT, required = false) final String accept) {
+
+    log.debug("Processing POST request '{}' [user='{}', client-ip'{}']",
+        getPath(request), authentication.getName(), getRemoteAddress(request));
+
+    final String owner = authentication.getName();
+    return DataBufferUtils.join(document.content())
+        .map(ReactiveSignServiceIntegrationController::toBytes)
+        .flatMap(pdfBytes -> this.compute(() -> SignServiceIntegrationController.toPrepareResponse(
+            this.signServiceIntegrationService.preparePdfDocument(policy, pdfBytes, preferences,
+                returnDocumentReference, owner),
+            accept)));
+  }
+
+  @PostFilter("@evaluator.hasPermission(authentication, filterObject, 'use')")
+  @GetMapping(value = "/policy/list", produces = MediaType.APPLICATION_JSON_VALUE)
+  public Flux<String> listPolicies(final ServerHttpRequest request, final Authentication authentication) {
+
+    log.debug("Processing GET request '{}' [user='{}', client-ip'{}']",
+        getPath(request), authentication.getName(), getRemoteAddress(request));
+
+    // Spring security will filter the list based on whether the user has permission on all policies.
+    //
+    return Flux.fromIterable(new ArrayList<>(this.signServiceIntegrationService.getPolicies()));
+  }
+
+  @PreAuthorize("@evaluator.hasPermission(authentication, #policy, 'use')")
+  @GetMapping(value = "/policy/get/{policy}", produces = MediaType.APPLICATION_JSON_VALUE)
+  public Mono<IntegrationServiceDefaultConfiguration> getPolicy(
+      final ServerHttpRequest request,
+      final Authentication authentication,
+      @PathVariable("policy") @P("policy") final String policy) {
+
+    log.debug("Processing GET request '{}' from '{}'", getPath(request), getRemoteAddress(request));
+
+    return Mono.fromCallable(() -> this.signServiceIntegrationService.getConfiguration(policy));
+  }
+
+  @GetMapping(value = "/version", produces = MediaType.APPLICATION_JSON_VALUE)
+  public Mono<SignServiceIntegrationController.VersionObject> getVersion() {
+    return Mono.just(new SignServiceIntegrationController.VersionObject(
+        this.signServiceIntegrationService.getVersion(), ApiVersion.getVersion()));
+  }
+
+  /**
+   * Processes the supplied task using the {@link ComputeExecutor} (or the bounded elastic scheduler if the executor is
+   * disabled). If the executor queue is full, the returned {@link Mono} fails with a
+   * {@link se.idsec.signservice.integration.rest.compute.ComputeExecutorFullException ComputeExecutorFullException}.
+   *
+   * @param task the task
+   * @param <T> the result type
+   * @return a Mono for the result
+   */
+  private <T> Mono<T> compute(final Callable<T> task) {
+    if (!this.computeExecutor.isEnabled()) {
+      return Mono.fromCallable(task).subscribeOn(Schedulers.boundedElastic());
+    }
+    return Mono.defer(() -> Mono.fromFuture(this.computeExecutor.submit(task)));
+  }
+
+  /**
+   * Copies the contents of the supplied buffer and releases it.
+   *
+   * @param buffer the buffer
+   * @return the contents
+   */
+  private static byte[] toBytes(final DataBuffer buffer) {
+    try {
+      final byte[] bytes = new byte[buffer.readableByteCount()];
+      buffer.read(bytes);
+      return bytes;
+    }
+    finally {
+      DataBufferUtils.release(buffer);
+    }
+  }
+
+  /**
+   * Gets the path of the request (within the application).
+   *
+   * @param request the request
+   * @return the path
+   */
+  private static String getPath(final ServerHttpRequest request) {
+    return request.getPath().pathWithinApplication().value();
+  }
+
+  /**
+   * Gets the address of the client.
+   *
+   * @param request the request
+   * @return the client address, or {@code null} if not known
+   */
+  private static String getRemoteAddress(final ServerHttpRequest request) {
+    final InetSocketAddress address = request.getRemoteAddress();
+    return address != null ? address.getHostString() : null;
+  }
+
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2020-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.rest.controllers.error;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.ServerWebInputException;
+import se.idsec.signservice.integration.SignResponseErrorStatusException;
+import se.idsec.signservice.integration.core.error.BadRequestException;
+import se.idsec.signservice.integration.core.error.ErrorCode;
+import se.idsec.signservice.integration.core.error.InputValidationException;
+import se.idsec.signservice.integration.core.error.SignServiceIntegrationErrorBody;
+import se.idsec.signservice.integration.core.error.SignServiceIntegrationException;
+import se.idsec.signservice.integration.rest.ServiceOverloadedException;
+import se.idsec.signservice.integration.rest.controllers.Base64DocumentDeserializer;
+
+/**
+ * Exception handler for the Sign Service Integration service on the reactive (WebFlux) stack. Produces the same error
+ * bodies as {@link SignServiceIntegrationExceptionHandler}.
+ *
+ * @author Martin Lindström
+ */
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@ControllerAdvice
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveSignServiceIntegrationExceptionHandler {
+
+  /**
+   * Handles exceptions from the SignService Integration API.
+   *
+   * @param ex the exception
+   * @param exchange the current exchange
+   * @return a response entity
+   */
+  @ExceptionHandler(SignServiceIntegrationException.class)
+  public ResponseEntity<SignServiceIntegrationErrorBody> handleSignServiceIntegrationException(
+      final SignServiceIntegrationException ex, final ServerWebExchange exchange) {
+
+    final SignServiceIntegrationErrorBody body =
+        SignServiceIntegrationExceptionHandler.toErrorBody(ex, getPath(exchange));
+    return ResponseEntity.status(body.getStatus()).body(body);
+  }
+
+  /**
+   * Handles DSS errors from the SignService Integration API.
+   *
+   * @param ex the exception
+   * @param exchange the current exchange
+   * @return a response entity
+   */
+  @ExceptionHandler(SignResponseErrorStatusException.class)
+  public ResponseEntity<SignServiceIntegrationErrorBody> handleDssError(
+      final SignResponseErrorStatusException ex, final ServerWebExchange exchange) {
+
+    return ResponseEntity.badRequest()
+        .body(SignServiceIntegrationExceptionHandler.toDssErrorBody(ex, getPath(exchange)));
+  }
+
+  /**
+   * Handles calls rejected since the service is temporarily out of resources (a full cache or compute queue).
+   * Responds with 503 and a Retry-After header.
+   *
+   * @param ex the exception
+   * @param exchange the current exchange
+   * @return a response entity
+   */
+  @ExceptionHandler(ServiceOverloadedException.class)
+  public ResponseEntity<SignServiceIntegrationErrorBody> handleServiceOverloaded(
+      final ServiceOverloadedException ex, final ServerWebExchange exchange) {
+
+    return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+        .headers(SignServiceIntegrationExceptionHandler.retryAfterHeaders(ex.getRetryAfter()))
+        .body(SignServiceIntegrationExceptionHandler.toServiceUnavailableErrorBody(
+            ex, ex.getErrorCode(), getPath(exchange)));
+  }
+
+  /**
+   * Handles request bodies and parameters that can not be read. Documents with an invalid Base64 encoding (see
+   * {@link Base64DocumentDeserializer}) are reported as input validation errors.
+   *
+   * @param ex the exception
+   * @param exchange the current exchange
+   * @return a response entity
+   */
+  @ExceptionHandler(ServerWebInputException.class)
+  public ResponseEntity<SignServiceIntegrationErrorBody> handleServerWebInput(
+      final ServerWebInputException ex, final ServerWebExchange exchange) {
+
+    for (Throwable cause = ex.getCause(); cause != null; cause = cause.getCause()) {
+      if (cause instanceof final Base64DocumentDeserializer.InvalidEncodingException encodingException) {
+        return this.handleSignServiceIntegrationException(
+            new InputValidationException(encodingException.getFieldName(), "Invalid Base64 encoding",
+                encodingException),
+            exchange);
+      }
+    }
+
+    final SignServiceIntegrationErrorBody body = SignServiceIntegrationErrorBody.builder()
+        .status(HttpStatus.BAD_REQUEST.value())
+        .timestamp(System.currentTimeMillis())
+        .errorCode(new ErrorCode(BadRequestException.BAD_REQUEST_ERROR_CATEGORY.getCategory(), "invalid-call")
+            .getErrorCode())
+        .message(ex.getReason())
+        .path(getPath(exchange))
+        .exceptionClass(ex.getClass().getName())
+        .build();
+    return ResponseEntity.badRequest().body(body);
+  }
+
+  /**
+   * Gets the path of the request (within the application).
+   *
+   * @param exchange the current exchange
+   * @return the path
+   */
+  private static String getPath(final ServerWebExchange exchange) {
+    return exchange.getRequest().getPath().pathWithinApplication().value();
+  }
+
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2020-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.idsec.signservice.integration.rest.controllers;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Mono;
+import se.idsec.signservice.integration.ExtendedSignServiceIntegrationService;
+import se.idsec.signservice.integration.SignRequestData;
+import se.idsec.signservice.integration.SignRequestInput;
+import se.idsec.signservice.integration.document.pdf.PreparedPdfDocument;
+import se.idsec.signservice.integration.rest.cache.CacheFullException;
+import se.idsec.signservice.integration.rest.compute.ComputeExecutor;
+import se.idsec.signservice.integration.rest.controllers.error.ReactiveSignServiceIntegrationExceptionHandler;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Test cases for {@link ReactiveSignServiceIntegrationController}.
+ *
+ * @author Martin Lindström
+ */
+class ReactiveSignServiceIntegrationControllerTest {
+
+  private ExtendedSignServiceIntegrationService service;
+
+  private ComputeExecutor computeExecutor;
+
+  private final Authentication authentication = new TestingAuthenticationToken("user", null);
+
+  /** The thread that invoked the service logic. */
+  private final AtomicReference<String> serviceThread = new AtomicReference<>();
+
+  @BeforeEach
+  void setup() throws Exception {
+    this.service = Mockito.mock(ExtendedSignServiceIntegrationService.class);
+    Mockito.when(this.service.createSignRequest(ArgumentMatchers.any(), ArgumentMatchers.eq("user")))
+        .thenAnswer(invocation -> {
+          this.serviceThread.set(Thread.currentThread().getName());
+          return new SignRequestData();
+        });
+  }
+
+  @AfterEach
+  void destroy() {
+    if (this.computeExecutor != null) {
+      this.computeExecutor.destroy();
+    }
+  }
+
+  @Test
+  void testCreateOnComputeExecutor() {
+    this.client(true).post().uri("/v1/create/default")
+        .contentType(MediaType.APPLICATION_JSON)
+        .bodyValue(new SignRequestInput())
+        .exchange()
+        .expectStatus().isOk();
+
+    Assertions.assertTrue(this.serviceThread.get().startsWith("compute-"));
+  }
+
+  @Test
+  void testCreateExecutorDisabled() {
+    // The service logic must never be invoked on the event loop ...
+    this.client(false).post().uri("/v1/create/default")
+        .contentType(MediaType.APPLICATION_JSON)
+        .bodyValue(new SignRequestInput())
+        .exchange()
+        .expectStatus().isOk();
+
+    Assertions.assertTrue(this.serviceThread.get().startsWith("boundedElastic-"));
+  }
+
+  @Test
+  void testCreateBadPolicy() {
+    final SignRequestInput input = new SignRequestInput();
+    input.setPolicy("other");
+
+    this.client(false).post().uri("/v1/create/default")
+        .contentType(MediaType.APPLICATION_JSON)
+        .bodyValue(input)
+        .exchange()
+        .expectStatus().isBadRequest()
+        .expectBody()
+        .jsonPath("$.path").isEqualTo("/v1/create/default");
+
+    Assertions.assertNull(this.serviceThread.get());
+  }
+
+  @Test
+  void testServiceOverloaded() throws Exception {
+    Mockito.when(this.service.createSignRequest(ArgumentMatchers.any(), ArgumentMatchers.eq("user")))
+        .thenThrow(new CacheFullException("Cache is full", Duration.ofSeconds(5)));
+
+    this.client(true).post().uri("/v1/create/default")
+        .contentType(MediaType.APPLICATION_JSON)
+        .bodyValue(new SignRequestInput())
+        .exchange()
+        .expectStatus().isEqualTo(503)
+        .expectHeader().exists(HttpHeaders.RETRY_AFTER)
+        .expectBody()
+        .jsonPath("$.errorCode").isEqualTo(CacheFullException.ERROR_CODE.getErrorCode());
+  }
+
+  @Test
+  void testPrepareBinary() throws Exception {
+    final byte[] pdf = "%PDF-original".getBytes(StandardCharsets.UTF_8);
+    final String updated = Base64.getEncoder().encodeToString("%PDF-updated".getBytes(StandardCharsets.UTF_8));
+    Mockito.when(this.service.preparePdfDocument(ArgumentMatchers.eq("default"), ArgumentMatchers.eq(pdf),
+            ArgumentMatchers.isNull(), ArgumentMatchers.any(), ArgumentMatchers.eq("user")))
+        .thenAnswer(invocation -> {
+          final PreparedPdfDocument prepared = new PreparedPdfDocument();
+          prepared.setUpdatedPdfDocument(updated);
+          return prepared;
+        });
+
+    this.client(true).post().uri("/v1/prepare/default")
+        .contentType(MediaType.APPLICATION_PDF)
+        .accept(MediaType.APPLICATION_JSON)
+        .bodyValue(pdf)
+        .exchange()
+        .expectStatus().isOk()
+        .expectBody()
+        .jsonPath("$.updatedPdfDocument").isEqualTo(updated);
+  }
+
+  @Test
+  void testPrepareJson() throws Exception {
+    // Larger than the threshold at which the servlet stack buffers the decoded document in a temporary file ...
+    final byte[] pdf = new byte[3 * 1024 * 1024 + 17];
+    new Random(17).nextBytes(pdf);
+    Mockito.when(this.service.preparePdfDocument(ArgumentMatchers.eq("default"), ArgumentMatchers.eq(pdf),
+            ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.eq("user")))
+        .thenAnswer(invocation -> {
+          this.serviceThread.set(Thread.currentThread().getName());
+          return new PreparedPdfDocument();
+        });
+
+    this.client(false).post().uri("/v1/prepare/default")
+        .contentType(MediaType.APPLICATION_JSON)
+        .bodyValue(Map.of("pdfDocument", Base64.getEncoder().encodeToString(pdf)))
+        .exchange()
+        .expectStatus().isOk();
+    Assertions.assertTrue(this.serviceThread.get().startsWith("boundedElastic-"));
+
+    // The request body is parsed on the event loop, so the document must never be written to a temporary file ...
+    Assertions.assertEquals(Base64DocumentDeserializer.InMemory.class, ReactivePreparePdfDocumentInput.class
+        .getDeclaredField("pdfDocument").getAnnotation(JsonDeserialize.class).using());
+  }
+
+  private WebTestClient client(final boolean computeExecutorEnabled) {
+    this.computeExecutor = new ComputeExecutor(computeExecutorEnabled, 1, 10, Duration.ofSeconds(5), null);
+    return WebTestClient
+        .bindToController(new ReactiveSignServiceIntegrationController(this.service, this.computeExecutor))
+        .controllerAdvice(new ReactiveSignServiceIntegrationExceptionHandler())
+        .httpMessageCodecs(configurer -> configurer.defaultCodecs().maxInMemorySize(28 * 1024 * 1024))
+        .webFilter((exchange, chain) -> chain.filter(
+            exchange.mutate().principal(Mono.just(this.authentication)).build()))
+        .build();
+  }
+
+}